@@ -0,0 +1,27 @@
+package org.multibit.hd.core.config;
+
+/**
+ * <p>Enum to provide the following to configuration change events:</p>
+ * <ul>
+ * <li>Identification of the parts of the configuration that changed</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public enum ConfigurationSection {
+
+  /**
+   * Top level properties (version, labs properties and unknown properties)
+   */
+  APPLICATION,
+  LANGUAGE,
+  APPEARANCE,
+  BITCOIN,
+  SOUND,
+  WALLET,
+  LOGGING,
+
+  // End of enum
+  ;
+
+}
@@ -1,15 +1,29 @@
 package org.multibit.hd.core.config;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.multibit.commons.concurrent.SafeExecutors;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Utility to provide the following to configuration:</p>
@@ -17,8 +31,12 @@ import java.util.Locale;
  * <li>Default configuration</li>
  * <li>Switch configuration</li>
  * <li>Read/write configuration files</li>
+ * <li>Sections changed between configurations</li>
  * </ul>
  *
+ * <p>Configurations are treated as copy on write: a switch replaces the current configuration with a new
+ * copy and persistence writes a copy taken at the time of the request.</p>
+ *
  * @since 0.0.1
  *
  */
@@ -38,6 +56,22 @@ public class Configurations {
    */
   public static Configuration previousConfiguration;
 
+  /**
+   * The delay in milliseconds used to gather several persistence requests into a single write
+   */
+  static final int WRITE_DELAY_MILLIS = 500;
+
+  /**
+   * Guards the pending and scheduled writes (the writer thread is the only one writing the file apart from shutdown)
+   */
+  private static final Object writeLock = new Object();
+
+  private static ListeningScheduledExecutorService writerService = null;
+
+  private static Optional<ScheduledFuture<?>> scheduledWrite = Optional.absent();
+
+  private static Optional<PendingWrite> nextWrite = Optional.absent();
+
   /**
    * Utilities have private constructors
    */
@@ -62,9 +96,9 @@ public class Configurations {
   /**
    * <p>Handle the process of switching to a new configuration</p>
    *
-   * <p>Provides locale and event notification of the change</p>
+   * <p>Provides locale and event notification of the sections that changed</p>
    *
-   * @param newConfiguration The new configuration
+   * @param newConfiguration The new configuration (a copy that is not changed afterwards)
    */
   public static synchronized void switchConfiguration(Configuration newConfiguration) {
 
@@ -76,38 +110,199 @@ public class Configurations {
     // Ensure the new configuration has the same frame bounds since MainView won't have updated it
     newConfiguration.getAppearance().setLastFrameBounds(currentConfiguration.getAppearance().getLastFrameBounds());
 
+    Set<ConfigurationSection> changedSections = diff(currentConfiguration, newConfiguration);
+
     // Set the replacement
     currentConfiguration = newConfiguration;
 
-    // Persist the changes
-    persistCurrentConfiguration();
-
     // Update any JVM classes
     Locale.setDefault(currentConfiguration.getLocale());
 
+    if (changedSections.isEmpty()) {
+      log.debug("Configuration unchanged");
+      return;
+    }
+
+    // Persist the changes
+    persistCurrentConfiguration();
+
     // Notify interested parties
-    CoreEvents.fireConfigurationChangedEvent();
+    CoreEvents.fireConfigurationChangedEvent(changedSections);
 
   }
 
   /**
-   * <p>Persist the current configuration</p>
+   * <p>Persist the current configuration shortly (several requests in quick succession result in a single write)</p>
    *
    * <p>No locale change or event takes place (see {@link #switchConfiguration(Configuration)})</p>
    */
-  public static synchronized void persistCurrentConfiguration() {
+  public static void persistCurrentConfiguration() {
 
     log.debug("Persisting current configuration");
 
-    // Get the configuration file
-    // This approach allows for easy debugging of persisting over live configuration
-    // in unit tests (see BitcoinURIListeningServiceTest for an example)
-    File configurationFile = InstallationManager.getConfigurationFile();
+    // Copy on the calling thread so later changes cannot tear the written file
+    PendingWrite pendingWrite = new PendingWrite(InstallationManager.getConfigurationFile(), currentConfiguration.deepCopy());
+
+    synchronized (writeLock) {
+      nextWrite = Optional.of(pendingWrite);
+      if (scheduledWrite.isPresent()) {
+        // The scheduled write will pick up the latest copy
+        return;
+      }
+      if (writerService == null) {
+        writerService = SafeExecutors.newSingleThreadScheduledExecutor("configuration-writer");
+      }
+      scheduledWrite = Optional.<ScheduledFuture<?>>of(
+        writerService.schedule(
+          new Runnable() {
+            @Override
+            public void run() {
+              writePending();
+            }
+          }, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /**
+   * <p>Persist the current configuration immediately (e.g. at shutdown)</p>
+   */
+  public static void persistCurrentConfigurationNow() {
+
+    log.debug("Persisting current configuration now");
+
+    PendingWrite pendingWrite = new PendingWrite(InstallationManager.getConfigurationFile(), currentConfiguration.deepCopy());
+
+    synchronized (writeLock) {
+      if (scheduledWrite.isPresent()) {
+        scheduledWrite.get().cancel(false);
+        scheduledWrite = Optional.absent();
+      }
+      nextWrite = Optional.absent();
+
+      write(pendingWrite);
+    }
+  }
+
+  /**
+   * <p>Replace the executor service performing delayed writes (e.g. for deterministic testing)</p>
+   *
+   * @param writerService The executor service, or null to create one on the next request
+   */
+  static void setWriterService(ListeningScheduledExecutorService writerService) {
+
+    synchronized (writeLock) {
+      if (scheduledWrite.isPresent()) {
+        scheduledWrite.get().cancel(false);
+        scheduledWrite = Optional.absent();
+      }
+      nextWrite = Optional.absent();
+      Configurations.writerService = writerService;
+    }
+  }
+
+  /**
+   * @param before The configuration before the change
+   * @param after  The configuration after the change
+   *
+   * @return The sections that differ
+   */
+  public static Set<ConfigurationSection> diff(Configuration before, Configuration after) {
+
+    Preconditions.checkNotNull(after, "'after' must be present");
+
+    if (before == null) {
+      return EnumSet.allOf(ConfigurationSection.class);
+    }
+
+    Set<ConfigurationSection> changedSections = EnumSet.noneOf(ConfigurationSection.class);
+
+    if (!Objects.equal(before.getConfigurationVersion(), after.getConfigurationVersion())
+      || before.isTor() != after.isTor()
+      || before.isTrezor() != after.isTrezor()
+      || before.isShowRestoreBeta7Wallets() != after.isShowRestoreBeta7Wallets()
+      || !before.any().equals(after.any())) {
+      changedSections.add(ConfigurationSection.APPLICATION);
+    }
+    if (!sameYaml(before.getLanguage(), after.getLanguage())) {
+      changedSections.add(ConfigurationSection.LANGUAGE);
+    }
+    if (!sameYaml(before.getAppearance(), after.getAppearance())) {
+      changedSections.add(ConfigurationSection.APPEARANCE);
+    }
+    if (!sameYaml(before.getBitcoin(), after.getBitcoin())) {
+      changedSections.add(ConfigurationSection.BITCOIN);
+    }
+    if (!sameYaml(before.getSound(), after.getSound())) {
+      changedSections.add(ConfigurationSection.SOUND);
+    }
+    if (!sameYaml(before.getWallet(), after.getWallet())) {
+      changedSections.add(ConfigurationSection.WALLET);
+    }
+    if (!sameYaml(before.getLogging(), after.getLogging())) {
+      changedSections.add(ConfigurationSection.LOGGING);
+    }
+
+    return changedSections;
+  }
+
+  /**
+   * <p>Sections have no equals() so compare their serialised form</p>
+   */
+  private static boolean sameYaml(Object before, Object after) {
+
+    if (before == null || after == null) {
+      return before == after;
+    }
+
+    ByteArrayOutputStream beforeYaml = new ByteArrayOutputStream();
+    ByteArrayOutputStream afterYaml = new ByteArrayOutputStream();
+    Yaml.writeYaml(beforeYaml, before);
+    Yaml.writeYaml(afterYaml, after);
+
+    return Arrays.equals(beforeYaml.toByteArray(), afterYaml.toByteArray());
+  }
+
+  /**
+   * <p>Write the latest requested copy (writer thread)</p>
+   */
+  private static void writePending() {
 
-    // Persist the new configuration
-    try (FileOutputStream fos = new FileOutputStream(configurationFile)) {
+    synchronized (writeLock) {
+      scheduledWrite = Optional.absent();
+      if (nextWrite.isPresent()) {
+        write(nextWrite.get());
+        nextWrite = Optional.absent();
+      }
+    }
+  }
 
-      Yaml.writeYaml(fos, Configurations.currentConfiguration);
+  /**
+   * <p>Write the configuration to a temporary file and move it over the configuration file so it is never partially written</p>
+   */
+  private static void write(PendingWrite pendingWrite) {
+
+    File configurationFile = pendingWrite.configurationFile;
+    File temporaryFile = new File(configurationFile.getAbsolutePath() + ".tmp");
+
+    // Serialise first since a failure part way through can leave some YAML behind
+    ByteArrayOutputStream yaml = new ByteArrayOutputStream();
+    if (!Yaml.writeYaml(yaml, pendingWrite.configuration) || yaml.size() == 0) {
+      // Keep the existing file
+      log.warn("Could not persist current configuration (YAML not written)");
+      return;
+    }
+
+    try {
+      try (FileOutputStream fos = new FileOutputStream(temporaryFile)) {
+        yaml.writeTo(fos);
+        fos.getFD().sync();
+      }
+
+      try {
+        Files.move(temporaryFile.toPath(), configurationFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile.toPath(), configurationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
 
     } catch (IOException e) {
       // Nothing the user can do here so ignore it (logging for advanced users)
@@ -115,4 +310,19 @@ public class Configurations {
     }
   }
 
+  /**
+   * <p>A copy of the configuration waiting to be written</p>
+   */
+  private static class PendingWrite {
+
+    private final File configurationFile;
+
+    private final Configuration configuration;
+
+    private PendingWrite(File configurationFile, Configuration configuration) {
+      this.configurationFile = configurationFile;
+      this.configuration = configuration;
+    }
+  }
+
 }
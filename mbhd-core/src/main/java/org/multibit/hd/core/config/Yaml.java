@@ -24,7 +24,10 @@ public class Yaml {
 
   private static final Logger log = LoggerFactory.getLogger(Yaml.class);
 
-  private static ObjectMapper mapper = null;
+  /**
+   * The mapper is thread safe once configured so readers and writers do not contend
+   */
+  private static final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
 
   /**
    * Utilities have private constructors
@@ -40,16 +43,12 @@ public class Yaml {
    *
    * @return The configuration data (<code>Configuration</code>, <code>Wallet Summary</code> etc) if present
    */
-  public static synchronized <T> Optional<T> readYaml(InputStream is, Class<T> clazz) {
+  public static <T> Optional<T> readYaml(InputStream is, Class<T> clazz) {
     log.trace("Reading YAML data...");
 
     Optional<T> value;
 
     // Read the external configuration
-    if (mapper == null) {
-      mapper = new ObjectMapper(new YAMLFactory());
-    }
-
     try {
       value = Optional.fromNullable(mapper.readValue(is, clazz));
     } catch (YAMLException | IOException e) {
@@ -69,19 +68,19 @@ public class Yaml {
    *
    * @param os            The output stream to use (not closed)
    * @param configuration The configuration to write as YAML
+   *
+   * @return True if the YAML was written in full
    */
-  public static synchronized <T> void writeYaml(OutputStream os, T configuration) {
+  public static <T> boolean writeYaml(OutputStream os, T configuration) {
     log.debug("Writing YAML data...");
 
-    if (mapper == null) {
-      mapper = new ObjectMapper(new YAMLFactory());
-    }
-
     try {
       mapper.writeValue(os, configuration);
+      return true;
     } catch (YAMLException | IOException e) {
       // Nothing the user can do in the event of a failure
       log.warn("Unable to write YAML: {}", e);
+      return false;
     }
   }
 }
@@ -0,0 +1,144 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import org.multibit.commons.crypto.AESUtils;
+import org.multibit.hd.core.dto.WalletId;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
+import org.multibit.hd.core.managers.WalletManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.util.Arrays;
+
+/**
+ * <p>Session key holder to provide the following to the backup manager:</p>
+ * <ul>
+ * <li>The unwrapped backup AES key of the unlocked wallet so zip backups avoid scrypt</li>
+ * <li>Wiping of the key when the wallet is locked, switched or shut down</li>
+ * </ul>
+ *
+ * <p>Only one wallet is unlocked at a time so only one key is held. Callers receive a copy
+ * of the key bytes so wiping the holder cannot corrupt a backup in progress.</p>
+ *
+ * @since 0.5.0
+ */
+public enum BackupKeys {
+
+  INSTANCE;
+
+  private static final Logger log = LoggerFactory.getLogger(BackupKeys.class);
+
+  private Optional<WalletId> walletId = Optional.absent();
+
+  private byte[] backupAESKeyBytes = null;
+
+  /**
+   * <p>Provide the backup AES key for the wallet, unwrapping it with the password only if it is not already held</p>
+   *
+   * @param walletId      The wallet ID
+   * @param password      The wallet password
+   * @param walletSummary The wallet summary holding the encrypted backup key (only read when the key is not held)
+   *
+   * @return The backup AES key
+   *
+   * @throws EncryptedFileReaderWriterException If the backup key could not be unwrapped
+   */
+  public KeyParameter getOrUnwrapBackupAESKey(WalletId walletId, CharSequence password, Optional<WalletSummary> walletSummary) throws EncryptedFileReaderWriterException {
+
+    Preconditions.checkNotNull(walletId, "'walletId' must be present");
+
+    Optional<KeyParameter> backupAESKey = getBackupAESKey(walletId);
+    if (backupAESKey.isPresent()) {
+      return backupAESKey.get();
+    }
+
+    Preconditions.checkNotNull(password, "'password' must be present");
+    Preconditions.checkState(walletSummary.isPresent(), "'walletSummary' must be present to unwrap the backup key");
+
+    KeyParameter unwrappedBackupAESKey = unwrapBackupAESKey(walletSummary.get(), password);
+    remember(walletId, unwrappedBackupAESKey);
+
+    return unwrappedBackupAESKey;
+  }
+
+  /**
+   * @param walletId The wallet ID
+   *
+   * @return A copy of the held backup AES key if it belongs to the wallet
+   */
+  public synchronized Optional<KeyParameter> getBackupAESKey(WalletId walletId) {
+
+    if (backupAESKeyBytes == null || !walletId.equals(this.walletId.orNull())) {
+      return Optional.absent();
+    }
+
+    return Optional.of(new KeyParameter(Arrays.copyOf(backupAESKeyBytes, backupAESKeyBytes.length)));
+  }
+
+  /**
+   * @param walletId     The wallet ID
+   * @param backupAESKey The unwrapped backup AES key (a copy is held)
+   */
+  public synchronized void remember(WalletId walletId, KeyParameter backupAESKey) {
+
+    Preconditions.checkNotNull(walletId, "'walletId' must be present");
+    Preconditions.checkNotNull(backupAESKey, "'backupAESKey' must be present");
+
+    clear();
+
+    byte[] key = backupAESKey.getKey();
+    this.backupAESKeyBytes = Arrays.copyOf(key, key.length);
+    this.walletId = Optional.of(walletId);
+
+    log.debug("Holding backup key for the session");
+
+  }
+
+  /**
+   * <p>Wipe the held key (on lock, switch and shutdown)</p>
+   */
+  public synchronized void clear() {
+
+    if (backupAESKeyBytes != null) {
+      Arrays.fill(backupAESKeyBytes, (byte) 0);
+      backupAESKeyBytes = null;
+      log.debug("Wiped session backup key");
+    }
+    walletId = Optional.absent();
+
+  }
+
+  /**
+   * <p>Unwrap the backup AES key using a key derived from the password (uses scrypt)</p>
+   *
+   * @param walletSummary The wallet summary holding the encrypted backup key
+   * @param password      The wallet password
+   *
+   * @return The backup AES key
+   *
+   * @throws EncryptedFileReaderWriterException If the backup key could not be unwrapped
+   */
+  public static KeyParameter unwrapBackupAESKey(WalletSummary walletSummary, CharSequence password) throws EncryptedFileReaderWriterException {
+
+    Preconditions.checkNotNull(walletSummary.getEncryptedBackupKey());
+
+    // Summaries written before random IVs were introduced use the fixed IV
+    byte[] initializationVector = walletSummary.getInitializationVector() == null
+      ? WalletManager.deprecatedFixedAesInitializationVector()
+      : walletSummary.getInitializationVector();
+
+    try {
+      KeyParameter walletPasswordDerivedAESKey = AESUtils.createAESKey(password.toString().getBytes(Charsets.UTF_8), WalletManager.scryptSalt());
+      byte[] backupAESKeyBytes = AESUtils.decrypt(walletSummary.getEncryptedBackupKey(), walletPasswordDerivedAESKey, initializationVector);
+
+      return new KeyParameter(backupAESKeyBytes);
+    } catch (Exception e) {
+      throw new EncryptedFileReaderWriterException("Could not decrypt backup AES key", e);
+    }
+  }
+
+}
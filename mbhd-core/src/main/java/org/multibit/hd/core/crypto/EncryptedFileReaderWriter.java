@@ -13,6 +13,7 @@ import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
 import org.multibit.commons.files.SecureFiles;
 import org.multibit.hd.core.files.EncryptedFileListItem;
+import org.multibit.hd.core.files.SecureDeletions;
 import org.multibit.hd.core.managers.WalletManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -130,6 +131,40 @@ public class EncryptedFileReaderWriter {
     }
   }
 
+  /**
+   * Encrypt the file specified using an already unwrapped backup AES key (avoids scrypt)
+   *
+   * @param fileToEncrypt file to encrypt
+   * @param backupAESKey  the backup AES key
+   * @return the resultant encrypted file
+   * @throws EncryptedFileReaderWriterException
+   */
+  public static File makeBackupAESEncryptedCopyAndDeleteOriginal(File fileToEncrypt, KeyParameter backupAESKey) throws EncryptedFileReaderWriterException {
+    Preconditions.checkNotNull(fileToEncrypt);
+    Preconditions.checkNotNull(backupAESKey);
+
+    File destinationFile = new File(fileToEncrypt.getAbsoluteFile() + WalletManager.MBHD_AES_SUFFIX);
+
+    return encryptAndDeleteOriginal(fileToEncrypt, destinationFile, backupAESKey);
+  }
+
+  /**
+   * Encrypt the file specified to a different location using an already unwrapped backup AES key (avoids scrypt)
+   *
+   * @param fileToEncrypt   file to encrypt
+   * @param destinationFile destination file (the plaintext never appears alongside it)
+   * @param backupAESKey    the backup AES key
+   * @return the resultant encrypted file
+   * @throws EncryptedFileReaderWriterException
+   */
+  public static File makeBackupAESEncryptedCopyAndDeleteOriginal(File fileToEncrypt, File destinationFile, KeyParameter backupAESKey) throws EncryptedFileReaderWriterException {
+    Preconditions.checkNotNull(fileToEncrypt);
+    Preconditions.checkNotNull(destinationFile);
+    Preconditions.checkNotNull(backupAESKey);
+
+    return encryptAndDeleteOriginal(fileToEncrypt, destinationFile, backupAESKey);
+  }
+
   /**
    * Encrypt the file specified using an AES key derived from the supplied credentials
    *
@@ -263,15 +298,11 @@ public class EncryptedFileReaderWriter {
       }
     }
 
-    // Secure delete the old files
-    for (File fileToDelete : oldFiles) {
-      try {
-        if (fileToDelete.exists()) {
-          SecureFiles.secureDelete(fileToDelete);
-        }
-      } catch (IOException ioe) {
-        throw new EncryptedFileReaderWriterException("Could not delete file " + fileToDelete);
-      }
+    // Secure delete the old files in the background as a single batch
+    try {
+      SecureDeletions.INSTANCE.secureDelete(oldFiles);
+    } catch (IOException ioe) {
+      throw new EncryptedFileReaderWriterException("Could not delete files " + oldFiles);
     }
   }
 
@@ -311,7 +342,7 @@ public class EncryptedFileReaderWriter {
       encryptedWalletOutputStream.flush();
 
       if (encryptedFilename.length() == encryptedBytes.length) {
-        SecureFiles.secureDelete(fileToEncrypt);
+        SecureDeletions.INSTANCE.secureDelete(fileToEncrypt);
       } else {
         // The saved file isn't the correct size - do not delete the original
         throw new EncryptedFileReaderWriterException("The saved file " + encryptedFilename + " is not the size of the encrypted bytes - not deleting the original file");
@@ -0,0 +1,342 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.bitcoin.protocols.payments.Protos;
+import org.bitcoinj.crypto.TrustStoreLoader;
+import org.bitcoinj.protocols.payments.PaymentProtocol;
+import org.bitcoinj.protocols.payments.PaymentProtocolException;
+import org.multibit.commons.utils.Dates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Verification cache to provide the following to the payment protocol service:</p>
+ * <ul>
+ * <li>A trust store loaded into memory once rather than from disk on every payment request</li>
+ * <li>Validated BIP70 certificate chains cached by fingerprint until they expire</li>
+ * <li>Full signature checking of every payment request, including those with a cached chain</li>
+ * </ul>
+ *
+ * <p>Merchants sign every payment request with the same chain so only the first request pays
+ * for X.509 path validation. A cached chain expires after {@link #CHAIN_EXPIRY_MINUTES} or when
+ * any certificate in the chain (including the trust anchor) expires, whichever is sooner.</p>
+ *
+ * @since 0.5.0
+ */
+public enum PkiVerifications {
+
+  INSTANCE;
+
+  private static final Logger log = LoggerFactory.getLogger(PkiVerifications.class);
+
+  /**
+   * The time a validated chain is trusted without validating it again
+   */
+  public static final int CHAIN_EXPIRY_MINUTES = 60;
+
+  /**
+   * The number of distinct merchant chains held
+   */
+  private static final int MAXIMUM_CHAINS = 100;
+
+  private final Cache<HashCode, ValidatedChain> chains = CacheBuilder
+    .newBuilder()
+    .maximumSize(MAXIMUM_CHAINS)
+    .expireAfterWrite(CHAIN_EXPIRY_MINUTES, TimeUnit.MINUTES)
+    .build();
+
+  /**
+   * Trust stores of explicitly provided loaders (weak keys compare by identity)
+   */
+  private final ConcurrentMap<TrustStoreLoader, KeyStore> loaderKeyStores = new MapMaker().weakKeys().makeMap();
+
+  private Optional<KeyStore> defaultKeyStore = Optional.absent();
+
+  private ChainValidator chainValidator = new ChainValidator() {
+    @Override
+    public PaymentProtocol.PkiVerificationData validate(Protos.PaymentRequest paymentRequest, KeyStore keyStore) throws PaymentProtocolException {
+      return PaymentProtocol.verifyPaymentRequestPki(paymentRequest, keyStore);
+    }
+  };
+
+  /**
+   * <p>Verify the PKI of a payment request using the cached chain if present</p>
+   *
+   * @param paymentRequest   The payment request
+   * @param trustStoreLoader The trust store loader, null for the default (usually "mbhd-cacerts")
+   *
+   * @return The PKI verification data, null if the payment request has no PKI (as for bitcoinj)
+   *
+   * @throws PaymentProtocolException If the chain or the signature is not valid
+   * @throws KeyStoreException        If the trust store cannot be loaded
+   */
+  public PaymentProtocol.PkiVerificationData verify(Protos.PaymentRequest paymentRequest, TrustStoreLoader trustStoreLoader) throws PaymentProtocolException, KeyStoreException {
+
+    Preconditions.checkNotNull(paymentRequest, "'paymentRequest' must be present");
+
+    if ("none".equals(paymentRequest.getPkiType())) {
+      return null;
+    }
+
+    final KeyStore keyStore = getKeyStore(trustStoreLoader);
+    final HashCode fingerprint = fingerprint(paymentRequest);
+
+    ValidatedChain validatedChain = chains.getIfPresent(fingerprint);
+    if (validatedChain != null
+      && validatedChain.keyStore == keyStore
+      && validatedChain.expiresMillis > Dates.nowUtc().getMillis()) {
+
+      // The chain is already trusted so only the signature of this payment request needs checking
+      verifySignature(paymentRequest, validatedChain.signingKey, validatedChain.algorithm);
+      return validatedChain.pkiVerificationData;
+    }
+
+    // Full validation (also checks the signature)
+    PaymentProtocol.PkiVerificationData pkiVerificationData = getChainValidator().validate(paymentRequest, keyStore);
+    if (pkiVerificationData != null) {
+      List<X509Certificate> chain = certificates(paymentRequest);
+      if (pkiVerificationData.rootAuthority != null && pkiVerificationData.rootAuthority.getTrustedCert() != null) {
+        chain.add(pkiVerificationData.rootAuthority.getTrustedCert());
+      }
+      chains.put(
+        fingerprint,
+        new ValidatedChain(
+          pkiVerificationData,
+          keyStore,
+          chain.get(0).getPublicKey(),
+          algorithm(paymentRequest.getPkiType()),
+          expiresMillis(chain, Dates.nowUtc().getMillis())
+        ));
+      log.debug("Cached validated chain for '{}'", pkiVerificationData.displayName);
+    }
+
+    return pkiVerificationData;
+  }
+
+  /**
+   * <p>Discard the trust stores and validated chains (call when the trust store changes)</p>
+   */
+  public synchronized void reset() {
+
+    defaultKeyStore = Optional.absent();
+    loaderKeyStores.clear();
+    chains.invalidateAll();
+
+  }
+
+  /**
+   * @param chain     The validated chain
+   * @param nowMillis The time of validation
+   *
+   * @return The time the chain must be validated again (the earliest certificate expiry or the cache expiry)
+   */
+  static long expiresMillis(List<X509Certificate> chain, long nowMillis) {
+
+    long expiresMillis = nowMillis + TimeUnit.MINUTES.toMillis(CHAIN_EXPIRY_MINUTES);
+    for (X509Certificate certificate : chain) {
+      expiresMillis = Math.min(expiresMillis, certificate.getNotAfter().getTime());
+    }
+
+    return expiresMillis;
+  }
+
+  /**
+   * @param chainValidator The validator performing full validation of chains not in the cache
+   */
+  synchronized void setChainValidator(ChainValidator chainValidator) {
+
+    Preconditions.checkNotNull(chainValidator, "'chainValidator' must be present");
+
+    this.chainValidator = chainValidator;
+    chains.invalidateAll();
+
+  }
+
+  /**
+   * @return The number of validated chains held
+   */
+  public long size() {
+    chains.cleanUp();
+    return chains.size();
+  }
+
+  /**
+   * @param trustStoreLoader The trust store loader, null for the default
+   *
+   * @return The in-memory trust store, loaded on first use
+   *
+   * @throws KeyStoreException If the trust store cannot be loaded
+   */
+  private synchronized KeyStore getKeyStore(TrustStoreLoader trustStoreLoader) throws KeyStoreException {
+
+    if (trustStoreLoader == null) {
+      if (!defaultKeyStore.isPresent()) {
+        defaultKeyStore = Optional.of(new TrustStoreLoader.DefaultTrustStoreLoader().getKeyStore());
+      }
+      return defaultKeyStore.get();
+    }
+
+    KeyStore keyStore = loaderKeyStores.get(trustStoreLoader);
+    if (keyStore == null) {
+      keyStore = trustStoreLoader.getKeyStore();
+      loaderKeyStores.put(trustStoreLoader, keyStore);
+    }
+    return keyStore;
+  }
+
+  /**
+   * @param paymentRequest The payment request
+   *
+   * @return The fingerprint of the PKI type and certificate chain
+   */
+  private HashCode fingerprint(Protos.PaymentRequest paymentRequest) {
+
+    return Hashing.sha256()
+      .newHasher()
+      .putString(paymentRequest.getPkiType(), Charsets.UTF_8)
+      .putBytes(paymentRequest.getPkiData().toByteArray())
+      .hash();
+
+  }
+
+  private synchronized ChainValidator getChainValidator() {
+    return chainValidator;
+  }
+
+  /**
+   * @param paymentRequest The payment request with a validated chain
+   *
+   * @return The certificates in the chain, starting with the one that signed the payment request
+   *
+   * @throws PaymentProtocolException If the chain cannot be parsed
+   */
+  private List<X509Certificate> certificates(Protos.PaymentRequest paymentRequest) throws PaymentProtocolException {
+
+    try {
+      Protos.X509Certificates certificates = Protos.X509Certificates.parseFrom(paymentRequest.getPkiData());
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+      List<X509Certificate> chain = Lists.newArrayList();
+      for (ByteString certificate : certificates.getCertificateList()) {
+        chain.add((X509Certificate) certificateFactory.generateCertificate(certificate.newInput()));
+      }
+      if (chain.isEmpty()) {
+        throw new PaymentProtocolException.InvalidPkiData("No certificates provided in message");
+      }
+      return chain;
+    } catch (InvalidProtocolBufferException | CertificateException e) {
+      throw new PaymentProtocolException.PkiVerificationException(e.getMessage());
+    }
+
+  }
+
+  /**
+   * @param pkiType The payment request PKI type
+   *
+   * @return The signature algorithm
+   *
+   * @throws PaymentProtocolException If the PKI type is not supported
+   */
+  private String algorithm(String pkiType) throws PaymentProtocolException {
+
+    switch (pkiType) {
+      case "x509+sha256":
+        return "SHA256withRSA";
+      case "x509+sha1":
+        return "SHA1withRSA";
+      default:
+        throw new PaymentProtocolException.InvalidPkiType("Unsupported PKI type: " + pkiType);
+    }
+
+  }
+
+  /**
+   * @param paymentRequest The payment request
+   * @param signingKey     The public key of the validated signing certificate
+   * @param algorithm      The signature algorithm
+   *
+   * @throws PaymentProtocolException If the signature is not valid
+   */
+  private void verifySignature(Protos.PaymentRequest paymentRequest, PublicKey signingKey, String algorithm) throws PaymentProtocolException {
+
+    try {
+      Signature signature = Signature.getInstance(algorithm);
+      signature.initVerify(signingKey);
+
+      // The signature covers the payment request with an empty signature field
+      signature.update(paymentRequest.toBuilder().setSignature(ByteString.EMPTY).build().toByteArray());
+
+      if (!signature.verify(paymentRequest.getSignature().toByteArray())) {
+        throw new PaymentProtocolException.PkiVerificationException("Invalid signature, this payment request is not valid.");
+      }
+    } catch (GeneralSecurityException e) {
+      throw new PaymentProtocolException.PkiVerificationException(e.getMessage());
+    }
+
+  }
+
+  /**
+   * <p>Full validation of a payment request chain and signature</p>
+   */
+  interface ChainValidator {
+
+    /**
+     * @param paymentRequest The payment request
+     * @param keyStore       The trust store
+     *
+     * @return The PKI verification data, null if the payment request has no PKI
+     *
+     * @throws PaymentProtocolException If the chain or the signature is not valid
+     */
+    PaymentProtocol.PkiVerificationData validate(Protos.PaymentRequest paymentRequest, KeyStore keyStore) throws PaymentProtocolException;
+
+  }
+
+  /**
+   * <p>A chain that has passed full validation</p>
+   */
+  private static class ValidatedChain {
+
+    private final PaymentProtocol.PkiVerificationData pkiVerificationData;
+
+    private final KeyStore keyStore;
+
+    private final PublicKey signingKey;
+
+    private final String algorithm;
+
+    private final long expiresMillis;
+
+    private ValidatedChain(PaymentProtocol.PkiVerificationData pkiVerificationData, KeyStore keyStore, PublicKey signingKey, String algorithm, long expiresMillis) {
+
+      this.pkiVerificationData = pkiVerificationData;
+      this.keyStore = keyStore;
+      this.signingKey = signingKey;
+      this.algorithm = algorithm;
+      this.expiresMillis = expiresMillis;
+
+    }
+  }
+
+}
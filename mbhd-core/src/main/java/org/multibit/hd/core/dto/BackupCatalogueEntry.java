@@ -0,0 +1,108 @@
+package org.multibit.hd.core.dto;
+
+/**
+ * <p>DTO to provide the following to the backup catalogue:</p>
+ * <ul>
+ * <li>Persistent details of a single backup file so the directory does not need to be re-parsed</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public class BackupCatalogueEntry {
+
+  private String name;
+
+  private String walletId;
+
+  private long created;
+
+  private long size;
+
+  private String digest;
+
+  /**
+   * Required for YAML
+   */
+  public BackupCatalogueEntry() {
+  }
+
+  /**
+   * @param name     The backup file name
+   * @param walletId The formatted wallet ID
+   * @param created  The backup timestamp in milliseconds since the epoch (UTC)
+   * @param size     The backup file size in bytes
+   * @param digest   The hex SHA-256 digest of the backup file
+   */
+  public BackupCatalogueEntry(String name, String walletId, long created, long size, String digest) {
+    this.name = name;
+    this.walletId = walletId;
+    this.created = created;
+    this.size = size;
+    this.digest = digest;
+  }
+
+  /**
+   * @return The backup file name
+   */
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return The formatted wallet ID
+   */
+  public String getWalletId() {
+    return walletId;
+  }
+
+  public void setWalletId(String walletId) {
+    this.walletId = walletId;
+  }
+
+  /**
+   * @return The backup timestamp in milliseconds since the epoch (UTC)
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  public void setCreated(long created) {
+    this.created = created;
+  }
+
+  /**
+   * @return The backup file size in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  /**
+   * @return The hex SHA-256 digest of the backup file
+   */
+  public String getDigest() {
+    return digest;
+  }
+
+  public void setDigest(String digest) {
+    this.digest = digest;
+  }
+
+  @Override
+  public String toString() {
+    return "BackupCatalogueEntry{" +
+      "name='" + name + '\'' +
+      ", walletId='" + walletId + '\'' +
+      ", created=" + created +
+      ", size=" + size +
+      '}';
+  }
+}
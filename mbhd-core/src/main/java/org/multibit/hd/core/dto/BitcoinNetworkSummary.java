@@ -25,6 +25,11 @@ public class BitcoinNetworkSummary {
   private final Optional<CoreMessageKey> messageKey;
   private final Optional<Object[]> messageData;
 
+  private final Optional<Long> pingMillisP50;
+  private final Optional<Long> pingMillisP95;
+
+  private final Optional<ChainDownloadMetrics> chainDownloadMetrics;
+
   /**
    * <p>The network has not initialised yet so hide the progress bar</p>
    *
@@ -81,6 +86,32 @@ public class BitcoinNetworkSummary {
 
   }
 
+  /**
+   * <p>The network has made synchronization progress and throughput is known</p>
+   *
+   * @param percent              The percentage of blocks downloaded
+   * @param blocksLeft           The number of blocks left (useful for verifying the network)
+   * @param chainDownloadMetrics The throughput, estimated time to completion and stall status
+   *
+   * @return A new "progress update" summary including download metrics
+   */
+  public static BitcoinNetworkSummary newChainDownloadProgress(int percent, int blocksLeft, ChainDownloadMetrics chainDownloadMetrics) {
+
+    return new BitcoinNetworkSummary(
+      BitcoinNetworkStatus.DOWNLOADING_BLOCKCHAIN,
+      RAGStatus.AMBER,
+      Optional.of(CoreMessageKey.CHAIN_DOWNLOAD),
+      Optional.of(new Object[]{percent}),
+      Optional.<Integer>absent(),
+      percent,
+      blocksLeft,
+      Optional.<Long>absent(),
+      Optional.<Long>absent(),
+      Optional.fromNullable(chainDownloadMetrics)
+    );
+
+  }
+
   /**
     * <p>The network has completed</p>
     *
@@ -119,6 +150,31 @@ public class BitcoinNetworkSummary {
     );
   }
 
+  /**
+   * <p>The network peer count has changed and peer latency is known</p>
+   *
+   * @param peerCount     The peer count
+   * @param pingMillisP50 The median ping round trip time in milliseconds across recent pings
+   * @param pingMillisP95 The 95th percentile ping round trip time in milliseconds across recent pings
+   *
+   * @return A new "network ready with peer count" summary including ping figures
+   */
+  public static BitcoinNetworkSummary newNetworkPeerCount(int peerCount, Optional<Long> pingMillisP50, Optional<Long> pingMillisP95) {
+
+    return new BitcoinNetworkSummary(
+      BitcoinNetworkStatus.CONNECTED,
+      RAGStatus.EMPTY,  // Not specified - peer count can change whilst syncing or after
+      Optional.of(CoreMessageKey.PEER_COUNT),
+      Optional.of(new Object[]{peerCount}),
+      Optional.of(peerCount),
+      -1, // Do not show the progress bar when the peer count changes - confusing
+      -1, // No block information
+      pingMillisP50,
+      pingMillisP95,
+      Optional.<ChainDownloadMetrics>absent()
+    );
+  }
+
   /**
    * <p>The network has failed to synchronize so hide the progress bar and report the failure</p>
    *
@@ -156,6 +212,33 @@ public class BitcoinNetworkSummary {
     int percent,
     int blocksLeft) {
 
+    this(status, severity, messageKey, messageData, peerCount, percent, blocksLeft, Optional.<Long>absent(), Optional.<Long>absent(), Optional.<ChainDownloadMetrics>absent());
+  }
+
+  /**
+   * @param status               The network status (e.g. NOT_CONNECTED)
+   * @param severity             The severity (Red, Amber, Green)
+   * @param messageKey           The error key to allow localisation
+   * @param messageData          The error data for insertion into the error message
+   * @param peerCount            The current peer count or Optional.empty if this avilable is not being messaged
+   * @param percent              The percentage of blocks downloaded (-1 means "hide", 0-99 "in progress", 100 "success")
+   * @param blocksLeft           The number of blocks left (-1 means "hide", 0+ "show")
+   * @param pingMillisP50        The median ping round trip time in milliseconds if known
+   * @param pingMillisP95        The 95th percentile ping round trip time in milliseconds if known
+   * @param chainDownloadMetrics The chain download throughput if known
+   */
+  private BitcoinNetworkSummary(
+    BitcoinNetworkStatus status,
+    RAGStatus severity,
+    Optional<CoreMessageKey> messageKey,
+    Optional<Object[]> messageData,
+    Optional<Integer> peerCount,
+    int percent,
+    int blocksLeft,
+    Optional<Long> pingMillisP50,
+    Optional<Long> pingMillisP95,
+    Optional<ChainDownloadMetrics> chainDownloadMetrics) {
+
     this.status = status;
     this.severity = severity;
 
@@ -165,6 +248,9 @@ public class BitcoinNetworkSummary {
     this.peerCount = peerCount;
     this.percent = percent;
     this.blocksLeft = blocksLeft;
+    this.pingMillisP50 = pingMillisP50;
+    this.pingMillisP95 = pingMillisP95;
+    this.chainDownloadMetrics = chainDownloadMetrics;
   }
 
   /**
@@ -206,6 +292,27 @@ public class BitcoinNetworkSummary {
     return messageKey;
   }
 
+  /**
+   * @return The median ping round trip time in milliseconds across recent pings, if known
+   */
+  public Optional<Long> getPingMillisP50() {
+    return pingMillisP50;
+  }
+
+  /**
+   * @return The 95th percentile ping round trip time in milliseconds across recent pings, if known
+   */
+  public Optional<Long> getPingMillisP95() {
+    return pingMillisP95;
+  }
+
+  /**
+   * @return The chain download throughput, estimated time to completion and stall status, if known
+   */
+  public Optional<ChainDownloadMetrics> getChainDownloadMetrics() {
+    return chainDownloadMetrics;
+  }
+
   @Override
   public String toString() {
     return "BitcoinNetworkSummary{" +
@@ -215,6 +322,9 @@ public class BitcoinNetworkSummary {
       ", percent=" + percent +
       ", blocksLeft=" + blocksLeft +
       ", severity=" + severity +
+      ", pingMillisP50=" + pingMillisP50 +
+      ", pingMillisP95=" + pingMillisP95 +
+      ", chainDownloadMetrics=" + chainDownloadMetrics +
       ", errorKey=" + messageKey +
       '}';
   }
@@ -0,0 +1,101 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Optional;
+
+/**
+ * <p>Value object to provide the following to Core API:</p>
+ * <ul>
+ * <li>Throughput of the current block chain download</li>
+ * <li>Estimated time to completion</li>
+ * <li>Stall status of the download peer</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public class ChainDownloadMetrics {
+
+  private final double blocksPerSecond;
+  private final double bytesPerSecond;
+  private final double filteredBlockRatio;
+  private final Optional<Long> etaSeconds;
+  private final boolean stalled;
+  private final int downloadPeerSwitches;
+
+  /**
+   * @param blocksPerSecond      The block rate over the recent window
+   * @param bytesPerSecond       The byte rate over the recent window
+   * @param filteredBlockRatio   The proportion of blocks in the recent window that arrived as filtered blocks (0.0 to 1.0)
+   * @param etaSeconds           The smoothed estimate of the time to completion, absent if not known
+   * @param stalled              True if no blocks have arrived recently while blocks are still outstanding
+   * @param downloadPeerSwitches The number of times the download peer has changed during this download
+   */
+  public ChainDownloadMetrics(
+    double blocksPerSecond,
+    double bytesPerSecond,
+    double filteredBlockRatio,
+    Optional<Long> etaSeconds,
+    boolean stalled,
+    int downloadPeerSwitches) {
+
+    this.blocksPerSecond = blocksPerSecond;
+    this.bytesPerSecond = bytesPerSecond;
+    this.filteredBlockRatio = filteredBlockRatio;
+    this.etaSeconds = etaSeconds;
+    this.stalled = stalled;
+    this.downloadPeerSwitches = downloadPeerSwitches;
+  }
+
+  /**
+   * @return The block rate over the recent window
+   */
+  public double getBlocksPerSecond() {
+    return blocksPerSecond;
+  }
+
+  /**
+   * @return The byte rate over the recent window
+   */
+  public double getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  /**
+   * @return The proportion of blocks in the recent window that arrived as filtered blocks (0.0 to 1.0)
+   */
+  public double getFilteredBlockRatio() {
+    return filteredBlockRatio;
+  }
+
+  /**
+   * @return The smoothed estimate of the time to completion in seconds, absent if not known
+   */
+  public Optional<Long> getEtaSeconds() {
+    return etaSeconds;
+  }
+
+  /**
+   * @return True if no blocks have arrived recently while blocks are still outstanding
+   */
+  public boolean isStalled() {
+    return stalled;
+  }
+
+  /**
+   * @return The number of times the download peer has changed during this download
+   */
+  public int getDownloadPeerSwitches() {
+    return downloadPeerSwitches;
+  }
+
+  @Override
+  public String toString() {
+    return "ChainDownloadMetrics{" +
+      "blocksPerSecond=" + blocksPerSecond +
+      ", bytesPerSecond=" + bytesPerSecond +
+      ", filteredBlockRatio=" + filteredBlockRatio +
+      ", etaSeconds=" + etaSeconds +
+      ", stalled=" + stalled +
+      ", downloadPeerSwitches=" + downloadPeerSwitches +
+      '}';
+  }
+}
@@ -100,6 +100,17 @@ public class FiatPayment {
     return amount.get().compareTo(other.getAmount().get());
   }
 
+  /**
+   * @param other The other fiat payment
+   *
+   * @return True if both use the same exchange rate (the amounts are ignored)
+   */
+  public boolean isSameRate(FiatPayment other) {
+    return currency.equals(other.currency)
+      && exchangeName.equals(other.exchangeName)
+      && rate.equals(other.rate);
+  }
+
   @Override
   public String toString() {
     return "FiatPayment{" +
@@ -0,0 +1,55 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Preconditions;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+
+/**
+ * <p>Value object to provide the following to a batch send:</p>
+ * <ul>
+ * <li>One recipient address and the amount it is paid</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public class Payout {
+
+  private final Address address;
+  private final Coin amount;
+
+  /**
+   * @param address The recipient address
+   * @param amount  The amount to pay (must be positive)
+   */
+  public Payout(Address address, Coin amount) {
+
+    Preconditions.checkNotNull(address, "'address' must be present");
+    Preconditions.checkNotNull(amount, "'amount' must be present");
+    Preconditions.checkArgument(amount.signum() > 0, "'amount' must be positive");
+
+    this.address = address;
+    this.amount = amount;
+  }
+
+  /**
+   * @return The recipient address
+   */
+  public Address getAddress() {
+    return address;
+  }
+
+  /**
+   * @return The amount to pay
+   */
+  public Coin getAmount() {
+    return amount;
+  }
+
+  @Override
+  public String toString() {
+    return "Payout{" +
+      "address=" + address +
+      ", amount=" + amount +
+      '}';
+  }
+}
@@ -0,0 +1,61 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>Value object to provide the following to a batch send event:</p>
+ * <ul>
+ * <li>The payout requested</li>
+ * <li>The index of the transaction output that pays it (outputs are shuffled before signing)</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public class PayoutResult {
+
+  private final Payout payout;
+  private final Optional<Integer> outputIndex;
+
+  /**
+   * @param payout      The payout requested
+   * @param outputIndex The index of the paying output, absent if the transaction was not sent
+   */
+  public PayoutResult(Payout payout, Optional<Integer> outputIndex) {
+
+    Preconditions.checkNotNull(payout, "'payout' must be present");
+    Preconditions.checkNotNull(outputIndex, "'outputIndex' must be present");
+
+    this.payout = payout;
+    this.outputIndex = outputIndex;
+  }
+
+  /**
+   * @return The payout requested
+   */
+  public Payout getPayout() {
+    return payout;
+  }
+
+  /**
+   * @return The index of the paying output, absent if the transaction was not sent
+   */
+  public Optional<Integer> getOutputIndex() {
+    return outputIndex;
+  }
+
+  /**
+   * @return True if the payout was included in a sent transaction
+   */
+  public boolean isSent() {
+    return outputIndex.isPresent();
+  }
+
+  @Override
+  public String toString() {
+    return "PayoutResult{" +
+      "payout=" + payout +
+      ", outputIndex=" + outputIndex +
+      '}';
+  }
+}
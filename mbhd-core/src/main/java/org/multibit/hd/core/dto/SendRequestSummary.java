@@ -1,11 +1,17 @@
 package org.multibit.hd.core.dto;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Wallet;
 import org.spongycastle.crypto.params.KeyParameter;
 
+import java.util.List;
+
 /**
  * <p>Data object to provide the following to Bitcoin network service:</p>
  * <ul>
@@ -19,6 +25,7 @@ public class SendRequestSummary {
   private final Address destinationAddress;
   private final Optional<FiatPayment> fiatPayment;
   private final Coin feePerKB;
+  private final List<Payout> payouts;
 
   // Mutable values
   private boolean emptyWallet;
@@ -28,6 +35,7 @@ public class SendRequestSummary {
   private Optional<String> notes = Optional.absent();
   private String password;
   private Address changeAddress;
+  private boolean preview = false;
 
   /**
    * @param destinationAddress The destination address to send to
@@ -57,6 +65,42 @@ public class SendRequestSummary {
     this.feePerKB = feePerKB;
     this.password = password;
     this.emptyWallet = emptyWallet;
+    this.payouts = ImmutableList.of();
+  }
+
+  /**
+   * <p>A batch send paying several recipients in one transaction with a single change output</p>
+   *
+   * @param payouts       The recipients and amounts (at least one)
+   * @param fiatPayment   The fiat payment equivalent of the total bitcoin amount (see above)
+   * @param changeAddress The change address
+   * @param feePerKB      The fee per Kb (in coins)
+   * @param password      The wallet credentials
+   */
+  public SendRequestSummary(
+    List<Payout> payouts,
+    Optional<FiatPayment> fiatPayment,
+    Address changeAddress,
+    Coin feePerKB,
+    String password) {
+
+    Preconditions.checkNotNull(payouts, "'payouts' must be present");
+    Preconditions.checkArgument(!payouts.isEmpty(), "'payouts' must not be empty");
+
+    Coin total = Coin.ZERO;
+    for (Payout payout : payouts) {
+      total = total.add(payout.getAmount());
+    }
+
+    // The first recipient stands in for the batch in single recipient events
+    this.destinationAddress = payouts.get(0).getAddress();
+    this.amount = total;
+    this.payouts = ImmutableList.copyOf(payouts);
+    this.fiatPayment = fiatPayment;
+    this.changeAddress = changeAddress;
+    this.feePerKB = feePerKB;
+    this.password = password;
+    this.emptyWallet = false;
   }
 
   /**
@@ -76,17 +120,49 @@ public class SendRequestSummary {
     this.feePerKB = feePerKB;
     this.password = password;
     this.emptyWallet = false;
+    this.payouts = ImmutableList.of();
   }
 
   /**
-   * @return The destination address
+   * @return The destination address (the first recipient of a batch)
    */
   public Address getDestinationAddress() {
     return destinationAddress;
   }
 
   /**
-   * @return The amount sent by the user in coins
+   * @return The destination addresses of all recipients
+   */
+  public List<Address> getDestinationAddresses() {
+
+    if (!isBatch()) {
+      return destinationAddress == null ? ImmutableList.<Address>of() : ImmutableList.of(destinationAddress);
+    }
+
+    List<Address> addresses = Lists.newArrayList();
+    for (Payout payout : payouts) {
+      addresses.add(payout.getAddress());
+    }
+
+    return addresses;
+  }
+
+  /**
+   * @return The recipients of a batch send (empty for a single recipient)
+   */
+  public List<Payout> getPayouts() {
+    return payouts;
+  }
+
+  /**
+   * @return True if this is a batch send to several recipients
+   */
+  public boolean isBatch() {
+    return !payouts.isEmpty();
+  }
+
+  /**
+   * @return The amount sent by the user in coins (the total of all recipients for a batch)
    * This does NOT include any client fee
    */
   public Coin getAmount() {
@@ -182,11 +258,80 @@ public class SendRequestSummary {
     return notes;
   }
 
+  /**
+   * @return True if this summary is being prepared speculatively (preparation failures are not reported)
+   */
+  public boolean isPreview() {
+    return preview;
+  }
+
+  public void setPreview(boolean preview) {
+    this.preview = preview;
+  }
+
+  /**
+   * <p>Used to decide if a summary prepared in the background can be used in place of a new one</p>
+   *
+   * @param other The summary built from the details currently entered
+   *
+   * @return True if both describe the same payment (recipients, amounts, change, fee rate and exchange rate)
+   */
+  public boolean isSameSendDetails(SendRequestSummary other) {
+
+    Preconditions.checkNotNull(other, "'other' must be present");
+
+    return emptyWallet == other.emptyWallet
+      && Objects.equal(destinationAddress, other.destinationAddress)
+      && Objects.equal(amount, other.amount)
+      && Objects.equal(changeAddress, other.changeAddress)
+      && Objects.equal(feePerKB, other.feePerKB)
+      && isSamePayouts(payouts, other.payouts)
+      && isSameRate(fiatPayment, other.fiatPayment);
+  }
+
+  /**
+   * @param payouts      The payouts of this summary
+   * @param otherPayouts The payouts of the other summary
+   *
+   * @return True if both have the same recipients and amounts in the same order
+   */
+  private static boolean isSamePayouts(List<Payout> payouts, List<Payout> otherPayouts) {
+
+    if (payouts.size() != otherPayouts.size()) {
+      return false;
+    }
+
+    for (int i = 0; i < payouts.size(); i++) {
+      if (!payouts.get(i).getAddress().equals(otherPayouts.get(i).getAddress())
+        || !payouts.get(i).getAmount().equals(otherPayouts.get(i).getAmount())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @param fiatPayment      The fiat payment of this summary (the amount may have been filled in by a preparation)
+   * @param otherFiatPayment The fiat payment of the other summary
+   *
+   * @return True if both use the same exchange rate
+   */
+  private static boolean isSameRate(Optional<FiatPayment> fiatPayment, Optional<FiatPayment> otherFiatPayment) {
+
+    if (fiatPayment.isPresent() != otherFiatPayment.isPresent()) {
+      return false;
+    }
+
+    return !fiatPayment.isPresent() || fiatPayment.get().isSameRate(otherFiatPayment.get());
+  }
+
   @Override
   public String toString() {
     return "SendRequestSummary{" +
       "destinationAddress=" + destinationAddress +
       ", amount=" + amount +
+      ", payouts=" + payouts.size() +
       ", fiatPayment=" + fiatPayment +
       ", changeAddress=" + changeAddress +
       ", feePerKB=" + feePerKB +
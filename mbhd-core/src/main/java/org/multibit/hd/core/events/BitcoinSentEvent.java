@@ -1,18 +1,22 @@
 package org.multibit.hd.core.events;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Transaction;
 import org.multibit.hd.core.dto.CoreMessageKey;
+import org.multibit.hd.core.dto.PayoutResult;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * <p>Event to provide the following to UIEventbus subscribers:</p>
  * <ul>
  * <li>Success/ failure of send bitcoins</li>
+ * <li>Per-recipient results of a batch send</li>
  * </ul>
  * <p>This is an infrequent event</p>
  *
@@ -39,6 +43,8 @@ public class BitcoinSentEvent implements CoreEvent {
    */
   private final String[] sendFailureReasonData;
 
+  private final List<PayoutResult> payoutResults;
+
   // The fix for this is more complex than leaving it in place
   @SuppressFBWarnings({"EI_EXPOSE_REP2"})
   public BitcoinSentEvent(
@@ -52,6 +58,36 @@ public class BitcoinSentEvent implements CoreEvent {
     String[] sendFailureReasonData
   ) {
 
+    this(
+      transaction,
+      destinationAddress,
+      amount,
+      changeAddress,
+      miningFeePaid,
+      sendWasSuccessful,
+      sendFailureReason,
+      sendFailureReasonData,
+      ImmutableList.<PayoutResult>of()
+    );
+
+  }
+
+  /**
+   * @param payoutResults The result for each recipient of a batch send (empty for a single recipient)
+   */
+  @SuppressFBWarnings({"EI_EXPOSE_REP2"})
+  public BitcoinSentEvent(
+    Optional<Transaction> transaction,
+    Address destinationAddress,
+    Coin amount,
+    Address changeAddress,
+    Optional<Coin> miningFeePaid,
+    boolean sendWasSuccessful,
+    CoreMessageKey sendFailureReason,
+    String[] sendFailureReasonData,
+    List<PayoutResult> payoutResults
+  ) {
+
     this.transaction = transaction;
     this.amount = amount;
     this.miningFeePaid = miningFeePaid;
@@ -60,6 +96,7 @@ public class BitcoinSentEvent implements CoreEvent {
     this.sendWasSuccessful = sendWasSuccessful;
     this.sendFailureReason = sendFailureReason;
     this.sendFailureReasonData = sendFailureReasonData;
+    this.payoutResults = ImmutableList.copyOf(payoutResults);
 
   }
 
@@ -118,6 +155,13 @@ public class BitcoinSentEvent implements CoreEvent {
     return sendFailureReasonData;
   }
 
+  /**
+   * @return The result for each recipient of a batch send (empty for a single recipient)
+   */
+  public List<PayoutResult> getPayoutResults() {
+    return payoutResults;
+  }
+
   @Override
   public String toString() {
     return "BitcoinSentEvent{" +
@@ -129,6 +173,7 @@ public class BitcoinSentEvent implements CoreEvent {
       ", sendWasSuccessful=" + sendWasSuccessful +
       ", sendFailureReason=" + sendFailureReason +
       ", sendFailureReasonData=" + Arrays.toString(sendFailureReasonData) +
+      ", payoutResults=" + payoutResults +
       '}';
   }
 }
@@ -1,11 +1,20 @@
 package org.multibit.hd.core.events;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import org.multibit.hd.core.config.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * <p>Event to provide the following to application API:</p>
  * <ul>
  * <li>Notification of a change to the current configuration</li>
+ * <li>The sections of the configuration that changed</li>
  * </ul>
- * <p>All UI components must refresh their view to reflect potential changes that affect them.</p>
+ * <p>UI components should refresh their view if a section that affects them has changed.</p>
  *
  * <p>This is an infrequent event</p>
 
@@ -14,4 +23,39 @@ package org.multibit.hd.core.events;
  */
 public class ConfigurationChangedEvent implements CoreEvent {
 
+  private final Set<ConfigurationSection> changedSections;
+
+  /**
+   * A change to all sections
+   */
+  public ConfigurationChangedEvent() {
+    this(EnumSet.allOf(ConfigurationSection.class));
+  }
+
+  /**
+   * @param changedSections The sections that changed
+   */
+  public ConfigurationChangedEvent(Set<ConfigurationSection> changedSections) {
+
+    Preconditions.checkNotNull(changedSections, "'changedSections' must be present");
+
+    this.changedSections = Collections.unmodifiableSet(Sets.newEnumSet(changedSections, ConfigurationSection.class));
+  }
+
+  /**
+   * @return The sections that changed
+   */
+  public Set<ConfigurationSection> getChangedSections() {
+    return changedSections;
+  }
+
+  /**
+   * @param section The section
+   *
+   * @return True if the section changed
+   */
+  public boolean isChanged(ConfigurationSection section) {
+    return changedSections.contains(section);
+  }
+
 }
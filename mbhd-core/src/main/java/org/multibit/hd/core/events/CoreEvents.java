@@ -9,6 +9,7 @@ import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.joda.time.DateTime;
 import org.multibit.commons.concurrent.SafeExecutors;
+import org.multibit.hd.core.config.ConfigurationSection;
 import org.multibit.hd.core.dto.BitcoinNetworkSummary;
 import org.multibit.hd.core.dto.EnvironmentSummary;
 import org.multibit.hd.core.dto.ExchangeSummary;
@@ -18,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.util.Currency;
+import java.util.EnumSet;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
@@ -416,17 +418,26 @@ public class CoreEvents {
   }
 
   /**
-   * <p>Broadcast a new "configuration changed" event</p>
+   * <p>Broadcast a new "configuration changed" event for all sections</p>
    */
   public static void fireConfigurationChangedEvent() {
+    fireConfigurationChangedEvent(EnumSet.allOf(ConfigurationSection.class));
+  }
+
+  /**
+   * <p>Broadcast a new "configuration changed" event</p>
+   *
+   * @param changedSections The sections of the configuration that changed
+   */
+  public static void fireConfigurationChangedEvent(final Set<ConfigurationSection> changedSections) {
     createEventExecutorIfNecessary();
 
     eventExecutor.submit(
       new Runnable() {
         @Override
         public void run() {
-          log.trace("Firing 'configuration changed' event");
-          coreEventBus.post(new ConfigurationChangedEvent());
+          log.trace("Firing 'configuration changed' event: {}", changedSections);
+          coreEventBus.post(new ConfigurationChangedEvent(changedSections));
         }
       });
   }
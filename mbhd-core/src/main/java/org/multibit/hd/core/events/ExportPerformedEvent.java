@@ -7,6 +7,7 @@ import org.multibit.hd.core.dto.CoreMessageKey;
  * <p>Event to provide the following to UIEventbus subscribers:</p>
  * <ul>
  * <li>Success/ failure of export transactions and payment requests</li>
+ * <li>Progress of a large export</li>
  * </ul>
  * <p>This is an infrequent event</p>
  *
@@ -29,6 +30,12 @@ public class ExportPerformedEvent implements CoreEvent {
    */
   private final String[] exportFailureReasonData;
 
+  private final boolean inProgress;
+
+  private final int exportedCount;
+
+  private final int totalCount;
+
   // The fix for this is more complex than leaving it in place
   @SuppressFBWarnings({"EI_EXPOSE_REP2"})
   public ExportPerformedEvent(
@@ -45,7 +52,56 @@ public class ExportPerformedEvent implements CoreEvent {
     this.exportWasSuccessful = exportWasSuccessful;
     this.exportFailureReasonKey = exportFailureReasonKey;
     this.exportFailureReasonData = exportFailureReasonData;
+    this.inProgress = false;
+    this.exportedCount = 0;
+    this.totalCount = 0;
+
+  }
+
+  /**
+   * <p>A progress update for an export that has not yet completed</p>
+   *
+   * @param exportedCount The number of transactions written so far
+   * @param totalCount    The number of transactions to write
+   */
+  public ExportPerformedEvent(
+    String transactionsExportFilename,
+    String mbhdPaymentRequestsExportFilename,
+    String paymentRequestsExportFilename,
+    int exportedCount,
+    int totalCount) {
+
+    this.transactionsExportFilename = transactionsExportFilename;
+    this.mbhdPaymentRequestsExportFilename = mbhdPaymentRequestsExportFilename;
+    this.paymentRequestsExportFilename = paymentRequestsExportFilename;
+    this.exportWasSuccessful = false;
+    this.exportFailureReasonKey = null;
+    this.exportFailureReasonData = null;
+    this.inProgress = true;
+    this.exportedCount = exportedCount;
+    this.totalCount = totalCount;
+
+  }
+
+  /**
+   * @return True if this is a progress update (the export has not completed)
+   */
+  public boolean isInProgress() {
+    return inProgress;
+  }
 
+  /**
+   * @return The number of transactions written so far (progress updates only)
+   */
+  public int getExportedCount() {
+    return exportedCount;
+  }
+
+  /**
+   * @return The number of transactions to write (progress updates only)
+   */
+  public int getTotalCount() {
+    return totalCount;
   }
 
   public boolean isExportWasSuccessful() {
@@ -0,0 +1,367 @@
+package org.multibit.hd.core.files;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.multibit.commons.concurrent.SafeExecutors;
+import org.multibit.commons.files.SecureFiles;
+import org.multibit.hd.core.events.CoreEvents;
+import org.multibit.hd.core.events.ShutdownEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Secure deletion service to provide the following to wallet saves and backups:</p>
+ * <ul>
+ * <li>Asynchronous overwriting and deletion of (typically plaintext) files on a low priority thread</li>
+ * <li>A pending delete handle so the caller can continue at once</li>
+ * <li>Batching of several files into a single task</li>
+ * <li>Metrics of the files and bytes shredded</li>
+ * <li>Draining of all pending deletes at shutdown so no plaintext outlives the process</li>
+ * <li>Sweeping of pending deletes left behind by a crash or power loss</li>
+ * </ul>
+ *
+ * <p>Each file is first renamed to a hidden name in its own directory so the original name is free
+ * for the next save and no longer appears in directory listings. If the rename fails the file is
+ * deleted synchronously instead.</p>
+ *
+ * @since 0.5.0
+ */
+public enum SecureDeletions {
+
+  INSTANCE;
+
+  private static final Logger log = LoggerFactory.getLogger(SecureDeletions.class);
+
+  /**
+   * The prefix of a file waiting to be shredded
+   */
+  public static final String PENDING_DELETE_PREFIX = ".shred-";
+
+  /**
+   * The number of overwrite passes (random data then zeros on the final pass)
+   */
+  private static final int OVERWRITE_PASSES = 3;
+
+  /**
+   * The size of the direct overwrite buffer
+   */
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private final AtomicLong filesShredded = new AtomicLong();
+
+  private final AtomicLong bytesShredded = new AtomicLong();
+
+  private final AtomicLong pendingFiles = new AtomicLong();
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  private ListeningExecutorService executorService = null;
+
+  /**
+   * Only used on the executor thread
+   */
+  private ByteBuffer buffer = null;
+
+  /**
+   * Only used on the executor thread
+   */
+  private byte[] pattern = null;
+
+  /**
+   * <p>Securely delete a file in the background</p>
+   *
+   * @param file The file to delete
+   *
+   * @return A pending delete handle providing the number of bytes shredded
+   *
+   * @throws IOException If the file could not be deleted synchronously after a failed rename
+   */
+  public ListenableFuture<Long> secureDelete(File file) throws IOException {
+
+    Preconditions.checkNotNull(file, "'file' must be present");
+
+    return secureDelete(Lists.newArrayList(file));
+  }
+
+  /**
+   * <p>Securely delete several files in the background as a single batch</p>
+   *
+   * @param files The files to delete
+   *
+   * @return A pending delete handle providing the number of bytes shredded
+   *
+   * @throws IOException If a file could not be deleted synchronously after a failed rename
+   */
+  public ListenableFuture<Long> secureDelete(Collection<File> files) throws IOException {
+
+    Preconditions.checkNotNull(files, "'files' must be present");
+
+    final List<File> pendingDeletes = Lists.newArrayList();
+    for (File file : files) {
+      if (file == null || !file.exists()) {
+        continue;
+      }
+      File pendingDelete = new File(file.getParentFile(), PENDING_DELETE_PREFIX + UUID.randomUUID().toString());
+      if (file.isFile() && file.renameTo(pendingDelete)) {
+        pendingDeletes.add(pendingDelete);
+      } else {
+        // Cannot hand over the file so delete it now
+        log.debug("Securely deleting '{}' synchronously", file.getName());
+        SecureFiles.secureDelete(file);
+      }
+    }
+
+    if (pendingDeletes.isEmpty()) {
+      return Futures.immediateFuture(0L);
+    }
+
+    pendingFiles.addAndGet(pendingDeletes.size());
+
+    return getOrCreateExecutorService().submit(
+      new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          long shredded = 0;
+          for (File pendingDelete : pendingDeletes) {
+            try {
+              if (!pendingDelete.exists()) {
+                // Already removed by a sweep
+                continue;
+              }
+              shredded += shred(pendingDelete);
+            } catch (IOException e) {
+              // Fall back to the slower deletion rather than leave the file behind
+              log.warn("Failed to shred '{}': {}", pendingDelete.getName(), e.getMessage());
+              SecureFiles.secureDelete(pendingDelete);
+            } finally {
+              pendingFiles.decrementAndGet();
+            }
+          }
+          return shredded;
+        }
+      });
+  }
+
+  /**
+   * <p>Securely delete any pending deletes left in a directory (and its subdirectories) by an earlier process</p>
+   *
+   * <p>A crash, kill or power loss between the rename and the shredding leaves the renamed file behind so
+   * this should be called at startup and whenever a wallet is opened.</p>
+   *
+   * @param directory The directory to sweep
+   *
+   * @return A pending delete handle providing the number of bytes shredded
+   */
+  public ListenableFuture<Long> sweep(final File directory) {
+
+    Preconditions.checkNotNull(directory, "'directory' must be present");
+
+    return getOrCreateExecutorService().submit(
+      new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          List<File> leftovers = Lists.newArrayList();
+          findPendingDeletes(directory, leftovers);
+          if (!leftovers.isEmpty()) {
+            log.info("Sweeping {} pending secure deletes from an earlier session", leftovers.size());
+          }
+
+          long shredded = 0;
+          for (File leftover : leftovers) {
+            try {
+              shredded += shred(leftover);
+            } catch (IOException e) {
+              log.warn("Failed to shred '{}': {}", leftover.getName(), e.getMessage());
+              SecureFiles.secureDelete(leftover);
+            }
+          }
+          return shredded;
+        }
+      });
+  }
+
+  /**
+   * @param file The file
+   *
+   * @return True if the file is waiting to be shredded (and so must not be copied anywhere)
+   */
+  public static boolean isPendingDelete(File file) {
+    return file.getName().startsWith(PENDING_DELETE_PREFIX);
+  }
+
+  /**
+   * <p>Block until all pending deletes have completed</p>
+   */
+  public void drain() {
+
+    final ListeningExecutorService drainService;
+    synchronized (this) {
+      drainService = executorService;
+    }
+    if (drainService == null) {
+      return;
+    }
+
+    log.debug("Draining {} pending secure deletes", pendingFiles.get());
+
+    try {
+      // The single thread runs this after all earlier deletes
+      Uninterruptibles.getUninterruptibly(
+        drainService.submit(
+          new Runnable() {
+            @Override
+            public void run() {
+              // Nothing to do
+            }
+          }));
+    } catch (ExecutionException | RuntimeException e) {
+      log.error("Failed to drain pending secure deletes", e);
+    }
+
+  }
+
+  /**
+   * <p>Drain the pending deletes since the shutdown may be followed by an exit</p>
+   *
+   * @param event The shutdown event
+   */
+  @Subscribe
+  public void onShutdownEvent(ShutdownEvent event) {
+
+    drain();
+
+  }
+
+  /**
+   * @return The number of files shredded since startup
+   */
+  public long getFilesShredded() {
+    return filesShredded.get();
+  }
+
+  /**
+   * @return The number of bytes shredded since startup (all passes)
+   */
+  public long getBytesShredded() {
+    return bytesShredded.get();
+  }
+
+  /**
+   * @return The number of files waiting to be shredded
+   */
+  public long getPendingFiles() {
+    return pendingFiles.get();
+  }
+
+  private synchronized ListeningExecutorService getOrCreateExecutorService() {
+
+    if (executorService == null) {
+      executorService = SafeExecutors.newSingleThreadExecutor("secure-delete");
+      executorService.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            // Shredding should not compete with the user for disk
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+          }
+        });
+
+      // Survives wallet switches so only subscribed once
+      CoreEvents.subscribe(this);
+    }
+
+    return executorService;
+  }
+
+  /**
+   * @param directory The directory to search
+   * @param found     The pending deletes found so far
+   */
+  private void findPendingDeletes(File directory, List<File> found) {
+
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        findPendingDeletes(file, found);
+      } else if (isPendingDelete(file)) {
+        found.add(file);
+      }
+    }
+
+  }
+
+  /**
+   * <p>Overwrite and delete the file (executor thread only)</p>
+   *
+   * @param file The file to shred
+   *
+   * @return The number of bytes written
+   */
+  private long shred(File file) throws IOException {
+
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      pattern = new byte[BUFFER_SIZE];
+    }
+
+    long written = 0;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+
+      long length = channel.size();
+      for (int pass = 0; pass < OVERWRITE_PASSES; pass++) {
+        boolean finalPass = pass == OVERWRITE_PASSES - 1;
+        long position = 0;
+        channel.position(0);
+        while (position < length) {
+          int chunk = (int) Math.min(BUFFER_SIZE, length - position);
+          if (finalPass) {
+            Arrays.fill(pattern, 0, chunk, (byte) 0);
+          } else {
+            secureRandom.nextBytes(pattern);
+          }
+          buffer.clear();
+          buffer.put(pattern, 0, chunk);
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+          }
+        }
+        channel.force(false);
+        written += length;
+      }
+    }
+
+    if (!file.delete()) {
+      throw new IOException("Could not delete '" + file.getAbsolutePath() + "'");
+    }
+
+    filesShredded.incrementAndGet();
+    bytesShredded.addAndGet(written);
+
+    return written;
+  }
+
+}
@@ -57,6 +57,10 @@ public class ZipFiles {
 
       if (srcFolderList != null) {
         for (String fileName : srcFolderList) {
+          if (fileName.startsWith(SecureDeletions.PENDING_DELETE_PREFIX)) {
+            // Never copy plaintext waiting to be shredded
+            continue;
+          }
           if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
             // Do not include the block chain (to save space)
             continue;
@@ -160,6 +164,10 @@ public class ZipFiles {
     String[] folderOnDiskList = folderOnDisk.list();
     if (folderOnDiskList != null) {
       for (String fileName : folderOnDiskList) {
+        if (fileName.startsWith(SecureDeletions.PENDING_DELETE_PREFIX)) {
+          // Never copy plaintext waiting to be shredded
+          continue;
+        }
         if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
           // Do not include the block writeContacts (to save space)
           continue;
@@ -0,0 +1,316 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.multibit.commons.utils.Dates;
+import org.multibit.hd.core.config.Yaml;
+import org.multibit.hd.core.dto.BackupCatalogueEntry;
+import org.multibit.hd.core.dto.WalletId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.multibit.hd.core.dto.WalletId.WALLET_ID_SEPARATOR;
+
+/**
+ * <p>Catalogue to provide the following to the backup manager:</p>
+ * <ul>
+ * <li>A persistent index of the backups of one wallet in one directory (timestamp, size, digest)</li>
+ * <li>Backups ordered by timestamp without re-parsing file names on each request</li>
+ * <li>Integrity checks against the recorded digest before a backup is decrypted</li>
+ * </ul>
+ *
+ * <p>The index is reconciled against a plain listing of the directory so backups written by
+ * other installations (e.g. through a cloud sync directory) or removed by the user are noticed.
+ * Only unknown or resized files are matched, parsed and digested.</p>
+ *
+ * @since 0.5.0
+ */
+public class BackupCatalogue {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupCatalogue.class);
+
+  /**
+   * The suffix of the catalogue file (prefixed by the wallet root so several wallets can share a cloud directory)
+   */
+  public static final String CATALOGUE_SUFFIX = "-catalogue.yaml";
+
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private static final Comparator<BackupCatalogueEntry> OLDEST_FIRST = new Comparator<BackupCatalogueEntry>() {
+    @Override
+    public int compare(BackupCatalogueEntry o1, BackupCatalogueEntry o2) {
+      int createdSort = Long.compare(o1.getCreated(), o2.getCreated());
+      if (createdSort != 0) {
+        return createdSort;
+      }
+      return o1.getName().compareTo(o2.getName());
+    }
+  };
+
+  private final File directory;
+
+  private final WalletId walletId;
+
+  private final Pattern backupPattern;
+
+  private final File catalogueFile;
+
+  /**
+   * Keyed by backup file name
+   */
+  private Map<String, BackupCatalogueEntry> entries = null;
+
+  /**
+   * @param directory     The directory containing the backups
+   * @param walletId      The wallet ID the backups belong to
+   * @param backupPattern The pattern matching backup file names with the 14 digit timestamp as the first group
+   */
+  public BackupCatalogue(File directory, WalletId walletId, Pattern backupPattern) {
+
+    Preconditions.checkNotNull(directory, "'directory' must be present");
+    Preconditions.checkNotNull(walletId, "'walletId' must be present");
+    Preconditions.checkNotNull(backupPattern, "'backupPattern' must be present");
+
+    this.directory = directory;
+    this.walletId = walletId;
+    this.backupPattern = backupPattern;
+    this.catalogueFile = new File(
+      directory,
+      WalletManager.WALLET_DIRECTORY_PREFIX + WALLET_ID_SEPARATOR + walletId.toFormattedString() + CATALOGUE_SUFFIX
+    );
+
+  }
+
+  /**
+   * @return The non-empty backups in the directory, oldest first
+   */
+  public synchronized List<BackupCatalogueEntry> getEntries() {
+
+    loadIfRequired();
+
+    boolean changed = false;
+    Map<String, BackupCatalogueEntry> reconciled = Maps.newHashMap();
+
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        BackupCatalogueEntry entry = entries.get(name);
+        if (entry != null && entry.getSize() == file.length()) {
+          // Known and unchanged
+          reconciled.put(name, entry);
+          continue;
+        }
+
+        Optional<BackupCatalogueEntry> newEntry = newEntry(file);
+        if (newEntry.isPresent()) {
+          reconciled.put(name, newEntry.get());
+          changed = true;
+        } else if (entry != null) {
+          // Now empty or no longer a file
+          changed = true;
+        }
+      }
+    }
+
+    if (reconciled.size() != entries.size()) {
+      changed = true;
+    }
+
+    entries = reconciled;
+    if (changed) {
+      save();
+    }
+
+    return sortedEntries();
+  }
+
+  /**
+   * <p>Record a newly written backup</p>
+   *
+   * @param backupFile The backup file
+   */
+  public synchronized void add(File backupFile) {
+
+    loadIfRequired();
+
+    Optional<BackupCatalogueEntry> entry = newEntry(backupFile);
+    if (entry.isPresent()) {
+      entries.put(backupFile.getName(), entry.get());
+      save();
+    }
+
+  }
+
+  /**
+   * <p>Forget a backup that has been deleted</p>
+   *
+   * @param backupFile The backup file
+   */
+  public synchronized void remove(File backupFile) {
+
+    loadIfRequired();
+
+    if (entries.remove(backupFile.getName()) != null) {
+      save();
+    }
+
+  }
+
+  /**
+   * @param entry The catalogue entry
+   *
+   * @return The backup file described by the entry
+   */
+  public File getFile(BackupCatalogueEntry entry) {
+    return new File(directory, entry.getName());
+  }
+
+  /**
+   * @param entry The catalogue entry
+   *
+   * @return True if the backup file still matches the recorded size and digest
+   */
+  public boolean isIntact(BackupCatalogueEntry entry) {
+
+    File file = getFile(entry);
+    if (!file.isFile() || file.length() != entry.getSize()) {
+      return false;
+    }
+
+    try {
+      return entry.getDigest() == null || entry.getDigest().equals(digest(file));
+    } catch (IOException e) {
+      log.warn("Could not digest backup '{}': {}", file.getName(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * @param file The candidate backup file
+   *
+   * @return A new entry if the file is a non-empty backup of the wallet
+   */
+  private Optional<BackupCatalogueEntry> newEntry(File file) {
+
+    if (!file.isFile() || file.length() == 0) {
+      return Optional.absent();
+    }
+
+    Matcher matcher = backupPattern.matcher(file.getName());
+    if (!matcher.matches()) {
+      return Optional.absent();
+    }
+
+    final long created;
+    try {
+      created = Dates.parseBackupDate(matcher.group(1)).getMillis();
+    } catch (IllegalArgumentException e) {
+      log.warn("Backup '{}' has an unreadable timestamp", file.getName());
+      return Optional.absent();
+    }
+
+    String digest;
+    try {
+      digest = digest(file);
+    } catch (IOException e) {
+      // Treat as unverifiable rather than dropping the backup
+      log.warn("Could not digest backup '{}': {}", file.getName(), e.getMessage());
+      digest = null;
+    }
+
+    return Optional.of(new BackupCatalogueEntry(file.getName(), walletId.toFormattedString(), created, file.length(), digest));
+  }
+
+  private List<BackupCatalogueEntry> sortedEntries() {
+
+    List<BackupCatalogueEntry> sorted = Lists.newArrayList(entries.values());
+    Collections.sort(sorted, OLDEST_FIRST);
+
+    return sorted;
+  }
+
+  private void loadIfRequired() {
+
+    if (entries != null) {
+      return;
+    }
+
+    entries = Maps.newHashMap();
+    if (!catalogueFile.isFile()) {
+      return;
+    }
+
+    try (InputStream is = new FileInputStream(catalogueFile)) {
+      Optional<BackupCatalogueEntry[]> catalogue = Yaml.readYaml(is, BackupCatalogueEntry[].class);
+      if (catalogue.isPresent()) {
+        for (BackupCatalogueEntry entry : catalogue.get()) {
+          if (entry.getName() != null) {
+            entries.put(entry.getName(), entry);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // The catalogue is rebuilt from the directory on the next request
+      log.warn("Could not read backup catalogue '{}': {}", catalogueFile.getName(), e.getMessage());
+    }
+
+  }
+
+  private void save() {
+
+    if (!directory.isDirectory()) {
+      return;
+    }
+
+    // Serialise first since a failure part way through can leave some YAML behind
+    ByteArrayOutputStream yaml = new ByteArrayOutputStream();
+    if (!Yaml.writeYaml(yaml, sortedEntries().toArray(new BackupCatalogueEntry[entries.size()])) || yaml.size() == 0) {
+      log.warn("Could not write backup catalogue '{}' (YAML not written)", catalogueFile.getName());
+      return;
+    }
+
+    // Write alongside and move over the catalogue so a crash or full disk never leaves it truncated
+    File temporaryFile = new File(catalogueFile.getAbsolutePath() + TEMPORARY_SUFFIX);
+    try {
+      try (FileOutputStream fos = new FileOutputStream(temporaryFile)) {
+        yaml.writeTo(fos);
+        fos.getFD().sync();
+      }
+
+      try {
+        java.nio.file.Files.move(temporaryFile.toPath(), catalogueFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        java.nio.file.Files.move(temporaryFile.toPath(), catalogueFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      // Not fatal since the catalogue can always be rebuilt
+      log.warn("Could not write backup catalogue '{}': {}", catalogueFile.getName(), e.getMessage());
+    }
+
+  }
+
+  private static String digest(File file) throws IOException {
+    return Files.hash(file, Hashing.sha256()).toString();
+  }
+
+}
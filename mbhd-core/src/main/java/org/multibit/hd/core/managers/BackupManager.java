@@ -6,23 +6,29 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import org.bitcoinj.core.Wallet;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.multibit.commons.concurrent.SafeExecutors;
 import org.multibit.commons.crypto.AESUtils;
 import org.multibit.commons.utils.Dates;
 import org.multibit.hd.brit.core.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.core.seed_phrase.SeedPhraseGenerator;
+import org.multibit.hd.core.crypto.BackupKeys;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
+import org.multibit.hd.core.dto.BackupCatalogueEntry;
 import org.multibit.hd.core.dto.BackupSummary;
 import org.multibit.hd.core.dto.CoreMessageKey;
 import org.multibit.hd.core.dto.WalletId;
 import org.multibit.hd.core.dto.WalletSummary;
-import org.multibit.hd.core.error_reporting.ExceptionHandler;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.WalletLoadEvent;
 import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
 import org.multibit.hd.core.exceptions.WalletLoadException;
 import org.multibit.commons.files.SecureFiles;
+import org.multibit.hd.core.files.SecureDeletions;
 import org.multibit.hd.core.files.ZipFiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,10 +38,10 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 
 import static org.multibit.hd.core.dto.WalletId.LENGTH_OF_FORMATTED_WALLET_ID;
 import static org.multibit.hd.core.dto.WalletId.WALLET_ID_SEPARATOR;
@@ -63,7 +69,21 @@ public enum BackupManager {
   public static final int NUMBER_OF_LAST_WALLET_ZIP_BACKUPS_TO_ALWAYS_KEEP = 8; // Must be at least 1.
 
   public static final String BACKUP_TIMESTAMP_SUFFIX_FORMAT = "yyyyMMddHHmmss";
-  private DateFormat dateFormat;
+
+  /**
+   * Matches rolling backup file names capturing the timestamp
+   */
+  private static final Pattern ROLLING_BACKUP_PATTERN = Pattern.compile(".*-(\\d{14})\\.wallet\\.aes$");
+
+  /**
+   * The maximum number of rolling backups decrypted at the same time during a restore
+   */
+  private static final int MAXIMUM_VERIFICATION_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  /**
+   * The backup catalogues keyed by directory and wallet ID (guarded by this)
+   */
+  private final Map<String, BackupCatalogue> catalogues = Maps.newHashMap();
 
   private static final Logger log = LoggerFactory.getLogger(BackupManager.class);
 
@@ -90,6 +110,10 @@ public enum BackupManager {
   /**
    */
   public void shutdownNow() {
+    BackupKeys.INSTANCE.clear();
+    synchronized (this) {
+      catalogues.clear();
+    }
     this.applicationDataDirectory = null;
     this.cloudBackupDirectory = Optional.absent();
   }
@@ -138,38 +162,12 @@ public enum BackupManager {
       return walletBackups;
     }
 
-    File[] files = directoryName.listFiles();
-
     // Look for filenames with format "mbhd-" + [formatted wallet id ] + "-YYYYMMDDHHMMSS.aes"
-    String backupRegex = WalletManager.WALLET_DIRECTORY_PREFIX
-      + WALLET_ID_SEPARATOR
-      + walletId.toFormattedString()
-      + WALLET_ID_SEPARATOR
-      + "\\d{14}"
-      + ENCRYPTED_BACKUP_ZIP_FILE_EXTENSION_REGEX;
-
-    if (files != null) {
-      for (File file : files) {
-        if (file.isFile()) {
-          if (file.getName().matches(backupRegex)) {
-            if (file.length() > 0) {
-              BackupSummary backupSummary = new BackupSummary(walletId, file.getName(), file);
-              // Work out timestamp
-              int start = (WalletManager.MBHD_WALLET_PREFIX + WALLET_ID_SEPARATOR + WALLET_ID_SEPARATOR).length() + LENGTH_OF_FORMATTED_WALLET_ID;
-              int stop = start + 14;
-              String timeStampString = file.getName().substring(start, stop);
-              try {
-                DateTime timestamp = Dates.parseBackupDate(timeStampString);
-                backupSummary.setCreated(timestamp);
-              } catch (IllegalArgumentException e) {
-                // Serious problem if the backup format has failed
-                ExceptionHandler.handleThrowable(e);
-              }
-              walletBackups.add(backupSummary);
-            }
-          }
-        }
-      }
+    BackupCatalogue catalogue = getOrCreateZipBackupCatalogue(walletId, directoryName);
+    for (BackupCatalogueEntry entry : catalogue.getEntries()) {
+      BackupSummary backupSummary = new BackupSummary(walletId, entry.getName(), catalogue.getFile(entry));
+      backupSummary.setCreated(new DateTime(entry.getCreated(), DateTimeZone.UTC));
+      walletBackups.add(backupSummary);
     }
 
     log.debug("For the walletId {}, looking in directory {}, there were {} backups", walletId, directoryName, walletBackups.size());
@@ -200,40 +198,11 @@ public enum BackupManager {
       return Lists.newArrayList();
     }
 
-    // See if there are any wallet rolling backups.
-    File[] files = rollingBackupDirectory.listFiles();
-
-    Map<Long, File> mapOfTimeToFile = Maps.newTreeMap(); // Note that this is sorted by long
-
-    // Look for file names with format "text"-YYYYMMDDHHMMSS.wallet.aes<eol> and are not empty.
-    if (files != null) {
-      for (File file : files) {
-        if (file.isFile()) {
-          if (file.getName().matches(REGEX_FOR_TIMESTAMP_AND_WALLET_AND_AES_SUFFIX)) {
-            if (file.length() > 0) {
-              // Work out timestamp
-              int start = (WalletManager.MBHD_WALLET_PREFIX + WALLET_ID_SEPARATOR).length();
-              int stop = start + 14;
-              String timeStampString = file.getName().substring(start, stop);
-              try {
-                long timestamp = Dates.parseBackupDate(timeStampString).getMillis();
-                mapOfTimeToFile.put(timestamp, file);
-              } catch (IllegalArgumentException e) {
-                // Serious problem if the backup format has failed
-                ExceptionHandler.handleThrowable(new IllegalArgumentException("Rolling backup files are in the wrong format. Error = '" + e.getMessage() + "'"));
-              }
-            }
-          }
-        }
-      }
-    }
-
+    // Note that these are in order of creation time, oldest first
+    BackupCatalogue catalogue = getOrCreateRollingBackupCatalogue(walletId, rollingBackupDirectory);
     List<File> walletBackups = Lists.newArrayList();
-
-    // Iterate over entry set for efficiency
-    for (Map.Entry<Long, File> entry : mapOfTimeToFile.entrySet()) {
-      // Note that these are added in order of creation time, oldest first (tree map)
-      walletBackups.add(entry.getValue());
+    for (BackupCatalogueEntry entry : catalogue.getEntries()) {
+      walletBackups.add(catalogue.getFile(entry));
     }
 
     return walletBackups;
@@ -286,18 +255,25 @@ public enum BackupManager {
     File encryptedAESCopy = EncryptedFileReaderWriter.makeAESEncryptedCopyAndDeleteOriginal(walletBackupFile, password);
     log.debug("Created rolling-backup AES copy successfully as file:\n'{}'", encryptedAESCopy == null ? "" : encryptedAESCopy.getAbsolutePath());
 
+    BackupCatalogue catalogue = getOrCreateRollingBackupCatalogue(walletSummary.getWalletId(), new File(rollingBackupDirectoryName));
+    if (encryptedAESCopy != null) {
+      catalogue.add(encryptedAESCopy);
+    }
+
     List<File> rollingBackups = getRollingBackups(walletSummary.getWalletId());
 
     // If there are more than the maximum number of rolling backups, secure delete the eldest
     if (rollingBackups.size() > MAXIMUM_NUMBER_OF_ROLLING_BACKUPS) {
       // Delete the eldest
-      SecureFiles.secureDelete(rollingBackups.get(0));
+      SecureDeletions.INSTANCE.secureDelete(rollingBackups.get(0));
+      catalogue.remove(rollingBackups.get(0));
     }
 
     // If there are even more than that trim off another one - over time this will gently reduce the number to the maximum
     if (rollingBackups.size() > MAXIMUM_NUMBER_OF_ROLLING_BACKUPS + 1) {
       // Delete the second eldest
-      SecureFiles.secureDelete(rollingBackups.get(1));
+      SecureDeletions.INSTANCE.secureDelete(rollingBackups.get(1));
+      catalogue.remove(rollingBackups.get(1));
     }
     return walletBackupFile;
   }
@@ -321,7 +297,7 @@ public enum BackupManager {
       throw new IOException("Directory " + walletRootDirectory + " does not exist. Cannot backup.");
     }
 
-    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+    KeyParameter backupAESKey = getOrUnwrapBackupAESKey(walletRootDirectory, walletId, password);
 
     File localBackupDirectory = new File(walletRootDirectory.getAbsoluteFile() + File.separator + LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
     SecureFiles.verifyOrCreateDirectory(localBackupDirectory);
@@ -334,13 +310,17 @@ public enum BackupManager {
       + BACKUP_ZIP_FILE_EXTENSION;
     String localBackupFilename = localBackupDirectory.getAbsolutePath() + File.separator + backupFilename;
 
+    // The plaintext is named as a pending delete so a crash before encryption leaves it to the next sweep
+    File plaintextZip = new File(localBackupDirectory, SecureDeletions.PENDING_DELETE_PREFIX + backupFilename);
+
     log.debug("Creating local zip-backup\n'{}'", localBackupFilename);
-    ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), localBackupFilename, false);
+    ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), plaintextZip.getAbsolutePath(), false);
     File localBackupEncryptedFilename = EncryptedFileReaderWriter.makeBackupAESEncryptedCopyAndDeleteOriginal(
-      new File(localBackupFilename),
-      (String) password,
-      walletSummary);
+      plaintextZip,
+      new File(localBackupFilename + WalletManager.MBHD_AES_SUFFIX),
+      backupAESKey);
     log.debug("Created encrypted local zip-backup successfully. Size = {} bytes", localBackupEncryptedFilename.length());
+    getOrCreateZipBackupCatalogue(walletId, localBackupDirectory).add(localBackupEncryptedFilename);
 
     // Thin the local backup directory
     thinBackupDirectory(walletId, localBackupDirectory);
@@ -367,8 +347,7 @@ public enum BackupManager {
       throw new IOException("Directory " + walletRootDirectory + " does not exist. Cannot backup.");
     }
 
-    WalletSummary walletSummary = WalletManager.getAndChangeWalletSummary(walletRootDirectory, walletId,password);
-
+    KeyParameter backupAESKey = getOrUnwrapBackupAESKey(walletRootDirectory, walletId, password);
 
     String backupFilename = WalletManager.WALLET_DIRECTORY_PREFIX
       + WALLET_ID_SEPARATOR
@@ -378,15 +357,20 @@ public enum BackupManager {
       + BACKUP_ZIP_FILE_EXTENSION;
 
     if (cloudBackupDirectory.isPresent() && cloudBackupDirectory.get().exists()) {
-      String cloudBackupFilename = cloudBackupDirectory.get().getAbsolutePath() + File.separator + backupFilename;
-      log.debug("Creating cloud zip-backup '" + cloudBackupFilename + "'");
-      ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), cloudBackupFilename, false);
+      // Zip within the wallet directory so the plaintext is never seen by a sync client (and is swept after a crash)
+      File localBackupDirectory = new File(walletRootDirectory.getAbsoluteFile() + File.separator + LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
+      SecureFiles.verifyOrCreateDirectory(localBackupDirectory);
+      File plaintextZip = new File(localBackupDirectory, SecureDeletions.PENDING_DELETE_PREFIX + "cloud-" + backupFilename);
+      File cloudBackupFile = new File(cloudBackupDirectory.get(), backupFilename + WalletManager.MBHD_AES_SUFFIX);
+      log.debug("Creating cloud zip-backup '" + cloudBackupFile.getAbsolutePath() + "'");
+      ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), plaintextZip.getAbsolutePath(), false);
       File cloudBackupEncryptedFilename = EncryptedFileReaderWriter.makeBackupAESEncryptedCopyAndDeleteOriginal(
-        new File(cloudBackupFilename),
-        (String) password,
-        walletSummary);
+        plaintextZip,
+        cloudBackupFile,
+        backupAESKey);
 
       log.debug("Created encrypted cloud zip-backup successfully. Size = " + (cloudBackupEncryptedFilename).length() + " bytes");
+      getOrCreateZipBackupCatalogue(walletId, cloudBackupDirectory.get()).add(cloudBackupEncryptedFilename);
 
       // Thin the local backup directory
       thinBackupDirectory(walletId, cloudBackupDirectory.get());
@@ -398,6 +382,25 @@ public enum BackupManager {
     }
   }
 
+  /**
+   * @param walletRootDirectory The wallet directory holding the wallet summary
+   * @param walletId            The wallet ID
+   * @param password            The wallet password
+   *
+   * @return The backup AES key, unwrapped from the wallet summary only on the first backup of the session
+   */
+  private KeyParameter getOrUnwrapBackupAESKey(File walletRootDirectory, WalletId walletId, CharSequence password) {
+
+    Optional<KeyParameter> backupAESKey = BackupKeys.INSTANCE.getBackupAESKey(walletId);
+    if (backupAESKey.isPresent()) {
+      return backupAESKey.get();
+    }
+
+    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+
+    return BackupKeys.INSTANCE.getOrUnwrapBackupAESKey(walletId, password, Optional.of(walletSummary));
+  }
+
   /**
    * Load a rolling backup file.
    * A BackupWalletLoadedEvent is emitted
@@ -414,35 +417,62 @@ public enum BackupManager {
     if (rollingBackupFiles.isEmpty()) {
       // Throw WalletLoadException - no wallet could be loaded
       throw new WalletLoadException("No rolling backup to load");
-    } else {
-      Wallet wallet = null;
-      File fileLoaded = null;
+    }
 
-      // Try loading each rolling backup in turn, newest first
-      for (int i = rollingBackupFiles.size(); i > 0; i--) {
-        try {
-          wallet = WalletManager.INSTANCE.loadWalletFromFile(rollingBackupFiles.get(i - 1), password);
-          log.debug("Wallet read in from rolling backup file:\n'{}'", wallet.toString());
-          fileLoaded = rollingBackupFiles.get(i - 1);
-          break;
-        } catch (Exception e) {
-          // Log the initial error (and then carry on to the next rolling backup
-          log.error("Could not load rolling backup:\n'{}', error was: {}", rollingBackupFiles.get(i - 1).getAbsolutePath(), e.getClass().getCanonicalName() + " " + e.getMessage());
-        }
+    // Derive the key once rather than once per candidate
+    final KeyParameter walletFileAESKey = WalletManager.createWalletFileAESKey(password);
+    final BackupCatalogue catalogue = getOrCreateRollingBackupCatalogue(walletId, rollingBackupFiles.get(0).getParentFile());
+    Map<String, BackupCatalogueEntry> entries = Maps.newHashMap();
+    for (BackupCatalogueEntry entry : catalogue.getEntries()) {
+      entries.put(entry.getName(), entry);
+    }
+
+    // Verify all candidates in parallel but prefer the newest that succeeds
+    int threadCount = Math.min(rollingBackupFiles.size(), MAXIMUM_VERIFICATION_THREADS);
+    ListeningExecutorService verificationService = SafeExecutors.newFixedThreadPool(threadCount, "backup-verification");
+    List<ListenableFuture<Wallet>> candidates = Lists.newArrayList();
+    List<File> candidateFiles = Lists.reverse(rollingBackupFiles);
+    try {
+      for (final File rollingBackupFile : candidateFiles) {
+        final BackupCatalogueEntry entry = entries.get(rollingBackupFile.getName());
+        candidates.add(
+          verificationService.submit(
+            new Callable<Wallet>() {
+              @Override
+              public Wallet call() throws Exception {
+                if (entry != null && !catalogue.isIntact(entry)) {
+                  throw new IOException("Rolling backup does not match its catalogued digest");
+                }
+                return WalletManager.INSTANCE.loadWalletFromFile(rollingBackupFile, walletFileAESKey);
+              }
+            }));
       }
 
-      if (wallet == null) {
-        // No rolling backup was successfully loaded
-        throw new WalletLoadException("Could not load any rolling backup successfully.");
-      } else {
-        // Emit WalletLoadedEvent for notification on GUI
-        if (fileLoaded != null) {
-          log.debug("Loaded backup wallet file:\n'{}'", fileLoaded.getAbsolutePath());
-          CoreEvents.fireWalletLoadEvent(new WalletLoadEvent(Optional.of(walletId), false, CoreMessageKey.BACKUP_WALLET_WAS_LOADED, null, Optional.of(fileLoaded)));
+      for (int i = 0; i < candidates.size(); i++) {
+        File candidateFile = candidateFiles.get(i);
+        try {
+          Wallet wallet = candidates.get(i).get();
+          log.debug("Loaded backup wallet file:\n'{}'", candidateFile.getAbsolutePath());
+
+          // Emit WalletLoadedEvent for notification on GUI
+          CoreEvents.fireWalletLoadEvent(new WalletLoadEvent(Optional.of(walletId), false, CoreMessageKey.BACKUP_WALLET_WAS_LOADED, null, Optional.of(candidateFile)));
+          return wallet;
+        } catch (ExecutionException e) {
+          // Log the initial error (and then carry on to the next rolling backup)
+          Throwable cause = e.getCause() == null ? e : e.getCause();
+          log.error("Could not load rolling backup:\n'{}', error was: {}", candidateFile.getAbsolutePath(), cause.getClass().getCanonicalName() + " " + cause.getMessage());
         }
-        return wallet;
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WalletLoadException("Interrupted while loading rolling backups", e);
+    } finally {
+      // Older candidates are no longer needed
+      verificationService.shutdownNow();
     }
+
+    // No rolling backup was successfully loaded
+    throw new WalletLoadException("Could not load any rolling backup successfully.");
   }
 
   /**
@@ -514,7 +544,7 @@ public enum BackupManager {
       throw new EncryptedFileReaderWriterException("Cannot read and decrypt the backup file '" + backupFileToLoad.getAbsolutePath() + "'", e);
     } finally {
       if (temporaryFile != null) {
-        SecureFiles.secureDelete(temporaryFile);
+        SecureDeletions.INSTANCE.secureDelete(temporaryFile);
       }
     }
   }
@@ -528,47 +558,19 @@ public enum BackupManager {
    * @param backupDirectory the directory to thin
    */
   private void thinBackupDirectory(WalletId walletId, File backupDirectory) {
-    if (dateFormat == null) {
-      dateFormat = new SimpleDateFormat(BACKUP_TIMESTAMP_SUFFIX_FORMAT);
-    }
-
     if (walletId == null || backupDirectory == null) {
       return;
     }
 
-    // Find out how many wallet backups there are.
-    List<BackupSummary> backups = getWalletBackups(walletId, backupDirectory);
+    // Find out how many wallet backups there are (the catalogue provides them oldest first with parsed timestamps)
+    BackupCatalogue catalogue = getOrCreateZipBackupCatalogue(walletId, backupDirectory);
+    List<BackupCatalogueEntry> backups = catalogue.getEntries();
 
     if (backups.size() < MAXIMUM_NUMBER_OF_ZIP_BACKUPS) {
       // No thinning required.
       return;
     }
 
-    // Work out the date the backup was made for each of the wallet.
-    // This is done using the timestamp rather than the write time of the file.
-    // A typical backup filename is: mbhd-0da4e1dc-3a1726d7-5456cb44-f474e117-285799bb-20140520110455.zip.aes
-    // Constructed of :
-    // 5 chars "mbhd-"
-    // 44 chars of walletId
-    // 1 char separator
-    // 14 chars of timestamp
-    // 8 chars of file type suffix
-    Map<File, Date> mapOfFileToBackupTimes = new HashMap<>();
-    for (BackupSummary backup : backups) {
-      String filename = backup.getName();
-      if (filename.length() > 71) {
-        int startOfTimestamp = filename.length() - BACKUP_TIMESTAMP_SUFFIX_FORMAT.length() - ENCRYPTED_BACKUP_FILE_EXTENSION.length();
-        String timestampText = filename.substring(startOfTimestamp, startOfTimestamp + BACKUP_TIMESTAMP_SUFFIX_FORMAT.length());
-        try {
-          Date parsedTimestamp = dateFormat.parse(timestampText);
-          mapOfFileToBackupTimes.put(backup.getFile(), parsedTimestamp);
-        } catch (ParseException pe) {
-          // Cannot parse text - may be some other type of file the user has put in the directory.
-          log.debug("For wallet '" + filename + " could not parse the timestamp of '" + timestampText + "'.");
-        }
-      }
-    }
-
     // See which wallet is most quickly replaced by another backup - this will be thinned.
     int walletBackupToDeleteIndex = -1; // Not set yet.
     long walletBackupToDeleteReplacementTimeMillis = Integer.MAX_VALUE; // How quickly the wallet was replaced by a later one.
@@ -579,35 +581,70 @@ public enum BackupManager {
         // Keep the very first and last wallets always.
       } else {
         // Work out how quickly the wallet is replaced by the next backup.
-        Date thisWalletTimestamp = mapOfFileToBackupTimes.get(backups.get(i).getFile());
-        Date nextWalletTimestamp = mapOfFileToBackupTimes.get(backups.get(i + 1).getFile());
-        if (thisWalletTimestamp != null && nextWalletTimestamp != null) {
-          long deltaTimeMillis = nextWalletTimestamp.getTime() - thisWalletTimestamp.getTime();
-          if (deltaTimeMillis < walletBackupToDeleteReplacementTimeMillis) {
-            // This is the best candidate for deletion so far.
-            walletBackupToDeleteIndex = i;
-            walletBackupToDeleteReplacementTimeMillis = deltaTimeMillis;
-          }
+        long deltaTimeMillis = backups.get(i + 1).getCreated() - backups.get(i).getCreated();
+        if (deltaTimeMillis < walletBackupToDeleteReplacementTimeMillis) {
+          // This is the best candidate for deletion so far.
+          walletBackupToDeleteIndex = i;
+          walletBackupToDeleteReplacementTimeMillis = deltaTimeMillis;
         }
       }
     }
 
     if (walletBackupToDeleteIndex > -1) {
+      File backupToDelete = catalogue.getFile(backups.get(walletBackupToDeleteIndex));
       try {
         // Secure delete the chosen backup wallet.
-        log.debug(
-          "To save space, secure deleting backup wallet\n'{}'", backups
-            .get(walletBackupToDeleteIndex)
-            .getFile()
-            .getAbsolutePath()
-        );
-        SecureFiles.secureDelete(backups.get(walletBackupToDeleteIndex).getFile());
+        log.debug("To save space, secure deleting backup wallet\n'{}'", backupToDelete.getAbsolutePath());
+        SecureDeletions.INSTANCE.secureDelete(backupToDelete);
+        catalogue.remove(backupToDelete);
       } catch (IOException ioe) {
         log.error(ioe.getClass().getName() + " " + ioe.getMessage());
       }
     }
   }
 
+  /**
+   * @param walletId        The wallet ID
+   * @param backupDirectory The local or cloud zip backup directory
+   *
+   * @return The catalogue of zip backups for the wallet in the directory
+   */
+  private synchronized BackupCatalogue getOrCreateZipBackupCatalogue(WalletId walletId, File backupDirectory) {
+
+    String key = backupDirectory.getAbsolutePath() + File.pathSeparator + walletId.toFormattedString();
+    BackupCatalogue catalogue = catalogues.get(key);
+    if (catalogue == null) {
+      // Matches "mbhd-" + [formatted wallet id ] + "-YYYYMMDDHHMMSS.zip.aes"
+      Pattern backupPattern = Pattern.compile(
+        Pattern.quote(WalletManager.WALLET_DIRECTORY_PREFIX + WALLET_ID_SEPARATOR + walletId.toFormattedString() + WALLET_ID_SEPARATOR)
+          + "(\\d{14})"
+          + ENCRYPTED_BACKUP_ZIP_FILE_EXTENSION_REGEX
+      );
+      catalogue = new BackupCatalogue(backupDirectory, walletId, backupPattern);
+      catalogues.put(key, catalogue);
+    }
+
+    return catalogue;
+  }
+
+  /**
+   * @param walletId               The wallet ID
+   * @param rollingBackupDirectory The rolling backup directory of the wallet
+   *
+   * @return The catalogue of rolling backups for the wallet
+   */
+  private synchronized BackupCatalogue getOrCreateRollingBackupCatalogue(WalletId walletId, File rollingBackupDirectory) {
+
+    String key = rollingBackupDirectory.getAbsolutePath() + File.pathSeparator + walletId.toFormattedString();
+    BackupCatalogue catalogue = catalogues.get(key);
+    if (catalogue == null) {
+      catalogue = new BackupCatalogue(rollingBackupDirectory, walletId, ROLLING_BACKUP_PATTERN);
+      catalogues.put(key, catalogue);
+    }
+
+    return catalogue;
+  }
+
   public void setApplicationDataDirectory(File applicationDataDirectory) {
     this.applicationDataDirectory = applicationDataDirectory;
   }
@@ -11,10 +11,12 @@ import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ExportPerformedEvent;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 
@@ -22,11 +24,27 @@ import java.util.concurrent.ExecutorService;
  * <p>Manager to provide the following to other core classes:</p>
  * <ul>
  * <li>Exporting of transactions and payment requests to CSV files </li>
+ * <li>Streaming of transactions so large histories are not held on the heap</li>
  * </ul>
  * </p>
  */
 public class ExportManager {
 
+  /**
+   * The number of transactions adapted at a time while exporting
+   */
+  public static final int BATCH_SIZE = 500;
+
+  /**
+   * The number of transactions written between progress events
+   */
+  static final int PROGRESS_INTERVAL = 1000;
+
+  /**
+   * The size of the write buffer for each export file
+   */
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
   /**
    * The suffix for the CSV files
    */
@@ -35,21 +53,79 @@ public class ExportManager {
   private static final String OPEN_BRACKET = "(";
   private static final String CLOSE_BRACKET = ")";
 
+  /**
+   * Sorts payments by date, ascending (missing dates last)
+   */
+  private static final Comparator<PaymentData> DATE_COMPARATOR = new Comparator<PaymentData>() {
+    @Override
+    public int compare(PaymentData o1, PaymentData o2) {
+      if (o1 == null) {
+        if (o2 == null) {
+          return 0;
+        } else {
+          return 1;
+        }
+      } else {
+        if (o2 == null) {
+          return -1;
+        }
+      }
+      Date d1 = o1.getDate().toDate();
+      Date d2 = o2.getDate().toDate();
+      if (d1 == null) {
+        // Object 1 has missing date.
+        return 1;
+      }
+      if (d2 == null) {
+        // Object 2 has missing date.
+        return -1;
+      }
+      long n1 = d1.getTime();
+      long n2 = d2.getTime();
+      if (n1 == 0) {
+        // Object 1 has missing date.
+        return 1;
+      }
+      if (n2 == 0) {
+        // Object 2 has missing date.
+        return -1;
+      }
+      if (n1 < n2) {
+        return -1;
+      } else if (n1 > n2) {
+        return 1;
+      } else {
+        return 0;
+      }
+    }
+  };
+
+  /**
+   * Performs exports one at a time (shared across exports)
+   */
+  private static volatile ExecutorService executorService = null;
+
   public ExportManager() {
 
   }
 
-  public static void export(final Set<PaymentData> paymentDataSet, final List<MBHDPaymentRequestData> MBHDPaymentRequestDataList, final List<PaymentRequestData> paymentRequestDataList, final File exportDirectory, final String transactionFileStem, final String mbhdPaymentRequestFileStem, final String paymentRequestFileStem,
+  /**
+   * <p>Export asynchronously, firing ExportPerformedEvents for progress and completion</p>
+   *
+   * @param transactionDataCursor The transactions in date order, descending (adapted as they are read)
+   * @param transactionCount      The number of transactions the cursor will provide (used for progress)
+   */
+  public static void export(final Iterator<TransactionData> transactionDataCursor, final int transactionCount, final List<MBHDPaymentRequestData> MBHDPaymentRequestDataList, final List<PaymentRequestData> paymentRequestDataList, final File exportDirectory, final String transactionFileStem, final String mbhdPaymentRequestFileStem, final String paymentRequestFileStem,
                             final CSVEntryConverter<TransactionData> transactionHeaderConverter, final CSVEntryConverter<TransactionData> transactionConverter,
                             final CSVEntryConverter<MBHDPaymentRequestData> mbhdPaymentRequestDataCSVEntryConverter, final CSVEntryConverter<MBHDPaymentRequestData> mbhdPaymentRequestConverter,
                             final CSVEntryConverter<PaymentRequestData> paymentRequestDataCSVEntryConverter, final CSVEntryConverter<PaymentRequestData> paymentRequestConverter
   ) {
-    ExecutorService executorService = SafeExecutors.newSingleThreadExecutor("export");
-    executorService.submit(new Runnable() {
+    getOrCreateExecutorService().submit(new Runnable() {
       @Override
       public void run() {
         ExportManager.exportInternal(
-                paymentDataSet,
+                transactionDataCursor,
+                transactionCount,
                 MBHDPaymentRequestDataList,
                 paymentRequestDataList,
                 exportDirectory,
@@ -64,7 +140,7 @@ public class ExportManager {
     });
   }
 
-  public static void exportInternal(final Set<PaymentData> paymentDataSet, final List<MBHDPaymentRequestData> mbhdPaymentRequestDataList, final List<PaymentRequestData> paymentRequestDataList,
+  public static void exportInternal(final Iterator<TransactionData> transactionDataCursor, final int transactionCount, final List<MBHDPaymentRequestData> mbhdPaymentRequestDataList, final List<PaymentRequestData> paymentRequestDataList,
                                     final File exportDirectory, final String transactionFileStem, final String mbhdPaymentRequestFileStem, final String paymentRequestFileStem,
                                     final CSVEntryConverter<TransactionData> transactionHeaderConverter, final CSVEntryConverter<TransactionData> transactionConverter,
                                     final CSVEntryConverter<MBHDPaymentRequestData> mbhdPaymentRequestHeaderConverter, final CSVEntryConverter<MBHDPaymentRequestData> mbhdPaymentRequestConverter,
@@ -77,79 +153,36 @@ public class ExportManager {
     String mbhdPaymentRequestsExportFilename = exportDirectory.getAbsolutePath() + File.separator + exportFilenames[1];
     String paymentRequestsExportFilename = exportDirectory.getAbsolutePath() + File.separator + exportFilenames[2];
 
-    // Sort payments and payment requests by date descending.
-    Comparator<PaymentData> comparator = new Comparator<PaymentData>() {
-      @Override
-      public int compare(PaymentData o1, PaymentData o2) {
-        if (o1 == null) {
-          if (o2 == null) {
-            return 0;
-          } else {
-            return 1;
-          }
-        } else {
-          if (o2 == null) {
-            return -1;
-          }
-        }
-        Date d1 = o1.getDate().toDate();
-        Date d2 = o2.getDate().toDate();
-        if (d1 == null) {
-          // Object 1 has missing date.
-          return 1;
-        }
-        if (d2 == null) {
-          // Object 2 has missing date.
-          return -1;
-        }
-        long n1 = d1.getTime();
-        long n2 = d2.getTime();
-        if (n1 == 0) {
-          // Object 1 has missing date.
-          return 1;
-        }
-        if (n2 == 0) {
-          // Object 2 has missing date.
-          return -1;
-        }
-        if (n1 < n2) {
-          return -1;
-        } else if (n1 > n2) {
-          return 1;
-        } else {
-          return 0;
-        }
-      }
-    };
-
-    List<PaymentData> paymentDataList = Lists.newArrayList(paymentDataSet);
-    Collections.sort(paymentDataList, Collections.reverseOrder(comparator));
-    Collections.sort(mbhdPaymentRequestDataList, Collections.reverseOrder(comparator));
-    Collections.sort(paymentRequestDataList, Collections.reverseOrder(comparator));
-
-    List<TransactionData> transactionDataList = Lists.newArrayList();
-    for (PaymentData paymentData : paymentDataList) {
-      if (paymentData instanceof TransactionData) {
-        transactionDataList.add((TransactionData) paymentData);
-      }
-    }
+    // Payment requests are few so sort copies by date descending (transactions arrive already sorted)
+    List<MBHDPaymentRequestData> sortedMBHDPaymentRequestDataList = Lists.newArrayList(mbhdPaymentRequestDataList);
+    List<PaymentRequestData> sortedPaymentRequestDataList = Lists.newArrayList(paymentRequestDataList);
+    Collections.sort(sortedMBHDPaymentRequestDataList, Collections.reverseOrder(DATE_COMPARATOR));
+    Collections.sort(sortedPaymentRequestDataList, Collections.reverseOrder(DATE_COMPARATOR));
 
     boolean exportWasSuccessful = true;
     String errorMessage = null;
 
     // Output transactions
-    try (OutputStreamWriter outputStreamWriter = new OutputStreamWriter(new FileOutputStream(transactionsExportFilename, true), Charsets.UTF_8)) {
+    try (Writer writer = newBufferedWriter(transactionsExportFilename)) {
       // Write the header row.
-      CSVWriter<TransactionData> csvHeaderWriter = new CSVWriterBuilder<TransactionData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
+      CSVWriter<TransactionData> csvHeaderWriter = new CSVWriterBuilder<TransactionData>(writer).strategy(CSVStrategy.UK_DEFAULT)
               .entryConverter(transactionHeaderConverter).build();
 
       csvHeaderWriter.write(new TransactionData(null, null, null, null, null, null, null, null, null, null, false, null, null, 0, true));
 
-      // Write the body of the CSV file.
-      CSVWriter<TransactionData> csvWriter = new CSVWriterBuilder<TransactionData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
+      // Write the body of the CSV file one row at a time.
+      CSVWriter<TransactionData> csvWriter = new CSVWriterBuilder<TransactionData>(writer).strategy(CSVStrategy.UK_DEFAULT)
               .entryConverter(transactionConverter).build();
 
-      csvWriter.writeAll(transactionDataList);
+      int exportedCount = 0;
+      while (transactionDataCursor.hasNext()) {
+        csvWriter.write(transactionDataCursor.next());
+        exportedCount++;
+        if (exportedCount % PROGRESS_INTERVAL == 0) {
+          CoreEvents.fireExportPerformedEvent(new ExportPerformedEvent(transactionsExportFilename,
+                  mbhdPaymentRequestsExportFilename, paymentRequestsExportFilename, exportedCount, transactionCount));
+        }
+      }
 
       // Success
     } catch (RuntimeException | IOException e) {
@@ -158,18 +191,18 @@ public class ExportManager {
     }
 
     // Output MBHD payment requests
-    try (OutputStreamWriter outputStreamWriter = new OutputStreamWriter(new FileOutputStream(mbhdPaymentRequestsExportFilename, true), Charsets.UTF_8)) {
+    try (Writer writer = newBufferedWriter(mbhdPaymentRequestsExportFilename)) {
       // Write the header row.
-      CSVWriter<MBHDPaymentRequestData> csvHeaderWriter = new CSVWriterBuilder<MBHDPaymentRequestData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
+      CSVWriter<MBHDPaymentRequestData> csvHeaderWriter = new CSVWriterBuilder<MBHDPaymentRequestData>(writer).strategy(CSVStrategy.UK_DEFAULT)
               .entryConverter(mbhdPaymentRequestHeaderConverter).build();
 
       csvHeaderWriter.write(new MBHDPaymentRequestData());
 
       // Write the body of the CSV file.
-      CSVWriter<MBHDPaymentRequestData> csvWriter = new CSVWriterBuilder<MBHDPaymentRequestData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
+      CSVWriter<MBHDPaymentRequestData> csvWriter = new CSVWriterBuilder<MBHDPaymentRequestData>(writer).strategy(CSVStrategy.UK_DEFAULT)
               .entryConverter(mbhdPaymentRequestConverter).build();
 
-      csvWriter.writeAll(mbhdPaymentRequestDataList);
+      csvWriter.writeAll(sortedMBHDPaymentRequestDataList);
 
       // Success
     } catch (RuntimeException | IOException e) {
@@ -178,18 +211,18 @@ public class ExportManager {
     }
 
     // Output BIP70 payment requests
-    try (OutputStreamWriter outputStreamWriter = new OutputStreamWriter(new FileOutputStream(paymentRequestsExportFilename, true), Charsets.UTF_8)) {
+    try (Writer writer = newBufferedWriter(paymentRequestsExportFilename)) {
       // Write the header row.
-      CSVWriter<PaymentRequestData> csvHeaderWriter = new CSVWriterBuilder<PaymentRequestData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
+      CSVWriter<PaymentRequestData> csvHeaderWriter = new CSVWriterBuilder<PaymentRequestData>(writer).strategy(CSVStrategy.UK_DEFAULT)
               .entryConverter(paymentRequestHeaderConverter).build();
 
       csvHeaderWriter.write(new PaymentRequestData());
 
       // Write the body of the CSV file.
-      CSVWriter<PaymentRequestData> csvWriter = new CSVWriterBuilder<PaymentRequestData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
+      CSVWriter<PaymentRequestData> csvWriter = new CSVWriterBuilder<PaymentRequestData>(writer).strategy(CSVStrategy.UK_DEFAULT)
               .entryConverter(paymentRequestConverter).build();
 
-      csvWriter.writeAll(paymentRequestDataList);
+      csvWriter.writeAll(sortedPaymentRequestDataList);
 
       // Success
     } catch (RuntimeException | IOException e) {
@@ -205,6 +238,28 @@ public class ExportManager {
     }
   }
 
+  /**
+   * @param filename The file to append to
+   *
+   * @return A buffered UTF-8 writer so each row does not reach the disk separately
+   */
+  private static Writer newBufferedWriter(String filename) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, true), Charsets.UTF_8), WRITE_BUFFER_SIZE);
+  }
+
+  private static ExecutorService getOrCreateExecutorService() {
+
+    if (executorService == null) {
+      synchronized (ExportManager.class) {
+        if (executorService == null) {
+          executorService = SafeExecutors.newSingleThreadExecutor("export");
+        }
+      }
+    }
+
+    return executorService;
+  }
+
   public static String[] calculateExportFilenames(File exportPaymentsLocationFile, String transactionFileStem, String mbhdPaymentRequestFileStem, String paymentRequestFileStem) {
     String candidate0 = transactionFileStem + CSV_SUFFIX;
     String candidate1 = mbhdPaymentRequestFileStem + CSV_SUFFIX;
@@ -2,9 +2,18 @@ package org.multibit.hd.core.managers;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.CharStreams;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.multibit.commons.concurrent.SafeExecutors;
+import org.multibit.hd.core.crypto.PkiVerifications;
 import org.multibit.hd.core.exchanges.ExchangeKey;
 import org.multibit.commons.files.SecureFiles;
 import org.slf4j.Logger;
@@ -16,12 +25,21 @@ import java.net.*;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Manager to provide the following to other core classes:</p>
  * <ul>
  * <li>Installation of X509 certificates to application trust store</li>
  * <li>Utility methods for making TLS socket connections with the trust store</li>
+ * <li>HTTPS requests with explicit timeouts and connection reuse</li>
+ * <li>Racing of several equivalent requests with the first success winning</li>
  * </ul>
  * <p>Tried to keep this manager self-contained to allow portability to other applications</p>
  *
@@ -44,6 +62,26 @@ public enum HttpsManager {
    */
   public static final String PASSPHRASE = "changeit";
 
+  /**
+   * The time allowed to establish a connection (HTTPS requests and certificate probes)
+   */
+  public static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+  /**
+   * The time allowed between reads once connected
+   */
+  public static final int READ_TIMEOUT_MILLIS = 30_000;
+
+  /**
+   * The maximum number of hosts probed for certificates at the same time
+   */
+  private static final int MAXIMUM_PROBE_THREADS = 8;
+
+  /**
+   * The time allowed for all certificate probes to complete
+   */
+  private static final int PROBE_TIMEOUT_SECONDS = 30;
+
   /**
    * @param httpsUrl The HTTPS URL from which to get the data
    *
@@ -53,12 +91,7 @@ public enum HttpsManager {
    */
   public static String getContentAsString(URL httpsUrl) throws IOException {
 
-    HttpsURLConnection con = (HttpsURLConnection) httpsUrl.openConnection();
-
-    try (final InputStream in = con.getInputStream();
-         final InputStreamReader inr = new InputStreamReader(in, Charsets.UTF_8)) {
-      return CharStreams.toString(inr);
-    }
+    return new String(getContentAsBytes(httpsUrl), Charsets.UTF_8);
 
   }
 
@@ -67,18 +100,110 @@ public enum HttpsManager {
    *
    * @return The contents of the URL as bytes
    *
-   * @throws IOException If something goes wrong
+   * @throws IOException If something goes wrong (including an HTTP error status)
    */
   public static byte[] getContentAsBytes(URL httpsUrl) throws IOException {
 
-    HttpsURLConnection con = (HttpsURLConnection) httpsUrl.openConnection();
+    return getContentAsBytes(httpsUrl, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+
+  }
+
+  /**
+   * @param httpsUrl             The HTTPS URL from which to get the data
+   * @param connectTimeoutMillis The time allowed to establish a connection
+   * @param readTimeoutMillis    The time allowed between reads once connected (including the TLS handshake)
+   *
+   * @return The contents of the URL as bytes
+   *
+   * @throws IOException If something goes wrong (including an HTTP error status or a timeout)
+   */
+  static byte[] getContentAsBytes(URL httpsUrl, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+
+    HttpURLConnection con = (HttpURLConnection) httpsUrl.openConnection();
+    con.setConnectTimeout(connectTimeoutMillis);
+    con.setReadTimeout(readTimeoutMillis);
+    con.setUseCaches(false);
+
+    int responseCode = con.getResponseCode();
+    if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+      // Read the error body so the connection can be reused
+      InputStream errorStream = con.getErrorStream();
+      if (errorStream != null) {
+        try (InputStream in = errorStream) {
+          ByteStreams.exhaust(in);
+        }
+      }
+      throw new IOException("HTTP " + responseCode + " from '" + httpsUrl.getHost() + "'");
+    }
 
+    // Reading to the end and closing returns the connection to the keep-alive cache
     try (final InputStream in = con.getInputStream()) {
       return ByteStreams.toByteArray(in);
     }
 
   }
 
+  /**
+   * <p>Race several equivalent requests (e.g. the payment request URLs of a BIP72 URI)</p>
+   *
+   * @param futures The futures of the competing requests
+   *
+   * @return A future providing the first successful result (the others are cancelled) or the last failure
+   */
+  public static <T> ListenableFuture<T> firstSuccessful(final List<ListenableFuture<T>> futures) {
+
+    Preconditions.checkNotNull(futures, "'futures' must be present");
+
+    if (futures.isEmpty()) {
+      return Futures.immediateFailedFuture(new IllegalArgumentException("No requests to race"));
+    }
+
+    final SettableFuture<T> winner = SettableFuture.create();
+    final AtomicInteger remaining = new AtomicInteger(futures.size());
+
+    for (ListenableFuture<T> future : futures) {
+      Futures.addCallback(
+        future, new FutureCallback<T>() {
+          @Override
+          public void onSuccess(T result) {
+            if (winner.set(result)) {
+              // Stop the slower requests
+              for (ListenableFuture<T> other : futures) {
+                other.cancel(true);
+              }
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (remaining.decrementAndGet() == 0) {
+              winner.setException(t);
+            }
+          }
+        });
+    }
+
+    // Cancelling the race cancels the requests
+    Futures.addCallback(
+      winner, new FutureCallback<T>() {
+        @Override
+        public void onSuccess(T result) {
+          // Handled above
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (winner.isCancelled()) {
+            for (ListenableFuture<T> future : futures) {
+              future.cancel(true);
+            }
+          }
+        }
+      });
+
+    return winner;
+  }
+
   /**
    * <p>Handles the process of installing all CA certificates for MultiBit and supporting services (e.g. exchanges)</p>
    *
@@ -111,6 +236,7 @@ public enum HttpsManager {
 
         // Must have finished to be here so define the cacerts file to be the one used for all HTTPS operations
         System.setProperty("javax.net.ssl.trustStore", appCacertsFile.get().getAbsolutePath());
+        PkiVerifications.INSTANCE.reset();
 
         log.debug("No forced refresh so reusing the trust store: {}", appCacertsFile.get().getAbsolutePath());
         return;
@@ -118,64 +244,59 @@ public enum HttpsManager {
 
       // Either forced refresh or the cacerts does not contain the required aliases
 
-      // Build the saving trust manager so we have a place to put our trusted certificates
-      final SavingTrustManager tm = getSavingTrustManager(ks);
-
-      // Create an SSL context based on TLS
-      final SSLContext context = SSLContext.getInstance("TLS");
-      context.init(null, new TrustManager[]{tm}, null);
-
-      // Create the SSL factory and expose it for general use
-      SSLSocketFactory factory = context.getSocketFactory();
-
       // Determine which hosts will be loaded
       if (hosts == null || hosts.length == 0) {
         hosts = populateHosts();
       }
 
-      for (String host : hosts) {
+      // Probe the hosts in parallel (each with its own saving trust manager to capture its chain)
+      Map<String, ListenableFuture<Optional<SavingTrustManager>>> probes = Maps.newLinkedHashMap();
+      ListeningExecutorService probeService = SafeExecutors.newFixedThreadPool(
+        Math.max(1, Math.min(hosts.length, MAXIMUM_PROBE_THREADS)),
+        "certificate-probe"
+      );
+      try {
+        for (final String host : hosts) {
 
-        boolean isTrusted = false;
+          // There may be gaps in the hosts
+          if (host == null) {
+            continue;
+          }
 
-        // There may be gaps in the hosts
-        if (host == null) {
-          continue;
+          final SavingTrustManager tm = getSavingTrustManager(ks);
+          probes.put(
+            host, probeService.submit(
+              new Callable<Optional<SavingTrustManager>>() {
+                @Override
+                public Optional<SavingTrustManager> call() throws Exception {
+                  return probeHost(host, tm);
+                }
+              }));
         }
 
-        try {
-          final SSLSocket socket;
-          if (host.contains(":")) {
-            String[] endpoint = host.split(":");
-            log.info("Opening connection to '{}'...", host);
-            socket = (SSLSocket) factory.createSocket(endpoint[0], Integer.parseInt(endpoint[1]));
-          } else {
-            log.info("Opening default connection to '{}:443'...", host);
-            socket = (SSLSocket) factory.createSocket(host, 443);
+        // Store the untrusted certificates one host at a time since they share the trust store file
+        for (Map.Entry<String, ListenableFuture<Optional<SavingTrustManager>>> probe : probes.entrySet()) {
+          String host = probe.getKey();
+          final Optional<SavingTrustManager> untrusted;
+          try {
+            untrusted = Uninterruptibles.getUninterruptibly(probe.getValue(), PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+          } catch (ExecutionException | TimeoutException e) {
+            log.warn("Could not probe '{}': {}", host, e.getMessage());
+            continue;
           }
-          socket.setSoTimeout(5000);
-
-          log.info("Starting SSL handshake...");
-          socket.startHandshake();
-          socket.close();
-          log.info("No errors. The certificate is already trusted");
-
-          isTrusted = true;
-        } catch (UnknownHostException | SocketTimeoutException | SocketException e) {
-          // The host is unavailable or the network is down - continue to the next one
-          e.printStackTrace();
-          continue;
-        } catch (SSLException e) {
-          // Need to import the certificate
-        }
 
-        if (!isTrusted) {
-          // Attempt to store the X509 certificate
-          storeX509Certificate(appCacertsFile.get(), ks, tm, host);
+          if (untrusted.isPresent()) {
+            // Attempt to store the X509 certificate
+            storeX509Certificate(appCacertsFile.get(), ks, untrusted.get(), host);
+          }
         }
+      } finally {
+        probeService.shutdownNow();
       }
 
       // Must have finished to be here so define the cacerts file to be the one used for all HTTPS operations
       System.setProperty("javax.net.ssl.trustStore", appCacertsFile.get().getAbsolutePath());
+      PkiVerifications.INSTANCE.reset();
       log.debug("Successfully refreshed the trust store: {}", appCacertsFile.get().getAbsolutePath());
 
     } catch (KeyStoreException | IOException | CertificateException | NoSuchAlgorithmException | KeyManagementException e) {
@@ -286,6 +407,57 @@ public enum HttpsManager {
     return new SavingTrustManager(defaultTrustManager);
   }
 
+  /**
+   * @param host The host (with optional port, default 443)
+   * @param tm   The saving trust manager for this host alone
+   *
+   * @return The trust manager holding the presented chain if the host is not yet trusted, absent if trusted or unavailable
+   *
+   * @throws NoSuchAlgorithmException
+   * @throws KeyManagementException
+   * @throws IOException
+   */
+  private Optional<SavingTrustManager> probeHost(String host, SavingTrustManager tm) throws NoSuchAlgorithmException, KeyManagementException, IOException {
+
+    // Create an SSL context based on TLS
+    final SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{tm}, null);
+    SSLSocketFactory factory = context.getSocketFactory();
+
+    final String hostName;
+    final int port;
+    if (host.contains(":")) {
+      String[] endpoint = host.split(":");
+      hostName = endpoint[0];
+      port = Integer.parseInt(endpoint[1]);
+      log.info("Opening connection to '{}'...", host);
+    } else {
+      hostName = host;
+      port = 443;
+      log.info("Opening default connection to '{}:443'...", host);
+    }
+
+    try (Socket plainSocket = new Socket()) {
+      plainSocket.connect(new InetSocketAddress(hostName, port), CONNECT_TIMEOUT_MILLIS);
+      plainSocket.setSoTimeout(5000);
+
+      try (SSLSocket socket = (SSLSocket) factory.createSocket(plainSocket, hostName, port, false)) {
+        log.info("Starting SSL handshake with '{}'...", host);
+        socket.startHandshake();
+      }
+      log.info("No errors. The certificate for '{}' is already trusted", host);
+
+      return Optional.absent();
+    } catch (UnknownHostException | SocketTimeoutException | SocketException e) {
+      // The host is unavailable or the network is down - continue to the next one
+      log.warn("Host '{}' is unavailable: {}", host, e.getMessage());
+      return Optional.absent();
+    } catch (SSLException e) {
+      // Need to import the certificate
+      return Optional.of(tm);
+    }
+  }
+
   /**
    * @return The default list of hosts requiring entry to the trust store
    */
@@ -32,6 +32,7 @@ import org.multibit.hd.brit.core.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.core.seed_phrase.SeedPhraseGenerator;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.config.Yaml;
+import org.multibit.hd.core.crypto.BackupKeys;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
 import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.error_reporting.ExceptionHandler;
@@ -44,11 +45,11 @@ import org.multibit.hd.core.exceptions.WalletSaveException;
 import org.multibit.hd.core.exceptions.WalletVersionException;
 import org.multibit.hd.core.extensions.WalletTypeExtension;
 import org.multibit.hd.core.files.EncryptedWalletFile;
+import org.multibit.hd.core.files.SecureDeletions;
 import org.multibit.hd.core.services.BackupService;
 import org.multibit.hd.core.services.BitcoinNetworkService;
 import org.multibit.hd.core.services.CoreServices;
 import org.multibit.hd.core.utils.BitcoinNetwork;
-import org.multibit.hd.core.utils.Collators;
 import org.multibit.hd.core.wallet.UnconfirmedTransactionDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -157,6 +158,11 @@ public enum WalletManager implements WalletEventListener {
 
   private static final Pattern walletDirectoryPattern = Pattern.compile(REGEX_FOR_WALLET_DIRECTORY);
 
+  /**
+   * The in-memory wallet summaries for the application directory (created on first use)
+   */
+  private static WalletSummaryCatalogue walletSummaryCatalogue = null;
+
   /**
    * The wallet version number for protobuf encrypted wallets - compatible with MultiBit Classic
    */
@@ -956,6 +962,35 @@ public enum WalletManager implements WalletEventListener {
    */
   public Wallet loadWalletFromFile(File walletFile, CharSequence password) throws IOException, UnreadableWalletException {
 
+    return loadWalletFromFile(walletFile, createWalletFileAESKey(password));
+
+  }
+
+  /**
+   * @param password The wallet password
+   *
+   * @return The AES key used to encrypt wallet files (uses scrypt so derive once where possible)
+   */
+  public static KeyParameter createWalletFileAESKey(CharSequence password) {
+
+    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(EncryptedFileReaderWriter.makeScryptParameters(SCRYPT_SALT));
+
+    return keyCrypterScrypt.deriveKey(password);
+  }
+
+  /**
+   * <p>Load an encrypted wallet file with an already derived key (safe to call from several threads)</p>
+   *
+   * @param walletFile   the wallet file to load
+   * @param keyParameter the AES key from {@link #createWalletFileAESKey(CharSequence)}
+   *
+   * @return the loaded wallet
+   *
+   * @throws IOException
+   * @throws UnreadableWalletException
+   */
+  public Wallet loadWalletFromFile(File walletFile, KeyParameter keyParameter) throws IOException, UnreadableWalletException {
+
     // Read the encrypted file in and decrypt it.
     byte[] fileBytes = Files.toByteArray(walletFile);
     byte[] ivBytes = Arrays.copyOfRange(fileBytes, 0, 16);
@@ -965,9 +1000,6 @@ public enum WalletManager implements WalletEventListener {
     log.trace("Encrypted wallet bytes after load:\n{}", Utils.HEX.encode(encryptedWalletBytes));
     log.debug("Loaded the encrypted wallet bytes with length: {}", encryptedWalletBytes.length);
 
-    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(EncryptedFileReaderWriter.makeScryptParameters(SCRYPT_SALT));
-    KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
-
     // Decrypt the wallet bytes
 
       byte [] decryptedBytes = AESUtils.decrypt(encryptedWalletBytes, keyParameter, ivBytes);
@@ -1065,6 +1097,9 @@ public enum WalletManager implements WalletEventListener {
     Preconditions.checkNotNull(password, "'credentials' must be present");
     verifyWalletDirectory(walletDirectory);
 
+    // Shred any plaintext left behind in the wallet directory by an earlier session
+    SecureDeletions.INSTANCE.sweep(walletDirectory);
+
     try {
       String walletFilenameNoAESSuffix = walletDirectory.getAbsolutePath() + File.separator + MBHD_WALLET_NAME;
       File walletFile = new File(walletFilenameNoAESSuffix + MBHD_AES_SUFFIX);
@@ -1250,6 +1285,8 @@ public enum WalletManager implements WalletEventListener {
     // Sanity check the wallet directory name and existence
     verifyWalletDirectory(walletDirectory);
 
+    invalidateWalletSummaryCatalogue(walletDirectory);
+
     return walletDirectory;
   }
 
@@ -1258,9 +1295,21 @@ public enum WalletManager implements WalletEventListener {
    */
   public static List<WalletSummary> getWalletSummaries() {
 
-    List<File> walletDirectories = findWalletDirectories(InstallationManager.getOrCreateApplicationDataDirectory());
+    List<WalletSummary> walletSummaries = getOrCreateWalletSummaryCatalogue().getWalletSummaries();
+
+    // Keep the current wallet first
     Optional<String> walletRoot = INSTANCE.getCurrentWalletRoot();
-    return findWalletSummaries(walletDirectories, walletRoot);
+    if (walletRoot.isPresent()) {
+      for (int i = 0; i < walletSummaries.size(); i++) {
+        WalletId walletId = walletSummaries.get(i).getWalletId();
+        if (walletId != null && walletRoot.get().equals(createWalletRoot(walletId))) {
+          walletSummaries.add(0, walletSummaries.remove(i));
+          break;
+        }
+      }
+    }
+
+    return walletSummaries;
 
   }
 
@@ -1273,37 +1322,53 @@ public enum WalletManager implements WalletEventListener {
    */
   public static List<WalletSummary> getSoftWalletSummaries(final Optional<Locale> localeOptional) {
 
-    List<File> walletDirectories = findWalletDirectories(InstallationManager.getOrCreateApplicationDataDirectory());
-    Optional<String> walletRoot = INSTANCE.getCurrentWalletRoot();
-    List<WalletSummary> allWalletSummaries = findWalletSummaries(walletDirectories, walletRoot);
-    List<WalletSummary> softWalletSummaries = Lists.newArrayList();
-
-    for (WalletSummary walletSummary : allWalletSummaries) {
-      if (WalletType.MBHD_SOFT_WALLET == walletSummary.getWalletType()
-        || WalletType.MBHD_SOFT_WALLET_BIP32 == walletSummary.getWalletType()
-        || WalletType.TREZOR_SOFT_WALLET == walletSummary.getWalletType()) {
-        softWalletSummaries.add(walletSummary);
-      }
+    return getOrCreateWalletSummaryCatalogue().getSoftWalletSummaries(localeOptional);
+
+  }
+
+  /**
+   * @return The wallet summary catalogue for the current application directory (started on first use)
+   */
+  static synchronized WalletSummaryCatalogue getOrCreateWalletSummaryCatalogue() {
+
+    File applicationDataDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+
+    // The application directory changes during testing and on some installation paths
+    if (walletSummaryCatalogue != null && !walletSummaryCatalogue.getApplicationDataDirectory().equals(applicationDataDirectory)) {
+      walletSummaryCatalogue.stop();
+      walletSummaryCatalogue = null;
+    }
+    if (walletSummaryCatalogue == null) {
+      walletSummaryCatalogue = new WalletSummaryCatalogue(applicationDataDirectory);
+      walletSummaryCatalogue.start();
     }
 
-    // Sort by name of wallet
-    Collections.sort(
-      softWalletSummaries, new Comparator<WalletSummary>() {
-        @Override
-        public int compare(WalletSummary me, WalletSummary other) {
-          String myName = me.getName();
-          if (myName == null) {
-            myName = "";
-          }
-          String otherName = other.getName();
-          if (otherName == null) {
-            otherName = "";
-          }
-          return Collators.newCollator(localeOptional).compare(myName, otherName);
-        }
-      });
+    return walletSummaryCatalogue;
+  }
+
+  /**
+   * <p>Force a re-read of a wallet summary without waiting for the file system watch</p>
+   *
+   * @param walletDirectory The wallet directory that has changed
+   */
+  private static synchronized void invalidateWalletSummaryCatalogue(File walletDirectory) {
+
+    if (walletSummaryCatalogue != null) {
+      walletSummaryCatalogue.invalidate(walletDirectory);
+    }
+
+  }
+
+  /**
+   * <p>Stop watching the application directory (the catalogue is recreated on next use)</p>
+   */
+  private static synchronized void stopWalletSummaryCatalogue() {
+
+    if (walletSummaryCatalogue != null) {
+      walletSummaryCatalogue.stop();
+      walletSummaryCatalogue = null;
+    }
 
-    return softWalletSummaries;
   }
 
   /**
@@ -1508,6 +1573,8 @@ public enum WalletManager implements WalletEventListener {
     } catch (IOException e) {
       ExceptionHandler.handleThrowable(e);
     }
+
+    invalidateWalletSummaryCatalogue(walletSummaryFile.getParentFile());
   }
 
   /**
@@ -1902,6 +1969,13 @@ public enum WalletManager implements WalletEventListener {
     // log.debug("Wallet at shutdown:\n{}\n", getCurrentWalletSummary().isPresent() ? getCurrentWalletSummary().get().getWallet() : "");
     currentWalletSummary = Optional.absent();
 
+    // The backup key must not outlive the unlocked wallet
+    BackupKeys.INSTANCE.clear();
+
+    if (ShutdownEvent.ShutdownType.HARD == shutdownType) {
+      stopWalletSummaryCatalogue();
+    }
+
   }
 
   /**
@@ -0,0 +1,437 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.commons.concurrent.SafeExecutors;
+import org.multibit.hd.core.dto.WalletId;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.dto.WalletType;
+import org.multibit.hd.core.utils.Collators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Catalogue to provide the following to the wallet manager:</p>
+ * <ul>
+ * <li>In-memory wallet summaries for the application directory, read from YAML once</li>
+ * <li>Freshness through a watch on the application directory and each wallet directory</li>
+ * <li>Soft wallet summaries pre-sorted by name for each locale using collation keys</li>
+ * </ul>
+ *
+ * <p>Watch events can lag the file system (some platforms poll) so the wallet manager also
+ * invalidates entries it writes itself. If no watch service is available every request rescans
+ * the directory but only re-reads summaries whose YAML has changed.</p>
+ *
+ * <p>The summaries are shared between callers and must be treated as read only.</p>
+ *
+ * @since 0.5.0
+ */
+public class WalletSummaryCatalogue {
+
+  private static final Logger log = LoggerFactory.getLogger(WalletSummaryCatalogue.class);
+
+  private final File applicationDataDirectory;
+
+  /**
+   * Keyed by wallet directory name
+   */
+  private final Map<String, Entry> entries = Maps.newHashMap();
+
+  /**
+   * Wallet directory names requiring a re-read
+   */
+  private final Set<String> staleNames = Sets.newHashSet();
+
+  private final Map<Locale, List<WalletSummary>> softWalletSummariesByLocale = Maps.newHashMap();
+
+  private final Map<Path, String> watchedWalletDirectories = Maps.newHashMap();
+
+  private Optional<WatchService> watchService = Optional.absent();
+
+  private ListeningExecutorService watchExecutorService;
+
+  private boolean rescanRequired = true;
+
+  /**
+   * @param applicationDataDirectory The application data directory containing the wallet directories
+   */
+  public WalletSummaryCatalogue(File applicationDataDirectory) {
+
+    Preconditions.checkNotNull(applicationDataDirectory, "'applicationDataDirectory' must be present");
+
+    this.applicationDataDirectory = applicationDataDirectory;
+
+  }
+
+  /**
+   * <p>Start watching the application directory for changes</p>
+   */
+  public synchronized void start() {
+
+    if (watchService.isPresent()) {
+      return;
+    }
+
+    try {
+      final WatchService newWatchService = FileSystems.getDefault().newWatchService();
+      applicationDataDirectory.toPath().register(
+        newWatchService,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY
+      );
+      watchService = Optional.of(newWatchService);
+
+      watchExecutorService = SafeExecutors.newSingleThreadExecutor("wallet-catalogue-watch");
+      watchExecutorService.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            watch(newWatchService);
+          }
+        });
+
+    } catch (IOException | UnsupportedOperationException e) {
+      log.warn("Wallet directories will be rescanned on each request: {}", e.getMessage());
+      watchService = Optional.absent();
+    }
+
+    // Start from a full scan in case anything changed before the watch was registered
+    rescanRequired = true;
+
+  }
+
+  /**
+   * <p>Stop watching and release the watch thread</p>
+   */
+  public synchronized void stop() {
+
+    if (watchService.isPresent()) {
+      try {
+        watchService.get().close();
+      } catch (IOException e) {
+        log.warn("Could not close wallet catalogue watch: {}", e.getMessage());
+      }
+      watchService = Optional.absent();
+    }
+    if (watchExecutorService != null) {
+      watchExecutorService.shutdownNow();
+      watchExecutorService = null;
+    }
+    watchedWalletDirectories.clear();
+
+  }
+
+  /**
+   * @return The application data directory being catalogued
+   */
+  public File getApplicationDataDirectory() {
+    return applicationDataDirectory;
+  }
+
+  /**
+   * @return A copy of the wallet summaries in no particular order (never null)
+   */
+  public synchronized List<WalletSummary> getWalletSummaries() {
+
+    refresh();
+
+    List<WalletSummary> walletSummaries = Lists.newArrayListWithCapacity(entries.size());
+    for (Entry entry : entries.values()) {
+      walletSummaries.add(entry.walletSummary);
+    }
+
+    return walletSummaries;
+  }
+
+  /**
+   * @param localeOptional The locale to sort by, absent for the default locale
+   *
+   * @return A copy of the MBHD and Trezor soft wallet summaries ordered by wallet name (never null)
+   */
+  public synchronized List<WalletSummary> getSoftWalletSummaries(Optional<Locale> localeOptional) {
+
+    refresh();
+
+    Locale locale = localeOptional.isPresent() ? localeOptional.get() : Locale.getDefault();
+    List<WalletSummary> sorted = softWalletSummariesByLocale.get(locale);
+    if (sorted == null) {
+      sorted = sortSoftWalletSummaries(Collators.newCollator(Optional.of(locale)));
+      softWalletSummariesByLocale.put(locale, sorted);
+    }
+
+    return Lists.newArrayList(sorted);
+  }
+
+  /**
+   * <p>Force a re-read of a wallet summary (e.g. after the wallet manager writes it)</p>
+   *
+   * @param walletDirectory The wallet directory that has changed
+   */
+  public synchronized void invalidate(File walletDirectory) {
+
+    if (walletDirectory != null) {
+      markStale(walletDirectory.getName());
+    }
+
+  }
+
+  /**
+   * <p>Force a full rescan of the application directory on the next request</p>
+   */
+  public synchronized void invalidateAll() {
+
+    rescanRequired = true;
+    softWalletSummariesByLocale.clear();
+
+  }
+
+  /**
+   * <p>Bring the entries up to date (requires the catalogue lock)</p>
+   */
+  private void refresh() {
+
+    if (rescanRequired) {
+
+      Set<String> presentNames = Sets.newHashSet();
+      for (File walletDirectory : WalletManager.findWalletDirectories(applicationDataDirectory)) {
+        String name = walletDirectory.getName();
+        presentNames.add(name);
+
+        Entry entry = entries.get(name);
+        if (entry == null || entry.isModified(walletDirectory)) {
+          load(walletDirectory);
+        }
+      }
+      entries.keySet().retainAll(presentNames);
+      softWalletSummariesByLocale.clear();
+
+      staleNames.clear();
+      // Without a watch service only a rescan can detect changes
+      rescanRequired = !watchService.isPresent();
+      return;
+    }
+
+    if (staleNames.isEmpty()) {
+      return;
+    }
+
+    for (String name : staleNames) {
+      File walletDirectory = new File(applicationDataDirectory, name);
+      if (walletDirectory.isDirectory()) {
+        load(walletDirectory);
+      } else {
+        entries.remove(name);
+      }
+    }
+    staleNames.clear();
+    softWalletSummariesByLocale.clear();
+
+  }
+
+  /**
+   * @param walletDirectory The wallet directory to read the summary from
+   */
+  private void load(File walletDirectory) {
+
+    String name = walletDirectory.getName();
+    File walletSummaryFile = new File(walletDirectory, WalletManager.MBHD_SUMMARY_NAME);
+
+    // Capture the modification time before reading so a concurrent write is picked up later
+    long lastModified = walletSummaryFile.lastModified();
+    long length = walletSummaryFile.length();
+
+    WalletId walletId = new WalletId(name.substring(WalletManager.MBHD_WALLET_PREFIX.length() + 1));
+    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletDirectory, walletId);
+
+    entries.put(name, new Entry(walletSummary, lastModified, length));
+
+    if (watchService.isPresent()) {
+      watchWalletDirectory(walletDirectory);
+    }
+
+  }
+
+  /**
+   * @param walletDirectory The wallet directory to watch for summary changes
+   */
+  private void watchWalletDirectory(File walletDirectory) {
+
+    Path path = walletDirectory.toPath();
+    if (watchedWalletDirectories.containsKey(path)) {
+      return;
+    }
+
+    try {
+      path.register(
+        watchService.get(),
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY
+      );
+      watchedWalletDirectories.put(path, walletDirectory.getName());
+    } catch (IOException | ClosedWatchServiceException e) {
+      log.warn("Could not watch wallet directory '{}': {}", walletDirectory.getName(), e.getMessage());
+      rescanRequired = true;
+    }
+
+  }
+
+  /**
+   * @param name The wallet directory name to mark as stale
+   */
+  private void markStale(String name) {
+
+    staleNames.add(name);
+    softWalletSummariesByLocale.clear();
+
+  }
+
+  /**
+   * <p>Translate watch events into stale entries until the watch service is closed</p>
+   *
+   * @param watchService The watch service to take events from
+   */
+  private void watch(WatchService watchService) {
+
+    Path applicationDataPath = applicationDataDirectory.toPath();
+
+    try {
+      while (true) {
+
+        WatchKey key = watchService.take();
+        Path watched = (Path) key.watchable();
+
+        synchronized (this) {
+
+          for (WatchEvent<?> event : key.pollEvents()) {
+
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              invalidateAll();
+              continue;
+            }
+
+            String name = event.context().toString();
+            if (watched.equals(applicationDataPath)) {
+              // A wallet directory was created, removed or touched
+              if (name.startsWith(WalletManager.MBHD_WALLET_PREFIX)) {
+                if (entries.containsKey(name)) {
+                  markStale(name);
+                } else {
+                  // New directories must pass the full wallet directory checks
+                  invalidateAll();
+                }
+              }
+            } else if (WalletManager.MBHD_SUMMARY_NAME.equals(name)) {
+              markStale(watched.getFileName().toString());
+            }
+          }
+
+          if (!key.reset() && !watched.equals(applicationDataPath)) {
+            // The wallet directory has gone
+            watchedWalletDirectories.remove(watched);
+            markStale(watched.getFileName().toString());
+          }
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      log.debug("Wallet catalogue watch stopped");
+    }
+
+  }
+
+  /**
+   * @param collator The collator for the locale
+   *
+   * @return The soft wallet summaries sorted by name
+   */
+  private List<WalletSummary> sortSoftWalletSummaries(Collator collator) {
+
+    // Build each collation key once rather than collating on every comparison
+    List<SortableSummary> sortable = Lists.newArrayList();
+    for (Entry entry : entries.values()) {
+      WalletType walletType = entry.walletSummary.getWalletType();
+      if (WalletType.MBHD_SOFT_WALLET == walletType
+        || WalletType.MBHD_SOFT_WALLET_BIP32 == walletType
+        || WalletType.TREZOR_SOFT_WALLET == walletType) {
+        String name = entry.walletSummary.getName();
+        sortable.add(new SortableSummary(entry.walletSummary, collator.getCollationKey(name == null ? "" : name)));
+      }
+    }
+
+    Collections.sort(
+      sortable, new Comparator<SortableSummary>() {
+        @Override
+        public int compare(SortableSummary me, SortableSummary other) {
+          return me.collationKey.compareTo(other.collationKey);
+        }
+      });
+
+    List<WalletSummary> sorted = Lists.newArrayListWithCapacity(sortable.size());
+    for (SortableSummary summary : sortable) {
+      sorted.add(summary.walletSummary);
+    }
+
+    return Collections.unmodifiableList(sorted);
+  }
+
+  /**
+   * <p>A wallet summary and the state of the YAML it was read from</p>
+   */
+  private static class Entry {
+
+    private final WalletSummary walletSummary;
+    private final long lastModified;
+    private final long length;
+
+    private Entry(WalletSummary walletSummary, long lastModified, long length) {
+      this.walletSummary = walletSummary;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    private boolean isModified(File walletDirectory) {
+
+      File walletSummaryFile = new File(walletDirectory, WalletManager.MBHD_SUMMARY_NAME);
+
+      return walletSummaryFile.lastModified() != lastModified || walletSummaryFile.length() != length;
+    }
+  }
+
+  /**
+   * <p>A wallet summary with the collation key of its name</p>
+   */
+  private static class SortableSummary {
+
+    private final WalletSummary walletSummary;
+    private final CollationKey collationKey;
+
+    private SortableSummary(WalletSummary walletSummary, CollationKey collationKey) {
+      this.walletSummary = walletSummary;
+      this.collationKey = collationKey;
+    }
+  }
+
+}
@@ -0,0 +1,254 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import org.bitcoinj.core.BloomFilter;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.Wallet;
+import org.multibit.commons.concurrent.SafeExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Manager to provide the following to the Bitcoin network service:</p>
+ * <ul>
+ * <li>Batching of bloom filter recalculation requests made in quick succession (e.g. several new addresses)</li>
+ * <li>Resending the filter to peers only when the wallet has outgrown it</li>
+ * <li>Counters for filter rebuilds, sends and bytes sent</li>
+ * </ul>
+ *
+ * <p>Keys issued within the wallet look ahead are already present in the filter so issuing them
+ * does not change the element count and does not require a resend. When the look ahead is extended
+ * the peer group sends the changed filter itself so a forced refresh is only needed once the
+ * false positive rate of the filter held by the peers has drifted.</p>
+ *
+ * @since 0.5.0
+ */
+public class BloomFilterManager {
+
+  private static final Logger log = LoggerFactory.getLogger(BloomFilterManager.class);
+
+  /**
+   * Requests arriving within this window are combined into one recalculation
+   */
+  static final long DEBOUNCE_MILLIS = 500;
+
+  /**
+   * A filter is resent once its false positive rate exceeds the target by this factor
+   */
+  static final double DRIFT_FACTOR = 2.0;
+
+  private final PeerGroup peerGroup;
+
+  private final double targetFalsePositiveRate;
+
+  private final ListeningScheduledExecutorService scheduledExecutorService;
+
+  private final AtomicLong rebuildCount = new AtomicLong();
+  private final AtomicLong sendCount = new AtomicLong();
+  private final AtomicLong skipCount = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+
+  private Optional<Wallet> wallet = Optional.absent();
+
+  private Optional<BloomFilter> lastSentFilter = Optional.absent();
+
+  private int lastSentElementCount = -1;
+
+  private ScheduledFuture<?> pendingRecalculation;
+
+  /**
+   * @param peerGroup               The peer group that sends the filter to its peers
+   * @param targetFalsePositiveRate The false positive rate the filter is built for
+   */
+  public BloomFilterManager(PeerGroup peerGroup, double targetFalsePositiveRate) {
+
+    this(peerGroup, targetFalsePositiveRate, SafeExecutors.newSingleThreadScheduledExecutor("bloom-filter"));
+
+  }
+
+  /**
+   * @param peerGroup                The peer group that sends the filter to its peers
+   * @param targetFalsePositiveRate  The false positive rate the filter is built for
+   * @param scheduledExecutorService The executor service running debounced recalculations
+   */
+  BloomFilterManager(PeerGroup peerGroup, double targetFalsePositiveRate, ListeningScheduledExecutorService scheduledExecutorService) {
+
+    Preconditions.checkNotNull(peerGroup, "'peerGroup' must be present");
+    Preconditions.checkState(targetFalsePositiveRate > 0 && targetFalsePositiveRate < 1, "'targetFalsePositiveRate' must be between 0 and 1");
+    Preconditions.checkNotNull(scheduledExecutorService, "'scheduledExecutorService' must be present");
+
+    this.peerGroup = peerGroup;
+    this.targetFalsePositiveRate = targetFalsePositiveRate;
+    this.scheduledExecutorService = scheduledExecutorService;
+
+  }
+
+  /**
+   * <p>Set the wallet providing the filter elements (the next recalculation will always send)</p>
+   *
+   * @param wallet The wallet attached to the peer group
+   */
+  public synchronized void setWallet(Wallet wallet) {
+
+    this.wallet = Optional.fromNullable(wallet);
+
+    // A different wallet means the peers hold a filter for the wrong keys
+    lastSentFilter = Optional.absent();
+    lastSentElementCount = -1;
+
+  }
+
+  /**
+   * <p>Request a recalculation after the debounce window (further requests in the window are absorbed)</p>
+   */
+  public synchronized void requestRecalculation() {
+
+    if (pendingRecalculation != null && !pendingRecalculation.isDone()) {
+      log.trace("Bloom filter recalculation already pending");
+      return;
+    }
+
+    pendingRecalculation = scheduledExecutorService.schedule(
+      new Runnable() {
+        @Override
+        public void run() {
+          recalculateNow(false);
+        }
+      }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+
+  }
+
+  /**
+   * <p>Recalculate immediately, sending the filter only if required</p>
+   *
+   * @param force True if the filter should be sent even if the peers already hold a suitable one
+   *
+   * @return The filter being sent, or absent if the peers already hold a suitable filter
+   */
+  public Optional<ListenableFuture<BloomFilter>> recalculateNow(boolean force) {
+
+    final int elementCount;
+    synchronized (this) {
+      elementCount = wallet.isPresent() ? wallet.get().getBloomFilterElementCount() : 0;
+
+      if (!force && !isResendRequired(elementCount)) {
+        skipCount.incrementAndGet();
+        log.trace("Bloom filter resend skipped for {} elements", elementCount);
+        return Optional.absent();
+      }
+    }
+
+    rebuildCount.incrementAndGet();
+    ListenableFuture<BloomFilter> bloomFilterFuture = peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.FORCE_SEND_FOR_REFRESH);
+
+    Futures.addCallback(bloomFilterFuture, new FutureCallback<BloomFilter>() {
+      @Override
+      public void onSuccess(BloomFilter result) {
+        if (result == null) {
+          return;
+        }
+        recordSent(result, elementCount);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        log.warn("Bloom filter recalculation failed: {}", t.getMessage());
+      }
+    });
+
+    return Optional.of(bloomFilterFuture);
+  }
+
+  /**
+   * @return The number of filter rebuilds requested from the peer group
+   */
+  public long getRebuildCount() {
+    return rebuildCount.get();
+  }
+
+  /**
+   * @return The number of filters sent to the connected peers
+   */
+  public long getSendCount() {
+    return sendCount.get();
+  }
+
+  /**
+   * @return The number of recalculations avoided because the peers already held a suitable filter
+   */
+  public long getSkipCount() {
+    return skipCount.get();
+  }
+
+  /**
+   * @return The approximate number of filter bytes sent across all peers
+   */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * <p>Cancel any pending recalculation and release the thread</p>
+   */
+  public synchronized void shutdown() {
+
+    log.debug("Bloom filter rebuilds: {}, sends: {}, skips: {}, bytes sent: {}", rebuildCount.get(), sendCount.get(), skipCount.get(), bytesSent.get());
+
+    if (pendingRecalculation != null) {
+      pendingRecalculation.cancel(false);
+    }
+    scheduledExecutorService.shutdownNow();
+
+  }
+
+  /**
+   * @param filter                  The filter held by the peers
+   * @param elementCount            The number of elements the wallet now provides
+   * @param targetFalsePositiveRate The false positive rate the filter was built for
+   *
+   * @return True if the filter would exceed the target false positive rate by more than the drift factor
+   */
+  static boolean isDriftExceeded(BloomFilter filter, int elementCount, double targetFalsePositiveRate) {
+    return filter.getFalsePositiveRate(elementCount) > targetFalsePositiveRate * DRIFT_FACTOR;
+  }
+
+  private boolean isResendRequired(int elementCount) {
+
+    if (!lastSentFilter.isPresent()) {
+      return true;
+    }
+
+    if (elementCount == lastSentElementCount) {
+      // Nothing new to match so the peers already hold an equivalent filter
+      return false;
+    }
+
+    return isDriftExceeded(lastSentFilter.get(), elementCount, targetFalsePositiveRate);
+  }
+
+  private void recordSent(BloomFilter filter, int elementCount) {
+
+    int peerCount = peerGroup.numConnectedPeers();
+
+    synchronized (this) {
+      lastSentFilter = Optional.of(filter);
+      lastSentElementCount = elementCount;
+    }
+
+    sendCount.incrementAndGet();
+    bytesSent.addAndGet((long) filter.bitcoinSerialize().length * peerCount);
+
+    log.debug("Bloom filter for {} elements sent to {} peers", elementCount, peerCount);
+
+  }
+
+}
@@ -0,0 +1,323 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import org.bitcoinj.core.PeerAddress;
+import org.multibit.hd.core.dto.ChainDownloadMetrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Meter to provide the following to the peer event listener:</p>
+ * <ul>
+ * <li>Block and byte rates over a sliding window</li>
+ * <li>An exponentially smoothed estimate of the time to completion</li>
+ * <li>Per-peer download rates to identify peers that throttle sync</li>
+ * <li>Stall detection for the current download peer</li>
+ * </ul>
+ *
+ * <p>Samples are held in one second buckets so memory use is fixed regardless of block rate.
+ * Times are supplied by the caller to allow deterministic testing.</p>
+ *
+ * @since 0.5.0
+ */
+public class ChainDownloadMeter {
+
+  /**
+   * The length of the sliding window in seconds
+   */
+  static final int WINDOW_SECONDS = 30;
+
+  /**
+   * No blocks for this long while blocks are outstanding indicates a stall
+   */
+  public static final long DEFAULT_STALL_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+  /**
+   * The weight given to the latest window rate in the smoothed rate used for the estimate
+   */
+  private static final double SMOOTHING_FACTOR = 0.2;
+
+  private final long[] bucketSeconds = new long[WINDOW_SECONDS];
+  private final int[] bucketBlocks = new int[WINDOW_SECONDS];
+  private final int[] bucketFilteredBlocks = new int[WINDOW_SECONDS];
+  private final long[] bucketBytes = new long[WINDOW_SECONDS];
+
+  private final Map<PeerAddress, PeerRate> peerRates = Maps.newHashMap();
+
+  private long startMillis = -1;
+  private long lastBlockMillis = -1;
+  private long lastSmoothingMillis = -1;
+  private double smoothedBlocksPerSecond = -1;
+  private int blocksLeft = -1;
+  private int downloadPeerSwitches = 0;
+
+  /**
+   * <p>Begin a new download (clears the window but keeps the per-peer rates)</p>
+   *
+   * @param blocksLeft The number of blocks to download
+   * @param nowMillis  The current time
+   */
+  public synchronized void start(int blocksLeft, long nowMillis) {
+
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      bucketSeconds[i] = -1;
+      bucketBlocks[i] = 0;
+      bucketFilteredBlocks[i] = 0;
+      bucketBytes[i] = 0;
+    }
+
+    this.startMillis = nowMillis;
+    this.lastBlockMillis = nowMillis;
+    this.lastSmoothingMillis = nowMillis;
+    this.smoothedBlocksPerSecond = -1;
+    this.blocksLeft = blocksLeft;
+    this.downloadPeerSwitches = 0;
+
+  }
+
+  /**
+   * @param peerAddress The address of the peer that supplied the block (may be null)
+   * @param bytes       The size of the block message in bytes
+   * @param filtered    True if the block arrived as a filtered block
+   * @param blocksLeft  The number of blocks still to download
+   * @param nowMillis   The current time
+   */
+  public synchronized void recordBlock(PeerAddress peerAddress, long bytes, boolean filtered, int blocksLeft, long nowMillis) {
+
+    if (startMillis < 0) {
+      start(blocksLeft + 1, nowMillis);
+    }
+
+    int bucket = bucketFor(nowMillis);
+    bucketBlocks[bucket]++;
+    bucketBytes[bucket] += bytes;
+    if (filtered) {
+      bucketFilteredBlocks[bucket]++;
+    }
+
+    this.lastBlockMillis = nowMillis;
+    this.blocksLeft = blocksLeft;
+
+    if (peerAddress != null) {
+      PeerRate peerRate = peerRates.get(peerAddress);
+      if (peerRate == null) {
+        peerRate = new PeerRate(nowMillis);
+        peerRates.put(peerAddress, peerRate);
+      }
+      peerRate.blocks++;
+      peerRate.lastMillis = nowMillis;
+    }
+
+    // Smooth at most once a second to avoid bias towards bursts
+    if (nowMillis - lastSmoothingMillis >= 1000 || smoothedBlocksPerSecond < 0) {
+      double windowRate = getBlocksPerSecond(nowMillis);
+      smoothedBlocksPerSecond = smoothedBlocksPerSecond < 0
+        ? windowRate
+        : SMOOTHING_FACTOR * windowRate + (1 - SMOOTHING_FACTOR) * smoothedBlocksPerSecond;
+      lastSmoothingMillis = nowMillis;
+    }
+
+  }
+
+  /**
+   * <p>Record a change of download peer</p>
+   *
+   * @param nowMillis The current time
+   */
+  public synchronized void recordDownloadPeerChanged(long nowMillis) {
+
+    downloadPeerSwitches++;
+
+    // Give the new peer a fair chance before reporting a stall
+    lastBlockMillis = nowMillis;
+
+  }
+
+  /**
+   * @param nowMillis The current time
+   *
+   * @return The block rate over the sliding window
+   */
+  public synchronized double getBlocksPerSecond(long nowMillis) {
+
+    long blocks = 0;
+    long nowSeconds = nowMillis / 1000;
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      if (isInWindow(bucketSeconds[i], nowSeconds)) {
+        blocks += bucketBlocks[i];
+      }
+    }
+
+    return blocks / (double) windowSeconds(nowMillis);
+  }
+
+  /**
+   * @param nowMillis The current time
+   *
+   * @return The byte rate over the sliding window
+   */
+  public synchronized double getBytesPerSecond(long nowMillis) {
+
+    long bytes = 0;
+    long nowSeconds = nowMillis / 1000;
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      if (isInWindow(bucketSeconds[i], nowSeconds)) {
+        bytes += bucketBytes[i];
+      }
+    }
+
+    return bytes / (double) windowSeconds(nowMillis);
+  }
+
+  /**
+   * @param nowMillis The current time
+   *
+   * @return The proportion of blocks in the sliding window that arrived as filtered blocks (0.0 if none arrived)
+   */
+  public synchronized double getFilteredBlockRatio(long nowMillis) {
+
+    long blocks = 0;
+    long filteredBlocks = 0;
+    long nowSeconds = nowMillis / 1000;
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      if (isInWindow(bucketSeconds[i], nowSeconds)) {
+        blocks += bucketBlocks[i];
+        filteredBlocks += bucketFilteredBlocks[i];
+      }
+    }
+
+    return blocks == 0 ? 0.0 : filteredBlocks / (double) blocks;
+  }
+
+  /**
+   * @return The smoothed estimate of the time to completion in seconds, absent if no rate is known yet
+   */
+  public synchronized Optional<Long> getEtaSeconds() {
+
+    if (blocksLeft <= 0) {
+      return blocksLeft == 0 ? Optional.of(0L) : Optional.<Long>absent();
+    }
+    if (smoothedBlocksPerSecond <= 0) {
+      return Optional.absent();
+    }
+
+    return Optional.of(Math.round(blocksLeft / smoothedBlocksPerSecond));
+  }
+
+  /**
+   * @param nowMillis   The current time
+   * @param stallMillis The period without blocks that indicates a stall
+   *
+   * @return True if blocks are outstanding and none have arrived within the stall period
+   */
+  public synchronized boolean isStalled(long nowMillis, long stallMillis) {
+    return startMillis >= 0 && blocksLeft > 0 && nowMillis - lastBlockMillis >= stallMillis;
+  }
+
+  /**
+   * @param peerAddress The peer address
+   *
+   * @return The average block rate of the peer while it was supplying blocks, absent if it has supplied none
+   */
+  public synchronized Optional<Double> getPeerBlocksPerSecond(PeerAddress peerAddress) {
+
+    PeerRate peerRate = peerRates.get(peerAddress);
+    if (peerRate == null) {
+      return Optional.absent();
+    }
+
+    return Optional.of(peerRate.blocksPerSecond());
+  }
+
+  /**
+   * @return A copy of the average block rate for each peer that has supplied blocks
+   */
+  public synchronized Map<PeerAddress, Double> getPeerBlocksPerSecond() {
+
+    Map<PeerAddress, Double> rates = Maps.newHashMap();
+    for (Map.Entry<PeerAddress, PeerRate> entry : peerRates.entrySet()) {
+      rates.put(entry.getKey(), entry.getValue().blocksPerSecond());
+    }
+
+    return rates;
+  }
+
+  /**
+   * @param peerAddress The peer address to forget (e.g. on disconnect)
+   */
+  public synchronized void remove(PeerAddress peerAddress) {
+    peerRates.remove(peerAddress);
+  }
+
+  /**
+   * @param nowMillis The current time
+   *
+   * @return A snapshot of the current metrics suitable for publishing
+   */
+  public synchronized ChainDownloadMetrics getMetrics(long nowMillis) {
+    return new ChainDownloadMetrics(
+      getBlocksPerSecond(nowMillis),
+      getBytesPerSecond(nowMillis),
+      getFilteredBlockRatio(nowMillis),
+      getEtaSeconds(),
+      isStalled(nowMillis, DEFAULT_STALL_MILLIS),
+      downloadPeerSwitches
+    );
+  }
+
+  private int bucketFor(long nowMillis) {
+
+    long nowSeconds = nowMillis / 1000;
+    int bucket = (int) (nowSeconds % WINDOW_SECONDS);
+    if (bucketSeconds[bucket] != nowSeconds) {
+      // Reuse the bucket from a previous lap of the window
+      bucketSeconds[bucket] = nowSeconds;
+      bucketBlocks[bucket] = 0;
+      bucketFilteredBlocks[bucket] = 0;
+      bucketBytes[bucket] = 0;
+    }
+
+    return bucket;
+  }
+
+  private boolean isInWindow(long bucketSecond, long nowSeconds) {
+    return bucketSecond >= 0 && bucketSecond > nowSeconds - WINDOW_SECONDS && bucketSecond <= nowSeconds;
+  }
+
+  /**
+   * @return The number of seconds covered by the window (shorter at the start of a download)
+   */
+  private long windowSeconds(long nowMillis) {
+
+    if (startMillis < 0) {
+      return WINDOW_SECONDS;
+    }
+
+    long elapsedSeconds = nowMillis / 1000 - startMillis / 1000 + 1;
+
+    return Math.max(1, Math.min(WINDOW_SECONDS, elapsedSeconds));
+  }
+
+  /**
+   * <p>Cumulative block count for a single peer (guarded by the meter)</p>
+   */
+  private static class PeerRate {
+
+    private final long firstMillis;
+    private long lastMillis;
+    private long blocks = 0;
+
+    private PeerRate(long firstMillis) {
+      this.firstMillis = firstMillis;
+      this.lastMillis = firstMillis;
+    }
+
+    private double blocksPerSecond() {
+      // Treat a burst within one second as one second of work
+      return blocks / Math.max(1.0, (lastMillis - firstMillis) / 1000.0);
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.VersionMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Detector to provide the following to the download watchdog:</p>
+ * <ul>
+ * <li>Detection of a download peer that has stayed below the block rate floor for the stall period</li>
+ * <li>Selection of a replacement that bitcoinj would also accept as a download peer</li>
+ * </ul>
+ *
+ * <p>Times are supplied by the caller to allow deterministic testing.</p>
+ *
+ * @since 0.5.0
+ */
+public class DownloadStallDetector {
+
+  private static final Logger log = LoggerFactory.getLogger(DownloadStallDetector.class);
+
+  /**
+   * The default minimum acceptable block rate while blocks are outstanding
+   */
+  public static final double DEFAULT_STALL_BLOCKS_PER_SECOND_FLOOR = 1.0;
+
+  /**
+   * The default period the rate must stay below the floor before the download peer is replaced
+   */
+  public static final int DEFAULT_STALL_SECONDS = 30;
+
+  private final PeerLatencyTracker peerLatencyTracker;
+
+  private double stallBlocksPerSecondFloor = DEFAULT_STALL_BLOCKS_PER_SECOND_FLOOR;
+  private int stallSeconds = DEFAULT_STALL_SECONDS;
+  private long belowFloorSinceMillis = -1;
+
+  /**
+   * @param peerLatencyTracker The latency tracker used to order candidates with no measured block rate
+   */
+  public DownloadStallDetector(PeerLatencyTracker peerLatencyTracker) {
+
+    Preconditions.checkNotNull(peerLatencyTracker, "'peerLatencyTracker' must be present");
+
+    this.peerLatencyTracker = peerLatencyTracker;
+
+  }
+
+  /**
+   * @param blocksPerSecondFloor The minimum acceptable block rate while blocks are outstanding
+   * @param stallSeconds         The period the rate must stay below the floor before the download peer is replaced
+   */
+  public synchronized void setPolicy(double blocksPerSecondFloor, int stallSeconds) {
+
+    Preconditions.checkState(blocksPerSecondFloor >= 0, "'blocksPerSecondFloor' must not be negative");
+    Preconditions.checkState(stallSeconds > 0, "'stallSeconds' must be greater than zero");
+
+    this.stallBlocksPerSecondFloor = blocksPerSecondFloor;
+    this.stallSeconds = stallSeconds;
+
+  }
+
+  /**
+   * @return The period the rate must stay below the floor before the download peer is replaced
+   */
+  public synchronized int getStallSeconds() {
+    return stallSeconds;
+  }
+
+  /**
+   * <p>Forget any earlier slow period (e.g. when a new download starts)</p>
+   */
+  public synchronized void reset() {
+    belowFloorSinceMillis = -1;
+  }
+
+  /**
+   * @param downloadPeer          The current download peer
+   * @param connectedPeers        The connected peers
+   * @param mostCommonChainHeight The most common chain height of the connected peers
+   * @param meter                 The chain download meter
+   * @param nowMillis             The current time
+   *
+   * @return The peer to promote if the download has stalled and a suitable replacement exists
+   */
+  public synchronized Optional<Peer> check(
+    Peer downloadPeer,
+    List<Peer> connectedPeers,
+    int mostCommonChainHeight,
+    ChainDownloadMeter meter,
+    long nowMillis
+  ) {
+
+    final long stallMillis = TimeUnit.SECONDS.toMillis(stallSeconds);
+    final double blocksPerSecond = meter.getBlocksPerSecond(nowMillis);
+
+    if (blocksPerSecond >= stallBlocksPerSecondFloor && !meter.isStalled(nowMillis, stallMillis)) {
+      belowFloorSinceMillis = -1;
+      return Optional.absent();
+    }
+
+    if (belowFloorSinceMillis < 0) {
+      log.debug("Chain download rate {} blocks/s is below the floor of {}", blocksPerSecond, stallBlocksPerSecondFloor);
+      belowFloorSinceMillis = nowMillis;
+      return Optional.absent();
+    }
+
+    if (nowMillis - belowFloorSinceMillis < stallMillis || downloadPeer == null) {
+      return Optional.absent();
+    }
+
+    Optional<Peer> replacement = selectReplacementDownloadPeer(downloadPeer, connectedPeers, mostCommonChainHeight, meter);
+    if (!replacement.isPresent()) {
+      log.warn("Chain download stalled at {} blocks/s on {} but no other peer is suitable", blocksPerSecond, downloadPeer);
+      // Check again after another stall period
+      belowFloorSinceMillis = nowMillis;
+      return Optional.absent();
+    }
+
+    log.warn(
+      "Chain download stalled at {} blocks/s for {}s on {} - promoting {}",
+      blocksPerSecond,
+      stallSeconds,
+      downloadPeer,
+      replacement.get()
+    );
+
+    belowFloorSinceMillis = -1;
+
+    return replacement;
+  }
+
+  /**
+   * @param peer The peer
+   *
+   * @return True if bitcoinj would accept the peer as a download peer for an SPV wallet (full chain and filtered blocks)
+   */
+  public static boolean isDownloadCandidate(Peer peer) {
+
+    VersionMessage versionMessage = peer.getPeerVersionMessage();
+
+    return versionMessage != null
+      && (versionMessage.localServices & VersionMessage.NODE_NETWORK) == VersionMessage.NODE_NETWORK
+      && versionMessage.clientVersion >= FilteredBlock.MIN_PROTOCOL_VERSION;
+  }
+
+  /**
+   * @param downloadPeer          The stalled download peer
+   * @param connectedPeers        The connected peers
+   * @param mostCommonChainHeight The most common chain height of the connected peers
+   * @param meter                 The chain download meter holding per-peer block rates
+   *
+   * @return The fastest other candidate with the most common chain height (measured block rate first, then latency)
+   */
+  private Optional<Peer> selectReplacementDownloadPeer(
+    Peer downloadPeer,
+    List<Peer> connectedPeers,
+    int mostCommonChainHeight,
+    ChainDownloadMeter meter
+  ) {
+
+    Peer best = null;
+    double bestBlocksPerSecond = -1;
+    for (Peer candidate : peerLatencyTracker.sortByLatency(connectedPeers)) {
+      if (candidate == downloadPeer
+        || candidate.getBestHeight() < mostCommonChainHeight
+        || !isDownloadCandidate(candidate)) {
+        continue;
+      }
+      // Candidates are in latency order so the first unmeasured one is kept unless a faster one is found
+      double candidateBlocksPerSecond = meter.getPeerBlocksPerSecond(candidate.getAddress()).or(0.0);
+      if (best == null || candidateBlocksPerSecond > bestBlocksPerSecond) {
+        best = candidate;
+        bestBlocksPerSecond = candidateBlocksPerSecond;
+      }
+    }
+
+    return Optional.fromNullable(best);
+  }
+
+}
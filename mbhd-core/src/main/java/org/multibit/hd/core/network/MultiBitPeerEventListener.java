@@ -3,6 +3,7 @@ package org.multibit.hd.core.network;
 import com.google.common.base.Optional;
 import org.bitcoinj.core.*;
 import org.multibit.hd.core.dto.BitcoinNetworkSummary;
+import org.multibit.hd.core.dto.ChainDownloadMetrics;
 import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.TransactionSeenEvent;
@@ -26,16 +27,52 @@ public class MultiBitPeerEventListener implements PeerEventListener {
 
   private boolean isDownloading = false;
 
+  private final PeerLatencyTracker peerLatencyTracker;
+
+  private final Optional<PeerAddressBook> peerAddressBook;
+
+  private final ChainDownloadMeter chainDownloadMeter = new ChainDownloadMeter();
+
+  /**
+   * Used to report time to first peer and time to sync start
+   */
+  private final long createdMillis = System.currentTimeMillis();
+  private boolean firstPeerReported = false;
+  private boolean syncStartReported = false;
+
   public MultiBitPeerEventListener() {
+    this(new PeerLatencyTracker(), Optional.<PeerAddressBook>absent());
+  }
+
+  /**
+   * @param peerLatencyTracker The shared peer latency tracker (ping figures are included in peer count events)
+   * @param peerAddressBook    The peer address book to update with connection outcomes
+   */
+  public MultiBitPeerEventListener(PeerLatencyTracker peerLatencyTracker, Optional<PeerAddressBook> peerAddressBook) {
+    this.peerLatencyTracker = peerLatencyTracker;
+    this.peerAddressBook = peerAddressBook;
   }
 
   @Override
   public void onPeersDiscovered(Set<PeerAddress> peerAddresses) {
-    // Do nothing - this is a list of potential peers to connect to, not actually connected peers
+    // This is a list of potential peers to connect to, not actually connected peers
+    if (peerAddressBook.isPresent() && peerAddresses != null) {
+      peerAddressBook.get().recordDiscovered(peerAddresses);
+    }
   }
 
   @Override
   public void onBlocksDownloaded(Peer peer, Block block, FilteredBlock filteredBlock, int blocksLeft) {
+
+    final long nowMillis = System.currentTimeMillis();
+    chainDownloadMeter.recordBlock(
+      peer == null ? null : peer.getAddress(),
+      messageSize(filteredBlock != null ? filteredBlock : block),
+      filteredBlock != null,
+      blocksLeft,
+      nowMillis
+    );
+
     if (blocksLeft > originalBlocksLeft) {
       originalBlocksLeft = blocksLeft;
     }
@@ -57,7 +94,7 @@ public class MultiBitPeerEventListener implements PeerEventListener {
       lastPercent = (int) pct;
 
       // Fire the download percentage when it changes
-      CoreEvents.fireBitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadProgress(lastPercent, blocksLeft));
+      CoreEvents.fireBitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadProgress(lastPercent, blocksLeft, chainDownloadMeter.getMetrics(nowMillis)));
     }
 
     if (blocksLeft == 0) {
@@ -71,13 +108,20 @@ public class MultiBitPeerEventListener implements PeerEventListener {
 
     isDownloading = blocksLeft > 0;
 
+    if (!syncStartReported) {
+      syncStartReported = true;
+      log.info("Chain download started {}ms after peer group creation", System.currentTimeMillis() - createdMillis);
+    }
+
     startDownload(blocksLeft);
     // Only mark this the first time, because this method can be called more than once during a chain download
     // if we switch peers during it.
     if (originalBlocksLeft == -1) {
       originalBlocksLeft = blocksLeft;
+      chainDownloadMeter.start(blocksLeft, System.currentTimeMillis());
     } else {
-      log.info("Chain download switched to {}", peer);
+      chainDownloadMeter.recordDownloadPeerChanged(System.currentTimeMillis());
+      log.info("Chain download switched to {} with {}", peer, chainDownloadMeter.getMetrics(System.currentTimeMillis()));
     }
 
     CoreEvents.fireBitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadProgress(lastPercent, blocksLeft));
@@ -91,23 +135,42 @@ public class MultiBitPeerEventListener implements PeerEventListener {
   public void onPeerConnected(Peer peer, int peerCount) {
     log.trace("(connect) Number of peers = " + peerCount + ", lastPercent = " + lastPercent);
 
+    if (!firstPeerReported) {
+      firstPeerReported = true;
+      log.info("First peer connected {}ms after peer group creation", System.currentTimeMillis() - createdMillis);
+    }
+
+    if (peerAddressBook.isPresent() && peer != null) {
+      peerAddressBook.get().recordConnected(peer.getAddress(), System.currentTimeMillis());
+    }
+
     numberOfConnectedPeers = peerCount;
 
-    CoreEvents.fireBitcoinNetworkChangedEvent(
-            BitcoinNetworkSummary.newNetworkPeerCount(numberOfConnectedPeers));
+    firePeerCount();
   }
 
   @Override
   public void onPeerDisconnected(Peer peer, int peerCount) {
     log.trace("(disconnect) Number of peers = " + peerCount);
+
+    if (peer != null) {
+      if (peerAddressBook.isPresent()) {
+        recordLatency(peer);
+        peerAddressBook.get().recordDisconnected(peer.getAddress(), System.currentTimeMillis());
+      }
+
+      // A reconnection will be measured afresh
+      peerLatencyTracker.remove(peer.getAddress());
+      chainDownloadMeter.remove(peer.getAddress());
+    }
+
     if (peerCount == numberOfConnectedPeers) {
       // Don't fire an event - not useful
       return;
     }
     numberOfConnectedPeers = peerCount;
 
-    CoreEvents.fireBitcoinNetworkChangedEvent(
-      BitcoinNetworkSummary.newNetworkPeerCount(numberOfConnectedPeers));
+    firePeerCount();
   }
 
   @Override
@@ -192,12 +255,15 @@ public class MultiBitPeerEventListener implements PeerEventListener {
   protected void progress(double pct, int blocksSoFar, Date date) {
 
     // Logging this information in production is not necessary
-    log.trace(
-      "Chain download {}% done with {} blocks to go, block date {}",
-      (int) pct,
-      blocksSoFar,
-      DateFormat.getDateTimeInstance().format(date)
-    );
+    if (log.isTraceEnabled()) {
+      log.trace(
+        "Chain download {}% done with {} blocks to go, block date {}, {}",
+        (int) pct,
+        blocksSoFar,
+        DateFormat.getDateTimeInstance().format(date),
+        chainDownloadMeter.getMetrics(System.currentTimeMillis())
+      );
+    }
   }
 
   /**
@@ -217,7 +283,7 @@ public class MultiBitPeerEventListener implements PeerEventListener {
    * Called when we are done downloading the block chain.
    */
   protected void doneDownload() {
-    log.info("Download of block chain complete");
+    log.info("Download of block chain complete with {}", chainDownloadMeter.getMetrics(System.currentTimeMillis()));
     isDownloading = false;
 
     // Fire that we have completed the sync
@@ -229,12 +295,77 @@ public class MultiBitPeerEventListener implements PeerEventListener {
     CoreEvents.fireBitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadCompleted());
 
     // Then fire the number of connected peers
+    firePeerCount();
+  }
+
+  /**
+   * <p>Copy the best latency measurement for the peer into the address book</p>
+   *
+   * @param peer The peer
+   */
+  public void recordLatency(Peer peer) {
+
+    if (!peerAddressBook.isPresent()) {
+      return;
+    }
+
+    // Prefer our own ping measurements over the bitcoinj moving average
+    Optional<Long> roundTripMillis = peerLatencyTracker.getRoundTripMillis(peer.getAddress());
+    if (roundTripMillis.isPresent()) {
+      peerAddressBook.get().recordLatency(peer.getAddress(), roundTripMillis.get());
+    } else if (peer.getPingTime() < Long.MAX_VALUE) {
+      peerAddressBook.get().recordLatency(peer.getAddress(), peer.getPingTime());
+    }
+
+  }
+
+  /**
+   * Fire the number of connected peers along with the latest ping figures
+   */
+  private void firePeerCount() {
     CoreEvents.fireBitcoinNetworkChangedEvent(
-      BitcoinNetworkSummary.newNetworkPeerCount(numberOfConnectedPeers));
+      BitcoinNetworkSummary.newNetworkPeerCount(
+        numberOfConnectedPeers,
+        peerLatencyTracker.getPercentileMillis(50),
+        peerLatencyTracker.getPercentileMillis(95)
+      ));
+  }
+
+  /**
+   * @return The chain download meter (throughput, estimated time to completion, per-peer rates and stall detection)
+   */
+  public ChainDownloadMeter getChainDownloadMeter() {
+    return chainDownloadMeter;
+  }
+
+  /**
+   * @return A snapshot of the current chain download metrics
+   */
+  public ChainDownloadMetrics getChainDownloadMetrics() {
+    return chainDownloadMeter.getMetrics(System.currentTimeMillis());
   }
 
   public boolean isDownloading() {
     return isDownloading;
   }
+
+  /**
+   * @param message The block or filtered block message
+   *
+   * @return The size of the message in bytes, or zero if it is not known
+   */
+  private long messageSize(Message message) {
+
+    if (message == null) {
+      return 0;
+    }
+
+    try {
+      return message.getMessageSize();
+    } catch (RuntimeException e) {
+      // Length is not always retained for locally constructed messages
+      return 0;
+    }
+  }
 }
 
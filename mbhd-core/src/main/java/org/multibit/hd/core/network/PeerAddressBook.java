@@ -0,0 +1,399 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.net.discovery.PeerDiscovery;
+import org.bitcoinj.net.discovery.PeerDiscoveryException;
+import org.multibit.commons.files.SecureFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Peer discovery to provide the following to the Bitcoin network service:</p>
+ * <ul>
+ * <li>A persistent record of peers seen in previous sessions</li>
+ * <li>Ranking of peers by connection success and latency</li>
+ * <li>Fallback to another discovery mechanism (usually DNS) only when too few good peers are known</li>
+ * </ul>
+ *
+ * <p>Entries are updated from the peer event listener and written to disk when the peer group stops.</p>
+ *
+ * @since 0.5.0
+ */
+public class PeerAddressBook implements PeerDiscovery {
+
+  private static final Logger log = LoggerFactory.getLogger(PeerAddressBook.class);
+
+  /**
+   * The number of proven peers that allows the fallback discovery to be skipped
+   */
+  static final int MINIMUM_KNOWN_GOOD_PEERS = 8;
+
+  /**
+   * The maximum number of entries kept (lowest ranked are dropped first)
+   */
+  static final int MAXIMUM_ENTRIES = 500;
+
+  /**
+   * The maximum number of addresses offered in one discovery
+   */
+  static final int MAXIMUM_PEERS_OFFERED = 50;
+
+  /**
+   * A connection that ends sooner than this is counted as a failure
+   */
+  static final long SHORT_CONNECTION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final String HEADER = "# MultiBit HD peer address book: host,port,connects,failures,latencyMillis,lastConnectedMillis";
+
+  private final File addressBookFile;
+
+  private final Optional<PeerDiscovery> fallbackDiscovery;
+
+  private final Map<InetSocketAddress, Entry> entries = Maps.newHashMap();
+
+  /**
+   * @param addressBookFile   The file holding the address book (created on first save)
+   * @param fallbackDiscovery The discovery to use when too few good peers are known
+   */
+  public PeerAddressBook(File addressBookFile, Optional<PeerDiscovery> fallbackDiscovery) {
+
+    Preconditions.checkNotNull(addressBookFile, "'addressBookFile' must be present");
+    Preconditions.checkNotNull(fallbackDiscovery, "'fallbackDiscovery' must be present");
+
+    this.addressBookFile = addressBookFile;
+    this.fallbackDiscovery = fallbackDiscovery;
+
+    load();
+  }
+
+  @Override
+  public InetSocketAddress[] getPeers(long timeoutValue, TimeUnit timeoutUnit) throws PeerDiscoveryException {
+
+    List<InetSocketAddress> ranked = getRankedAddresses(MAXIMUM_PEERS_OFFERED);
+
+    if (getKnownGoodCount() >= MINIMUM_KNOWN_GOOD_PEERS || !fallbackDiscovery.isPresent()) {
+      log.debug("Offering {} peers from the address book", ranked.size());
+      return ranked.toArray(new InetSocketAddress[ranked.size()]);
+    }
+
+    // Not enough history so supplement with the fallback (ranked peers are tried first)
+    List<InetSocketAddress> combined = Lists.newArrayList(ranked);
+    try {
+      for (InetSocketAddress address : fallbackDiscovery.get().getPeers(timeoutValue, timeoutUnit)) {
+        if (!combined.contains(address)) {
+          combined.add(address);
+        }
+      }
+    } catch (PeerDiscoveryException e) {
+      if (combined.isEmpty()) {
+        throw e;
+      }
+      log.warn("Fallback peer discovery failed, using address book only: {}", e.getMessage());
+    }
+
+    log.debug("Offering {} peers from the address book and fallback discovery", combined.size());
+    return combined.toArray(new InetSocketAddress[combined.size()]);
+  }
+
+  @Override
+  public void shutdown() {
+
+    if (fallbackDiscovery.isPresent()) {
+      fallbackDiscovery.get().shutdown();
+    }
+
+  }
+
+  /**
+   * @param peerAddresses The addresses discovered (not yet connected)
+   */
+  public synchronized void recordDiscovered(Set<PeerAddress> peerAddresses) {
+
+    for (PeerAddress peerAddress : peerAddresses) {
+      Optional<InetSocketAddress> key = toKey(peerAddress);
+      if (key.isPresent() && !entries.containsKey(key.get())) {
+        entries.put(key.get(), new Entry(key.get()));
+      }
+    }
+
+    prune();
+  }
+
+  /**
+   * @param peerAddress The address of the peer that connected
+   * @param nowMillis   The current time
+   */
+  public synchronized void recordConnected(PeerAddress peerAddress, long nowMillis) {
+
+    Optional<Entry> entry = getOrCreateEntry(peerAddress);
+    if (entry.isPresent()) {
+      entry.get().connects++;
+      entry.get().lastConnectedMillis = nowMillis;
+    }
+
+  }
+
+  /**
+   * @param peerAddress The address of the peer that disconnected
+   * @param nowMillis   The current time
+   */
+  public synchronized void recordDisconnected(PeerAddress peerAddress, long nowMillis) {
+
+    Optional<Entry> entry = getOrCreateEntry(peerAddress);
+    if (entry.isPresent() && nowMillis - entry.get().lastConnectedMillis < SHORT_CONNECTION_MILLIS) {
+      // A peer that drops quickly is not worth trying first next time
+      entry.get().failures++;
+    }
+
+  }
+
+  /**
+   * <p>Record a connection attempt that failed before the peer connected (refused, timed out or no handshake)</p>
+   *
+   * <p>Such peers never reach {@link #recordDisconnected(PeerAddress, long)} as a short connection so
+   * would otherwise stay ranked as untried.</p>
+   *
+   * @param peerAddress The address of the peer that could not be connected
+   */
+  public synchronized void recordFailed(PeerAddress peerAddress) {
+
+    Optional<Entry> entry = getOrCreateEntry(peerAddress);
+    if (entry.isPresent()) {
+      entry.get().failures++;
+    }
+
+  }
+
+  /**
+   * @param peerAddress     The peer address
+   * @param roundTripMillis The measured round trip time in milliseconds
+   */
+  public synchronized void recordLatency(PeerAddress peerAddress, long roundTripMillis) {
+
+    Optional<Entry> entry = getOrCreateEntry(peerAddress);
+    if (entry.isPresent() && roundTripMillis >= 0) {
+      entry.get().latencyMillis = roundTripMillis;
+    }
+
+  }
+
+  /**
+   * @param limit The maximum number of addresses to return
+   *
+   * @return The addresses ordered by past connection success and then latency
+   */
+  public synchronized List<InetSocketAddress> getRankedAddresses(int limit) {
+
+    List<Entry> ranked = Lists.newArrayList(entries.values());
+    Collections.sort(ranked, RANKING);
+
+    List<InetSocketAddress> addresses = Lists.newArrayList();
+    for (Entry entry : ranked.subList(0, Math.min(limit, ranked.size()))) {
+      addresses.add(entry.address);
+    }
+
+    return addresses;
+  }
+
+  /**
+   * @param limit The maximum number of addresses to return
+   *
+   * @return The addresses of peers with at least one good connection, best first
+   */
+  public synchronized List<InetSocketAddress> getKnownGoodAddresses(int limit) {
+
+    List<InetSocketAddress> addresses = Lists.newArrayList();
+    for (InetSocketAddress address : getRankedAddresses(limit)) {
+      Entry entry = entries.get(address);
+      if (entry.connects > entry.failures) {
+        addresses.add(address);
+      }
+    }
+
+    return addresses;
+  }
+
+  /**
+   * <p>Write the address book atomically</p>
+   */
+  public synchronized void save() {
+
+    StringBuilder sb = new StringBuilder(HEADER).append('\n');
+    for (Entry entry : entries.values()) {
+      sb.append(entry.address.getAddress().getHostAddress()).append(',')
+        .append(entry.address.getPort()).append(',')
+        .append(entry.connects).append(',')
+        .append(entry.failures).append(',')
+        .append(entry.latencyMillis).append(',')
+        .append(entry.lastConnectedMillis).append('\n');
+    }
+
+    File temporaryFile = new File(addressBookFile.getAbsolutePath() + ".tmp");
+    try {
+      SecureFiles.writeFile(new ByteArrayInputStream(sb.toString().getBytes(Charsets.UTF_8)), temporaryFile, addressBookFile);
+      log.debug("Saved {} peers to the address book", entries.size());
+    } catch (IOException e) {
+      // Not fatal since DNS discovery remains available
+      log.warn("Peer address book could not be written: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * @return The number of entries in the address book
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private void load() {
+
+    if (!addressBookFile.exists()) {
+      return;
+    }
+
+    try {
+      for (String line : Files.readLines(addressBookFile, Charsets.UTF_8)) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        try {
+          List<String> fields = Lists.newArrayList(Splitter.on(',').trimResults().split(line));
+          // Literal IP addresses only so no DNS lookup occurs
+          InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(fields.get(0)), Integer.parseInt(fields.get(1)));
+          Entry entry = new Entry(address);
+          entry.connects = Integer.parseInt(fields.get(2));
+          entry.failures = Integer.parseInt(fields.get(3));
+          entry.latencyMillis = Long.parseLong(fields.get(4));
+          entry.lastConnectedMillis = Long.parseLong(fields.get(5));
+          entries.put(address, entry);
+        } catch (IOException | RuntimeException e) {
+          log.debug("Skipping unreadable peer address book line '{}'", line);
+        }
+      }
+      log.debug("Loaded {} peers from the address book", entries.size());
+    } catch (IOException e) {
+      log.warn("Peer address book could not be read: {}", e.getMessage());
+    }
+
+  }
+
+  private int getKnownGoodCount() {
+
+    int count = 0;
+    synchronized (this) {
+      for (Entry entry : entries.values()) {
+        if (entry.connects > entry.failures) {
+          count++;
+        }
+      }
+    }
+
+    return count;
+  }
+
+  private Optional<Entry> getOrCreateEntry(PeerAddress peerAddress) {
+
+    Optional<InetSocketAddress> key = toKey(peerAddress);
+    if (!key.isPresent()) {
+      return Optional.absent();
+    }
+
+    Entry entry = entries.get(key.get());
+    if (entry == null) {
+      entry = new Entry(key.get());
+      entries.put(key.get(), entry);
+      prune();
+    }
+
+    return Optional.of(entry);
+  }
+
+  private void prune() {
+
+    if (entries.size() <= MAXIMUM_ENTRIES) {
+      return;
+    }
+
+    List<Entry> ranked = Lists.newArrayList(entries.values());
+    Collections.sort(ranked, RANKING);
+    for (Entry entry : ranked.subList(MAXIMUM_ENTRIES, ranked.size())) {
+      entries.remove(entry.address);
+    }
+
+  }
+
+  private static Optional<InetSocketAddress> toKey(PeerAddress peerAddress) {
+
+    if (peerAddress == null || peerAddress.getAddr() == null) {
+      return Optional.absent();
+    }
+
+    return Optional.of(new InetSocketAddress(peerAddress.getAddr(), peerAddress.getPort()));
+  }
+
+  /**
+   * Orders by success rate (smoothed so untried peers sit in the middle), then latency, then recency
+   */
+  private static final Comparator<Entry> RANKING = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry o1, Entry o2) {
+
+      int successSort = Double.compare(o2.successRate(), o1.successRate());
+      if (successSort != 0) {
+        return successSort;
+      }
+
+      int latencySort = Long.compare(o1.latencyOrMax(), o2.latencyOrMax());
+      if (latencySort != 0) {
+        return latencySort;
+      }
+
+      return Long.compare(o2.lastConnectedMillis, o1.lastConnectedMillis);
+    }
+  };
+
+  /**
+   * <p>Mutable address book entry (guarded by the address book)</p>
+   */
+  private static class Entry {
+
+    private final InetSocketAddress address;
+    private int connects = 0;
+    private int failures = 0;
+    private long latencyMillis = -1;
+    private long lastConnectedMillis = 0;
+
+    private Entry(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    private double successRate() {
+      return (connects - failures + 1.0) / (connects + 2.0);
+    }
+
+    private long latencyOrMax() {
+      return latencyMillis < 0 ? Long.MAX_VALUE : latencyMillis;
+    }
+  }
+
+}
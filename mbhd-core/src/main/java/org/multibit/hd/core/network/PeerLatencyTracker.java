@@ -0,0 +1,143 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Tracker to provide the following to the Bitcoin network service:</p>
+ * <ul>
+ * <li>Smoothed round trip time for each peer that has answered a ping</li>
+ * <li>Percentiles over recent pings across all peers</li>
+ * <li>Ordering of peers by latency (lowest first)</li>
+ * </ul>
+ *
+ * <p>Thread safe since pings complete on the network threads.</p>
+ *
+ * @since 0.5.0
+ */
+public class PeerLatencyTracker {
+
+  /**
+   * The number of recent samples used for percentiles
+   */
+  static final int SAMPLE_WINDOW = 128;
+
+  /**
+   * The weight given to a new sample in the per-peer moving average
+   */
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  private final ConcurrentMap<PeerAddress, Long> roundTripMillis = new ConcurrentHashMap<>();
+
+  private final long[] samples = new long[SAMPLE_WINDOW];
+  private int sampleCount = 0;
+  private int nextSample = 0;
+
+  /**
+   * @param peerAddress     The peer address
+   * @param roundTripMillis The measured round trip time in milliseconds
+   */
+  public void record(PeerAddress peerAddress, long roundTripMillis) {
+
+    Preconditions.checkNotNull(peerAddress, "'peerAddress' must be present");
+    Preconditions.checkState(roundTripMillis >= 0, "'roundTripMillis' must not be negative");
+
+    // Smooth out jitter so that a single slow ping does not demote a good peer
+    Long previous = this.roundTripMillis.get(peerAddress);
+    long smoothed = previous == null ? roundTripMillis : Math.round(SMOOTHING_FACTOR * roundTripMillis + (1 - SMOOTHING_FACTOR) * previous);
+    this.roundTripMillis.put(peerAddress, smoothed);
+
+    synchronized (samples) {
+      samples[nextSample] = roundTripMillis;
+      nextSample = (nextSample + 1) % SAMPLE_WINDOW;
+      sampleCount = Math.min(sampleCount + 1, SAMPLE_WINDOW);
+    }
+
+  }
+
+  /**
+   * @param peerAddress The peer address
+   *
+   * @return The smoothed round trip time in milliseconds if the peer has answered a ping
+   */
+  public Optional<Long> getRoundTripMillis(PeerAddress peerAddress) {
+    return Optional.fromNullable(roundTripMillis.get(peerAddress));
+  }
+
+  /**
+   * @param percentile The percentile (e.g. 95)
+   *
+   * @return The round trip time in milliseconds at the given percentile of recent pings, absent if no pings have been recorded
+   */
+  public Optional<Long> getPercentileMillis(int percentile) {
+
+    Preconditions.checkState(percentile > 0 && percentile <= 100, "'percentile' must be in the range 1 to 100");
+
+    final long[] sorted;
+    synchronized (samples) {
+      if (sampleCount == 0) {
+        return Optional.absent();
+      }
+      sorted = Arrays.copyOf(samples, sampleCount);
+    }
+    Arrays.sort(sorted);
+
+    // Nearest rank method
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+
+    return Optional.of(sorted[Math.max(rank, 1) - 1]);
+  }
+
+  /**
+   * @param peers The peers to order
+   *
+   * @return A new list of the peers ordered by latency (peers without a measurement last, in their original order)
+   */
+  public List<Peer> sortByLatency(List<Peer> peers) {
+
+    List<Peer> sortedPeers = Lists.newArrayList(peers);
+    Collections.sort(sortedPeers, new Comparator<Peer>() {
+      @Override
+      public int compare(Peer o1, Peer o2) {
+        return Long.compare(roundTripOrMax(o1), roundTripOrMax(o2));
+      }
+    });
+
+    return sortedPeers;
+  }
+
+  /**
+   * @param peerAddress The peer address to forget (e.g. on disconnect)
+   */
+  public void remove(PeerAddress peerAddress) {
+    roundTripMillis.remove(peerAddress);
+  }
+
+  /**
+   * <p>Forget all measurements (e.g. on network restart)</p>
+   */
+  public void clear() {
+
+    roundTripMillis.clear();
+    synchronized (samples) {
+      sampleCount = 0;
+      nextSample = 0;
+    }
+
+  }
+
+  private long roundTripOrMax(Peer peer) {
+    return getRoundTripMillis(peer.getAddress()).or(Long.MAX_VALUE);
+  }
+
+}
@@ -1,8 +1,15 @@
 package org.multibit.hd.core.services;
 
 import com.google.common.base.Optional;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableScheduledFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.multibit.commons.utils.Dates;
 import org.multibit.hd.core.dto.*;
+import org.multibit.hd.core.events.BitcoinNetworkChangedEvent;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.managers.BackupManager;
@@ -10,7 +17,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * <p>Service to provide the following to application API:</p>
@@ -29,29 +41,33 @@ import java.util.concurrent.TimeUnit;
  * make a save at MBHD exit
  * <p/>
  * <p/>
+ * Each wallet save remembers the wallet for the next backup of each tier. A backup is only
+ * scheduled once something has been remembered so an idle wallet causes no backup I/O.
+ * <p/>
+ * <p/>
  * Rolling backups
  * <p/>
- * make saves every 2 minutes
- * make first save 1 minutes after MBHD start (most likely after initial sync)
+ * make saves at most every 2 minutes
+ * make first save 1 minute after MBHD start (most likely after initial sync)
  * make a save at MBHD exit
  * <p/>
  * <p/>
  * Local zip backups
  * <p/>
- * make saves every 10 minutes
- * make first save 1 minutes after MBHD start
+ * make saves at most every 10 minutes
+ * make first save 1 minute after MBHD start
  * make a save at MBHD exit
  * <p/>
  * <p/>
  * Cloud backups
  * <p/>
- * make saves every 30 minutes
- * make first save 1 minutes after MBHD start
+ * make saves at most every 30 minutes
+ * make first save 1 minute after MBHD start
  * make a save at MBHD exit
  * <p/>
  * <p/>
- * Do not bother tracking if the wallet is dirty, this only really affects the rolling backups and
- * is not worth the bother of writing a wallet extension to track it.
+ * While the block chain is downloading backups are deferred (the wallet changes with almost every
+ * block) but never for longer than the maximum interval of the tier after the first unsaved change.
  *
  * @since 0.0.1
  */
@@ -66,32 +82,80 @@ public class BackupService extends AbstractService {
   private static final int INITIAL_DELAY = 60;
 
   /**
-   * This is the fastest tick in seconds used for the backup scheduler
-   * Everything else is done on a multiple of this
+   * The delay in seconds after a change before a backup so that bursts of saves are coalesced
    */
-  private static final int TICK_TIME_SECONDS = 12;
+  private static final int SETTLE_DELAY_SECONDS = 10;
 
   /**
-    * The slowdown rate for performing rolling backups
-    */
-   private static final int ROLLING_BACKUP_MODULO = 10;
+   * The period in seconds between checks on whether a deferred backup can proceed
+   */
+  private static final int DEFERRED_RECHECK_SECONDS = 30;
 
+  /**
+   * The maximum time in seconds to wait for the backups made at shutdown
+   */
+  private static final int SHUTDOWN_BACKUP_TIMEOUT_SECONDS = 30;
 
   /**
-   * The slowdown rate for performing local zip backups
+   * The executor provided for testing (otherwise a single low priority backup thread)
    */
-  private static final int LOCAL_ZIP_BACKUP_MODULO = 50;
+  private final Optional<ListeningScheduledExecutorService> providedExecutorService;
+
+  /**
+   * The maximum time to wait for the backups made at shutdown
+   */
+  private final long shutdownBackupTimeoutMillis;
+
+  /**
+   * <p>The backup tiers with the minimum interval between backups and the maximum
+   * deferral of a change during chain download</p>
+   */
+  private enum Tier {
+
+    ROLLING(2, 10),
+    LOCAL_ZIP(10, 30),
+    CLOUD_ZIP(30, 60),
+
+    // End of enum
+    ;
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    Tier(int minIntervalMinutes, int maxIntervalMinutes) {
+      this.minIntervalMillis = TimeUnit.MINUTES.toMillis(minIntervalMinutes);
+      this.maxIntervalMillis = TimeUnit.MINUTES.toMillis(maxIntervalMinutes);
+    }
+  }
 
   /**
-   * The slowdown rate for performing cloud zip backups
+   * <p>Schedule state for a single tier (guarded by the service)</p>
    */
-  private static final int CLOUD_ZIP_BACKUP_MODULO = 150;
+  private static class TierSchedule {
+
+    /**
+     * Incremented each time the tier is given something new to back up
+     */
+    private long generation = 0;
+
+    private long lastBackupMillis = -1;
+
+    /**
+     * The time of the first change not yet backed up, or -1 if none
+     */
+    private long firstChangeMillis = -1;
+
+    private boolean immediate = false;
+
+    private Optional<ListenableScheduledFuture<?>> pending = Optional.absent();
+  }
+
+  private final Map<Tier, TierSchedule> schedules = new EnumMap<>(Tier.class);
 
   /**
-   * The number of times the backup main loop has incremented
-   * We expect this service to be a singleton
+   * The time the service started (backups are held back until the initial delay has passed)
    */
-  private int tickCount;
+  private long startMillis = -1;
 
   /**
    * The wallet summary to use for the next rolling backup
@@ -126,62 +190,74 @@ public class BackupService extends AbstractService {
   /**
    * Whether backups are enabled or not
    */
-  private boolean backupsAreEnabled = true;
+  private volatile boolean backupsAreEnabled = true;
 
   /**
    * Whether backups are currently being performed
    */
-  private boolean backupsAreRunning = false;
+  private volatile boolean backupsAreRunning = false;
 
   /**
-   * Whether a cloud backup should be performed at the next tick
+   * Whether the block chain is downloading (backups are deferred)
    */
-  private boolean performCloudBackupAtNextTick = false;
+  private volatile boolean chainDownloading = false;
 
-  @Override
-  protected boolean startInternal() {
+  public BackupService() {
 
-    // The first tick (at time INITIAL_DELAY seconds) all of a rolling backup,
-    // local backup and a cloud backup
-    // The users copy of MBHD will most likely be fully synchronised by then
-    tickCount = 0;
+    this(Optional.<ListeningScheduledExecutorService>absent(), TimeUnit.SECONDS.toMillis(SHUTDOWN_BACKUP_TIMEOUT_SECONDS));
 
-    // Use the provided executor service management
-    requireSingleThreadScheduledExecutor("backup");
+  }
 
-    // Use the provided executor service management
-    getScheduledExecutorService().scheduleAtFixedRate(
-      new Runnable() {
-        public void run() {
-          backupsAreRunning = true;
-          try {
-            // Main backup loop
-            //log.debug("The tickCount is {}", tickCount);
+  /**
+   * <p>Testing only: run the schedule on the given executor (timings follow the Joda clock)</p>
+   *
+   * @param executorService             The executor to run the backups on
+   * @param shutdownBackupTimeoutMillis The maximum time to wait for the backups made at shutdown
+   */
+  BackupService(ListeningScheduledExecutorService executorService, long shutdownBackupTimeoutMillis) {
 
-            // A rolling backup is performed every ROLLING_BACKUP_MODULO tick
-            if (backupsAreEnabled  && tickCount % ROLLING_BACKUP_MODULO == 0) {
-              performRollingBackup();
-            }
+    this(Optional.of(executorService), shutdownBackupTimeoutMillis);
 
-            // Local zip backups are done every LOCAL_ZIP_BACKUP_MODULO number of ticks
-            if (backupsAreEnabled && tickCount % LOCAL_ZIP_BACKUP_MODULO == 0) {
-              performLocalZipBackup();
-            }
+  }
 
-            // Check if a cloud zip backup is required
-            // Cloud backups are done every CLOUD_ZIP_BACKUP_MODULO number of ticks or if the performCloudBackupAtNextTick is set
-            if (backupsAreEnabled && (tickCount % CLOUD_ZIP_BACKUP_MODULO == 0 || performCloudBackupAtNextTick)) {
-              performCloudBackupAtNextTick = false;
-              performCloudZipBackup();
-            }
+  private BackupService(Optional<ListeningScheduledExecutorService> providedExecutorService, long shutdownBackupTimeoutMillis) {
+
+    this.providedExecutorService = providedExecutorService;
+    this.shutdownBackupTimeoutMillis = shutdownBackupTimeoutMillis;
+
+    for (Tier tier : Tier.values()) {
+      schedules.put(tier, new TierSchedule());
+    }
+
+  }
+
+  @Override
+  protected boolean startInternal() {
 
-          } finally {
-            tickCount++;
-            backupsAreRunning = false;
+    if (!providedExecutorService.isPresent()) {
+      // Use the provided executor service management
+      requireSingleThreadScheduledExecutor("backup");
+
+      // Backups should not compete with the user or the chain download for disk
+      getScheduledExecutorService().submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
           }
+        });
+    }
+
+    synchronized (this) {
+      startMillis = Dates.nowUtc().getMillis();
+
+      // Anything remembered before the start is backed up after the initial delay
+      for (Tier tier : Tier.values()) {
+        if (isRemembered(tier)) {
+          onChange(tier);
         }
       }
-      , INITIAL_DELAY, TICK_TIME_SECONDS, TimeUnit.SECONDS);
+    }
 
     return true;
   }
@@ -195,30 +271,20 @@ public class BackupService extends AbstractService {
         // A hard shutdown does not give enough time to wait gracefully
         break;
       case SOFT:
-        // A soft shutdown occurs during FEST testing so the backups may not be running
-        if (isBackupsAreRunning()) {
+        // A soft shutdown occurs during FEST testing so the backups may not have started
+        if (startMillis >= 0) {
           log.debug("Performing backups at shutdown");
 
           // Disable any new backups
           this.setBackupsAreEnabled(false);
 
-          getScheduledExecutorService().schedule(
-            new Runnable() {
-              public void run() {
-                // Wait for any current backups to complete
-                while (isBackupsAreRunning()) {
-                  Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
-                }
-
-                performRollingBackup();
-
-                performLocalZipBackup();
-
-                performCloudZipBackup();
-
-              }
-
-            }, 0, TimeUnit.MILLISECONDS);
+          // The single backup thread runs this after any backup in progress
+          ListenableFuture<Boolean> shutdownBackups = flushPendingBackups();
+          try {
+            Uninterruptibles.getUninterruptibly(shutdownBackups, shutdownBackupTimeoutMillis, TimeUnit.MILLISECONDS);
+          } catch (ExecutionException | TimeoutException e) {
+            log.warn("Backups at shutdown did not complete: {}", e.getMessage());
+          }
         }
         break;
       case SWITCH:
@@ -230,96 +296,370 @@ public class BackupService extends AbstractService {
 
   }
 
+  /**
+   * <p>Perform all remembered backups now regardless of the tier intervals</p>
+   *
+   * @return A future completing when the backups have been attempted
+   */
+  public ListenableFuture<Boolean> flushPendingBackups() {
+
+    synchronized (this) {
+      for (TierSchedule schedule : schedules.values()) {
+        cancelPending(schedule);
+      }
+    }
+
+    try {
+      return getBackupExecutorService().submit(
+        new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            for (Tier tier : Tier.values()) {
+              performBackup(tier);
+            }
+            return true;
+          }
+        });
+    } catch (RuntimeException e) {
+      // The executor has already stopped
+      return Futures.immediateFuture(false);
+    }
+  }
+
+  /**
+   * @param event The Bitcoin network changed event
+   */
+  @Subscribe
+  public void onBitcoinNetworkChangedEvent(BitcoinNetworkChangedEvent event) {
+
+    BitcoinNetworkStatus status = event.getSummary().getStatus();
+    if (status != null && !RAGStatus.EMPTY.equals(event.getSummary().getSeverity())) {
+      // Peer count notifications say nothing about the download
+      chainDownloading = BitcoinNetworkStatus.DOWNLOADING_BLOCKCHAIN.equals(status);
+    }
+
+  }
+
   /**
    * Remember a wallet summary and credentials.
    * This will be used at the next rolling backup.
    */
   public void rememberWalletSummaryAndPasswordForRollingBackup(WalletSummary walletSummary, CharSequence password) {
-    rememberedWalletSummaryForRollingBackup = Optional.of(walletSummary);
-    rememberedPasswordForRollingBackup = Optional.of(password);
+    synchronized (this) {
+      rememberedWalletSummaryForRollingBackup = Optional.of(walletSummary);
+      rememberedPasswordForRollingBackup = Optional.of(password);
+      onChange(Tier.ROLLING);
+    }
   }
 
   /**
-   * Perform a rolling backup using the last remembered wallet summary and credentials
+   * Remember a wallet id and credentials.
+   * This will be used at the next local zip backup.
    */
-  private void performRollingBackup() {
-    if (rememberedWalletSummaryForRollingBackup.isPresent() && rememberedPasswordForRollingBackup.isPresent()) {
-      log.debug("Performing a rolling backup");
+  public void rememberWalletIdAndPasswordForLocalZipBackup(WalletId walletId, CharSequence password) {
+    synchronized (this) {
+      rememberedWalletIdForLocalBackup = Optional.of(walletId);
+      rememberedPasswordForLocalBackup = Optional.of(password);
+      onChange(Tier.LOCAL_ZIP);
+    }
+  }
 
-      try {
-        BackupManager.INSTANCE.createRollingBackup(rememberedWalletSummaryForRollingBackup.get(), rememberedPasswordForRollingBackup.get());
+  /**
+   * Remember a wallet id and credentials.
+   * This will be used at the next cloud zip backup.
+   */
+  public void rememberWalletIdAndPasswordForCloudZipBackup(WalletId walletId, CharSequence password) {
+    synchronized (this) {
+      rememberedWalletIdForCloudBackup = Optional.of(walletId);
+      rememberedPasswordForCloudBackup = Optional.of(password);
+      onChange(Tier.CLOUD_ZIP);
+    }
+  }
 
-        // Don't use anything remembered in the past at this point again
-        // (This will miss anything newly remembered whilst the backup is taking place
-        rememberedWalletSummaryForRollingBackup = Optional.absent();
-        rememberedPasswordForRollingBackup = Optional.absent();
-      } catch (IOException ioe) {
-        log.error("Failed to perform rolling backup", ioe);
-        // TODO handle exception (which is thrown inside the main runnable)
+  /**
+   * <p>Record a change to a tier and schedule its backup if one is not already pending (requires the service lock)</p>
+   *
+   * @param tier The tier with something new to back up
+   */
+  private void onChange(Tier tier) {
+
+    TierSchedule schedule = schedules.get(tier);
+    schedule.generation++;
+    if (schedule.firstChangeMillis < 0) {
+      schedule.firstChangeMillis = Dates.nowUtc().getMillis();
+    }
+
+    schedule(tier, schedule);
+
+  }
+
+  /**
+   * <p>Schedule the next backup of the tier if it is due one (requires the service lock)</p>
+   */
+  private void schedule(final Tier tier, TierSchedule schedule) {
+
+    if (startMillis < 0 || !backupsAreEnabled || schedule.pending.isPresent() || !isRemembered(tier)) {
+      return;
+    }
+
+    long nowMillis = Dates.nowUtc().getMillis();
+    long dueMillis = schedule.immediate
+      ? nowMillis
+      : Math.max(
+      Math.max(startMillis + TimeUnit.SECONDS.toMillis(INITIAL_DELAY), nowMillis + TimeUnit.SECONDS.toMillis(SETTLE_DELAY_SECONDS)),
+      schedule.lastBackupMillis < 0 ? 0 : schedule.lastBackupMillis + tier.minIntervalMillis
+    );
+
+    try {
+      schedule.pending = Optional.<ListenableScheduledFuture<?>>of(
+        getBackupExecutorService().schedule(
+          new Runnable() {
+            @Override
+            public void run() {
+              runScheduled(tier);
+            }
+          }, dueMillis - nowMillis, TimeUnit.MILLISECONDS));
+    } catch (RuntimeException e) {
+      // The executor has stopped so the shutdown backups will cover this change
+      log.debug("Backup not scheduled: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * <p>Run a scheduled backup of the tier on the backup thread unless it should be deferred</p>
+   */
+  private void runScheduled(final Tier tier) {
+
+    synchronized (this) {
+      TierSchedule schedule = schedules.get(tier);
+      schedule.pending = Optional.absent();
+
+      if (!backupsAreEnabled) {
+        return;
+      }
+
+      long nowMillis = Dates.nowUtc().getMillis();
+      long deferralLimitMillis = schedule.firstChangeMillis + tier.maxIntervalMillis;
+      if (chainDownloading && !schedule.immediate && nowMillis < deferralLimitMillis) {
+        long recheckMillis = Math.min(TimeUnit.SECONDS.toMillis(DEFERRED_RECHECK_SECONDS), deferralLimitMillis - nowMillis);
+        log.trace("Deferring {} backup during chain download", tier);
+        schedule.pending = Optional.<ListenableScheduledFuture<?>>of(
+          getBackupExecutorService().schedule(
+            new Runnable() {
+              @Override
+              public void run() {
+                runScheduled(tier);
+              }
+            }, recheckMillis, TimeUnit.MILLISECONDS));
+        return;
       }
     }
+
+    performBackup(tier);
+
   }
 
   /**
-   * Remember a wallet id and credentials.
-   * This will be used at the next local zip backup.
+   * <p>Back up the tier if anything has been remembered then schedule again if more has arrived since (backup thread only)</p>
    */
-  public void rememberWalletIdAndPasswordForLocalZipBackup(WalletId walletId, CharSequence password) {
-    rememberedWalletIdForLocalBackup = Optional.of(walletId);
-    rememberedPasswordForLocalBackup = Optional.of(password);
+  private void performBackup(Tier tier) {
+
+    final long generation;
+    synchronized (this) {
+      generation = schedules.get(tier).generation;
+    }
+
+    backupsAreRunning = true;
+    boolean performed;
+    try {
+      switch (tier) {
+        case ROLLING:
+          performed = performRollingBackup(generation);
+          break;
+        case LOCAL_ZIP:
+          performed = performLocalZipBackup(generation);
+          break;
+        case CLOUD_ZIP:
+          performed = performCloudZipBackup(generation);
+          break;
+        default:
+          throw new IllegalStateException("Unsupported tier: " + tier.name());
+      }
+    } finally {
+      backupsAreRunning = false;
+    }
+
+    synchronized (this) {
+      TierSchedule schedule = schedules.get(tier);
+      if (performed || isRemembered(tier)) {
+        // A failed backup also waits for the minimum interval before trying again
+        schedule.lastBackupMillis = Dates.nowUtc().getMillis();
+        schedule.immediate = false;
+      }
+      if (isRemembered(tier)) {
+        // Changes arrived during the backup (or it failed) so go again after the minimum interval
+        schedule.firstChangeMillis = Dates.nowUtc().getMillis();
+        schedule(tier, schedule);
+      } else {
+        schedule.firstChangeMillis = -1;
+      }
+    }
+
   }
 
   /**
-   * Perform a local zip backup
+   * Perform a rolling backup using the last remembered wallet summary and credentials
+   *
+   * @param generation The generation of the remembered details being backed up
+   *
+   * @return True if a backup was made
    */
-  private void performLocalZipBackup() {
-    if (rememberedWalletIdForLocalBackup.isPresent() && rememberedPasswordForLocalBackup.isPresent()) {
-      log.debug("Performing a local zip backup");
+  private boolean performRollingBackup(long generation) {
+
+    final WalletSummary walletSummary;
+    final CharSequence password;
+    synchronized (this) {
+      if (!rememberedWalletSummaryForRollingBackup.isPresent() || !rememberedPasswordForRollingBackup.isPresent()) {
+        return false;
+      }
+      walletSummary = rememberedWalletSummaryForRollingBackup.get();
+      password = rememberedPasswordForRollingBackup.get();
+    }
 
-      try {
-        BackupManager.INSTANCE.createLocalBackup(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get());
+    log.debug("Performing a rolling backup");
+    try {
+      BackupManager.INSTANCE.createRollingBackup(walletSummary, password);
+    } catch (IOException ioe) {
+      log.error("Failed to perform rolling backup", ioe);
+      return false;
+    }
 
-        // Don't use anything remembered in the past at this point again
-        // (This will miss anything newly remembered whilst the backup is taking place
-        rememberedWalletIdForLocalBackup = Optional.absent();
-        rememberedPasswordForLocalBackup = Optional.absent();
-      } catch (IOException ioe) {
-        log.error("Failed to perform local backup", ioe);
-        // TODO handle exception (which is thrown inside the main runnable)
+    synchronized (this) {
+      // Keep anything newly remembered whilst the backup was taking place
+      if (schedules.get(Tier.ROLLING).generation == generation) {
+        rememberedWalletSummaryForRollingBackup = Optional.absent();
+        rememberedPasswordForRollingBackup = Optional.absent();
       }
     }
+
+    return true;
   }
 
   /**
-   * Remember a wallet id and credentials.
-   * This will be used at the next cloud zip backup.
+   * Perform a local zip backup
+   *
+   * @param generation The generation of the remembered details being backed up
+   *
+   * @return True if a backup was made
    */
-  public void rememberWalletIdAndPasswordForCloudZipBackup(WalletId walletId, CharSequence password) {
-    rememberedWalletIdForCloudBackup = Optional.of(walletId);
-    rememberedPasswordForCloudBackup = Optional.of(password);
+  private boolean performLocalZipBackup(long generation) {
+
+    final WalletId walletId;
+    final CharSequence password;
+    synchronized (this) {
+      if (!rememberedWalletIdForLocalBackup.isPresent() || !rememberedPasswordForLocalBackup.isPresent()) {
+        return false;
+      }
+      walletId = rememberedWalletIdForLocalBackup.get();
+      password = rememberedPasswordForLocalBackup.get();
+    }
+
+    log.debug("Performing a local zip backup");
+    try {
+      BackupManager.INSTANCE.createLocalBackup(walletId, password);
+    } catch (IOException ioe) {
+      log.error("Failed to perform local backup", ioe);
+      return false;
+    }
+
+    synchronized (this) {
+      // Keep anything newly remembered whilst the backup was taking place
+      if (schedules.get(Tier.LOCAL_ZIP).generation == generation) {
+        rememberedWalletIdForLocalBackup = Optional.absent();
+        rememberedPasswordForLocalBackup = Optional.absent();
+      }
+    }
+
+    return true;
   }
 
   /**
    * Perform a cloud zip backup
+   *
+   * @param generation The generation of the remembered details being backed up
+   *
+   * @return True if a backup was made
    */
-  private void performCloudZipBackup() {
-    if (rememberedWalletIdForCloudBackup.isPresent() && rememberedPasswordForCloudBackup.isPresent()) {
-      log.debug("Performing a cloud zip backup");
+  private boolean performCloudZipBackup(long generation) {
+
+    final WalletId walletId;
+    final CharSequence password;
+    synchronized (this) {
+      if (!rememberedWalletIdForCloudBackup.isPresent() || !rememberedPasswordForCloudBackup.isPresent()) {
+        log.debug("Cannot perform cloud backup as no remembered wallet id or password is available");
+        return false;
+      }
+      walletId = rememberedWalletIdForCloudBackup.get();
+      password = rememberedPasswordForCloudBackup.get();
+    }
 
-      try {
-        BackupManager.INSTANCE.createCloudBackup(rememberedWalletIdForCloudBackup.get(), rememberedPasswordForCloudBackup.get());
+    log.debug("Performing a cloud zip backup");
+    try {
+      BackupManager.INSTANCE.createCloudBackup(walletId, password);
+    } catch (IOException ioe) {
+      log.error("Failed to perform cloud backup", ioe);
+      CoreEvents.fireEnvironmentEvent(EnvironmentSummary.newBackupFailed());
+      return false;
+    }
 
-        // Don't use anything remembered in the past at this point again
-        // (This will miss anything newly remembered whilst the backup is taking place
+    synchronized (this) {
+      // Keep anything newly remembered whilst the backup was taking place
+      if (schedules.get(Tier.CLOUD_ZIP).generation == generation) {
         rememberedWalletIdForCloudBackup = Optional.absent();
         rememberedPasswordForCloudBackup = Optional.absent();
-      } catch (IOException ioe) {
-        log.error("Failed to perform cloud backup", ioe);
-        CoreEvents.fireEnvironmentEvent(EnvironmentSummary.newBackupFailed());
       }
-    } else {
-      log.debug("Cannot perform cloud backup as no remembered wallet id or password is available");
     }
+
+    return true;
+  }
+
+  /**
+   * @return True if the tier has something to back up (requires the service lock)
+   */
+  private boolean isRemembered(Tier tier) {
+
+    switch (tier) {
+      case ROLLING:
+        return rememberedWalletSummaryForRollingBackup.isPresent() && rememberedPasswordForRollingBackup.isPresent();
+      case LOCAL_ZIP:
+        return rememberedWalletIdForLocalBackup.isPresent() && rememberedPasswordForLocalBackup.isPresent();
+      case CLOUD_ZIP:
+        return rememberedWalletIdForCloudBackup.isPresent() && rememberedPasswordForCloudBackup.isPresent();
+      default:
+        throw new IllegalStateException("Unsupported tier: " + tier.name());
+    }
+  }
+
+  /**
+   * @return The executor running the backups
+   */
+  private ListeningScheduledExecutorService getBackupExecutorService() {
+
+    return providedExecutorService.isPresent() ? providedExecutorService.get() : getScheduledExecutorService();
+
+  }
+
+  /**
+   * <p>Cancel a scheduled backup (requires the service lock)</p>
+   */
+  private void cancelPending(TierSchedule schedule) {
+
+    if (schedule.pending.isPresent()) {
+      schedule.pending.get().cancel(false);
+      schedule.pending = Optional.absent();
+    }
+
   }
 
   /**
@@ -330,19 +670,46 @@ public class BackupService extends AbstractService {
    * @param backupsAreEnabled whether backups should be performed (true) or not (false)
    */
   public void setBackupsAreEnabled(boolean backupsAreEnabled) {
+
     this.backupsAreEnabled = backupsAreEnabled;
+
+    synchronized (this) {
+      for (Map.Entry<Tier, TierSchedule> entry : schedules.entrySet()) {
+        if (backupsAreEnabled) {
+          schedule(entry.getKey(), entry.getValue());
+        } else {
+          cancelPending(entry.getValue());
+        }
+      }
+    }
+
   }
 
   /**
-   * Indicates whether backups are currently running in the main scheduled loop
+   * Indicates whether backups are currently running on the backup thread
    *
-   * @return true if a backup is running in the main scheduled loop
+   * @return true if a backup is running on the backup thread
    */
   public boolean isBackupsAreRunning() {
     return backupsAreRunning;
   }
 
+  /**
+   * <p>Request a cloud backup as soon as possible (e.g. after the cloud backup location changes)</p>
+   *
+   * @param performCloudBackupAtNextTick True to bypass the minimum interval for the next cloud backup
+   */
   public void setPerformCloudBackupAtNextTick(boolean performCloudBackupAtNextTick) {
-    this.performCloudBackupAtNextTick = performCloudBackupAtNextTick;
+
+    synchronized (this) {
+      TierSchedule schedule = schedules.get(Tier.CLOUD_ZIP);
+      schedule.immediate = performCloudBackupAtNextTick;
+      if (performCloudBackupAtNextTick) {
+        // Bring forward any backup already scheduled
+        cancelPending(schedule);
+        schedule(Tier.CLOUD_ZIP, schedule);
+      }
+    }
+
   }
-}
\ No newline at end of file
+}
@@ -3,23 +3,24 @@ package org.multibit.hd.core.services;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.bitcoinj.core.*;
 import org.bitcoinj.crypto.ChildNumber;
-import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.KeyCrypterException;
 import org.bitcoinj.crypto.TransactionSignature;
 import org.bitcoinj.net.discovery.DnsDiscovery;
-import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.net.discovery.PeerDiscovery;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
-import org.bitcoinj.wallet.DeterministicKeyChain;
 import org.bitcoinj.wallet.KeyChain;
 import org.joda.time.DateTime;
 import org.multibit.commons.files.SecureFiles;
@@ -29,23 +30,36 @@ import org.multibit.hd.core.events.*;
 import org.multibit.hd.core.managers.BlockStoreManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.network.BloomFilterManager;
+import org.multibit.hd.core.network.DownloadStallDetector;
 import org.multibit.hd.core.network.MultiBitPeerEventListener;
+import org.multibit.hd.core.network.PeerAddressBook;
+import org.multibit.hd.core.network.PeerLatencyTracker;
 import org.multibit.hd.core.utils.Coins;
+import org.multibit.hd.core.wallet.HardwareSigningSession;
+import org.multibit.hd.core.wallet.IndexedCoinSelector;
+import org.multibit.hd.core.wallet.KeyPathIndex;
+import org.multibit.hd.core.wallet.UtxoIndex;
 import org.multibit.hd.hardware.core.HardwareWalletService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.swing.*;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Service to provide access to the Bitcoin network, including:</p>
@@ -73,6 +87,14 @@ public class BitcoinNetworkService extends AbstractService {
 
   private static int NUMBER_OF_PEERS_TO_PING = 2;
 
+  /**
+   * The interval between checks of the chain download progress
+   */
+  private static final int DOWNLOAD_WATCHDOG_INTERVAL_SECONDS = 5;
+
+  private static final String PEER_ADDRESS_BOOK_PREFIX = "peers-";
+  private static final String PEER_ADDRESS_BOOK_SUFFIX = ".txt";
+
   /**
    * The number of blocks to go back for a replay (based on the length of time coinbases need to mature for similar forking reasons)
    */
@@ -87,8 +109,55 @@ public class BitcoinNetworkService extends AbstractService {
   private BlockChain blockChain;
   private MultiBitPeerEventListener peerEventListener;
 
+  /**
+   * Round trip times for connected peers (shared with the peer event listener)
+   */
+  private final PeerLatencyTracker peerLatencyTracker = new PeerLatencyTracker();
+
+  /**
+   * Peers seen in previous sessions (recreated with each peer group)
+   */
+  private PeerAddressBook peerAddressBook;
+
+  /**
+   * Batches bloom filter recalculations (recreated with each peer group)
+   */
+  private BloomFilterManager bloomFilterManager;
+
+  /**
+   * Replaces a download peer that falls below the block rate floor
+   */
+  private ScheduledFuture<?> downloadWatchdog;
+  private final DownloadStallDetector downloadStallDetector = new DownloadStallDetector(peerLatencyTracker);
+  private final AtomicInteger downloadPeerFailoverCount = new AtomicInteger();
+
+  /**
+   * The peer promoted by the download watchdog (taken by the next download peer selection)
+   */
+  private volatile Peer preferredDownloadPeer;
+
   private final NetworkParameters networkParameters;
 
+  /**
+   * Prepares send wizard transactions in the background
+   */
+  private final TransactionPreparationPipeline transactionPreparationPipeline;
+
+  /**
+   * Sorted unspent outputs of the wallet used for sending (recreated when the wallet changes)
+   */
+  private UtxoIndex utxoIndex;
+
+  /**
+   * Deterministic paths of the wallet keys used for hardware wallet signing (recreated when the wallet changes)
+   */
+  private KeyPathIndex keyPathIndex;
+
+  /**
+   * The hardware wallet signing in progress (if any)
+   */
+  private Optional<HardwareSigningSession> hardwareSigningSession = Optional.absent();
+
   private boolean startedOk = false;
 
   private Optional<SendRequestSummary> lastSendRequestSummaryOptional = Optional.absent();
@@ -106,8 +175,10 @@ public class BitcoinNetworkService extends AbstractService {
     log.debug("Bitcoin network service using '{}'", networkParameters.getId());
 
     this.networkParameters = networkParameters;
+    this.transactionPreparationPipeline = new TransactionPreparationPipeline(this);
 
     requireFixedThreadPoolExecutor(5, "bitcoin-network");
+    requireSingleThreadScheduledExecutor("bitcoin-network-watchdog");
 
   }
 
@@ -131,6 +202,11 @@ public class BitcoinNetworkService extends AbstractService {
     // Order is important here
     startedOk = false;
 
+    transactionPreparationPipeline.shutdown();
+    detachUtxoIndex();
+    detachKeyPathIndex();
+    finishHardwareSigningSession();
+
     // Provide additional exception handling to ensure we reach the saveWallet stage
     try {
       // Stop the peer group if it is running
@@ -221,25 +297,47 @@ public class BitcoinNetworkService extends AbstractService {
     return startedOk;
   }
 
+  /**
+   * <p>Recalculate the bloom filter, sending it to the peers only if they do not already hold a suitable one</p>
+   *
+   * @param wait True if the caller should block until the peers have the filter (e.g. before a download), false to batch with other requests
+   */
   public void recalculateFastCatchupAndFilter(boolean wait) {
 
-    if (peerGroup != null) {
-      ListenableFuture<BloomFilter> bloomFilterFuture = peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.FORCE_SEND_FOR_REFRESH);
-
-      if (wait) {
-        try {
-          bloomFilterFuture.get(1, TimeUnit.SECONDS);
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-          log.error("Bloom filter construction failed with error {}", e.getMessage());
-        }
+    final BloomFilterManager manager = bloomFilterManager;
+    if (peerGroup == null || manager == null) {
+      return;
+    }
 
-        // Wait one second for the remote peer to process the new BloomFilter
-        Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+    if (!wait) {
+      // Combine with any other requests made in quick succession (e.g. several new addresses)
+      manager.requestRecalculation();
+      return;
+    }
 
-      }
+    Optional<ListenableFuture<BloomFilter>> bloomFilterFuture = manager.recalculateNow(false);
+    if (!bloomFilterFuture.isPresent()) {
+      log.debug("Peers already hold a suitable bloom filter");
+      return;
+    }
 
-      log.debug("Status of BloomFilterFuture after 1 second:{}", bloomFilterFuture.isDone());
+    try {
+      bloomFilterFuture.get().get(1, TimeUnit.SECONDS);
+    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+      log.error("Bloom filter construction failed with error {}", e.getMessage());
     }
+
+    // Wait one second for the remote peer to process the new BloomFilter
+    Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+
+    log.debug("Status of BloomFilterFuture after 1 second:{}", bloomFilterFuture.get().isDone());
+  }
+
+  /**
+   * @return The bloom filter manager for the current peer group (absent if the network is not running)
+   */
+  public Optional<BloomFilterManager> getBloomFilterManager() {
+    return Optional.fromNullable(bloomFilterManager);
   }
 
   /**
@@ -253,6 +351,8 @@ public class BitcoinNetworkService extends AbstractService {
         public void run() {
           Preconditions.checkNotNull(peerGroup, "'peerGroup' must be present");
 
+          startDownloadWatchdog();
+
           // Recalculate the bloom filter before every sync
           log.debug("Recalculating bloom filter ...");
           recalculateFastCatchupAndFilter(true);
@@ -645,6 +745,30 @@ public class BitcoinNetworkService extends AbstractService {
     return false;
   }
 
+  /**
+   * @return The pipeline for preparing transactions in the background while the user enters send details
+   */
+  public TransactionPreparationPipeline getTransactionPreparationPipeline() {
+    return transactionPreparationPipeline;
+  }
+
+  /**
+   * <p>Report a failure to create a transaction unless the summary is only being previewed</p>
+   *
+   * @param sendRequestSummary       The information required to send bitcoin
+   * @param transactionCreationEvent The failure event
+   */
+  private void fireTransactionCreationFailure(SendRequestSummary sendRequestSummary, TransactionCreationEvent transactionCreationEvent) {
+
+    if (sendRequestSummary.isPreview()) {
+      // The user has not asked to send yet so the failure will be reported if they do
+      log.debug("Preview preparation failed: {}", transactionCreationEvent);
+      return;
+    }
+
+    CoreEvents.fireTransactionCreationEvent(transactionCreationEvent);
+  }
+
   /**
    * Handle missing wallet summary
    *
@@ -656,7 +780,8 @@ public class BitcoinNetworkService extends AbstractService {
     if (!WalletManager.INSTANCE.getCurrentWalletSummary().isPresent()) {
 
       // Declare the transaction creation a failure - no wallet
-      CoreEvents.fireTransactionCreationEvent(
+      fireTransactionCreationFailure(
+        sendRequestSummary,
         new TransactionCreationEvent(
           null,
           sendRequestSummary.getTotalAmount(),
@@ -697,10 +822,19 @@ public class BitcoinNetworkService extends AbstractService {
 
       } else {
         // No SendRequest so build one from the information in the summary
-        sendRequest = Wallet.SendRequest.to(
-          sendRequestSummary.getDestinationAddress(),
-          sendRequestSummary.getAmount()
-        );
+        if (sendRequestSummary.isBatch()) {
+          // One output per recipient sharing the inputs, fee and change output
+          Transaction tx = new Transaction(networkParameters);
+          for (Payout payout : sendRequestSummary.getPayouts()) {
+            tx.addOutput(payout.getAmount(), payout.getAddress());
+          }
+          sendRequest = Wallet.SendRequest.forTx(tx);
+        } else {
+          sendRequest = Wallet.SendRequest.to(
+            sendRequestSummary.getDestinationAddress(),
+            sendRequestSummary.getAmount()
+          );
+        }
 
         // Ensure the transactionConfidence is in the Context transaction confidence table
         TransactionConfidence confidence = sendRequest.tx.getConfidence(CoreServices.getContext());
@@ -721,6 +855,10 @@ public class BitcoinNetworkService extends AbstractService {
       sendRequest.fee = Coin.ZERO;
       sendRequest.feePerKb = sendRequestSummary.getFeePerKB();
 
+      // Select from the sorted index rather than sorting every unspent output on each attempt
+      Wallet wallet = WalletManager.INSTANCE.getCurrentWalletSummary().get().getWallet();
+      sendRequest.coinSelector = new IndexedCoinSelector(getUtxoIndex(wallet), sendRequest.feePerKb);
+
       // Append the Bitcoinj send request to the summary
       sendRequestSummary.setSendRequest(sendRequest);
 
@@ -729,7 +867,8 @@ public class BitcoinNetworkService extends AbstractService {
       log.error("Could not process the SendRequest", e);
 
       // Declare the transaction creation a failure
-      CoreEvents.fireTransactionCreationEvent(
+      fireTransactionCreationFailure(
+        sendRequestSummary,
         new TransactionCreationEvent(
           null,
           sendRequestSummary.getTotalAmount(),
@@ -928,7 +1067,8 @@ public class BitcoinNetworkService extends AbstractService {
       Coin totalAmount = sendRequestSummary.getTotalAmount();
 
       // Fire a failed transaction creation event
-      CoreEvents.fireTransactionCreationEvent(
+      fireTransactionCreationFailure(
+        sendRequestSummary,
         new TransactionCreationEvent(
           transactionId,
           totalAmount,
@@ -971,21 +1111,26 @@ public class BitcoinNetworkService extends AbstractService {
       try {
 
         // Provide a map between the input indices and the HD path of receiving addresses used
+        KeyPathIndex keyPathIndex = getKeyPathIndex(wallet);
         Map<Integer, ImmutableList<ChildNumber>> receivingAddressPathMap = buildReceivingAddressPathMap(
           sendRequest.tx,
-          wallet
+          keyPathIndex
         );
 
         Map<Address, ImmutableList<ChildNumber>> changeAddressPathMap = buildChangeAddressPathMap(
           sendRequest.tx,
-          wallet,
-          sendRequestSummary.getDestinationAddress()
+          keyPathIndex,
+          sendRequestSummary.getDestinationAddresses()
         );
 
 
         // Shuffle the outputs to obfuscate change and payment addresses
         sendRequest.tx.shuffleOutputs();
 
+        // Reject unconnected inputs before the device prompts the user and time the device messages
+        HardwareSigningSession signingSession = HardwareSigningSession.validate(sendRequest.tx);
+        startHardwareSigningSession(signingSession);
+
         // Sign the transaction using the Trezor device
         hardwareWalletService.get().signTx(sendRequest.tx, receivingAddressPathMap, changeAddressPathMap);
 
@@ -993,6 +1138,7 @@ public class BitcoinNetworkService extends AbstractService {
         return true;
       } catch (Exception e) {
         log.error("Failed to sign using Trezor", e);
+        finishHardwareSigningSession();
         return false;
       }
     } else {
@@ -1171,7 +1317,8 @@ public class BitcoinNetworkService extends AbstractService {
             Optional.<Coin>absent(),
             false,
             CoreMessageKey.COULD_NOT_CONNECT_TO_BITCOIN_NETWORK,
-            new String[]{"Could not reach any Bitcoin nodes"}
+            new String[]{"Could not reach any Bitcoin nodes"},
+            newPayoutResults(sendRequestSummary, Optional.<Transaction>absent())
           ));
 
         // Prevent a fall-through to success
@@ -1240,7 +1387,8 @@ public class BitcoinNetworkService extends AbstractService {
                 Optional.of(sendRequest.fee),
                 true,
                 CoreMessageKey.BITCOIN_SENT_OK,
-                null
+                null,
+                newPayoutResults(sendRequestSummary, Optional.of(transaction))
               ));
 
             CoreEvents.fireBitcoinSendProgressEvent(new BitcoinSendProgressEvent(sendRequest.tx, 1.0));
@@ -1260,7 +1408,8 @@ public class BitcoinNetworkService extends AbstractService {
                 Optional.<Coin>absent(),
                 false,
                 CoreMessageKey.THE_ERROR_WAS,
-                new String[]{throwable == null ? "No message" : throwable.getMessage()}
+                new String[]{throwable == null ? "No message" : throwable.getMessage()},
+                newPayoutResults(sendRequestSummary, Optional.<Transaction>absent())
               ));
 
           }
@@ -1284,7 +1433,8 @@ public class BitcoinNetworkService extends AbstractService {
           Optional.<Coin>absent(),
           false,
           CoreMessageKey.THE_ERROR_WAS,
-          new String[]{e.getMessage()}
+          new String[]{e.getMessage()},
+          newPayoutResults(sendRequestSummary, Optional.<Transaction>absent())
         ));
 
       // Prevent a fall-through to success
@@ -1297,12 +1447,62 @@ public class BitcoinNetworkService extends AbstractService {
   }
 
   /**
-   * @param unsignedTx The unsigned transaction (expect OP_0 in place of signatures)
-   * @param wallet     The wallet
+   * @param sendRequestSummary The information required to send bitcoin
+   * @param transaction        The transaction that was sent, absent if the send failed
+   *
+   * @return The result for each recipient of a batch send (empty for a single recipient)
+   */
+  List<PayoutResult> newPayoutResults(SendRequestSummary sendRequestSummary, Optional<Transaction> transaction) {
+
+    List<PayoutResult> payoutResults = Lists.newArrayList();
+    Set<Integer> matchedOutputs = Sets.newHashSet();
+
+    for (Payout payout : sendRequestSummary.getPayouts()) {
+      Optional<Integer> outputIndex = Optional.absent();
+      if (transaction.isPresent()) {
+        // Outputs were shuffled before signing so locate each payout (recipients may repeat)
+        List<TransactionOutput> outputs = transaction.get().getOutputs();
+        for (int i = 0; i < outputs.size(); i++) {
+          TransactionOutput output = outputs.get(i);
+          if (!matchedOutputs.contains(i)
+            && output.getValue().equals(payout.getAmount())
+            && isPaidTo(output, payout.getAddress())) {
+            matchedOutputs.add(i);
+            outputIndex = Optional.of(i);
+            break;
+          }
+        }
+      }
+      payoutResults.add(new PayoutResult(payout, outputIndex));
+    }
+
+    return payoutResults;
+  }
+
+  /**
+   * @param output  The transaction output
+   * @param address The address
+   *
+   * @return True if the output pays the address (amounts are matched separately)
+   */
+  boolean isPaidTo(TransactionOutput output, Address address) {
+
+    try {
+      return address.equals(output.getScriptPubKey().getToAddress(networkParameters));
+    } catch (ScriptException e) {
+      // Not a standard output so cannot be a payout
+      return false;
+    }
+
+  }
+
+  /**
+   * @param unsignedTx   The unsigned transaction (expect OP_0 in place of signatures)
+   * @param keyPathIndex The key path index of the wallet
    *
    * @return The receiving address path map linking the tx input index to a deterministic path
    */
-  private Map<Integer, ImmutableList<ChildNumber>> buildReceivingAddressPathMap(Transaction unsignedTx, Wallet wallet) {
+  private Map<Integer, ImmutableList<ChildNumber>> buildReceivingAddressPathMap(Transaction unsignedTx, KeyPathIndex keyPathIndex) {
 
     log.debug("Building Receiving address path map for transaction {}", unsignedTx);
 
@@ -1319,10 +1519,10 @@ public class BitcoinNetworkService extends AbstractService {
       if (connectedTransactionOutput != null) {
         byte[] pubKeyHash = connectedTransactionOutput.getScriptPubKey().getPubKeyHash();
         log.debug("Connected transaction pubKeyHash {}", Utils.HEX.encode(pubKeyHash));
-        DeterministicKey keyFromPubKey = wallet.getActiveKeychain().findKeyFromPubHash(pubKeyHash);
-        Preconditions.checkNotNull(keyFromPubKey, "Could not find deterministic key from given pubKeyHash. Input script index: " + i);
+        Optional<KeyPathIndex.Entry> entry = keyPathIndex.lookup(pubKeyHash);
+        Preconditions.checkState(entry.isPresent(), "Could not find deterministic key from given pubKeyHash. Input script index: " + i);
 
-        receivingAddressPathMap.put(i, keyFromPubKey.getPath());
+        receivingAddressPathMap.put(i, entry.get().getPath());
       } else {
         log.debug("Could not parse tx input script '{}'", script.toString());
       }
@@ -1333,65 +1533,43 @@ public class BitcoinNetworkService extends AbstractService {
   }
 
   /**
-   * @param unsignedTx The unsigned transaction (expect OP_0 in place of signatures)
-   * @param wallet     The wallet
+   * @param unsignedTx           The unsigned transaction (expect OP_0 in place of signatures)
+   * @param keyPathIndex         The key path index of the wallet
+   * @param destinationAddresses The addresses being paid (excluded even if they belong to the wallet)
    *
-   * @return The receiving address path map linking the tx input index to a deterministic path
+   * @return The change address path map linking the change address to a deterministic path
    */
-  private Map<Address, ImmutableList<ChildNumber>> buildChangeAddressPathMap(Transaction unsignedTx, Wallet wallet, Address destinationAddress) {
+  Map<Address, ImmutableList<ChildNumber>> buildChangeAddressPathMap(Transaction unsignedTx, KeyPathIndex keyPathIndex, List<Address> destinationAddresses) {
 
     Map<Address, ImmutableList<ChildNumber>> changeAddressPathMap = Maps.newHashMap();
 
-    DeterministicKeyChain activeKeyChain = wallet.getActiveKeychain();
-
     for (int i = 0; i < unsignedTx.getOutputs().size(); i++) {
 
       TransactionOutput output = unsignedTx.getOutput(i);
 
-      Optional<DeterministicKey> key = Optional.absent();
-      Optional<Address> address = Optional.absent();
-
       // Analyse the output script
       Script script = output.getScriptPubKey();
+      final Optional<KeyPathIndex.Entry> entry;
       if (script.isSentToRawPubKey()) {
-
         // Use the raw public key
-        byte[] pubkey = script.getPubKey();
-        if (wallet.isPubKeyMine(pubkey)) {
-          key = Optional.fromNullable(activeKeyChain.findKeyFromPubKey(pubkey));
-          ECKey ecKey = ECKey.fromPublicOnly(pubkey);
-          address = Optional.fromNullable(ecKey.toAddress(MainNetParams.get()));
-        }
-
-      } else if (script.isPayToScriptHash() && wallet.isPayToScriptHashMine(script.getPubKeyHash())) {
-
-        // Extract the public key hash from the script
-        byte[] pubkeyHash = script.getPubKeyHash();
-        key = Optional.fromNullable(activeKeyChain.findKeyFromPubHash(pubkeyHash));
-        address = Optional.fromNullable(new Address(MainNetParams.get(), pubkeyHash));
+        entry = keyPathIndex.lookupPubKey(script.getPubKey());
       } else {
-
-        // Use the public key hash
-        byte[] pubkeyHash = script.getPubKeyHash();
-        if (wallet.isPubKeyHashMine(pubkeyHash)) {
-          key = Optional.fromNullable(activeKeyChain.findKeyFromPubHash(pubkeyHash));
-          address = Optional.fromNullable(new Address(MainNetParams.get(), pubkeyHash));
-        }
+        // Use the public key hash (or script hash)
+        entry = keyPathIndex.lookup(script.getPubKeyHash());
       }
 
-      if (key.isPresent() && address.isPresent()) {
+      if (entry.isPresent()) {
 
         // Found an address we own
-        if (!address.get().equals(destinationAddress)) {
-          changeAddressPathMap.put(address.get(), key.get().getPath());
+        if (!destinationAddresses.contains(entry.get().getAddress())) {
+          changeAddressPathMap.put(entry.get().getAddress(), entry.get().getPath());
         }
       }
 
     }
-      return changeAddressPathMap;
-    }
-
 
+    return changeAddressPathMap;
+  }
 
   /**
    * <p>Create a new peer group</p>
@@ -1407,9 +1585,66 @@ public class BitcoinNetworkService extends AbstractService {
       "seed.bitcoinstats.com",       // Chris Decker
       "seed.bitnodes.io",            // Addy Yeow
     };
-    log.info("Creating new DNS peer group for '{}'", networkParameters);
-    peerGroup = new PeerGroup(networkParameters, blockChain);
-    peerGroup.addPeerDiscovery(new DnsDiscovery(dnsSeeds, networkParameters));
+    log.info("Creating new peer group for '{}'", networkParameters);
+    peerGroup = new PeerGroup(networkParameters, blockChain) {
+      @Nullable
+      @Override
+      protected Peer selectDownloadPeer(List<Peer> peers) {
+
+        // Allow bitcoinj to apply its chain height and version rules first
+        Peer selected = super.selectDownloadPeer(peers);
+        if (selected == null) {
+          return null;
+        }
+
+        // A peer promoted by the download watchdog takes precedence (once)
+        Peer promoted = preferredDownloadPeer;
+        preferredDownloadPeer = null;
+        if (promoted != null && peers.contains(promoted) && DownloadStallDetector.isDownloadCandidate(promoted)) {
+          return promoted;
+        }
+
+        // Prefer the lowest latency peer that is at least as good a candidate
+        for (Peer candidate : peerLatencyTracker.sortByLatency(peers)) {
+          if (!peerLatencyTracker.getRoundTripMillis(candidate.getAddress()).isPresent()) {
+            // Remaining peers have not been measured
+            break;
+          }
+          if (candidate.getBestHeight() >= selected.getBestHeight()
+            && candidate.getPeerVersionMessage().clientVersion >= selected.getPeerVersionMessage().clientVersion
+            && DownloadStallDetector.isDownloadCandidate(candidate)) {
+            return candidate;
+          }
+        }
+
+        return selected;
+      }
+
+      @Override
+      protected void handlePeerDeath(Peer peer, @Nullable Throwable exception) {
+
+        // A peer that dies before the version handshake never connected so the listener cannot count it
+        final PeerAddressBook addressBook = peerAddressBook;
+        if (addressBook != null && peer.getPeerVersionMessage() == null) {
+          addressBook.recordFailed(peer.getAddress());
+        }
+
+        super.handlePeerDeath(peer, exception);
+      }
+    };
+
+    // Peers from previous sessions are ranked first and DNS is only consulted when too few are known
+    peerAddressBook = new PeerAddressBook(
+      new File(InstallationManager.getOrCreateApplicationDataDirectory(), PEER_ADDRESS_BOOK_PREFIX + networkParameters.getPaymentProtocolId() + PEER_ADDRESS_BOOK_SUFFIX),
+      Optional.<PeerDiscovery>of(new DnsDiscovery(dnsSeeds, networkParameters))
+    );
+    peerGroup.addPeerDiscovery(peerAddressBook);
+
+    // Known good peers can be tried before any discovery completes
+    for (InetSocketAddress address : peerAddressBook.getKnownGoodAddresses(MAXIMUM_NUMBER_OF_PEERS)) {
+      peerGroup.addAddress(new PeerAddress(address));
+    }
+
     peerGroup.setConnectTimeoutMillis(CONNECTION_TIMEOUT);
 
 
@@ -1420,9 +1655,11 @@ public class BitcoinNetworkService extends AbstractService {
     peerGroup.setMaxConnections(MAXIMUM_NUMBER_OF_PEERS);
     peerGroup.setUseLocalhostPeerWhenPossible(true);
 
-    peerEventListener = new MultiBitPeerEventListener();
+    peerEventListener = new MultiBitPeerEventListener(peerLatencyTracker, Optional.of(peerAddressBook));
     peerGroup.addEventListener(peerEventListener);
 
+    bloomFilterManager = new BloomFilterManager(peerGroup, PeerGroup.DEFAULT_BLOOM_FILTER_FP_RATE);
+
     addWalletToPeerGroup(wallet, useFastCatchup);
   }
 
@@ -1435,6 +1672,13 @@ public class BitcoinNetworkService extends AbstractService {
       } else {
         peerGroup.setFastCatchupTimeSecs(0); // Download full blocks always
       }
+      if (bloomFilterManager != null) {
+        bloomFilterManager.setWallet(wallet);
+      }
+      if (CoreServices.getCurrentHardwareWalletService().isPresent()) {
+        // Maintain the key paths from the start so signing does not wait for the index
+        getKeyPathIndex(wallet);
+      }
       recalculateFastCatchupAndFilter(false);
     } else {
       log.debug("Could not add wallet to peerGroup - one or more is missing");
@@ -1450,6 +1694,77 @@ public class BitcoinNetworkService extends AbstractService {
     }
   }
 
+  /**
+   * @param wallet The wallet used for sending
+   *
+   * @return The index of the wallet unspent outputs (created on first use)
+   */
+  synchronized UtxoIndex getUtxoIndex(Wallet wallet) {
+
+    if (utxoIndex == null || utxoIndex.getWallet() != wallet) {
+      detachUtxoIndex();
+      utxoIndex = new UtxoIndex(wallet);
+      utxoIndex.attach();
+    }
+
+    return utxoIndex;
+  }
+
+  private synchronized void detachUtxoIndex() {
+
+    if (utxoIndex != null) {
+      utxoIndex.detach();
+      utxoIndex = null;
+    }
+
+  }
+
+  /**
+   * @param wallet The wallet used for signing
+   *
+   * @return The index of the wallet key paths (created on first use)
+   */
+  synchronized KeyPathIndex getKeyPathIndex(Wallet wallet) {
+
+    if (keyPathIndex == null || keyPathIndex.getWallet() != wallet) {
+      detachKeyPathIndex();
+      keyPathIndex = new KeyPathIndex(wallet);
+      keyPathIndex.attach();
+    }
+
+    return keyPathIndex;
+  }
+
+  private synchronized void detachKeyPathIndex() {
+
+    if (keyPathIndex != null) {
+      keyPathIndex.detach();
+      keyPathIndex = null;
+    }
+
+  }
+
+  /**
+   * @param signingSession The validated signing session replacing any earlier one
+   */
+  private synchronized void startHardwareSigningSession(HardwareSigningSession signingSession) {
+
+    finishHardwareSigningSession();
+
+    hardwareSigningSession = Optional.of(signingSession);
+    signingSession.start();
+
+  }
+
+  private synchronized void finishHardwareSigningSession() {
+
+    if (hardwareSigningSession.isPresent()) {
+      hardwareSigningSession.get().finish();
+      hardwareSigningSession = Optional.absent();
+    }
+
+  }
+
   /**
    * Get the next available change address
    *
@@ -1467,32 +1782,194 @@ public class BitcoinNetworkService extends AbstractService {
   }
 
   /**
-   * Ping all connected peers to see if there is an active network connection
+   * <p>Ping all connected peers concurrently to see if there is an active network connection</p>
+   *
+   * <p>Returns as soon as enough peers have answered so that unresponsive peers do not delay a broadcast.
+   * Round trip times are recorded so that low latency peers can be preferred.</p>
    *
-   * @return true is two or more peers respond to the ping
+   * @return true if two or more peers respond to the ping
    */
   public boolean pingPeers() {
+
+    if (peerGroup == null) {
+      return false;
+    }
+
     List<Peer> connectedPeers = peerGroup.getConnectedPeers();
-    int numberOfSuccessfulPings = 0;
-    if (connectedPeers != null) {
-      for (Peer peer : connectedPeers) {
+    if (connectedPeers == null || connectedPeers.size() < NUMBER_OF_PEERS_TO_PING) {
+      log.warn("Not enough connected peers to ping");
+      return false;
+    }
 
-        log.debug("Ping: {}", peer.getAddress().toString());
+    final int numberOfPeers = connectedPeers.size();
+    final AtomicInteger successfulPings = new AtomicInteger();
+    final AtomicInteger failedPings = new AtomicInteger();
 
-        try {
-          ListenableFuture<Long> result = peer.ping();
-          result.get(4, TimeUnit.SECONDS);
-          numberOfSuccessfulPings++;
-          if (numberOfSuccessfulPings >= NUMBER_OF_PEERS_TO_PING) {
-            break;
-          }
-        } catch (ProtocolException | InterruptedException | ExecutionException | TimeoutException e) {
-          log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
+    // Completes with true when enough peers answer or false when that can no longer happen
+    final SettableFuture<Boolean> outcome = SettableFuture.create();
+
+    for (final Peer peer : connectedPeers) {
+
+      log.debug("Ping: {}", peer.getAddress());
+
+      final ListenableFuture<Long> pingFuture;
+      try {
+        pingFuture = peer.ping();
+      } catch (ProtocolException e) {
+        log.warn("Peer '{}' does not support ping. Message was {}", peer.getAddress(), e.getMessage());
+        if (failedPings.incrementAndGet() > numberOfPeers - NUMBER_OF_PEERS_TO_PING) {
+          outcome.set(false);
         }
+        continue;
       }
+
+      Futures.addCallback(
+        pingFuture, new FutureCallback<Long>() {
+          @Override
+          public void onSuccess(Long roundTripMillis) {
+            if (roundTripMillis != null) {
+              peerLatencyTracker.record(peer.getAddress(), roundTripMillis);
+            }
+            if (successfulPings.incrementAndGet() >= NUMBER_OF_PEERS_TO_PING) {
+              outcome.set(true);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            log.warn("Peer '{}' failed ping test. Message was {}", peer.getAddress(), t.getMessage());
+            if (failedPings.incrementAndGet() > numberOfPeers - NUMBER_OF_PEERS_TO_PING) {
+              outcome.set(false);
+            }
+          }
+        });
     }
 
-    return numberOfSuccessfulPings >= 2;
+    boolean enoughPeersAnswered;
+    try {
+      enoughPeersAnswered = Uninterruptibles.getUninterruptibly(outcome, CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      log.warn("Only {} of {} peers answered the ping in time", successfulPings.get(), numberOfPeers);
+      enoughPeersAnswered = false;
+    }
+
+    // Make the latest ping figures available to the UI
+    CoreEvents.fireBitcoinNetworkChangedEvent(
+      BitcoinNetworkSummary.newNetworkPeerCount(
+        getNumberOfConnectedPeers(),
+        peerLatencyTracker.getPercentileMillis(50),
+        peerLatencyTracker.getPercentileMillis(95)
+      ));
+
+    return enoughPeersAnswered;
+  }
+
+  /**
+   * @return The throughput, estimated time to completion and stall status of the current chain download, absent if the network is not running
+   */
+  public Optional<ChainDownloadMetrics> getChainDownloadMetrics() {
+
+    final MultiBitPeerEventListener listener = peerEventListener;
+    if (listener == null) {
+      return Optional.absent();
+    }
+
+    return Optional.of(listener.getChainDownloadMetrics());
+  }
+
+  /**
+   * <p>Set the policy used to detect a download peer that has slowed to a trickle</p>
+   *
+   * @param blocksPerSecondFloor The minimum acceptable block rate while blocks are outstanding
+   * @param stallSeconds         The period the rate must stay below the floor before the download peer is replaced
+   */
+  public void setDownloadStallPolicy(double blocksPerSecondFloor, int stallSeconds) {
+
+    downloadStallDetector.setPolicy(blocksPerSecondFloor, stallSeconds);
+
+  }
+
+  /**
+   * @return The number of times a stalled download peer has been replaced since the service started
+   */
+  public int getDownloadPeerFailoverCount() {
+    return downloadPeerFailoverCount.get();
+  }
+
+  /**
+   * <p>Start checking the chain download progress if not already doing so</p>
+   */
+  private synchronized void startDownloadWatchdog() {
+
+    if (downloadWatchdog != null && !downloadWatchdog.isDone()) {
+      return;
+    }
+
+    downloadStallDetector.reset();
+    downloadWatchdog = getScheduledExecutorService().scheduleWithFixedDelay(
+      new Runnable() {
+        @Override
+        public void run() {
+          try {
+            checkDownloadProgress();
+          } catch (RuntimeException e) {
+            // Keep the watchdog alive
+            log.warn("Download watchdog check failed: {}", e.getMessage());
+          }
+        }
+      }, DOWNLOAD_WATCHDOG_INTERVAL_SECONDS, DOWNLOAD_WATCHDOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+  }
+
+  private synchronized void stopDownloadWatchdog() {
+
+    if (downloadWatchdog != null) {
+      downloadWatchdog.cancel(false);
+      downloadWatchdog = null;
+    }
+    preferredDownloadPeer = null;
+
+  }
+
+  /**
+   * <p>Replace the download peer if the block rate has stayed below the floor for the stall period</p>
+   */
+  private synchronized void checkDownloadProgress() {
+
+    final PeerGroup group = peerGroup;
+    final MultiBitPeerEventListener listener = peerEventListener;
+    if (group == null || listener == null || !listener.isDownloading()) {
+      downloadStallDetector.reset();
+      return;
+    }
+
+    final Peer downloadPeer = group.getDownloadPeer();
+    Optional<Peer> replacement = downloadStallDetector.check(
+      downloadPeer,
+      group.getConnectedPeers(),
+      group.getMostCommonChainHeight(),
+      listener.getChainDownloadMeter(),
+      System.currentTimeMillis()
+    );
+    if (!replacement.isPresent()) {
+      return;
+    }
+
+    int failovers = downloadPeerFailoverCount.incrementAndGet();
+    log.info("Replacing stalled download peer {} with {} (failover {})", downloadPeer, replacement.get(), failovers);
+
+    preferredDownloadPeer = replacement.get();
+
+    // The peer group selects a new download peer when the current one disconnects
+    downloadPeer.close();
+
+  }
+
+  /**
+   * @return The round trip times of connected peers
+   */
+  public PeerLatencyTracker getPeerLatencyTracker() {
+    return peerLatencyTracker;
   }
 
   /**
@@ -1531,8 +2008,28 @@ public class BitcoinNetworkService extends AbstractService {
     if (peerGroup != null) {
       log.debug("Stopping peerGroup service...");
       peerGroup.removeEventListener(peerEventListener);
+
+      // Keep the latency of peers still connected and persist the address book for the next session
+      if (peerAddressBook != null) {
+        for (Peer peer : peerGroup.getConnectedPeers()) {
+          peerEventListener.recordLatency(peer);
+        }
+        peerAddressBook.save();
+        peerAddressBook = null;
+      }
+
       peerEventListener = null;
 
+      stopDownloadWatchdog();
+
+      if (bloomFilterManager != null) {
+        bloomFilterManager.shutdown();
+        bloomFilterManager = null;
+      }
+
+      // Latency is measured afresh on the next connection
+      peerLatencyTracker.clear();
+
       // Remove the wallet from the peer group
       if (WalletManager.INSTANCE.getCurrentWalletSummary().isPresent()) {
         peerGroup.removeWallet(WalletManager.INSTANCE.getCurrentWalletSummary().get().getWallet());
@@ -32,7 +32,8 @@ public class ConfigurationService extends AbstractService {
     // We may be in a partial startup situation
     if (Configurations.currentConfiguration != null) {
 
-      Configurations.persistCurrentConfiguration();
+      // Write now rather than after the usual delay
+      Configurations.persistCurrentConfigurationNow();
 
     }
 
@@ -23,6 +23,7 @@ import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.error_reporting.ExceptionHandler;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.exceptions.PaymentsLoadException;
+import org.multibit.hd.core.files.SecureDeletions;
 import org.multibit.hd.core.logging.LoggingFactory;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
@@ -187,6 +188,9 @@ public class CoreServices {
     // Configure logging now that we have a configuration
     new LoggingFactory(Configurations.currentConfiguration.getLogging(), "MultiBit HD").configure();
 
+    // Shred any plaintext left behind by a crash or power loss in an earlier session
+    SecureDeletions.INSTANCE.sweep(InstallationManager.getOrCreateApplicationDataDirectory());
+
     // Start environment checking service
     environmentCheckingService.start();
 
@@ -267,6 +271,9 @@ public class CoreServices {
     shutdownService(walletService, shutdownType);
     shutdownService(backupService, shutdownType);
 
+    // Ensure no plaintext from the final saves and backups outlives the wallet
+    SecureDeletions.INSTANCE.drain();
+
     // Clear the references
     bitcoinNetworkService = Optional.absent();
     contactService = Optional.absent();
@@ -378,27 +378,19 @@ public class ExchangeTickerService extends AbstractService {
             // Make any adjustments
             counterCode = CurrencyUtils.isoCandidateFor(counterCode);
 
-            try {
-              // Use JVM to determine if currency is in ISO 4217
-              Currency base = Currency.getInstance(baseCode);
-              if (base != null) {
-                // Use JVM to provide translated name
-                String localName = Currency.getInstance(baseCode).getDisplayName(currentLocale);
-                allCurrencies.add(baseCode + " (" + localName + ")");
-              }
-            } catch (IllegalArgumentException e) {
+            // Use the precomputed ISO 4217 table to avoid exception handling per pair
+            Optional<Currency> base = CurrencyUtils.isoCurrencyFor(baseCode);
+            if (base.isPresent()) {
+              // Use JVM to provide translated name
+              allCurrencies.add(baseCode + " (" + base.get().getDisplayName(currentLocale) + ")");
+            } else {
               // Base code is not in ISO 4217 so attempt to locate counter currency (e.g. BTC/RUR)
-              try {
-                // Use JVM to determine supported currency
-                Currency counter = Currency.getInstance(counterCode);
-                if (counter != null) {
-                  // Use JVM to provide translated name
-                  String localName = Currency.getInstance(counterCode).getDisplayName(currentLocale);
-                  allCurrencies.add(counterCode + " (" + localName + ")");
-                }
-              } catch (IllegalArgumentException e1) {
-                // Neither base nor counter code is in ISO 4217 so ignore since we're only working with fiat
+              Optional<Currency> counter = CurrencyUtils.isoCurrencyFor(counterCode);
+              if (counter.isPresent()) {
+                // Use JVM to provide translated name
+                allCurrencies.add(counterCode + " (" + counter.get().getDisplayName(currentLocale) + ")");
               }
+              // Neither base nor counter code is in ISO 4217 so ignore since we're only working with fiat
             }
           }
 
@@ -2,7 +2,9 @@ package org.multibit.hd.core.services;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.bitcoin.protocols.payments.Protos;
 import org.bitcoinj.core.Address;
@@ -15,8 +17,10 @@ import org.bitcoinj.protocols.payments.PaymentProtocolException;
 import org.bitcoinj.protocols.payments.PaymentSession;
 import org.bitcoinj.uri.BitcoinURI;
 import org.bitcoinj.uri.BitcoinURIParseException;
+import org.multibit.hd.core.crypto.PkiVerifications;
 import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.events.ShutdownEvent;
+import org.multibit.hd.core.managers.HttpsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -107,6 +111,9 @@ public class PaymentProtocolService extends AbstractService {
 
       PaymentSession paymentSession = null;
 
+      // PKI is verified once the session is created so that validated chains can be reused
+      boolean remote = false;
+
       if (scheme.startsWith("bitcoin")) {
         final BitcoinURI bitcoinUri = new BitcoinURI(networkParameters, paymentRequestUri.toString());
         if (bitcoinUri.getPaymentRequestUrls().isEmpty()) {
@@ -123,42 +130,53 @@ public class PaymentProtocolService extends AbstractService {
           );
         } else if (bitcoinUri.getPaymentRequestUrls().size() == 1) {
           log.debug("Treating as single BIP72 resource");
+          remote = true;
           paymentSession = PaymentSession
-            .createFromBitcoinUri(bitcoinUri, checkPKI, trustStoreLoader)
+            .createFromBitcoinUri(bitcoinUri, false, trustStoreLoader)
             .get(PAYMENT_REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         } else {
           log.debug("Treating as multiple BIP72 resource");
+          remote = true;
+          // Request all the URLs together and take the first to respond so one slow host does not hold up the rest
+          List<ListenableFuture<PaymentSession>> requests = Lists.newArrayList();
           for (String r : bitcoinUri.getPaymentRequestUrls()) {
             try {
-              paymentSession = PaymentSession
-                .createFromUrl(r, checkPKI, trustStoreLoader)
-                .get(PAYMENT_REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-              break;
+              requests.add(PaymentSession.createFromUrl(r, false, trustStoreLoader));
             } catch (Exception e) {
               // In multiple mode any exception is considered a reason to move on to the next
-              // but we must trap the NPE later on
               log.warn("Payment request from '{}' produced an exception: {}", r, e.getMessage());
             }
           }
+          if (!requests.isEmpty()) {
+            ListenableFuture<PaymentSession> firstResponse = HttpsManager.firstSuccessful(requests);
+            try {
+              paymentSession = firstResponse.get(PAYMENT_REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+              // All URLs have failed so we must trap the NPE later on
+              firstResponse.cancel(true);
+              log.warn("No payment request URL produced a payment session: {}", e.getMessage());
+            }
+          }
         }
 
       } else if (scheme.startsWith("http")) {
         log.debug("Treating as remote HTTP/S resource");
+        remote = true;
         paymentSession = PaymentSession
-          .createFromUrl(paymentRequestUri.toString(), checkPKI, trustStoreLoader)
+          .createFromUrl(paymentRequestUri.toString(), false, trustStoreLoader)
           .get(PAYMENT_REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
       } else if (scheme.startsWith("file")) {
         log.debug("Treating as file based resource");
         byte[] paymentRequestBytes = Resources.toByteArray(paymentRequestUri.toURL());
         paymentRequest = Protos.PaymentRequest.parseFrom(paymentRequestBytes);
-        paymentSession = new PaymentSession(paymentRequest, checkPKI, trustStoreLoader);
+        paymentSession = new PaymentSession(paymentRequest, false, trustStoreLoader);
 
       } else {
         log.debug("Treating as classpath based resource");
         InputStream inputStream = PaymentProtocolService.class.getResourceAsStream(paymentRequestUri.toString());
         paymentRequest = Protos.PaymentRequest.parseFrom(inputStream);
-        paymentSession = new PaymentSession(paymentRequest, checkPKI, trustStoreLoader);
+        paymentSession = new PaymentSession(paymentRequest, false, trustStoreLoader);
 
       }
 
@@ -168,21 +186,22 @@ public class PaymentProtocolService extends AbstractService {
         throw new PaymentProtocolException.InvalidPaymentRequestURL("All payment request URLs have failed");
       }
 
-      // Determine confidence in the payment request
-      PaymentProtocol.PkiVerificationData pkiVerificationData = paymentSession.pkiVerificationData;
-      if (!checkPKI) {
-        final TrustStoreLoader loader = trustStoreLoader != null ? trustStoreLoader : new TrustStoreLoader.DefaultTrustStoreLoader();
-        try {
-          // Override the earlier PKI verification data (likely to be null since not checked)
-          pkiVerificationData = PaymentProtocol.verifyPaymentRequestPki(
-            paymentSession.getPaymentRequest(),
-            loader.getKeyStore()
-          );
-
-        } catch (PaymentProtocolException | KeyStoreException e) {
-          return PaymentSessionSummary.newPaymentSessionAlmostOK(paymentSession, e);
+      // Determine confidence in the payment request (repeat merchants use the cached chain)
+      final PaymentProtocol.PkiVerificationData pkiVerificationData;
+      try {
+        pkiVerificationData = PkiVerifications.INSTANCE.verify(paymentSession.getPaymentRequest(), trustStoreLoader);
+      } catch (PaymentProtocolException | KeyStoreException e) {
+        if (checkPKI) {
+          // Report as if the session had failed PKI checks on creation
+          PaymentProtocolException pkiException = e instanceof PaymentProtocolException
+            ? (PaymentProtocolException) e
+            : new PaymentProtocolException(e);
+          if (remote) {
+            return PaymentSessionSummary.newPaymentSessionFromException(new ExecutionException(pkiException), hostName);
+          }
+          return PaymentSessionSummary.newPaymentSessionFromException(pkiException, hostName);
         }
-
+        return PaymentSessionSummary.newPaymentSessionAlmostOK(paymentSession, e);
       }
 
       // Must be OK to be here
@@ -0,0 +1,356 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableScheduledFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Wallet;
+import org.multibit.commons.concurrent.SafeExecutors;
+import org.multibit.hd.core.dto.SendRequestSummary;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.managers.WalletManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Pipeline to provide the following to the send wizards:</p>
+ * <ul>
+ * <li>Transaction preparation (coin selection and fee calculation) off the calling thread</li>
+ * <li>Debouncing of rapid input changes so only the latest input is prepared</li>
+ * <li>Cancellation of stale preparations</li>
+ * <li>Reuse of a completed preparation when the wallet has not changed since</li>
+ * <li>Adoption without blocking the caller (the outcome is delivered to a listener)</li>
+ * <li>A single adopt-or-prepare step shared by the send wizards</li>
+ * </ul>
+ *
+ * <p>Summaries are prepared as previews so failures are not reported to the user. A caller
+ * that cannot adopt a preview falls back to a normal preparation which reports as usual.</p>
+ *
+ * @since 0.5.0
+ */
+public class TransactionPreparationPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(TransactionPreparationPipeline.class);
+
+  /**
+   * The default delay after the last input change before preparing
+   */
+  public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+
+  private final BitcoinNetworkService bitcoinNetworkService;
+
+  private final ListeningScheduledExecutorService executorService;
+
+  /**
+   * Separate from the preparation thread so an adoption can time out while a preparation is in flight
+   */
+  private final ListeningScheduledExecutorService timeoutService;
+
+  private SendRequestSummary pendingSummary;
+  private ListenableFuture<Boolean> pendingFuture;
+  private Optional<String> preparedWalletState = Optional.absent();
+
+  /**
+   * Incremented on each submission so that superseded preparations are discarded
+   */
+  private int generation = 0;
+
+  /**
+   * @param bitcoinNetworkService The Bitcoin network service performing the preparation
+   */
+  TransactionPreparationPipeline(BitcoinNetworkService bitcoinNetworkService) {
+
+    this(
+      bitcoinNetworkService,
+      SafeExecutors.newSingleThreadScheduledExecutor("transaction-preparation"),
+      SafeExecutors.newSingleThreadScheduledExecutor("transaction-adoption")
+    );
+
+  }
+
+  /**
+   * @param bitcoinNetworkService The Bitcoin network service performing the preparation
+   * @param executorService       The executor service performing the preparation
+   * @param timeoutService        The executor service timing out adoptions
+   */
+  TransactionPreparationPipeline(
+    BitcoinNetworkService bitcoinNetworkService,
+    ListeningScheduledExecutorService executorService,
+    ListeningScheduledExecutorService timeoutService
+  ) {
+
+    Preconditions.checkNotNull(bitcoinNetworkService, "'bitcoinNetworkService' must be present");
+    Preconditions.checkNotNull(executorService, "'executorService' must be present");
+    Preconditions.checkNotNull(timeoutService, "'timeoutService' must be present");
+
+    this.bitcoinNetworkService = bitcoinNetworkService;
+    this.executorService = executorService;
+    this.timeoutService = timeoutService;
+
+  }
+
+  /**
+   * <p>Prepare the summary after the debounce delay, cancelling any earlier submission</p>
+   *
+   * @param sendRequestSummary The summary to prepare (must not be shared with other preparations)
+   * @param delayMillis        The delay before preparing (further submissions within the delay replace this one)
+   *
+   * @return A future providing the outcome of the preparation (cancelled if superseded)
+   */
+  public synchronized ListenableFuture<Boolean> submit(final SendRequestSummary sendRequestSummary, long delayMillis) {
+
+    Preconditions.checkNotNull(sendRequestSummary, "'sendRequestSummary' must be present");
+
+    cancel();
+
+    sendRequestSummary.setPreview(true);
+
+    final int submittedGeneration = generation;
+    pendingSummary = sendRequestSummary;
+    pendingFuture = executorService.schedule(
+      new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+
+          checkCurrent(submittedGeneration);
+
+          // Snapshot the wallet state first so any concurrent change makes the result stale
+          String walletState = currentWalletState();
+          boolean preparedOk = bitcoinNetworkService.prepareTransaction(sendRequestSummary);
+
+          synchronized (TransactionPreparationPipeline.this) {
+            checkCurrent(submittedGeneration);
+            preparedWalletState = Optional.of(walletState);
+          }
+
+          log.debug("Preview preparation completed with result {}", preparedOk);
+
+          return preparedOk;
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+
+    return pendingFuture;
+  }
+
+  /**
+   * <p>Adopt the submitted summary as a normal preparation if it prepares successfully against the current wallet</p>
+   *
+   * <p>Returns at once. If the preparation is still in flight when the timeout expires it is cancelled
+   * and the adoption fails so the caller can fall back to a normal preparation.</p>
+   *
+   * @param sendRequestSummary The summary previously submitted
+   * @param timeoutMillis      The maximum time to wait for an in-flight preparation
+   *
+   * @return A future providing true if the summary can be used without preparing again (never fails)
+   */
+  public ListenableFuture<Boolean> adopt(final SendRequestSummary sendRequestSummary, long timeoutMillis) {
+
+    final ListenableFuture<Boolean> future;
+    final int adoptedGeneration;
+    synchronized (this) {
+      if (sendRequestSummary == null || sendRequestSummary != pendingSummary) {
+        return Futures.immediateFuture(false);
+      }
+      future = pendingFuture;
+      adoptedGeneration = generation;
+    }
+
+    // Only one of the preparation outcome and the timeout decides the adoption
+    final AtomicBoolean decided = new AtomicBoolean(false);
+    final SettableFuture<Boolean> adoption = SettableFuture.create();
+
+    Futures.addCallback(
+      future, new FutureCallback<Boolean>() {
+        @Override
+        public void onSuccess(Boolean preparedOk) {
+
+          final boolean adopted;
+          synchronized (TransactionPreparationPipeline.this) {
+            if (!decided.compareAndSet(false, true)) {
+              // Timed out
+              return;
+            }
+            adopted = preparedOk && isAdoptable(sendRequestSummary);
+            if (adopted) {
+              pendingSummary = null;
+              pendingFuture = null;
+              sendRequestSummary.setPreview(false);
+            }
+          }
+
+          adoption.set(adopted);
+
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+
+          if (decided.compareAndSet(false, true)) {
+            log.debug("Preview preparation could not be adopted: {}", t.getMessage());
+            adoption.set(false);
+          }
+
+        }
+      });
+
+    if (!adoption.isDone()) {
+      final ListenableScheduledFuture<?> timeout = timeoutService.schedule(
+        new Runnable() {
+          @Override
+          public void run() {
+
+            if (decided.compareAndSet(false, true)) {
+              log.debug("Preview preparation timed out so is cancelled");
+              cancel(adoptedGeneration);
+              adoption.set(false);
+            }
+
+          }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+      // Release the timeout as soon as the adoption is decided
+      adoption.addListener(
+        new Runnable() {
+          @Override
+          public void run() {
+            timeout.cancel(false);
+          }
+        }, timeoutService);
+    }
+
+    return adoption;
+  }
+
+  /**
+   * <p>Use the preview if it describes the entered details and has already been prepared against the current
+   * wallet, otherwise cancel it and prepare the entered summary on the calling thread</p>
+   *
+   * <p>An in-flight preview is never waited for so the caller is not blocked by a slow or stale preparation.</p>
+   *
+   * @param previewSummary The summary previously submitted (may be null)
+   * @param enteredSummary The summary built from the details currently entered
+   *
+   * @return The prepared summary to send (either the preview or the entered summary), absent if the entered summary could not be prepared
+   */
+  public Optional<SendRequestSummary> adoptOrPrepare(SendRequestSummary previewSummary, SendRequestSummary enteredSummary) {
+
+    Preconditions.checkNotNull(enteredSummary, "'enteredSummary' must be present");
+
+    if (previewSummary != null && previewSummary.isSameSendDetails(enteredSummary)) {
+      ListenableFuture<Boolean> adoption = adopt(previewSummary, 0);
+      if (adoption.isDone() && Futures.getUnchecked(adoption)) {
+        log.debug("Using background preparation for sendRequestSummary: {}", previewSummary);
+        // The credentials are not part of the send details so take the latest
+        previewSummary.setPassword(enteredSummary.getPassword());
+        return Optional.of(previewSummary);
+      }
+    }
+
+    // Any preview is stale so must not compete with this preparation
+    cancel();
+
+    log.debug("Just about to prepare transaction for sendRequestSummary: {}", enteredSummary);
+    if (bitcoinNetworkService.prepareTransaction(enteredSummary)) {
+      return Optional.of(enteredSummary);
+    }
+
+    return Optional.absent();
+  }
+
+  /**
+   * <p>Cancel any pending or in-flight preparation (an in-flight result is discarded)</p>
+   */
+  public synchronized void cancel() {
+
+    cancel(generation);
+
+  }
+
+  /**
+   * <p>Stop accepting preparations</p>
+   */
+  public void shutdown() {
+
+    cancel();
+    executorService.shutdownNow();
+    timeoutService.shutdownNow();
+
+  }
+
+  /**
+   * @param expectedGeneration The generation to cancel (a later submission is left alone)
+   */
+  private synchronized void cancel(int expectedGeneration) {
+
+    if (expectedGeneration != generation) {
+      return;
+    }
+
+    generation++;
+    if (pendingFuture != null) {
+      pendingFuture.cancel(false);
+    }
+    pendingSummary = null;
+    pendingFuture = null;
+    preparedWalletState = Optional.absent();
+
+  }
+
+  /**
+   * @param sendRequestSummary The summary prepared in the background
+   *
+   * @return True if the summary is still the pending one and the wallet is unchanged since the preparation
+   */
+  private boolean isAdoptable(SendRequestSummary sendRequestSummary) {
+
+    if (sendRequestSummary != pendingSummary) {
+      return false;
+    }
+    if (!preparedWalletState.equals(Optional.of(currentWalletState()))) {
+      log.debug("Wallet changed since preview preparation");
+      return false;
+    }
+
+    return true;
+  }
+
+  private void checkCurrent(int submittedGeneration) {
+
+    synchronized (this) {
+      if (submittedGeneration != generation) {
+        throw new CancellationException("Superseded by a later preparation");
+      }
+    }
+
+  }
+
+  /**
+   * @return A description of the wallet state that changes when spendable outputs may have changed
+   */
+  private String currentWalletState() {
+
+    Optional<WalletSummary> currentWalletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
+    if (!currentWalletSummary.isPresent() || currentWalletSummary.get().getWallet() == null) {
+      return "";
+    }
+
+    Wallet wallet = currentWalletSummary.get().getWallet();
+    Sha256Hash lastBlockSeenHash = wallet.getLastBlockSeenHash();
+
+    return System.identityHashCode(wallet)
+      + ":" + lastBlockSeenHash
+      + ":" + wallet.getPendingTransactions().size()
+      + ":" + wallet.getUnspents().size();
+  }
+
+}
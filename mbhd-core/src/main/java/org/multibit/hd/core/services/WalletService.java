@@ -4,7 +4,9 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -149,6 +151,11 @@ public class WalletService extends AbstractService {
    */
   private Set<PaymentData> lastSeenPaymentDataSet = Sets.newHashSet();
 
+  /**
+   * The payments sorted by date, descending, without adapting transactions (null if it must be rebuilt)
+   */
+  private volatile List<PaymentIndexEntry> paymentIndex = null;
+
   /**
    * Handles wallet operations
    */
@@ -266,23 +273,169 @@ public class WalletService extends AbstractService {
     }
 
     // Determine which MBHDPaymentRequests have not been fully funded or request zero funds (these will appear as independent entities in the UI)
-    Set<MBHDPaymentRequestData> paymentRequestsNotFullyFunded = Sets.newHashSet();
-    for (MBHDPaymentRequestData baseMBHDPaymentRequestData : mbhdPaymentRequestDataMap.values()) {
-      boolean requestAmountIsZeroOrAbsent = !baseMBHDPaymentRequestData.getAmountCoin().isPresent() || baseMBHDPaymentRequestData.getAmountCoin().get().compareTo(Coin.ZERO) == 0;
-      if ((requestAmountIsZeroOrAbsent && baseMBHDPaymentRequestData.getPaidAmountCoin().compareTo(Coin.ZERO) == 0) ||
-              (!requestAmountIsZeroOrAbsent && baseMBHDPaymentRequestData.getPaidAmountCoin().compareTo(baseMBHDPaymentRequestData.getAmountCoin().or(Coin.ZERO)) < 0)) {
-        paymentRequestsNotFullyFunded.add(baseMBHDPaymentRequestData);
-      }
-    }
+    Set<MBHDPaymentRequestData> paymentRequestsNotFullyFunded = createPaymentRequestsNotFullyFunded();
+
     // Union the transactionData set and paymentData set
     lastSeenPaymentDataSet = Sets.union(transactionDataSet, paymentRequestsNotFullyFunded);
 
     lastSeenPaymentDataSet = Sets.union(lastSeenPaymentDataSet, unmatchedBip70PaymentDatas);
 
+    // A full refresh implies the index may be stale
+    invalidatePaymentIndex();
+
     //log.debug("lastSeenPaymentDataSet:\n" + lastSeenPaymentDataSet.toString());
     return lastSeenPaymentDataSet;
   }
 
+  /**
+   * <p>Get the number of payments (payments and payment requests) in the current wallet without adapting any transactions.</p>
+   *
+   * @return The payment count
+   */
+  public int getPaymentCount() {
+    return getOrCreatePaymentIndex().size();
+  }
+
+  /**
+   * <p>Get a window of the payments in the current wallet sorted by date, descending (the same order as the PaymentComparator).</p>
+   * <p>Only the transactions within the window are adapted so this is cheap enough to call when
+   * scrolling through a large payment history.</p>
+   *
+   * @param offset The index of the first payment to return
+   * @param limit  The maximum number of payments to return
+   *
+   * @return The payments in the window (may be shorter than the limit if the end is reached)
+   */
+  public List<PaymentData> getPaymentsByDate(int offset, int limit) {
+
+    Preconditions.checkState(offset >= 0, "'offset' must not be negative");
+    Preconditions.checkState(limit >= 0, "'limit' must not be negative");
+
+    final List<PaymentIndexEntry> index = getOrCreatePaymentIndex();
+
+    final int fromIndex = Math.min(offset, index.size());
+    final int toIndex = Math.min(index.size(), fromIndex + limit);
+    if (fromIndex == toIndex) {
+      return Lists.newArrayList();
+    }
+
+    Optional<WalletSummary> currentWalletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
+    if (!currentWalletSummary.isPresent()) {
+      // Wallet was closed since the index was built
+      return Lists.newArrayList();
+    }
+    Wallet wallet = currentWalletSummary.get().getWallet();
+
+    // Create a Map of all the unmatched paymentDetails (only required when adapting transactions)
+    Map<UUID, Protos.PaymentDetails> unmatchedPaymentDetailsMap = null;
+
+    List<PaymentData> window = Lists.newArrayListWithCapacity(toIndex - fromIndex);
+    for (PaymentIndexEntry entry : index.subList(fromIndex, toIndex)) {
+      if (entry.transaction != null) {
+        if (unmatchedPaymentDetailsMap == null) {
+          unmatchedPaymentDetailsMap = createUnmatchedPaymentDetails(createUnmatchedPaymentRequestDatas());
+        }
+        window.add(adaptTransaction(wallet, entry.transaction, unmatchedPaymentDetailsMap));
+      } else {
+        window.add(entry.paymentData);
+      }
+    }
+
+    return window;
+  }
+
+  /**
+   * <p>Get a cursor over the transactions in the current wallet sorted by date, descending.</p>
+   * <p>Transactions are adapted one batch at a time as the cursor advances so only a single batch
+   * is held on the heap. The cursor and its count work from the same snapshot of the payment index
+   * so later changes to the wallet do not cause rows to be skipped, repeated or miscounted.</p>
+   *
+   * @param batchSize The number of index entries to adapt at a time
+   *
+   * @return The cursor (empty if no wallet is present)
+   */
+  public TransactionDataCursor newTransactionDataCursor(int batchSize) {
+
+    Preconditions.checkState(batchSize > 0, "'batchSize' must be positive");
+
+    final List<PaymentIndexEntry> index = getOrCreatePaymentIndex();
+
+    Optional<WalletSummary> currentWalletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
+    if (index.isEmpty() || !currentWalletSummary.isPresent()) {
+      return new TransactionDataCursor(Collections.<PaymentIndexEntry>emptyList(), batchSize, null);
+    }
+
+    return new TransactionDataCursor(index, batchSize, currentWalletSummary.get().getWallet());
+  }
+
+  /**
+   * <p>Discard the payment index so that it is rebuilt on next use (e.g. after a transaction or payment request change)</p>
+   */
+  public void invalidatePaymentIndex() {
+    paymentIndex = null;
+  }
+
+  /**
+   * @return The payment index, building it from the current wallet if required
+   */
+  private List<PaymentIndexEntry> getOrCreatePaymentIndex() {
+
+    List<PaymentIndexEntry> index = paymentIndex;
+    if (index != null) {
+      return index;
+    }
+
+    Optional<WalletSummary> currentWalletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
+    if (!currentWalletSummary.isPresent()) {
+      // No wallet is present so there is nothing to cache
+      return Collections.emptyList();
+    }
+
+    Wallet wallet = currentWalletSummary.get().getWallet();
+    Preconditions.checkNotNull(wallet, "There is no wallet to process");
+
+    index = Lists.newArrayList();
+
+    // Transactions only require their update time and value to be positioned
+    Set<Transaction> transactions = wallet.getTransactions(true);
+    if (transactions != null) {
+      for (Transaction transaction : transactions) {
+        index.add(new PaymentIndexEntry(transaction.getUpdateTime().getTime(), transaction.getValue(wallet), transaction, null));
+      }
+    }
+
+    // Payment requests are already in their final form
+    Set<PaymentData> paymentRequests = Sets.newHashSet();
+    paymentRequests.addAll(createPaymentRequestsNotFullyFunded());
+    paymentRequests.addAll(createUnmatchedPaymentRequestDatas());
+    for (PaymentData paymentData : paymentRequests) {
+      long dateMillis = paymentData.getDate() == null ? Long.MAX_VALUE : paymentData.getDate().getMillis();
+      index.add(new PaymentIndexEntry(dateMillis, paymentData.getAmountCoin().or(Coin.ZERO), null, paymentData));
+    }
+
+    Collections.sort(index);
+
+    index = Collections.unmodifiableList(index);
+    paymentIndex = index;
+
+    return index;
+  }
+
+  private Set<MBHDPaymentRequestData> createPaymentRequestsNotFullyFunded() {
+    // Determine which MBHDPaymentRequests have not been fully funded or request zero funds (these will appear as independent entities in the UI)
+    Set<MBHDPaymentRequestData> paymentRequestsNotFullyFunded = Sets.newHashSet();
+    synchronized (mbhdPaymentRequestDataMap) {
+      for (MBHDPaymentRequestData baseMBHDPaymentRequestData : mbhdPaymentRequestDataMap.values()) {
+        boolean requestAmountIsZeroOrAbsent = !baseMBHDPaymentRequestData.getAmountCoin().isPresent() || baseMBHDPaymentRequestData.getAmountCoin().get().compareTo(Coin.ZERO) == 0;
+        if ((requestAmountIsZeroOrAbsent && baseMBHDPaymentRequestData.getPaidAmountCoin().compareTo(Coin.ZERO) == 0) ||
+                (!requestAmountIsZeroOrAbsent && baseMBHDPaymentRequestData.getPaidAmountCoin().compareTo(baseMBHDPaymentRequestData.getAmountCoin().or(Coin.ZERO)) < 0)) {
+          paymentRequestsNotFullyFunded.add(baseMBHDPaymentRequestData);
+        }
+      }
+    }
+    return paymentRequestsNotFullyFunded;
+  }
+
   private Set<PaymentData> createUnmatchedPaymentRequestDatas() {
     // Work out the unmatched BIP70 payment requests
     Set<PaymentData> unmatchedBip70PaymentDatas = Sets.newHashSet();
@@ -312,12 +465,8 @@ public class WalletService extends AbstractService {
   }
 
   public int getPaymentDataSetSize() {
-    // IF lastSeenPaymentDataSet is not assigned/ empty then rebuild it to determine payment list size
-    if (lastSeenPaymentDataSet == null || lastSeenPaymentDataSet.isEmpty()) {
-      // Self-assignment to keep Findbugs happy
-      lastSeenPaymentDataSet = getPaymentDataSet();
-    }
-    return lastSeenPaymentDataSet.size();
+    // The index avoids adapting every transaction just to count them
+    return getPaymentCount();
   }
 
   /**
@@ -373,6 +522,11 @@ public class WalletService extends AbstractService {
 
     List<PaymentData> filteredPayments = Lists.newArrayList();
 
+    if (lastSeenPaymentDataSet == null || lastSeenPaymentDataSet.isEmpty()) {
+      // Searching requires the full adapted set which may not have been built yet
+      lastSeenPaymentDataSet = getPaymentDataSet();
+    }
+
     for (PaymentData paymentData : lastSeenPaymentDataSet) {
 
       boolean isDescriptionMatched = paymentData.getDescription().toLowerCase().contains(lowerQuery);
@@ -888,6 +1042,7 @@ public class WalletService extends AbstractService {
 
     Collection<PaymentRequestData> values = bip70PaymentRequestDataMap.values();
     readPaymentRequestsDataFiles(values, paymentDatabaseFile, password);
+    invalidatePaymentIndex();
 
     log.debug(
             "Reading payments completed\nTransactionInfo count: {}\nMBHD payment request count: {}\nBIP70 payment request count: {}",
@@ -1127,6 +1282,7 @@ public class WalletService extends AbstractService {
 
   public void addMBHDPaymentRequestData(MBHDPaymentRequestData MBHDPaymentRequestData) {
     mbhdPaymentRequestDataMap.put(MBHDPaymentRequestData.getAddress(), MBHDPaymentRequestData);
+    invalidatePaymentIndex();
   }
 
   /**
@@ -1141,6 +1297,7 @@ public class WalletService extends AbstractService {
     }
 
     bip70PaymentRequestDataMap.put(paymentRequestData.getUuid(), paymentRequestData);
+    invalidatePaymentIndex();
 
     log.debug("Adding payment request data: {}", paymentRequestData);
   }
@@ -1373,6 +1530,7 @@ public class WalletService extends AbstractService {
   public void deleteMBHDPaymentRequest(MBHDPaymentRequestData mbhdPaymentRequestData) {
     undoDeletePaymentDataStack.push(mbhdPaymentRequestData);
     mbhdPaymentRequestDataMap.remove(mbhdPaymentRequestData.getAddress());
+    invalidatePaymentIndex();
   }
 
   /**
@@ -1381,6 +1539,7 @@ public class WalletService extends AbstractService {
   public void deletePaymentRequest(PaymentRequestData paymentRequestData) {
     undoDeletePaymentDataStack.push(paymentRequestData);
     bip70PaymentRequestDataMap.remove(paymentRequestData.getUuid());
+    invalidatePaymentIndex();
 
     // Delete the serialised payment request file
     EncryptedBIP70PaymentRequestFile paymentRequestFile = getPaymentRequestFile(paymentRequestData.getUuid(), paymentDatabaseFile);
@@ -1461,10 +1620,11 @@ public class WalletService extends AbstractService {
           CSVEntryConverter<PaymentRequestData> paymentRequestConverter
 
   ) {
-    // Refresh all payments
-    Set<PaymentData> paymentDataSet = getPaymentDataSet();
+    // Stream the transactions rather than adapting them all up front
+    TransactionDataCursor transactionDataCursor = newTransactionDataCursor(ExportManager.BATCH_SIZE);
     ExportManager.export(
-            paymentDataSet,
+            transactionDataCursor,
+            transactionDataCursor.getCount(),
             getMBHDPaymentRequestDataList(),
             getPaymentRequestDataList(),
             exportDirectory,
@@ -1678,6 +1838,9 @@ public class WalletService extends AbstractService {
   @Subscribe
   public void onTransactionSeenEvent(TransactionSeenEvent transactionSeenEvent) {
 
+    // The index is rebuilt lazily so this is cheap even at high frequency
+    invalidatePaymentIndex();
+
     // If not in the transaction info map create on and add
     if (transactionInfoMap.get(transactionSeenEvent.getTransactionId()) == null) {
 
@@ -1746,4 +1909,107 @@ public class WalletService extends AbstractService {
   public File getPaymentDatabaseFile() {
     return paymentDatabaseFile;
   }
+
+  /**
+   * <p>Cursor to provide the following to exports:</p>
+   * <ul>
+   * <li>Transactions from a single payment index snapshot, adapted one batch at a time</li>
+   * <li>The number of transactions in the same snapshot (for progress)</li>
+   * </ul>
+   */
+  public class TransactionDataCursor extends AbstractIterator<TransactionData> {
+
+    private final List<PaymentIndexEntry> index;
+    private final int batchSize;
+    private final Wallet wallet;
+    private final int count;
+
+    private Map<UUID, Protos.PaymentDetails> unmatchedPaymentDetailsMap = null;
+    private int position = 0;
+    private Iterator<TransactionData> batch = Iterators.emptyIterator();
+
+    private TransactionDataCursor(List<PaymentIndexEntry> index, int batchSize, Wallet wallet) {
+
+      this.index = index;
+      this.batchSize = batchSize;
+      this.wallet = wallet;
+
+      int transactionCount = 0;
+      for (PaymentIndexEntry entry : index) {
+        if (entry.transaction != null) {
+          transactionCount++;
+        }
+      }
+      this.count = transactionCount;
+
+    }
+
+    /**
+     * @return The number of transactions the cursor will provide
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @return The number of index entries read so far (advances a whole batch at a time)
+     */
+    int getPosition() {
+      return position;
+    }
+
+    @Override
+    protected TransactionData computeNext() {
+
+      while (!batch.hasNext()) {
+        if (position >= index.size()) {
+          return endOfData();
+        }
+        int toIndex = Math.min(index.size(), position + batchSize);
+
+        List<TransactionData> transactionDataList = Lists.newArrayListWithCapacity(toIndex - position);
+        for (PaymentIndexEntry entry : index.subList(position, toIndex)) {
+          if (entry.transaction != null) {
+            if (unmatchedPaymentDetailsMap == null) {
+              unmatchedPaymentDetailsMap = createUnmatchedPaymentDetails(createUnmatchedPaymentRequestDatas());
+            }
+            transactionDataList.add(adaptTransaction(wallet, entry.transaction, unmatchedPaymentDetailsMap));
+          }
+        }
+
+        batch = transactionDataList.iterator();
+        position = toIndex;
+      }
+
+      return batch.next();
+    }
+  }
+
+  /**
+   * <p>Lightweight payment index entry holding either an unadapted transaction or a payment request</p>
+   * <p>Ordering matches the PaymentComparator (date descending, then amount ascending)</p>
+   */
+  private static class PaymentIndexEntry implements Comparable<PaymentIndexEntry> {
+
+    private final long dateMillis;
+    private final Coin amount;
+    private final Transaction transaction;
+    private final PaymentData paymentData;
+
+    private PaymentIndexEntry(long dateMillis, Coin amount, Transaction transaction, PaymentData paymentData) {
+      this.dateMillis = dateMillis;
+      this.amount = amount;
+      this.transaction = transaction;
+      this.paymentData = paymentData;
+    }
+
+    @Override
+    public int compareTo(PaymentIndexEntry other) {
+      int dateSort = Long.compare(other.dateMillis, dateMillis); // note inverse sort
+      if (dateSort != 0) {
+        return dateSort;
+      }
+      return amount.compareTo(other.amount);
+    }
+  }
 }
@@ -1,6 +1,9 @@
 package org.multibit.hd.core.utils;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.multibit.hd.core.config.Configurations;
@@ -15,6 +18,9 @@ import java.util.*;
  * <li>Bridge methods between Bitcoin and JVM ISO 4217 currencies</li>
  * </ul>
  *
+ * <p>All lookups are served from immutable tables built once when the class is first
+ * used so they are thread-safe and do not scan the JVM locales on each call.</p>
+ *
  * @since 0.0.1
  *
  */
@@ -23,38 +29,130 @@ public class CurrencyUtils {
   private static final Logger log = LoggerFactory.getLogger(CurrencyUtils.class);
 
   /**
-   * A map of all available currencies for available locales
+   * Utilities have private constructors
    */
-  private static SortedMap<Locale, Currency> localeCurrencyMap;
+  private CurrencyUtils() {
+  }
 
   /**
-   * A map of all common currency names and their appropriate ISO candidates
+   * <p>Initialization-on-demand holder for the lookup tables (the JVM guarantees safe publication)</p>
    */
-  private static Map<String, List<String>> isoCandidateMap;
+  private static class Tables {
+
+    /**
+     * A map of upper case ISO codes to the currency symbol in the native locale
+     */
+    private static final Map<String, String> SYMBOLS;
+
+    /**
+     * A map of all common currency names and their appropriate ISO candidates
+     */
+    private static final Map<String, List<String>> ISO_CANDIDATES;
+
+    /**
+     * A map of upper case non-standard codes to their ISO candidate
+     */
+    private static final Map<String, String> NON_ISO_TO_ISO;
+
+    /**
+     * A map of all ISO 4217 currencies known to the JVM
+     */
+    private static final Map<String, Currency> ISO_CURRENCIES;
+
+    static {
 
-  private static boolean initialised = false;
+      long start = System.currentTimeMillis();
 
-  private static void initialise() {
-    localeCurrencyMap = Maps.newTreeMap(new Comparator<Locale>() {
+      SortedMap<Locale, Currency> localeCurrencyMap = buildLocaleCurrencyMap();
+
+      SYMBOLS = buildSymbolMap(localeCurrencyMap);
+      ISO_CANDIDATES = buildIsoCandidateMap(localeCurrencyMap);
+      NON_ISO_TO_ISO = buildNonIsoMap(ISO_CANDIDATES);
+
+      ImmutableMap.Builder<String, Currency> isoCurrencies = ImmutableMap.builder();
+      for (Currency currency : Currency.getAvailableCurrencies()) {
+        isoCurrencies.put(currency.getCurrencyCode(), currency);
+      }
+      ISO_CURRENCIES = isoCurrencies.build();
+
+      log.debug("Built currency tables with {} symbols in {}ms", SYMBOLS.size(), System.currentTimeMillis() - start);
+    }
+
+  }
+
+  /**
+   * Populate currencies over all available locales (this ensure we can get the correct
+   * symbol for the currency using its native locale)
+   *
+   * @return A map of all available currencies for available locales
+   */
+  private static SortedMap<Locale, Currency> buildLocaleCurrencyMap() {
+
+    SortedMap<Locale, Currency> localeCurrencyMap = Maps.newTreeMap(new Comparator<Locale>() {
 
       @Override
       public int compare(Locale l1, Locale l2) {
         return l1.toString().compareTo(l2.toString());
       }
     });
-    populateCurrencyLocaleMap();
 
-    isoCandidateMap = Maps.newLinkedHashMap();
+    // Iterate over all the available locales
+    for (Locale locale : Locale.getAvailableLocales()) {
+      try {
+        // Key on locale to ensure uniqueness
+        Currency currency = Currency.getInstance(locale);
+        if (currency != null) {
+          localeCurrencyMap.put(locale, currency);
+        }
+      } catch (IllegalArgumentException e) {
+        // Do nothing - locale is likely too general (e.g. "ar")
+      }
+    }
+
+    return localeCurrencyMap;
+  }
+
+  /**
+   * @param localeCurrencyMap The locale currency map
+   *
+   * @return The first native locale symbol that differs from the ISO code, or the ISO 4217 fallback
+   */
+  private static Map<String, String> buildSymbolMap(SortedMap<Locale, Currency> localeCurrencyMap) {
+
+    Map<String, String> symbols = Maps.newHashMap();
+
+    // Locales are sorted so the first match is stable across runs
+    for (Map.Entry<Locale, Currency> entry : localeCurrencyMap.entrySet()) {
+      String isoCode = entry.getValue().getCurrencyCode();
+      if (!symbols.containsKey(isoCode)) {
+        String symbol = entry.getValue().getSymbol(entry.getKey());
+        if (!isoCode.equals(symbol)) {
+          symbols.put(isoCode, symbol);
+        }
+      }
+    }
 
-    populateIsoCandidateMap();
+    // Must have failed to find it in the JVM so use the ISO 4217 spec
+    for (Currency currency : Currency.getAvailableCurrencies()) {
+      String isoCode = currency.getCurrencyCode();
+      if (!symbols.containsKey(isoCode)) {
+        symbols.put(isoCode, fallbackSymbolFor(isoCode));
+      }
+    }
 
-    initialised = true;
+    return ImmutableMap.copyOf(symbols);
   }
 
   /**
    * Populate ISO candidate currencies and replace legacy entries
+   *
+   * @param localeCurrencyMap The locale currency map
+   *
+   * @return The ISO candidate map
    */
-  private static void populateIsoCandidateMap() {
+  private static Map<String, List<String>> buildIsoCandidateMap(SortedMap<Locale, Currency> localeCurrencyMap) {
+
+    Map<String, List<String>> isoCandidateMap = Maps.newLinkedHashMap();
 
     // Generate the ISO code from known entries (including legacy)
     for (Map.Entry<Locale, Currency> entry : localeCurrencyMap.entrySet()) {
@@ -69,24 +167,32 @@ public class CurrencyUtils {
     // Add non-standard codes and their ISO candidates (usually start with "X" for private codes)
     isoCandidateMap.put("XBT", Lists.newArrayList("BTC"));
 
+    ImmutableMap.Builder<String, List<String>> builder = ImmutableMap.builder();
+    for (Map.Entry<String, List<String>> entry : isoCandidateMap.entrySet()) {
+      builder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+    }
+
+    return builder.build();
   }
 
   /**
-   * Populate currencies over all available locales (this ensure we can get the correct
-   * symbol for the currency using its native locale)
+   * @param isoCandidateMap The ISO candidate map
+   *
+   * @return A reverse index of upper case non-standard codes to ISO codes (first entry wins)
    */
-  private static void populateCurrencyLocaleMap() {
+  private static Map<String, String> buildNonIsoMap(Map<String, List<String>> isoCandidateMap) {
 
-    // Iterate over all the available locales
-    for (Locale locale : Locale.getAvailableLocales()) {
-      try {
-        // Key on locale to ensure uniqueness
-        Currency currency = Currency.getInstance(locale);
-        localeCurrencyMap.put(locale, currency);
-      } catch (IllegalArgumentException e) {
-        // Do nothing - locale is likely too general (e.g. "ar")
+    Map<String, String> nonIsoMap = Maps.newHashMap();
+    for (Map.Entry<String, List<String>> entry : isoCandidateMap.entrySet()) {
+      for (String nonIsoCode : entry.getValue()) {
+        String key = nonIsoCode.toUpperCase(Locale.ENGLISH);
+        if (!nonIsoMap.containsKey(key)) {
+          nonIsoMap.put(key, entry.getKey());
+        }
       }
     }
+
+    return ImmutableMap.copyOf(nonIsoMap);
   }
 
   /**
@@ -106,20 +212,53 @@ public class CurrencyUtils {
    * @return The currency symbol appropriate for the given currency code in the current locale
    */
   public static String symbolFor(String isoCode) {
-    if (!initialised) {
-      initialise();
-    }
 
-    for (Map.Entry<Locale, Currency> entry : localeCurrencyMap.entrySet()) {
-      if (entry.getValue().getCurrencyCode().equalsIgnoreCase(isoCode)) {
-        String symbol = entry.getValue().getSymbol(entry.getKey());
-        if (!isoCode.equals(symbol)) {
-          return symbol;
-        }
-      }
+    Preconditions.checkNotNull(isoCode, "'isoCode' must be present");
+
+    String symbol = Tables.SYMBOLS.get(isoCode.toUpperCase(Locale.ENGLISH));
+    if (symbol != null) {
+      return symbol;
     }
 
-    // Must have failed to find it in the JVM so attempt to find it in the ISO 4217 spec
+    return fallbackSymbolFor(isoCode);
+
+  }
+
+  /**
+   * @param isoCode The 3 letter ISO 4217 currency code (e.g. "GBP", "USD" etc)
+   *
+   * @return The JVM currency if the code is in ISO 4217, absent otherwise (avoids the cost of
+   * an exception from {@link Currency#getInstance(String)})
+   */
+  public static Optional<Currency> isoCurrencyFor(String isoCode) {
+
+    Preconditions.checkNotNull(isoCode, "'isoCode' must be present");
+
+    return Optional.fromNullable(Tables.ISO_CURRENCIES.get(isoCode));
+
+  }
+
+  /**
+   * @param isoCode The ISO code (or recognised candidate) e.g. "XBT", "RUB"
+   *
+   * @return The non-standard codes that map to the ISO code (e.g. "BTC", "RUR"), empty if not known
+   */
+  public static List<String> isoCandidatesFor(String isoCode) {
+
+    Preconditions.checkNotNull(isoCode, "'isoCode' must be present");
+
+    List<String> candidates = Tables.ISO_CANDIDATES.get(isoCode);
+
+    return candidates == null ? Collections.<String>emptyList() : candidates;
+
+  }
+
+  /**
+   * @param isoCode The 3 letter ISO 4217 currency code
+   *
+   * @return The symbol from the ISO 4217 spec when the JVM does not provide one
+   */
+  private static String fallbackSymbolFor(String isoCode) {
 
     switch (isoCode) {
       case "ALL":
@@ -365,33 +504,21 @@ public class CurrencyUtils {
    * @return The ISO code (or recognised candidate)
    */
   public static String isoCandidateFor(String currency) {
-    if (!initialised) {
-      initialise();
-    }
 
     Preconditions.checkNotNull(currency, "'currency' must be present");
 
     log.trace("Searching for ISO candidate for '{}'", currency);
 
-    if (isoCandidateMap.containsKey(currency)) {
+    if (Tables.ISO_CANDIDATES.containsKey(currency)) {
       // The currency is ISO so no searching is required
       return currency;
     }
 
-    // Iterate over all currencies looking for a match
-    for (Map.Entry<String, List<String>> entry : isoCandidateMap.entrySet()) {
-
-      // Search the non-standard codes
-      List<String> nonStandard = entry.getValue();
-
-      for (String nonIsoCode : nonStandard) {
-
-        if (nonIsoCode.equalsIgnoreCase(currency)) {
-
-          // Found a match so return the ISO code
-          return entry.getKey();
-        }
-      }
+    // Search the non-standard codes
+    String isoCode = Tables.NON_ISO_TO_ISO.get(currency.toUpperCase(Locale.ENGLISH));
+    if (isoCode != null) {
+      // Found a match so return the ISO code
+      return isoCode;
     }
 
     // Must have failed to find a match here
@@ -0,0 +1,207 @@
+package org.multibit.hd.core.wallet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.multibit.hd.hardware.core.events.HardwareWalletEvent;
+import org.multibit.hd.hardware.core.events.HardwareWalletEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Signing session to provide the following to hardware wallet signing:</p>
+ * <ul>
+ * <li>Validation that every input is connected to its previous transaction before the device is involved</li>
+ * <li>Timing of the device messages by type for the duration of the signing operation</li>
+ * </ul>
+ *
+ * <p>The session does not answer device requests or speed them up. A missing previous transaction
+ * would otherwise only be found part way through the exchange, after the user has been prompted.</p>
+ *
+ * @since 0.5.0
+ */
+public class HardwareSigningSession {
+
+  private static final Logger log = LoggerFactory.getLogger(HardwareSigningSession.class);
+
+  private final int previousTransactionCount;
+
+  private final Map<String, Timing> timings = Maps.newLinkedHashMap();
+
+  private long startMillis = -1;
+
+  private long lastMessageMillis = -1;
+
+  private boolean finished = false;
+
+  private HardwareSigningSession(int previousTransactionCount) {
+
+    this.previousTransactionCount = previousTransactionCount;
+
+  }
+
+  /**
+   * <p>Validate the transaction before the device is involved</p>
+   *
+   * @param unsignedTx The unsigned transaction with its inputs connected to the wallet transactions
+   *
+   * @return A session for the validated transaction (not yet started)
+   *
+   * @throws IllegalStateException If an input is not connected to its previous transaction
+   */
+  public static HardwareSigningSession validate(Transaction unsignedTx) {
+
+    Preconditions.checkNotNull(unsignedTx, "'unsignedTx' must be present");
+
+    Set<Sha256Hash> previousTxHashes = Sets.newHashSet();
+    for (int i = 0; i < unsignedTx.getInputs().size(); i++) {
+      TransactionInput input = unsignedTx.getInput(i);
+
+      TransactionOutput connectedOutput = input.getConnectedOutput();
+      Preconditions.checkState(connectedOutput != null, "Input " + i + " is not connected to a previous transaction output");
+      Transaction previousTx = connectedOutput.getParentTransaction();
+      Preconditions.checkState(previousTx != null, "Input " + i + " has no previous transaction");
+
+      // Several inputs often spend the same transaction
+      previousTxHashes.add(previousTx.getHash());
+    }
+
+    return new HardwareSigningSession(previousTxHashes.size());
+  }
+
+  /**
+   * <p>Start timing the device messages (call immediately before signing)</p>
+   */
+  public synchronized void start() {
+
+    log.debug("Signing with {} previous transactions", previousTransactionCount);
+
+    startMillis = System.currentTimeMillis();
+    lastMessageMillis = startMillis;
+    HardwareWalletEvents.subscribe(this);
+
+  }
+
+  /**
+   * <p>Stop timing and log the summary (idempotent)</p>
+   */
+  public void finish() {
+
+    synchronized (this) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+    }
+
+    if (startMillis >= 0) {
+      HardwareWalletEvents.unsubscribe(this);
+      log.info("Hardware wallet signing took {}ms: {}", System.currentTimeMillis() - startMillis, getTimings());
+    }
+
+  }
+
+  /**
+   * @param event The hardware wallet event
+   */
+  @Subscribe
+  public void onHardwareWalletEvent(HardwareWalletEvent event) {
+
+    String messageType = event.getMessage().isPresent()
+      ? event.getMessage().get().getClass().getSimpleName()
+      : event.getEventType().name();
+    record(messageType, System.currentTimeMillis());
+
+    switch (event.getEventType()) {
+      case SHOW_OPERATION_SUCCEEDED:
+      case SHOW_OPERATION_FAILED:
+      case SHOW_DEVICE_FAILED:
+      case SHOW_DEVICE_DETACHED:
+      case SHOW_DEVICE_STOPPED:
+        finish();
+        break;
+      default:
+        // Still signing
+    }
+
+  }
+
+  /**
+   * @return The number of distinct previous transactions the device will request
+   */
+  public int getPreviousTransactionCount() {
+    return previousTransactionCount;
+  }
+
+  /**
+   * @return The timing of each device message type since the start
+   */
+  public synchronized Map<String, Timing> getTimings() {
+    return ImmutableMap.copyOf(timings);
+  }
+
+  /**
+   * @param messageType The message type
+   * @param nowMillis   The time the message arrived
+   */
+  synchronized void record(String messageType, long nowMillis) {
+
+    if (finished) {
+      return;
+    }
+
+    if (lastMessageMillis < 0) {
+      lastMessageMillis = nowMillis;
+    }
+
+    Timing timing = timings.get(messageType);
+    if (timing == null) {
+      timing = new Timing();
+      timings.put(messageType, timing);
+    }
+    timing.count++;
+    // Time since the previous message covers the host reply and the device work
+    timing.totalMillis += nowMillis - lastMessageMillis;
+    lastMessageMillis = nowMillis;
+
+  }
+
+  /**
+   * <p>The count and total time of one device message type</p>
+   */
+  public static class Timing {
+
+    private int count = 0;
+
+    private long totalMillis = 0;
+
+    /**
+     * @return The number of messages
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @return The total time in milliseconds spent waiting for the messages
+     */
+    public long getTotalMillis() {
+      return totalMillis;
+    }
+
+    @Override
+    public String toString() {
+      return count + "x " + totalMillis + "ms";
+    }
+  }
+
+}
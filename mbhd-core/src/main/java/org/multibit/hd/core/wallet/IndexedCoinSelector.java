@@ -0,0 +1,236 @@
+package org.multibit.hd.core.wallet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.CoinSelector;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * <p>Coin selector to provide the following to the Bitcoin network service:</p>
+ * <ul>
+ * <li>Selection from a pre-sorted UTXO index rather than sorting every output on each attempt</li>
+ * <li>Branch and bound search for a set of outputs that avoids a change output without adding inputs</li>
+ * <li>Fallback to the smallest single sufficient output, or largest first, to keep the input count low</li>
+ * </ul>
+ *
+ * <p>A changeless match may overpay the target by up to the cost of creating and later spending a
+ * change output (capped below the dust limit) since that excess would otherwise be lost to fees.
+ * The same selectability rules as the default bitcoinj selector apply (confirmed outputs or our
+ * own broadcast pending outputs).</p>
+ *
+ * @since 0.5.0
+ */
+public class IndexedCoinSelector implements CoinSelector {
+
+  private static final Logger log = LoggerFactory.getLogger(IndexedCoinSelector.class);
+
+  /**
+   * The maximum number of branch and bound steps before falling back
+   */
+  static final int MAXIMUM_SEARCH_STEPS = 100_000;
+
+  /**
+   * The approximate size of a P2PKH change output in bytes
+   */
+  static final int CHANGE_OUTPUT_BYTES = 34;
+
+  /**
+   * The approximate size of the P2PKH input that later spends a change output in bytes
+   */
+  static final int CHANGE_SPEND_BYTES = 148;
+
+  private final UtxoIndex utxoIndex;
+
+  private final long costOfChange;
+
+  /**
+   * @param utxoIndex The index of the wallet unspent outputs
+   * @param feePerKb  The fee per kilobyte of the transaction being built
+   */
+  public IndexedCoinSelector(UtxoIndex utxoIndex, Coin feePerKb) {
+
+    Preconditions.checkNotNull(utxoIndex, "'utxoIndex' must be present");
+    Preconditions.checkNotNull(feePerKb, "'feePerKb' must be present");
+
+    this.utxoIndex = utxoIndex;
+    // Any larger excess would be returned as a change output rather than added to the fee
+    this.costOfChange = Math.min(
+      feePerKb.value * (CHANGE_OUTPUT_BYTES + CHANGE_SPEND_BYTES) / 1000,
+      Transaction.MIN_NONDUST_OUTPUT.value - 1
+    );
+
+  }
+
+  @Override
+  public CoinSelection select(Coin target, List<TransactionOutput> candidates) {
+
+    List<TransactionOutput> selectable = Lists.newArrayListWithCapacity(candidates.size());
+    for (TransactionOutput candidate : candidates) {
+      if (candidate.getParentTransaction() == null || DefaultCoinSelector.isSelectable(candidate.getParentTransaction())) {
+        selectable.add(candidate);
+      }
+    }
+
+    List<TransactionOutput> ordered = utxoIndex.order(selectable);
+
+    long total = 0;
+    for (TransactionOutput output : ordered) {
+      total += output.getValue().value;
+    }
+    if (total <= target.value) {
+      // Everything is needed (includes emptying the wallet)
+      return new CoinSelection(Coin.valueOf(total), ordered);
+    }
+
+    List<TransactionOutput> fewestInputs = selectFewestInputs(target.value, ordered);
+
+    // Dropping the change output does not make up for an extra input
+    List<TransactionOutput> changeless = selectWithoutChange(target.value, ordered, fewestInputs.size());
+    if (!changeless.isEmpty()) {
+      log.trace("Selected {} outputs without change", changeless.size());
+      return newCoinSelection(changeless);
+    }
+
+    return newCoinSelection(fewestInputs);
+  }
+
+  /**
+   * <p>Depth first search for the closest sum in [target, target + cost of change]</p>
+   *
+   * @param target    The value required
+   * @param ordered   The outputs, largest first
+   * @param maxInputs The maximum number of outputs in a match
+   *
+   * @return The outputs found, or empty if no match was found within the step limit
+   */
+  List<TransactionOutput> selectWithoutChange(long target, List<TransactionOutput> ordered, int maxInputs) {
+
+    long upperBound = target + costOfChange;
+
+    // Outputs larger than the upper bound can never be part of a match
+    int first = 0;
+    while (first < ordered.size() && ordered.get(first).getValue().value > upperBound) {
+      first++;
+    }
+
+    int size = ordered.size() - first;
+    long[] values = new long[size];
+    long[] remainingValues = new long[size + 1];
+    for (int i = 0; i < size; i++) {
+      values[i] = ordered.get(first + i).getValue().value;
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      remainingValues[i] = remainingValues[i + 1] + values[i];
+    }
+
+    boolean[] included = new boolean[size];
+    boolean[] bestIncluded = null;
+    long bestExcess = Long.MAX_VALUE;
+    long currentValue = 0;
+    int includedCount = 0;
+    int depth = 0;
+
+    for (int step = 0; step < MAXIMUM_SEARCH_STEPS; step++) {
+
+      boolean backtrack;
+      if (currentValue + remainingValues[depth] < target || currentValue > upperBound || includedCount > maxInputs) {
+        // This branch cannot reach the window
+        backtrack = true;
+      } else if (currentValue >= target) {
+        long excess = currentValue - target;
+        if (excess < bestExcess) {
+          bestExcess = excess;
+          bestIncluded = included.clone();
+          if (excess == 0) {
+            break;
+          }
+        }
+        backtrack = true;
+      } else {
+        backtrack = false;
+      }
+
+      if (backtrack) {
+        // Exclude the most recently included output and explore the branch without it
+        while (depth > 0 && !included[depth - 1]) {
+          depth--;
+        }
+        if (depth == 0) {
+          break;
+        }
+        depth--;
+        included[depth] = false;
+        currentValue -= values[depth];
+        includedCount--;
+      } else {
+        included[depth] = true;
+        currentValue += values[depth];
+        includedCount++;
+      }
+      depth++;
+    }
+
+    List<TransactionOutput> selected = Lists.newArrayList();
+    if (bestIncluded != null) {
+      for (int i = 0; i < size; i++) {
+        if (bestIncluded[i]) {
+          selected.add(ordered.get(first + i));
+        }
+      }
+    }
+
+    return selected;
+  }
+
+  /**
+   * @param target  The value required
+   * @param ordered The outputs, largest first (total must exceed the target)
+   *
+   * @return The smallest single output covering the target, or the largest outputs until the target is covered
+   */
+  List<TransactionOutput> selectFewestInputs(long target, List<TransactionOutput> ordered) {
+
+    // Walk down from the largest to find the smallest output that still covers the target
+    TransactionOutput single = null;
+    for (TransactionOutput output : ordered) {
+      if (output.getValue().value < target) {
+        break;
+      }
+      single = output;
+    }
+    if (single != null) {
+      return Lists.newArrayList(single);
+    }
+
+    List<TransactionOutput> selected = Lists.newArrayList();
+    long value = 0;
+    for (TransactionOutput output : ordered) {
+      selected.add(output);
+      value += output.getValue().value;
+      if (value >= target) {
+        break;
+      }
+    }
+
+    return selected;
+  }
+
+  private CoinSelection newCoinSelection(List<TransactionOutput> selected) {
+
+    long value = 0;
+    for (TransactionOutput output : selected) {
+      value += output.getValue().value;
+    }
+
+    return new CoinSelection(Coin.valueOf(value), selected);
+  }
+
+}
@@ -0,0 +1,230 @@
+package org.multibit.hd.core.wallet;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import org.bitcoinj.core.AbstractWalletEventListener;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.wallet.DeterministicKeyChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Index to provide the following to hardware wallet signing:</p>
+ * <ul>
+ * <li>The deterministic path and address of each key in the active keychain by public key hash</li>
+ * <li>Incremental updates as keys are added so signing setup does not search the wallet per input</li>
+ * </ul>
+ *
+ * <p>Events arrive on the bitcoinj user thread so the index can lag the wallet briefly. A miss
+ * falls back to the keychain's own lookup and the result is added to the index.</p>
+ *
+ * @since 0.5.0
+ */
+public class KeyPathIndex extends AbstractWalletEventListener {
+
+  private static final Logger log = LoggerFactory.getLogger(KeyPathIndex.class);
+
+  private final Wallet wallet;
+
+  private final Map<HashCode, Entry> entries = Maps.newHashMap();
+
+  /**
+   * The keychain the entries were built from (rebuilt if the wallet moves to another)
+   */
+  private DeterministicKeyChain indexedKeyChain = null;
+
+  /**
+   * @param wallet The wallet providing the active keychain
+   */
+  public KeyPathIndex(Wallet wallet) {
+
+    Preconditions.checkNotNull(wallet, "'wallet' must be present");
+
+    this.wallet = wallet;
+
+  }
+
+  /**
+   * <p>Index the keys of the active keychain and listen for new keys</p>
+   */
+  public void attach() {
+
+    wallet.addEventListener(this);
+    rebuild();
+
+  }
+
+  /**
+   * <p>Stop listening for new keys (the index is no longer maintained)</p>
+   */
+  public void detach() {
+
+    wallet.removeEventListener(this);
+
+    synchronized (this) {
+      entries.clear();
+      indexedKeyChain = null;
+    }
+
+  }
+
+  /**
+   * @return The wallet providing the active keychain
+   */
+  public Wallet getWallet() {
+    return wallet;
+  }
+
+  /**
+   * @return The number of indexed keys
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @param pubKeyHash The public key hash (e.g. from a pay to address script)
+   *
+   * @return The path and address of the key if it belongs to the active keychain
+   */
+  public Optional<Entry> lookup(byte[] pubKeyHash) {
+
+    if (pubKeyHash == null) {
+      return Optional.absent();
+    }
+
+    HashCode hash = HashCode.fromBytes(pubKeyHash);
+
+    DeterministicKeyChain activeKeyChain = wallet.getActiveKeychain();
+    synchronized (this) {
+      if (activeKeyChain != indexedKeyChain) {
+        rebuild();
+      }
+      Entry entry = entries.get(hash);
+      if (entry != null) {
+        return Optional.of(entry);
+      }
+    }
+
+    // Not yet indexed (or not ours)
+    if (activeKeyChain == null) {
+      return Optional.absent();
+    }
+    DeterministicKey key = activeKeyChain.findKeyFromPubHash(pubKeyHash);
+    if (key == null) {
+      return Optional.absent();
+    }
+
+    return Optional.of(add(key));
+  }
+
+  /**
+   * @param pubKey The raw public key (e.g. from a pay to public key script)
+   *
+   * @return The path and address of the key if it belongs to the active keychain
+   */
+  public Optional<Entry> lookupPubKey(byte[] pubKey) {
+
+    if (pubKey == null) {
+      return Optional.absent();
+    }
+
+    // Hashing avoids decoding the curve point
+    return lookup(Utils.sha256hash160(pubKey));
+  }
+
+  @Override
+  public void onKeysAdded(List<ECKey> keys) {
+
+    DeterministicKeyChain activeKeyChain = wallet.getActiveKeychain();
+
+    synchronized (this) {
+      if (activeKeyChain != indexedKeyChain) {
+        // Includes the new keys
+        rebuild();
+        return;
+      }
+      for (ECKey key : keys) {
+        // Ignore keys added to other keychains
+        if (key instanceof DeterministicKey && activeKeyChain.findKeyFromPubHash(key.getPubKeyHash()) != null) {
+          add((DeterministicKey) key);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * <p>Index all the keys of the active keychain, including the lookahead</p>
+   */
+  private synchronized void rebuild() {
+
+    entries.clear();
+    indexedKeyChain = wallet.getActiveKeychain();
+    if (indexedKeyChain == null) {
+      return;
+    }
+
+    for (DeterministicKey key : indexedKeyChain.getLeafKeys()) {
+      add(key);
+    }
+
+    log.debug("Indexed {} key paths", entries.size());
+
+  }
+
+  private synchronized Entry add(DeterministicKey key) {
+
+    byte[] pubKeyHash = key.getPubKeyHash();
+    Entry entry = new Entry(
+      key.getPath(),
+      // Consistent with the change address map built for the device
+      new Address(MainNetParams.get(), pubKeyHash)
+    );
+    entries.put(HashCode.fromBytes(pubKeyHash), entry);
+
+    return entry;
+  }
+
+  /**
+   * <p>The path and address of a single key</p>
+   */
+  public static class Entry {
+
+    private final ImmutableList<ChildNumber> path;
+
+    private final Address address;
+
+    Entry(ImmutableList<ChildNumber> path, Address address) {
+      this.path = path;
+      this.address = address;
+    }
+
+    /**
+     * @return The deterministic path of the key
+     */
+    public ImmutableList<ChildNumber> getPath() {
+      return path;
+    }
+
+    /**
+     * @return The address of the key
+     */
+    public Address getAddress() {
+      return address;
+    }
+  }
+
+}
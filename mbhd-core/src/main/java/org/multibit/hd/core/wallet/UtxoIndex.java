@@ -0,0 +1,301 @@
+package org.multibit.hd.core.wallet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bitcoinj.core.AbstractWalletEventListener;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * <p>Index to provide the following to the coin selector:</p>
+ * <ul>
+ * <li>The unspent outputs of a wallet kept sorted by value (largest first) and then depth (deepest first)</li>
+ * <li>Incremental updates from wallet events so a send does not sort every output again</li>
+ * </ul>
+ *
+ * <p>Depth is taken from the height the transaction appeared at rather than the current depth so the
+ * order does not change with each new block. Events arrive on the bitcoinj user thread so the index can
+ * lag the wallet briefly: the selector only ever uses outputs the wallet itself offers as candidates.</p>
+ *
+ * @since 0.5.0
+ */
+public class UtxoIndex extends AbstractWalletEventListener {
+
+  private static final Logger log = LoggerFactory.getLogger(UtxoIndex.class);
+
+  /**
+   * Used as the height of pending outputs so they sort after confirmed outputs of the same value
+   */
+  private static final int PENDING_HEIGHT = Integer.MAX_VALUE;
+
+  /**
+   * Orders by value (largest first), then appearance height (deepest first), then outpoint
+   */
+  static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry o1, Entry o2) {
+
+      int valueSort = Long.compare(o2.value, o1.value);
+      if (valueSort != 0) {
+        return valueSort;
+      }
+
+      int heightSort = Integer.compare(o1.height, o2.height);
+      if (heightSort != 0) {
+        return heightSort;
+      }
+
+      int hashSort = o1.outPoint.getHash().compareTo(o2.outPoint.getHash());
+      if (hashSort != 0) {
+        return hashSort;
+      }
+
+      return Long.compare(o1.outPoint.getIndex(), o2.outPoint.getIndex());
+    }
+  };
+
+  private final Wallet wallet;
+
+  private final TreeSet<Entry> sorted = new TreeSet<>(ORDER);
+
+  private final Map<TransactionOutPoint, Entry> entries = Maps.newHashMap();
+
+  /**
+   * @param wallet The wallet providing the unspent outputs
+   */
+  public UtxoIndex(Wallet wallet) {
+
+    Preconditions.checkNotNull(wallet, "'wallet' must be present");
+
+    this.wallet = wallet;
+
+  }
+
+  /**
+   * <p>Index the current unspent outputs and listen for changes</p>
+   */
+  public void attach() {
+
+    rebuild();
+    wallet.addEventListener(this);
+
+  }
+
+  /**
+   * <p>Stop listening for changes (the index is no longer maintained)</p>
+   */
+  public void detach() {
+
+    wallet.removeEventListener(this);
+
+    synchronized (this) {
+      sorted.clear();
+      entries.clear();
+    }
+
+  }
+
+  /**
+   * @return The wallet providing the unspent outputs
+   */
+  public Wallet getWallet() {
+    return wallet;
+  }
+
+  /**
+   * @return The number of indexed outputs
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * <p>Order the candidates using the index</p>
+   *
+   * @param candidates The outputs that may be spent
+   *
+   * @return The candidates largest first, including any not yet indexed
+   */
+  public List<TransactionOutput> order(Collection<TransactionOutput> candidates) {
+
+    Map<TransactionOutPoint, TransactionOutput> remaining = Maps.newHashMapWithExpectedSize(candidates.size());
+    for (TransactionOutput candidate : candidates) {
+      remaining.put(candidate.getOutPointFor(), candidate);
+    }
+
+    List<TransactionOutput> ordered = Lists.newArrayListWithCapacity(candidates.size());
+    synchronized (this) {
+      for (Entry entry : sorted) {
+        TransactionOutput candidate = remaining.remove(entry.outPoint);
+        if (candidate != null) {
+          ordered.add(candidate);
+        }
+        if (remaining.isEmpty()) {
+          break;
+        }
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      // The index has not caught up with the wallet yet so fall back to sorting
+      log.trace("{} candidates not yet indexed", remaining.size());
+      List<Entry> unindexed = Lists.newArrayListWithCapacity(remaining.size() + ordered.size());
+      for (TransactionOutput candidate : ordered) {
+        unindexed.add(new Entry(candidate));
+      }
+      for (TransactionOutput candidate : remaining.values()) {
+        unindexed.add(new Entry(candidate));
+      }
+      Collections.sort(unindexed, ORDER);
+
+      ordered.clear();
+      for (Entry entry : unindexed) {
+        ordered.add(entry.output);
+      }
+    }
+
+    return ordered;
+  }
+
+  @Override
+  public void onCoinsReceived(Wallet wallet, Transaction tx, Coin prevBalance, Coin newBalance) {
+    update(tx);
+  }
+
+  @Override
+  public void onCoinsSent(Wallet wallet, Transaction tx, Coin prevBalance, Coin newBalance) {
+    update(tx);
+  }
+
+  @Override
+  public void onTransactionConfidenceChanged(Wallet wallet, Transaction tx) {
+    update(tx);
+  }
+
+  @Override
+  public void onReorganize(Wallet wallet) {
+    rebuild();
+  }
+
+  /**
+   * <p>Replace the index with the current unspent outputs of the wallet</p>
+   */
+  void rebuild() {
+
+    // Gather outside the index lock since the wallet takes its own lock
+    List<Entry> unspents = Lists.newArrayList();
+    for (TransactionOutput output : wallet.getUnspents()) {
+      unspents.add(new Entry(output));
+    }
+
+    synchronized (this) {
+      sorted.clear();
+      entries.clear();
+      for (Entry entry : unspents) {
+        put(entry);
+      }
+    }
+
+    log.debug("Indexed {} unspent outputs", unspents.size());
+
+  }
+
+  /**
+   * @param output The output to index
+   */
+  synchronized void add(TransactionOutput output) {
+    put(new Entry(output));
+  }
+
+  /**
+   * @param tx The transaction that spends or creates indexed outputs
+   */
+  private void update(Transaction tx) {
+
+    if (tx.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.DEAD) {
+      // The outputs it spent may be spendable again
+      rebuild();
+      return;
+    }
+
+    List<TransactionOutPoint> spent = Lists.newArrayList();
+    for (TransactionInput input : tx.getInputs()) {
+      spent.add(input.getOutpoint());
+    }
+
+    List<Entry> available = Lists.newArrayList();
+    for (TransactionOutput output : tx.getOutputs()) {
+      if (output.isAvailableForSpending() && output.isMine(wallet)) {
+        available.add(new Entry(output));
+      } else {
+        spent.add(output.getOutPointFor());
+      }
+    }
+
+    synchronized (this) {
+      for (TransactionOutPoint outPoint : spent) {
+        Entry removed = entries.remove(outPoint);
+        if (removed != null) {
+          sorted.remove(removed);
+        }
+      }
+      for (Entry entry : available) {
+        // Re-keys the entry if the transaction has confirmed since it was indexed
+        put(entry);
+      }
+    }
+
+  }
+
+  private void put(Entry entry) {
+
+    Entry previous = entries.put(entry.outPoint, entry);
+    if (previous != null) {
+      sorted.remove(previous);
+    }
+    sorted.add(entry);
+
+  }
+
+  /**
+   * <p>Immutable index entry</p>
+   */
+  static class Entry {
+
+    private final TransactionOutput output;
+    private final TransactionOutPoint outPoint;
+    private final long value;
+    private final int height;
+
+    Entry(TransactionOutput output) {
+
+      this.output = output;
+      this.outPoint = output.getOutPointFor();
+      this.value = output.getValue().value;
+
+      Transaction parent = output.getParentTransaction();
+      if (parent != null && parent.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.BUILDING) {
+        this.height = parent.getConfidence().getAppearedAtChainHeight();
+      } else {
+        this.height = PENDING_HEIGHT;
+      }
+
+    }
+  }
+
+}
@@ -2,14 +2,20 @@ package org.multibit.hd.core.config;
 
 import com.google.common.base.Optional;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.joda.time.DateTimeUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.managers.InstallationManager;
+import org.multibit.hd.core.testing.DeterministicScheduledExecutorService;
 import org.multibit.hd.core.testing.FixtureAsserts;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.Set;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -27,6 +33,10 @@ public class ConfigurationsTest {
   @After
   public void tearDown() throws Exception {
 
+    Configurations.setWriterService(null);
+    DateTimeUtils.setCurrentMillisSystem();
+
+    InstallationManager.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
     InstallationManager.unrestricted = false;
 
   }
@@ -71,4 +81,146 @@ public class ConfigurationsTest {
 
   }
 
+  @Test
+  public void testDiff_OnlyChangedSections() throws Exception {
+
+    // Arrange
+    Configuration before = Configurations.newDefaultConfiguration();
+    Configuration after = before.deepCopy();
+    after.getSound().setAlertSound(!before.getSound().isAlertSound());
+    after.setTor(!before.isTor());
+
+    // Act
+    Set<ConfigurationSection> changedSections = Configurations.diff(before, after);
+
+    // Assert
+    assertThat(changedSections).containsOnly(ConfigurationSection.SOUND, ConfigurationSection.APPLICATION);
+
+  }
+
+  @Test
+  public void testDiff_CopyUnchanged() throws Exception {
+
+    // Arrange
+    Configuration before = Configurations.newDefaultConfiguration();
+
+    // Act
+    Set<ConfigurationSection> changedSections = Configurations.diff(before, before.deepCopy());
+
+    // Assert
+    assertThat(changedSections).isEmpty();
+
+  }
+
+  @Test
+  public void testPersistCurrentConfiguration_BurstWritesLatestOnce() throws Exception {
+
+    // Arrange
+    DeterministicScheduledExecutorService writerService = new DeterministicScheduledExecutorService(System.currentTimeMillis());
+    Configurations.setWriterService(writerService);
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+    File configurationFile = InstallationManager.getConfigurationFile();
+
+    // Act (several changes in quick succession)
+    for (String screen : new String[]{"SEND_REQUEST", "TRANSACTIONS", "CONTACTS"}) {
+      Configurations.currentConfiguration.getAppearance().setCurrentScreen(screen);
+      Configurations.persistCurrentConfiguration();
+      writerService.advanceBy(100);
+    }
+
+    // Changes after the last request are not part of its snapshot
+    Configurations.currentConfiguration.getAppearance().setCurrentScreen("TOOLS");
+
+    // Assert (a single write is scheduled and nothing is written until the delay has passed)
+    assertThat(writerService.getScheduledCount()).isEqualTo(1);
+    assertThat(configurationFile.exists()).isFalse();
+
+    writerService.advanceBy(Configurations.WRITE_DELAY_MILLIS);
+
+    assertThat(writerService.getScheduledCount()).isEqualTo(0);
+    assertThat(readCurrentScreen(configurationFile)).isEqualTo("CONTACTS");
+    assertThat(new File(configurationFile.getAbsolutePath() + ".tmp").exists()).isFalse();
+
+    // No further writes follow the burst
+    assertThat(configurationFile.delete()).isTrue();
+    writerService.advanceBy(10 * Configurations.WRITE_DELAY_MILLIS);
+    assertThat(configurationFile.exists()).isFalse();
+
+  }
+
+  @Test
+  public void testPersistCurrentConfigurationNow_ReplacesScheduledWrite() throws Exception {
+
+    // Arrange
+    DeterministicScheduledExecutorService writerService = new DeterministicScheduledExecutorService(System.currentTimeMillis());
+    Configurations.setWriterService(writerService);
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+    Configurations.currentConfiguration.getAppearance().setCurrentScreen("SEND_REQUEST");
+    Configurations.persistCurrentConfiguration();
+
+    // Act
+    Configurations.currentConfiguration.getAppearance().setCurrentScreen("TOOLS");
+    Configurations.persistCurrentConfigurationNow();
+
+    // Assert (written at once and the earlier snapshot is never written over it)
+    File configurationFile = InstallationManager.getConfigurationFile();
+    assertThat(readCurrentScreen(configurationFile)).isEqualTo("TOOLS");
+    assertThat(writerService.getScheduledCount()).isEqualTo(0);
+
+    writerService.advanceBy(Configurations.WRITE_DELAY_MILLIS);
+    assertThat(readCurrentScreen(configurationFile)).isEqualTo("TOOLS");
+
+  }
+
+  @Test
+  public void testPersistCurrentConfigurationNow_FailedWriteKeepsExistingFile() throws Exception {
+
+    // Arrange
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+    Configurations.currentConfiguration.getAppearance().setCurrentScreen("TOOLS");
+    Configurations.persistCurrentConfigurationNow();
+    File configurationFile = InstallationManager.getConfigurationFile();
+    long originalLength = configurationFile.length();
+
+    // Act
+    Configurations.currentConfiguration = new UnwritableConfiguration();
+    Configurations.persistCurrentConfigurationNow();
+
+    // Assert
+    assertThat(configurationFile.length()).isEqualTo(originalLength);
+    assertThat(readCurrentScreen(configurationFile)).isEqualTo("TOOLS");
+    assertThat(new File(configurationFile.getAbsolutePath() + ".tmp").exists()).isFalse();
+
+  }
+
+  /**
+   * @param configurationFile The configuration file
+   *
+   * @return The current screen held in the file
+   */
+  private String readCurrentScreen(File configurationFile) throws Exception {
+
+    try (InputStream is = new FileInputStream(configurationFile)) {
+      Optional<Configuration> configuration = Yaml.readYaml(is, Configuration.class);
+      assertThat(configuration.isPresent()).isTrue();
+      return configuration.get().getAppearance().getCurrentScreen();
+    }
+  }
+
+  /**
+   * <p>Configuration that fails part way through serialisation</p>
+   */
+  private static class UnwritableConfiguration extends Configuration {
+
+    @Override
+    public SoundConfiguration getSound() {
+      throw new IllegalStateException("Not serialisable");
+    }
+
+    @Override
+    public Configuration deepCopy() {
+      return this;
+    }
+  }
+
 }
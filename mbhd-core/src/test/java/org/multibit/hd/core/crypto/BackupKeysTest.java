@@ -0,0 +1,57 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.base.Optional;
+import org.junit.After;
+import org.junit.Test;
+import org.multibit.hd.core.dto.WalletId;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BackupKeysTest {
+
+  private static final WalletId WALLET_ID_1 = new WalletId("11111111-22222222-33333333-44444444-55555555");
+  private static final WalletId WALLET_ID_2 = new WalletId("66666666-77777777-88888888-99999999-aaaaaaaa");
+
+  @After
+  public void tearDown() throws Exception {
+
+    BackupKeys.INSTANCE.clear();
+
+  }
+
+  @Test
+  public void testRemember_OnlyProvidedForSameWallet() throws Exception {
+
+    // Arrange
+    byte[] key = new byte[]{1, 2, 3, 4};
+
+    // Act
+    BackupKeys.INSTANCE.remember(WALLET_ID_1, new KeyParameter(key));
+
+    // Assert
+    Optional<KeyParameter> backupAESKey = BackupKeys.INSTANCE.getBackupAESKey(WALLET_ID_1);
+    assertThat(backupAESKey.isPresent()).isTrue();
+    assertThat(backupAESKey.get().getKey()).isEqualTo(key);
+    assertThat(BackupKeys.INSTANCE.getBackupAESKey(WALLET_ID_2).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testClear_WipesKey() throws Exception {
+
+    // Arrange
+    BackupKeys.INSTANCE.remember(WALLET_ID_1, new KeyParameter(new byte[]{1, 2, 3, 4}));
+    KeyParameter heldCopy = BackupKeys.INSTANCE.getBackupAESKey(WALLET_ID_1).get();
+
+    // Act
+    BackupKeys.INSTANCE.clear();
+
+    // Assert
+    assertThat(BackupKeys.INSTANCE.getBackupAESKey(WALLET_ID_1).isPresent()).isFalse();
+    // Copies handed out earlier are unaffected
+    assertThat(heldCopy.getKey()).isEqualTo(new byte[]{1, 2, 3, 4});
+
+  }
+
+}
@@ -0,0 +1,315 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.bitcoin.protocols.payments.Protos;
+import org.bitcoinj.crypto.TrustStoreLoader;
+import org.bitcoinj.protocols.payments.PaymentProtocol;
+import org.bitcoinj.protocols.payments.PaymentProtocolException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.utils.Dates;
+import org.multibit.hd.core.managers.HttpsManager;
+
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.Signature;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class PkiVerificationsTest {
+
+  /**
+   * The expiry of the self-signed certificate in the localhost fixtures
+   */
+  private static final DateTime LOCALHOST_NOT_AFTER = new DateTime(2015, 5, 25, 17, 37, 15, DateTimeZone.UTC);
+
+  private CountingTrustStoreLoader trustStoreLoader;
+
+  private FixedDateChainValidator chainValidator;
+
+  @Before
+  public void setUp() throws Exception {
+
+    PkiVerifications.INSTANCE.reset();
+    trustStoreLoader = new CountingTrustStoreLoader();
+
+    // The localhost fixtures are only valid at dates within the certificate validity period
+    DateTimeUtils.setCurrentMillisFixed(new DateTime(2015, 3, 1, 0, 0, 0, DateTimeZone.UTC).getMillis());
+    chainValidator = new FixedDateChainValidator();
+    PkiVerifications.INSTANCE.setChainValidator(chainValidator);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    PkiVerifications.INSTANCE.setChainValidator(new PkiVerifications.ChainValidator() {
+      @Override
+      public PaymentProtocol.PkiVerificationData validate(Protos.PaymentRequest paymentRequest, KeyStore keyStore) throws PaymentProtocolException {
+        return PaymentProtocol.verifyPaymentRequestPki(paymentRequest, keyStore);
+      }
+    });
+    PkiVerifications.INSTANCE.reset();
+    DateTimeUtils.setCurrentMillisSystem();
+
+  }
+
+  @Test
+  public void testVerify_ValidatedChainCached() throws Exception {
+
+    // Arrange
+    Protos.PaymentRequest paymentRequest = fixture("localhost-signed");
+
+    // Act
+    PaymentProtocol.PkiVerificationData pkiVerificationData = PkiVerifications.INSTANCE.verify(paymentRequest, localhostTrustStoreLoader());
+
+    // Assert
+    assertThat(pkiVerificationData).isSameAs(chainValidator.pkiVerificationData);
+    assertThat(chainValidator.validations).isEqualTo(1);
+    assertThat(PkiVerifications.INSTANCE.size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testVerify_CachedChainReused() throws Exception {
+
+    // Arrange (a different payment request signed with the same chain)
+    TrustStoreLoader localhostTrustStoreLoader = localhostTrustStoreLoader();
+    PkiVerifications.INSTANCE.verify(fixture("localhost-signed"), localhostTrustStoreLoader);
+
+    // Act
+    PaymentProtocol.PkiVerificationData pkiVerificationData = PkiVerifications.INSTANCE.verify(fixture("localhost-signed-1milli"), localhostTrustStoreLoader);
+
+    // Assert
+    assertThat(pkiVerificationData).isSameAs(chainValidator.pkiVerificationData);
+    assertThat(chainValidator.validations).isEqualTo(1);
+    assertThat(PkiVerifications.INSTANCE.size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testVerify_TamperedSignatureRejectedOnCacheHit() throws Exception {
+
+    // Arrange
+    TrustStoreLoader localhostTrustStoreLoader = localhostTrustStoreLoader();
+    Protos.PaymentRequest paymentRequest = fixture("localhost-signed");
+    PkiVerifications.INSTANCE.verify(paymentRequest, localhostTrustStoreLoader);
+
+    byte[] signature = paymentRequest.getSignature().toByteArray();
+    signature[signature.length / 2] ^= 0x01;
+    Protos.PaymentRequest tampered = paymentRequest.toBuilder().setSignature(ByteString.copyFrom(signature)).build();
+
+    // Act
+    try {
+      PkiVerifications.INSTANCE.verify(tampered, localhostTrustStoreLoader);
+      fail("Expected an invalid signature");
+    } catch (PaymentProtocolException.PkiVerificationException e) {
+      // Expected
+    }
+
+    // Assert (the chain was found in the cache so the rejection came from the signature check)
+    assertThat(chainValidator.validations).isEqualTo(1);
+    assertThat(PkiVerifications.INSTANCE.size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testVerify_CachedChainExpiresWithCertificate() throws Exception {
+
+    // Arrange (the certificate expires before the cache expiry)
+    TrustStoreLoader localhostTrustStoreLoader = localhostTrustStoreLoader();
+    DateTimeUtils.setCurrentMillisFixed(LOCALHOST_NOT_AFTER.minusMinutes(PkiVerifications.CHAIN_EXPIRY_MINUTES / 2).getMillis());
+    PkiVerifications.INSTANCE.verify(fixture("localhost-signed"), localhostTrustStoreLoader);
+
+    // Act
+    DateTimeUtils.setCurrentMillisFixed(LOCALHOST_NOT_AFTER.plusMinutes(1).getMillis());
+    try {
+      PkiVerifications.INSTANCE.verify(fixture("localhost-signed"), localhostTrustStoreLoader);
+      fail("Expected an expired certificate");
+    } catch (PaymentProtocolException.PkiVerificationException e) {
+      // Expected
+    }
+
+    // Assert
+    assertThat(chainValidator.validations).isEqualTo(2);
+
+  }
+
+  @Test
+  public void testExpiresMillis_EarliestInChain() throws Exception {
+
+    // Arrange (the leaf expires in 2018 but the next certificate in 2015)
+    X509Certificate leaf = certificates(fixture("pki_test")).get(0);
+    X509Certificate localhost = certificates(fixture("localhost-signed")).get(0);
+    List<X509Certificate> chain = Lists.newArrayList(leaf, localhost);
+
+    long nowMillis = LOCALHOST_NOT_AFTER.minusMinutes(10).getMillis();
+    long earlierMillis = LOCALHOST_NOT_AFTER.minusDays(1).getMillis();
+
+    // Act & Assert
+    assertThat(PkiVerifications.expiresMillis(chain, nowMillis)).isEqualTo(LOCALHOST_NOT_AFTER.getMillis());
+    assertThat(PkiVerifications.expiresMillis(chain, earlierMillis))
+      .isEqualTo(earlierMillis + TimeUnit.MINUTES.toMillis(PkiVerifications.CHAIN_EXPIRY_MINUTES));
+
+  }
+
+  @Test
+  public void testVerify_NoPKI() throws Exception {
+
+    // Arrange
+    Protos.PaymentRequest paymentRequest = Protos.PaymentRequest.parseFrom(
+      Resources.toByteArray(PkiVerificationsTest.class.getResource("/fixtures/payments/test-net-faucet.bitcoinpaymentrequest"))
+    );
+
+    // Act & Assert
+    assertThat(PkiVerifications.INSTANCE.verify(paymentRequest, trustStoreLoader)).isNull();
+    assertThat(PkiVerifications.INSTANCE.size()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testVerify_TrustStoreLoadedOnce() throws Exception {
+
+    // Arrange
+    Protos.PaymentRequest paymentRequest = Protos.PaymentRequest.parseFrom(
+      Resources.toByteArray(PkiVerificationsTest.class.getResource("/fixtures/payments/test-net-faucet.bitcoinpaymentrequest"))
+    )
+      .toBuilder()
+      .setPkiType("x509+unknown")
+      .setPkiData(ByteString.copyFromUtf8("not a chain"))
+      .build();
+
+    // Act
+    for (int i = 0; i < 3; i++) {
+      try {
+        PkiVerifications.INSTANCE.verify(paymentRequest, trustStoreLoader);
+        fail("Expected an unsupported PKI type");
+      } catch (PaymentProtocolException e) {
+        // Expected
+      }
+    }
+
+    // Assert
+    assertThat(trustStoreLoader.loads).isEqualTo(1);
+    assertThat(PkiVerifications.INSTANCE.size()).isEqualTo(0);
+
+  }
+
+  /**
+   * @param name The name of the payment request fixture
+   *
+   * @return The payment request
+   */
+  private Protos.PaymentRequest fixture(String name) throws Exception {
+
+    return Protos.PaymentRequest.parseFrom(
+      Resources.toByteArray(PkiVerificationsTest.class.getResource("/fixtures/payments/" + name + ".bitcoinpaymentrequest"))
+    );
+  }
+
+  /**
+   * @return A trust store loader providing the trust store containing the localhost certificate
+   */
+  private TrustStoreLoader localhostTrustStoreLoader() {
+
+    return new TrustStoreLoader() {
+      @Override
+      public KeyStore getKeyStore() throws KeyStoreException {
+
+        try (InputStream certStream = PkiVerificationsTest.class.getResourceAsStream("/mbhd-cacerts-with-localhost")) {
+          KeyStore keyStore = KeyStore.getInstance("JKS");
+          keyStore.load(certStream, HttpsManager.PASSPHRASE.toCharArray());
+          return keyStore;
+        } catch (Exception e) {
+          throw new KeyStoreException(e);
+        }
+      }
+    };
+  }
+
+  private static List<X509Certificate> certificates(Protos.PaymentRequest paymentRequest) throws InvalidProtocolBufferException, GeneralSecurityException {
+
+    CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+    List<X509Certificate> certificates = Lists.newArrayList();
+    for (ByteString certificate : Protos.X509Certificates.parseFrom(paymentRequest.getPkiData()).getCertificateList()) {
+      certificates.add((X509Certificate) certificateFactory.generateCertificate(certificate.newInput()));
+    }
+
+    return certificates;
+  }
+
+  /**
+   * <p>Validates as bitcoinj does but at the current test date (bitcoinj always uses the system time)</p>
+   */
+  private static class FixedDateChainValidator implements PkiVerifications.ChainValidator {
+
+    private final PaymentProtocol.PkiVerificationData pkiVerificationData = mock(PaymentProtocol.PkiVerificationData.class);
+
+    private int validations = 0;
+
+    @Override
+    public PaymentProtocol.PkiVerificationData validate(Protos.PaymentRequest paymentRequest, KeyStore keyStore) throws PaymentProtocolException {
+
+      validations++;
+
+      try {
+        List<X509Certificate> certificates = certificates(paymentRequest);
+
+        PKIXParameters params = new PKIXParameters(keyStore);
+        params.setRevocationEnabled(false);
+        params.setDate(Dates.nowUtc().toDate());
+        CertPathValidator.getInstance("PKIX").validate(CertificateFactory.getInstance("X.509").generateCertPath(certificates), params);
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initVerify(certificates.get(0).getPublicKey());
+        signature.update(paymentRequest.toBuilder().setSignature(ByteString.EMPTY).build().toByteArray());
+        if (!signature.verify(paymentRequest.getSignature().toByteArray())) {
+          throw new PaymentProtocolException.PkiVerificationException("Invalid signature");
+        }
+      } catch (InvalidProtocolBufferException | GeneralSecurityException e) {
+        throw new PaymentProtocolException.PkiVerificationException(e.getMessage());
+      }
+
+      return pkiVerificationData;
+    }
+  }
+
+  /**
+   * <p>Provides an empty trust store and counts the loads</p>
+   */
+  private static class CountingTrustStoreLoader implements TrustStoreLoader {
+
+    private int loads = 0;
+
+    @Override
+    public KeyStore getKeyStore() throws KeyStoreException {
+
+      loads++;
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      try {
+        keyStore.load(null, null);
+      } catch (Exception e) {
+        throw new KeyStoreException(e);
+      }
+      return keyStore;
+    }
+  }
+
+}
@@ -0,0 +1,137 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SendRequestSummaryTest {
+
+  private final NetworkParameters networkParameters = MainNetParams.get();
+
+  @Test
+  public void testBatch() throws Exception {
+
+    // Arrange
+    Address first = new ECKey().toAddress(networkParameters);
+    Address second = new ECKey().toAddress(networkParameters);
+    Address change = new ECKey().toAddress(networkParameters);
+    List<Payout> payouts = Lists.newArrayList(
+      new Payout(first, Coin.valueOf(100_000)),
+      new Payout(second, Coin.valueOf(250_000))
+    );
+
+    // Act
+    SendRequestSummary testObject = new SendRequestSummary(payouts, Optional.<FiatPayment>absent(), change, Coin.valueOf(10_000), "password");
+
+    // Assert
+    assertThat(testObject.isBatch()).isTrue();
+    assertThat(testObject.getAmount()).isEqualTo(Coin.valueOf(350_000));
+    assertThat(testObject.getDestinationAddress()).isEqualTo(first);
+    assertThat(testObject.getDestinationAddresses()).containsExactly(first, second);
+    assertThat(testObject.isEmptyWallet()).isFalse();
+
+  }
+
+  @Test
+  public void testSingle() throws Exception {
+
+    // Arrange
+    Address destination = new ECKey().toAddress(networkParameters);
+    Address change = new ECKey().toAddress(networkParameters);
+
+    // Act
+    SendRequestSummary testObject = new SendRequestSummary(destination, Coin.valueOf(100_000), Optional.<FiatPayment>absent(), change, Coin.valueOf(10_000), "password", false);
+
+    // Assert
+    assertThat(testObject.isBatch()).isFalse();
+    assertThat(testObject.getPayouts()).isEmpty();
+    assertThat(testObject.getDestinationAddresses()).containsExactly(destination);
+
+  }
+
+  @Test
+  public void testIsSameSendDetails() throws Exception {
+
+    // Arrange
+    Address destination = new ECKey().toAddress(networkParameters);
+    Address change = new ECKey().toAddress(networkParameters);
+    SendRequestSummary preview = new SendRequestSummary(destination, Coin.valueOf(100_000), newFiatPayment("400.0"), change, Coin.valueOf(10_000), null, false);
+
+    // The preparation fills in the fiat amount which is not part of the send details
+    preview.getFiatPayment().get().setAmount(Optional.of(new BigDecimal("0.40")));
+
+    // Act & Assert (the credentials are not part of the send details)
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_000), newFiatPayment("400.0"), change, Coin.valueOf(10_000), "password", false))).isTrue();
+
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(new ECKey().toAddress(networkParameters), Coin.valueOf(100_000), newFiatPayment("400.0"), change, Coin.valueOf(10_000), null, false))).isFalse();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_001), newFiatPayment("400.0"), change, Coin.valueOf(10_000), null, false))).isFalse();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_000), newFiatPayment("400.0"), new ECKey().toAddress(networkParameters), Coin.valueOf(10_000), null, false))).isFalse();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_000), newFiatPayment("400.0"), change, Coin.valueOf(20_000), null, false))).isFalse();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_000), newFiatPayment("401.0"), change, Coin.valueOf(10_000), null, false))).isFalse();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_000), Optional.<FiatPayment>absent(), change, Coin.valueOf(10_000), null, false))).isFalse();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(destination, Coin.valueOf(100_000), newFiatPayment("400.0"), change, Coin.valueOf(10_000), null, true))).isFalse();
+
+  }
+
+  @Test
+  public void testIsSameSendDetails_Batch() throws Exception {
+
+    // Arrange
+    Address first = new ECKey().toAddress(networkParameters);
+    Address second = new ECKey().toAddress(networkParameters);
+    Address change = new ECKey().toAddress(networkParameters);
+    SendRequestSummary preview = new SendRequestSummary(
+      Lists.newArrayList(new Payout(first, Coin.valueOf(100_000)), new Payout(second, Coin.valueOf(250_000))),
+      Optional.<FiatPayment>absent(),
+      change,
+      Coin.valueOf(10_000),
+      null
+    );
+
+    // Act & Assert (same total but the amounts are split differently)
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(
+      Lists.newArrayList(new Payout(first, Coin.valueOf(100_000)), new Payout(second, Coin.valueOf(250_000))),
+      Optional.<FiatPayment>absent(),
+      change,
+      Coin.valueOf(10_000),
+      null
+    ))).isTrue();
+    assertThat(preview.isSameSendDetails(new SendRequestSummary(
+      Lists.newArrayList(new Payout(first, Coin.valueOf(250_000)), new Payout(second, Coin.valueOf(100_000))),
+      Optional.<FiatPayment>absent(),
+      change,
+      Coin.valueOf(10_000),
+      null
+    ))).isFalse();
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatch_RequiresPayouts() throws Exception {
+
+    new SendRequestSummary(Lists.<Payout>newArrayList(), Optional.<FiatPayment>absent(), null, Coin.valueOf(10_000), "password");
+
+  }
+
+  private Optional<FiatPayment> newFiatPayment(String rate) {
+
+    FiatPayment fiatPayment = new FiatPayment();
+    fiatPayment.setRate(Optional.of(rate));
+    fiatPayment.setCurrency(Optional.of(Currency.getInstance("USD")));
+    fiatPayment.setExchangeName(Optional.of("Bitstamp"));
+
+    return Optional.of(fiatPayment);
+  }
+
+}
@@ -0,0 +1,115 @@
+package org.multibit.hd.core.files;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SecureDeletionsTest {
+
+  private File temporaryDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+
+    temporaryDirectory = SecureFiles.createTemporaryDirectory();
+
+  }
+
+  @Test
+  public void testSecureDelete_NameReleasedAtOnce() throws Exception {
+
+    // Arrange
+    File plaintext = new File(temporaryDirectory, "plaintext.txt");
+    Files.write("secret", plaintext, Charsets.UTF_8);
+    long bytesShredded = SecureDeletions.INSTANCE.getBytesShredded();
+
+    // Act
+    long shredded = SecureDeletions.INSTANCE.secureDelete(plaintext).get();
+
+    // Assert
+    assertThat(plaintext.exists()).isFalse();
+    assertThat(shredded).isGreaterThan(0);
+    assertThat(SecureDeletions.INSTANCE.getBytesShredded() - bytesShredded).isEqualTo(shredded);
+
+  }
+
+  @Test
+  public void testDrain_BatchLeavesNoFiles() throws Exception {
+
+    // Arrange
+    File first = new File(temporaryDirectory, "first.txt");
+    File second = new File(temporaryDirectory, "second.txt");
+    Files.write("first", first, Charsets.UTF_8);
+    Files.write("second", second, Charsets.UTF_8);
+
+    // Act
+    SecureDeletions.INSTANCE.secureDelete(Lists.newArrayList(first, second));
+    SecureDeletions.INSTANCE.drain();
+
+    // Assert
+    String[] remaining = temporaryDirectory.list();
+    assertThat(remaining).isNotNull();
+    assertThat(remaining).isEmpty();
+
+  }
+
+  @Test
+  public void testSweep_CrashLeftovers() throws Exception {
+
+    // Arrange (a crash after the rename but before the shredding)
+    File subDirectory = new File(temporaryDirectory, "zip-backups");
+    assertThat(subDirectory.mkdir()).isTrue();
+    File leftover = new File(temporaryDirectory, SecureDeletions.PENDING_DELETE_PREFIX + "abc");
+    File nestedLeftover = new File(subDirectory, SecureDeletions.PENDING_DELETE_PREFIX + "def");
+    File keep = new File(temporaryDirectory, "mbhd.wallet.aes");
+    Files.write("plaintext", leftover, Charsets.UTF_8);
+    Files.write("plaintext", nestedLeftover, Charsets.UTF_8);
+    Files.write("ciphertext", keep, Charsets.UTF_8);
+
+    // Act
+    long shredded = SecureDeletions.INSTANCE.sweep(temporaryDirectory).get();
+
+    // Assert
+    assertThat(shredded).isGreaterThan(0);
+    assertThat(leftover.exists()).isFalse();
+    assertThat(nestedLeftover.exists()).isFalse();
+    assertThat(keep.exists()).isTrue();
+
+  }
+
+  @Test
+  public void testZipFolder_ExcludesPendingDeletes() throws Exception {
+
+    // Arrange
+    File walletDirectory = new File(temporaryDirectory, "wallet");
+    assertThat(walletDirectory.mkdir()).isTrue();
+    Files.write("plaintext", new File(walletDirectory, SecureDeletions.PENDING_DELETE_PREFIX + "abc"), Charsets.UTF_8);
+    Files.write("ciphertext", new File(walletDirectory, "mbhd.wallet.aes"), Charsets.UTF_8);
+    File zip = new File(temporaryDirectory, "backup.zip");
+
+    // Act
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), zip.getAbsolutePath(), false);
+
+    // Assert
+    List<String> entries = Lists.newArrayList();
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        entries.add(entry.getName());
+      }
+    }
+    assertThat(entries).containsOnly("mbhd.wallet.aes");
+
+  }
+
+}
@@ -0,0 +1,148 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+import org.multibit.hd.core.dto.BackupCatalogueEntry;
+import org.multibit.hd.core.dto.WalletId;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BackupCatalogueTest {
+
+  private static final WalletId WALLET_ID = new WalletId("11111111-22222222-33333333-44444444-55555555");
+
+  private static final Pattern BACKUP_PATTERN = Pattern.compile(
+    Pattern.quote("mbhd-" + WALLET_ID.toFormattedString() + "-") + "(\\d{14})\\.zip\\.aes"
+  );
+
+  private File temporaryDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+
+    temporaryDirectory = SecureFiles.createTemporaryDirectory();
+
+  }
+
+  @Test
+  public void testGetEntries_OldestFirstAndFiltered() throws Exception {
+
+    // Arrange
+    writeBackup("20150102030405", "newer");
+    writeBackup("20140102030405", "older");
+    Files.write("other", new File(temporaryDirectory, "mbhd-66666666-77777777-88888888-99999999-aaaaaaaa-20140102030405.zip.aes"), Charsets.UTF_8);
+    Files.write("", new File(temporaryDirectory, backupName("20160102030405")), Charsets.UTF_8);
+
+    BackupCatalogue testObject = new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN);
+
+    // Act
+    List<BackupCatalogueEntry> entries = testObject.getEntries();
+
+    // Assert
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).getName()).isEqualTo(backupName("20140102030405"));
+    assertThat(entries.get(1).getName()).isEqualTo(backupName("20150102030405"));
+    assertThat(entries.get(0).getCreated()).isLessThan(entries.get(1).getCreated());
+
+  }
+
+  @Test
+  public void testGetEntries_PersistedAndReconciled() throws Exception {
+
+    // Arrange
+    File older = writeBackup("20140102030405", "older");
+    writeBackup("20150102030405", "newer");
+    new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN).getEntries();
+    SecureFiles.secureDelete(older);
+
+    // Act
+    List<BackupCatalogueEntry> entries = new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN).getEntries();
+
+    // Assert
+    assertThat(new File(temporaryDirectory, "mbhd-" + WALLET_ID.toFormattedString() + BackupCatalogue.CATALOGUE_SUFFIX).isFile()).isTrue();
+    assertThat(entries).hasSize(1);
+    assertThat(entries.get(0).getName()).isEqualTo(backupName("20150102030405"));
+
+  }
+
+  @Test
+  public void testIsIntact_DetectsChangedContent() throws Exception {
+
+    // Arrange
+    File backup = writeBackup("20140102030405", "original");
+    BackupCatalogue testObject = new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN);
+    BackupCatalogueEntry entry = testObject.getEntries().get(0);
+    assertThat(testObject.isIntact(entry)).isTrue();
+
+    // Act
+    Files.write("tampered", backup, Charsets.UTF_8);
+
+    // Assert
+    assertThat(testObject.isIntact(entry)).isFalse();
+
+  }
+
+  @Test
+  public void testSave_AtomicReplace() throws Exception {
+
+    // Arrange
+    writeBackup("20140102030405", "older");
+    new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN).getEntries();
+    writeBackup("20150102030405", "newer");
+
+    // Act
+    new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN).getEntries();
+
+    // Assert (the new catalogue replaced the old one and nothing is left alongside)
+    File catalogueFile = catalogueFile();
+    assertThat(Files.toString(catalogueFile, Charsets.UTF_8)).contains(backupName("20150102030405"));
+    assertThat(new File(catalogueFile.getAbsolutePath() + ".tmp").exists()).isFalse();
+
+  }
+
+  @Test
+  public void testSave_FailedWriteKeepsCatalogue() throws Exception {
+
+    // Arrange
+    writeBackup("20140102030405", "older");
+    new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN).getEntries();
+    File catalogueFile = catalogueFile();
+    String original = Files.toString(catalogueFile, Charsets.UTF_8);
+
+    // The temporary file cannot be written (e.g. a full disk)
+    assertThat(new File(catalogueFile.getAbsolutePath() + ".tmp").mkdir()).isTrue();
+    writeBackup("20150102030405", "newer");
+
+    // Act
+    List<BackupCatalogueEntry> entries = new BackupCatalogue(temporaryDirectory, WALLET_ID, BACKUP_PATTERN).getEntries();
+
+    // Assert (the listing is still complete and the catalogue is intact)
+    assertThat(entries).hasSize(2);
+    assertThat(Files.toString(catalogueFile, Charsets.UTF_8)).isEqualTo(original);
+
+  }
+
+  private File catalogueFile() {
+    return new File(temporaryDirectory, "mbhd-" + WALLET_ID.toFormattedString() + BackupCatalogue.CATALOGUE_SUFFIX);
+  }
+
+  private File writeBackup(String timestamp, String content) throws Exception {
+
+    File backup = new File(temporaryDirectory, backupName(timestamp));
+    Files.write(content, backup, Charsets.UTF_8);
+
+    return backup;
+  }
+
+  private String backupName(String timestamp) {
+    return "mbhd-" + WALLET_ID.toFormattedString() + "-" + timestamp + ".zip.aes";
+  }
+
+}
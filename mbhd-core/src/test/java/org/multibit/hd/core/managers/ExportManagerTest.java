@@ -0,0 +1,214 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.io.Files;
+import com.googlecode.jcsv.writer.CSVEntryConverter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+import org.multibit.hd.core.dto.MBHDPaymentRequestData;
+import org.multibit.hd.core.dto.PaymentRequestData;
+import org.multibit.hd.core.dto.TransactionData;
+import org.multibit.hd.core.events.CoreEvents;
+import org.multibit.hd.core.events.ExportPerformedEvent;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ExportManagerTest {
+
+  private static final int TRANSACTION_COUNT = 2 * ExportManager.PROGRESS_INTERVAL + 500;
+
+  private final List<ExportPerformedEvent> progressEvents = Collections.synchronizedList(Lists.<ExportPerformedEvent>newArrayList());
+
+  private volatile ExportPerformedEvent completionEvent = null;
+
+  private volatile CountDownLatch eventLatch;
+
+  private File exportDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+
+    exportDirectory = SecureFiles.createTemporaryDirectory();
+
+    // Two progress events and the completion event
+    eventLatch = new CountDownLatch(3);
+    CoreEvents.subscribe(this);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    CoreEvents.unsubscribe(this);
+
+  }
+
+  @Test
+  public void testExport_StreamsTransactionsWithProgress() throws Exception {
+
+    // Arrange (the cursor checks that each row is written before the next is read)
+    final AtomicInteger readCount = new AtomicInteger();
+    final AtomicInteger writtenCount = new AtomicInteger();
+    final AtomicBoolean readAhead = new AtomicBoolean(false);
+
+    AbstractIterator<TransactionData> cursor = new AbstractIterator<TransactionData>() {
+      @Override
+      protected TransactionData computeNext() {
+
+        if (readCount.get() == TRANSACTION_COUNT) {
+          return endOfData();
+        }
+        if (readCount.get() != writtenCount.get()) {
+          readAhead.set(true);
+        }
+        readCount.incrementAndGet();
+
+        return newTransactionData();
+      }
+    };
+
+    CSVEntryConverter<TransactionData> transactionConverter = new CSVEntryConverter<TransactionData>() {
+      @Override
+      public String[] convertEntry(TransactionData transactionData) {
+        return new String[]{String.valueOf(writtenCount.incrementAndGet())};
+      }
+    };
+
+    // Act
+    ExportManager.exportInternal(
+      cursor,
+      TRANSACTION_COUNT,
+      Lists.<MBHDPaymentRequestData>newArrayList(),
+      Lists.<PaymentRequestData>newArrayList(),
+      exportDirectory,
+      "transactions",
+      "mbhd-payment-requests",
+      "payment-requests",
+      new FixedConverter<TransactionData>("Row"),
+      transactionConverter,
+      new FixedConverter<MBHDPaymentRequestData>("Request"),
+      new FixedConverter<MBHDPaymentRequestData>("Request"),
+      new FixedConverter<PaymentRequestData>("Request"),
+      new FixedConverter<PaymentRequestData>("Request")
+    );
+
+    // Assert
+    assertThat(readAhead.get()).isFalse();
+    assertThat(writtenCount.get()).isEqualTo(TRANSACTION_COUNT);
+
+    List<String> lines = Files.readLines(new File(exportDirectory, "transactions.csv"), Charsets.UTF_8);
+    assertThat(lines.size()).isEqualTo(TRANSACTION_COUNT + 1);
+    assertThat(unquote(lines.get(0))).isEqualTo("Row");
+    assertThat(unquote(lines.get(1))).isEqualTo("1");
+    assertThat(unquote(lines.get(TRANSACTION_COUNT))).isEqualTo(String.valueOf(TRANSACTION_COUNT));
+
+    // Events are delivered on a thread pool so may arrive in any order
+    assertThat(eventLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(completionEvent.isExportWasSuccessful()).isTrue();
+    assertThat(progressEvents.size()).isEqualTo(2);
+
+    List<Integer> exportedCounts = Lists.newArrayList();
+    for (ExportPerformedEvent progressEvent : progressEvents) {
+      assertThat(progressEvent.getTotalCount()).isEqualTo(TRANSACTION_COUNT);
+      exportedCounts.add(progressEvent.getExportedCount());
+    }
+    Collections.sort(exportedCounts);
+    assertThat(exportedCounts).containsExactly(ExportManager.PROGRESS_INTERVAL, 2 * ExportManager.PROGRESS_INTERVAL);
+
+  }
+
+  @Test
+  public void testExport_CursorFailureReported() throws Exception {
+
+    // Arrange
+    eventLatch = new CountDownLatch(1);
+    AbstractIterator<TransactionData> cursor = new AbstractIterator<TransactionData>() {
+      @Override
+      protected TransactionData computeNext() {
+        throw new IllegalStateException("Wallet closed");
+      }
+    };
+
+    // Act
+    ExportManager.exportInternal(
+      cursor,
+      1,
+      Lists.<MBHDPaymentRequestData>newArrayList(),
+      Lists.<PaymentRequestData>newArrayList(),
+      exportDirectory,
+      "transactions",
+      "mbhd-payment-requests",
+      "payment-requests",
+      new FixedConverter<TransactionData>("Row"),
+      new FixedConverter<TransactionData>("Row"),
+      new FixedConverter<MBHDPaymentRequestData>("Request"),
+      new FixedConverter<MBHDPaymentRequestData>("Request"),
+      new FixedConverter<PaymentRequestData>("Request"),
+      new FixedConverter<PaymentRequestData>("Request")
+    );
+
+    // Assert
+    assertThat(eventLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(progressEvents).isEmpty();
+    assertThat(completionEvent.isExportWasSuccessful()).isFalse();
+    assertThat(completionEvent.getExportFailureReasonData()[0]).contains("Wallet closed");
+
+  }
+
+  @Subscribe
+  public void onExportPerformedEvent(ExportPerformedEvent event) {
+
+    if (event.isInProgress()) {
+      progressEvents.add(event);
+    } else {
+      completionEvent = event;
+    }
+    eventLatch.countDown();
+
+  }
+
+  /**
+   * @param line The CSV line
+   *
+   * @return The line without any quoting applied by the CSV strategy
+   */
+  private String unquote(String line) {
+    return line.replace("\"", "");
+  }
+
+  private TransactionData newTransactionData() {
+    return new TransactionData(null, null, null, null, null, null, null, null, null, null, false, null, null, 0, true);
+  }
+
+  /**
+   * Converter writing the same single column for every entry
+   */
+  private static class FixedConverter<T> implements CSVEntryConverter<T> {
+
+    private final String value;
+
+    private FixedConverter(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String[] convertEntry(T entry) {
+      return new String[]{value};
+    }
+  }
+
+}
@@ -1,21 +1,49 @@
 package org.multibit.hd.core.managers;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.services.CoreServices;
 
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
 import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class HttpsManagerTest {
 
+  private final SSLSocketFactory defaultSSLSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+
   @SuppressFBWarnings({"ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD", "NP_NONNULL_PARAM_VIOLATION"})
   @Before
   public void setUp() throws Exception {
@@ -30,6 +58,8 @@ public class HttpsManagerTest {
 
   @After
   public void tearDown() throws Exception {
+    HttpsURLConnection.setDefaultSSLSocketFactory(defaultSSLSocketFactory);
+
     // Order is important here
     CoreServices.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
 
@@ -57,4 +87,220 @@ public class HttpsManagerTest {
     assertThat(ks.size()).isGreaterThan(70);
 
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testGetContentAsBytes_Https() throws Exception {
+
+    // Arrange
+    HttpsServer server = newSelfSignedHttpsServer();
+    HttpsURLConnection.setDefaultSSLSocketFactory(newSelfSignedSSLContext().getSocketFactory());
+
+    try {
+      URL url = new URL("https://localhost:" + server.getAddress().getPort() + "/found");
+
+      // Act
+      String content = HttpsManager.getContentAsString(url);
+
+      // Assert
+      assertThat(content).isEqualTo("Found");
+
+    } finally {
+      server.stop(0);
+    }
+
+  }
+
+  @Test
+  public void testGetContentAsBytes_ErrorStatusFails() throws Exception {
+
+    // Arrange
+    HttpsServer server = newSelfSignedHttpsServer();
+    HttpsURLConnection.setDefaultSSLSocketFactory(newSelfSignedSSLContext().getSocketFactory());
+
+    try {
+      URL url = new URL("https://localhost:" + server.getAddress().getPort() + "/missing");
+
+      // Act
+      try {
+        HttpsManager.getContentAsBytes(url);
+        fail("Expected an HTTP error");
+      } catch (IOException e) {
+
+        // Assert
+        assertThat(e.getMessage()).contains("404");
+      }
+    } finally {
+      server.stop(0);
+    }
+
+  }
+
+  @Test
+  public void testGetContentAsBytes_UntrustedCertificateFails() throws Exception {
+
+    // Arrange (the JVM does not trust the self-signed certificate)
+    HttpsServer server = newSelfSignedHttpsServer();
+
+    try {
+      URL url = new URL("https://localhost:" + server.getAddress().getPort() + "/found");
+
+      // Act
+      try {
+        HttpsManager.getContentAsBytes(url);
+        fail("Expected the handshake to fail");
+      } catch (SSLException e) {
+
+        // Assert
+        assertThat(e).isNotNull();
+      }
+    } finally {
+      server.stop(0);
+    }
+
+  }
+
+  @Test
+  public void testGetContentAsBytes_SilentServerTimesOut() throws Exception {
+
+    // Arrange (accepts the connection but never answers the TLS handshake)
+    try (ServerSocket silentServer = new ServerSocket(0, 10, InetAddress.getByName("localhost"))) {
+      URL url = new URL("https://localhost:" + silentServer.getLocalPort() + "/found");
+
+      // Act
+      long startNanos = System.nanoTime();
+      try {
+        HttpsManager.getContentAsBytes(url, 1_000, 500);
+        fail("Expected a read timeout");
+      } catch (SocketTimeoutException e) {
+
+        // Assert
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertThat(elapsedMillis).isLessThan(5_000);
+      }
+    }
+
+  }
+
+  @Test
+  public void testInstallCACertificates_ParallelProbeStoresUntrustedChain() throws Exception {
+
+    // Arrange (one self-signed host and one that never completes a handshake)
+    HttpsServer server = newSelfSignedHttpsServer();
+    String previousTrustStore = System.getProperty("javax.net.ssl.trustStore");
+    File applicationDirectory = SecureFiles.createTemporaryDirectory();
+
+    try (ServerSocket silentServer = new ServerSocket(0, 10, InetAddress.getByName("localhost"))) {
+      String selfSignedHost = "localhost:" + server.getAddress().getPort();
+      String silentHost = "localhost:" + silentServer.getLocalPort();
+
+      // Act
+      long startNanos = System.nanoTime();
+      HttpsManager.INSTANCE.installCACertificates(applicationDirectory, "probe-cacerts", new String[]{silentHost, selfSignedHost}, true);
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      // Assert (the silent host does not prevent the other chain being stored)
+      KeyStore ks = HttpsManager.INSTANCE.getKeyStore(new File(applicationDirectory, "probe-cacerts"));
+      assertThat(ks.containsAlias(selfSignedHost + "-1")).isTrue();
+      assertThat(ks.containsAlias(silentHost + "-1")).isFalse();
+      assertThat(elapsedMillis).isLessThan(TimeUnit.SECONDS.toMillis(20));
+
+    } finally {
+      server.stop(0);
+      if (previousTrustStore == null) {
+        System.clearProperty("javax.net.ssl.trustStore");
+      } else {
+        System.setProperty("javax.net.ssl.trustStore", previousTrustStore);
+      }
+    }
+
+  }
+
+  @Test
+  public void testFirstSuccessful_FastestWinsAndOthersCancelled() throws Exception {
+
+    // Arrange
+    SettableFuture<String> failing = SettableFuture.create();
+    SettableFuture<String> slow = SettableFuture.create();
+    SettableFuture<String> fast = SettableFuture.create();
+    List<ListenableFuture<String>> requests = Lists.<ListenableFuture<String>>newArrayList(failing, slow, fast);
+
+    // Act
+    ListenableFuture<String> winner = HttpsManager.firstSuccessful(requests);
+    failing.setException(new IOException("Host down"));
+    fast.set("fast");
+
+    // Assert
+    assertThat(winner.get(1, TimeUnit.SECONDS)).isEqualTo("fast");
+    assertThat(slow.isCancelled()).isTrue();
+
+  }
+
+  @Test
+  public void testFirstSuccessful_AllFail() throws Exception {
+
+    // Arrange
+    SettableFuture<String> first = SettableFuture.create();
+    SettableFuture<String> second = SettableFuture.create();
+    List<ListenableFuture<String>> requests = Lists.<ListenableFuture<String>>newArrayList(first, second);
+
+    // Act
+    ListenableFuture<String> winner = HttpsManager.firstSuccessful(requests);
+    first.setException(new IOException("First"));
+    assertThat(winner.isDone()).isFalse();
+    second.setException(new IOException("Second"));
+
+    // Assert
+    try {
+      winner.get(1, TimeUnit.SECONDS);
+      fail("Expected all requests to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause().getMessage()).isEqualTo("Second");
+    }
+
+  }
+
+  /**
+   * @return A started HTTPS server on an ephemeral port using the self-signed "localhost" certificate
+   */
+  private HttpsServer newSelfSignedHttpsServer() throws Exception {
+
+    HttpsServer server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setHttpsConfigurator(new HttpsConfigurator(newSelfSignedSSLContext()));
+    server.createContext(
+      "/", new HttpHandler() {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+          boolean found = "/found".equals(exchange.getRequestURI().getPath());
+          byte[] body = (found ? "Found" : "Not found").getBytes(Charsets.UTF_8);
+          exchange.sendResponseHeaders(found ? 200 : 404, body.length);
+          exchange.getResponseBody().write(body);
+          exchange.close();
+        }
+      });
+    server.start();
+
+    return server;
+  }
+
+  /**
+   * @return An SSL context holding (and trusting) the self-signed "localhost" certificate
+   */
+  private SSLContext newSelfSignedSSLContext() throws Exception {
+
+    KeyStore ks = KeyStore.getInstance("JKS");
+    try (InputStream is = HttpsManagerTest.class.getResourceAsStream("/localhost.jks")) {
+      ks.load(is, HttpsManager.PASSPHRASE.toCharArray());
+    }
+
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(ks, HttpsManager.PASSPHRASE.toCharArray());
+    TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    tmf.init(ks);
+
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+    return sslContext;
+  }
+
+}
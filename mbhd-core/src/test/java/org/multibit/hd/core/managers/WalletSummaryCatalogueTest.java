@@ -0,0 +1,112 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+import org.multibit.hd.core.dto.WalletId;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.dto.WalletType;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class WalletSummaryCatalogueTest {
+
+  private final static String WALLET_DIRECTORY_1 = "mbhd-11111111-22222222-33333333-44444444-55555555";
+  private final static String WALLET_DIRECTORY_2 = "mbhd-66666666-77777777-88888888-99999999-aaaaaaaa";
+
+  private File temporaryDirectory;
+
+  private WalletSummaryCatalogue testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    temporaryDirectory = SecureFiles.createTemporaryDirectory();
+
+    testObject = new WalletSummaryCatalogue(temporaryDirectory);
+    testObject.start();
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    testObject.stop();
+
+  }
+
+  @Test
+  public void testGetSoftWalletSummaries_SortedByName() throws Exception {
+
+    // Arrange
+    writeWalletSummary(WALLET_DIRECTORY_1, "Zebra", WalletType.MBHD_SOFT_WALLET_BIP32);
+    writeWalletSummary(WALLET_DIRECTORY_2, "apple", WalletType.TREZOR_SOFT_WALLET);
+
+    // Act
+    List<WalletSummary> walletSummaries = testObject.getSoftWalletSummaries(Optional.of(Locale.UK));
+
+    // Assert
+    assertThat(walletSummaries).hasSize(2);
+    assertThat(walletSummaries.get(0).getName()).isEqualTo("apple");
+    assertThat(walletSummaries.get(1).getName()).isEqualTo("Zebra");
+
+  }
+
+  @Test
+  public void testGetSoftWalletSummaries_ExcludesHardWallets() throws Exception {
+
+    // Arrange
+    writeWalletSummary(WALLET_DIRECTORY_1, "Soft", WalletType.MBHD_SOFT_WALLET_BIP32);
+    writeWalletSummary(WALLET_DIRECTORY_2, "Hard", WalletType.TREZOR_HARD_WALLET);
+
+    // Act
+    List<WalletSummary> softWalletSummaries = testObject.getSoftWalletSummaries(Optional.<Locale>absent());
+    List<WalletSummary> walletSummaries = testObject.getWalletSummaries();
+
+    // Assert
+    assertThat(softWalletSummaries).hasSize(1);
+    assertThat(softWalletSummaries.get(0).getName()).isEqualTo("Soft");
+    assertThat(walletSummaries).hasSize(2);
+
+  }
+
+  @Test
+  public void testInvalidate_RereadsChangedSummary() throws Exception {
+
+    // Arrange
+    File walletDirectory = writeWalletSummary(WALLET_DIRECTORY_1, "Before", WalletType.MBHD_SOFT_WALLET_BIP32);
+    assertThat(testObject.getWalletSummaries().get(0).getName()).isEqualTo("Before");
+    writeWalletSummary(WALLET_DIRECTORY_1, "After", WalletType.MBHD_SOFT_WALLET_BIP32);
+
+    // Act
+    testObject.invalidate(walletDirectory);
+    List<WalletSummary> walletSummaries = testObject.getSoftWalletSummaries(Optional.of(Locale.UK));
+
+    // Assert
+    assertThat(walletSummaries).hasSize(1);
+    assertThat(walletSummaries.get(0).getName()).isEqualTo("After");
+
+  }
+
+  private File writeWalletSummary(String walletRoot, String name, WalletType walletType) {
+
+    File walletDirectory = SecureFiles.verifyOrCreateDirectory(temporaryDirectory, walletRoot);
+
+    WalletSummary walletSummary = new WalletSummary();
+    walletSummary.setWalletId(new WalletId(walletRoot.substring(WalletManager.MBHD_WALLET_PREFIX.length() + 1)));
+    walletSummary.setName(name);
+    walletSummary.setNotes("");
+    walletSummary.setWalletType(walletType);
+
+    WalletManager.updateWalletSummary(WalletManager.getOrCreateWalletSummaryFile(walletDirectory), walletSummary);
+
+    return walletDirectory;
+  }
+
+}
@@ -0,0 +1,215 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.bitcoinj.core.BloomFilter;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.Wallet;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.testing.DeterministicScheduledExecutorService;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class BloomFilterManagerTest {
+
+  private static final double TARGET_FALSE_POSITIVE_RATE = 0.0005;
+
+  private static final int PEER_COUNT = 4;
+
+  private final BloomFilter filter = new BloomFilter(200, TARGET_FALSE_POSITIVE_RATE, 1234L);
+
+  private PeerGroup peerGroup;
+
+  private Wallet wallet;
+
+  private DeterministicScheduledExecutorService executorService;
+
+  private BloomFilterManager testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    peerGroup = mock(PeerGroup.class);
+    when(peerGroup.recalculateFastCatchupAndFilter(any(PeerGroup.FilterRecalculateMode.class))).thenReturn(Futures.immediateFuture(filter));
+    when(peerGroup.numConnectedPeers()).thenReturn(PEER_COUNT);
+
+    wallet = mock(Wallet.class);
+    when(wallet.getBloomFilterElementCount()).thenReturn(200);
+
+    executorService = new DeterministicScheduledExecutorService(System.currentTimeMillis());
+
+    testObject = new BloomFilterManager(peerGroup, TARGET_FALSE_POSITIVE_RATE, executorService);
+    testObject.setWallet(wallet);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    testObject.shutdown();
+    DateTimeUtils.setCurrentMillisSystem();
+
+  }
+
+  @Test
+  public void testIsDriftExceeded() throws Exception {
+
+    // Assert
+    assertThat(BloomFilterManager.isDriftExceeded(filter, 200, TARGET_FALSE_POSITIVE_RATE)).isFalse();
+    assertThat(BloomFilterManager.isDriftExceeded(filter, 210, TARGET_FALSE_POSITIVE_RATE)).isFalse();
+    assertThat(BloomFilterManager.isDriftExceeded(filter, 1000, TARGET_FALSE_POSITIVE_RATE)).isTrue();
+
+  }
+
+  @Test
+  public void testRequestRecalculation_BurstDebounced() throws Exception {
+
+    // Act (several new addresses in quick succession)
+    for (int i = 0; i < 5; i++) {
+      testObject.requestRecalculation();
+      executorService.advanceBy(50);
+    }
+
+    // Assert (nothing happens until the window closes)
+    verify(peerGroup, never()).recalculateFastCatchupAndFilter(any(PeerGroup.FilterRecalculateMode.class));
+    assertThat(executorService.getScheduledCount()).isEqualTo(1);
+
+    executorService.advanceBy(BloomFilterManager.DEBOUNCE_MILLIS);
+
+    verify(peerGroup, times(1)).recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.FORCE_SEND_FOR_REFRESH);
+    assertThat(testObject.getRebuildCount()).isEqualTo(1);
+    assertThat(testObject.getSendCount()).isEqualTo(1);
+    assertThat(executorService.getScheduledCount()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testRequestRecalculation_NewWindowAfterRecalculation() throws Exception {
+
+    // Arrange
+    testObject.requestRecalculation();
+    executorService.advanceBy(BloomFilterManager.DEBOUNCE_MILLIS);
+
+    // Act (the wallet has outgrown the filter since the first recalculation)
+    when(wallet.getBloomFilterElementCount()).thenReturn(1000);
+    testObject.requestRecalculation();
+
+    // Assert
+    assertThat(executorService.getScheduledCount()).isEqualTo(1);
+    executorService.advanceBy(BloomFilterManager.DEBOUNCE_MILLIS);
+    verify(peerGroup, times(2)).recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.FORCE_SEND_FOR_REFRESH);
+
+  }
+
+  @Test
+  public void testRecalculateNow_UnchangedElementCountSkipped() throws Exception {
+
+    // Arrange
+    assertThat(testObject.recalculateNow(false).isPresent()).isTrue();
+
+    // Act
+    Optional<ListenableFuture<BloomFilter>> second = testObject.recalculateNow(false);
+
+    // Assert
+    assertThat(second.isPresent()).isFalse();
+    verify(peerGroup, times(1)).recalculateFastCatchupAndFilter(any(PeerGroup.FilterRecalculateMode.class));
+    assertThat(testObject.getRebuildCount()).isEqualTo(1);
+    assertThat(testObject.getSkipCount()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testRecalculateNow_SmallGrowthSkipped() throws Exception {
+
+    // Arrange
+    testObject.recalculateNow(false);
+
+    // Act (still within the drift factor of the target rate)
+    when(wallet.getBloomFilterElementCount()).thenReturn(210);
+
+    // Assert
+    assertThat(testObject.recalculateNow(false).isPresent()).isFalse();
+    assertThat(testObject.getSkipCount()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testRecalculateNow_DriftResends() throws Exception {
+
+    // Arrange
+    testObject.recalculateNow(false);
+
+    // Act
+    when(wallet.getBloomFilterElementCount()).thenReturn(1000);
+
+    // Assert
+    assertThat(testObject.recalculateNow(false).isPresent()).isTrue();
+    assertThat(testObject.getSendCount()).isEqualTo(2);
+    assertThat(testObject.getSkipCount()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testRecalculateNow_ForceAlwaysSends() throws Exception {
+
+    // Arrange
+    testObject.recalculateNow(false);
+
+    // Act & Assert
+    assertThat(testObject.recalculateNow(true).isPresent()).isTrue();
+    verify(peerGroup, times(2)).recalculateFastCatchupAndFilter(any(PeerGroup.FilterRecalculateMode.class));
+
+  }
+
+  @Test
+  public void testSetWallet_NextRecalculationSends() throws Exception {
+
+    // Arrange
+    testObject.recalculateNow(false);
+    Wallet other = mock(Wallet.class);
+    when(other.getBloomFilterElementCount()).thenReturn(200);
+
+    // Act (same element count but different keys)
+    testObject.setWallet(other);
+
+    // Assert
+    assertThat(testObject.recalculateNow(false).isPresent()).isTrue();
+    assertThat(testObject.getSendCount()).isEqualTo(2);
+
+  }
+
+  @Test
+  public void testRecalculateNow_FailedSendNotRecorded() throws Exception {
+
+    // Arrange
+    when(peerGroup.recalculateFastCatchupAndFilter(any(PeerGroup.FilterRecalculateMode.class)))
+      .thenReturn(Futures.<BloomFilter>immediateFailedFuture(new IllegalStateException("Peer group stopped")));
+
+    // Act
+    testObject.recalculateNow(false);
+
+    // Assert (the peers may not hold the filter so the next recalculation tries again)
+    assertThat(testObject.getSendCount()).isEqualTo(0);
+    assertThat(testObject.recalculateNow(false).isPresent()).isTrue();
+    assertThat(testObject.getRebuildCount()).isEqualTo(2);
+
+  }
+
+  @Test
+  public void testRecalculateNow_BytesSentAcrossPeers() throws Exception {
+
+    // Act
+    testObject.recalculateNow(false);
+
+    // Assert
+    assertThat(testObject.getBytesSent()).isEqualTo((long) filter.bitcoinSerialize().length * PEER_COUNT);
+
+  }
+
+}
@@ -0,0 +1,93 @@
+package org.multibit.hd.core.network;
+
+import org.bitcoinj.core.PeerAddress;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ChainDownloadMeterTest {
+
+  private static final long START_MILLIS = 1_000_000_000L;
+
+  private ChainDownloadMeter testObject;
+
+  private PeerAddress peer1;
+  private PeerAddress peer2;
+
+  @Before
+  public void setUp() throws Exception {
+
+    testObject = new ChainDownloadMeter();
+
+    peer1 = new PeerAddress(InetAddress.getByName("127.0.0.1"), 8333);
+    peer2 = new PeerAddress(InetAddress.getByName("127.0.0.2"), 8333);
+
+  }
+
+  @Test
+  public void testRatesAndEta() throws Exception {
+
+    // Arrange
+    testObject.start(1000, START_MILLIS);
+
+    // Act (10 blocks per second for 10 seconds, half filtered)
+    int blocksLeft = 1000;
+    for (int second = 0; second < 10; second++) {
+      for (int i = 0; i < 10; i++) {
+        blocksLeft--;
+        testObject.recordBlock(peer1, 200, i % 2 == 0, blocksLeft, START_MILLIS + second * 1000 + i * 100);
+      }
+    }
+
+    long nowMillis = START_MILLIS + 9_999;
+
+    // Assert
+    assertThat(testObject.getBlocksPerSecond(nowMillis)).isEqualTo(10.0);
+    assertThat(testObject.getBytesPerSecond(nowMillis)).isEqualTo(2000.0);
+    assertThat(testObject.getFilteredBlockRatio(nowMillis)).isEqualTo(0.5);
+    assertThat(testObject.getEtaSeconds().get()).isGreaterThan(90L).isLessThan(130L);
+    assertThat(testObject.getPeerBlocksPerSecond(peer1).get()).isGreaterThan(9.0).isLessThan(12.0);
+    assertThat(testObject.getPeerBlocksPerSecond(peer2).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testWindowSlides() throws Exception {
+
+    // Arrange
+    testObject.start(1000, START_MILLIS);
+
+    // Act
+    for (int i = 0; i < 100; i++) {
+      testObject.recordBlock(peer1, 200, true, 900, START_MILLIS);
+    }
+
+    // Assert
+    assertThat(testObject.getBlocksPerSecond(START_MILLIS + 60_000)).isEqualTo(0.0);
+
+  }
+
+  @Test
+  public void testStallDetection() throws Exception {
+
+    // Arrange
+    testObject.start(1000, START_MILLIS);
+    testObject.recordBlock(peer1, 200, true, 999, START_MILLIS);
+
+    // Assert
+    assertThat(testObject.isStalled(START_MILLIS + 1_000, 20_000)).isFalse();
+    assertThat(testObject.isStalled(START_MILLIS + 20_000, 20_000)).isTrue();
+
+    // Act
+    testObject.recordDownloadPeerChanged(START_MILLIS + 20_000);
+
+    // Assert
+    assertThat(testObject.isStalled(START_MILLIS + 21_000, 20_000)).isFalse();
+    assertThat(testObject.getMetrics(START_MILLIS + 21_000).getDownloadPeerSwitches()).isEqualTo(1);
+
+  }
+
+}
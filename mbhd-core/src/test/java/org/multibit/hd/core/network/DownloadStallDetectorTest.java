@@ -0,0 +1,233 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.VersionMessage;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DownloadStallDetectorTest {
+
+  private static final int CHAIN_HEIGHT = 350_000;
+
+  private static final long START_MILLIS = 1_000_000L;
+
+  private PeerLatencyTracker peerLatencyTracker;
+
+  private ChainDownloadMeter meter;
+
+  private Peer downloadPeer;
+
+  private DownloadStallDetector testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    peerLatencyTracker = new PeerLatencyTracker();
+    meter = new ChainDownloadMeter();
+    meter.start(1_000, START_MILLIS);
+
+    downloadPeer = newPeer(1, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+
+    testObject = new DownloadStallDetector(peerLatencyTracker);
+
+  }
+
+  @Test
+  public void testCheck_HealthyDownloadNotReplaced() throws Exception {
+
+    // Arrange
+    Peer other = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    List<Peer> peers = Lists.newArrayList(downloadPeer, other);
+
+    // Act & Assert (10 blocks a second is above the default floor)
+    for (int second = 1; second <= 90; second++) {
+      long nowMillis = START_MILLIS + TimeUnit.SECONDS.toMillis(second);
+      for (int i = 0; i < 10; i++) {
+        meter.recordBlock(downloadPeer.getAddress(), 1_000, true, 1_000 - second * 10 + i, nowMillis);
+      }
+      assertThat(testObject.check(downloadPeer, peers, CHAIN_HEIGHT, meter, nowMillis).isPresent()).isFalse();
+    }
+
+  }
+
+  @Test
+  public void testCheck_ReplacedOnlyAfterStallPeriod() throws Exception {
+
+    // Arrange
+    Peer other = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    List<Peer> peers = Lists.newArrayList(downloadPeer, other);
+
+    // Act & Assert (the slow period starts at the first check below the floor)
+    assertThat(check(peers, 5).isPresent()).isFalse();
+    assertThat(check(peers, 5 + DownloadStallDetector.DEFAULT_STALL_SECONDS - 1).isPresent()).isFalse();
+
+    Optional<Peer> replacement = check(peers, 5 + DownloadStallDetector.DEFAULT_STALL_SECONDS);
+    assertThat(replacement.isPresent()).isTrue();
+    assertThat(replacement.get()).isSameAs(other);
+
+    // A new slow period is required before the next replacement
+    assertThat(check(peers, 6 + DownloadStallDetector.DEFAULT_STALL_SECONDS).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testCheck_ResetStartsNewSlowPeriod() throws Exception {
+
+    // Arrange
+    Peer other = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    List<Peer> peers = Lists.newArrayList(downloadPeer, other);
+    assertThat(check(peers, 5).isPresent()).isFalse();
+
+    // Act
+    testObject.reset();
+
+    // Assert
+    assertThat(check(peers, 5 + DownloadStallDetector.DEFAULT_STALL_SECONDS).isPresent()).isFalse();
+    assertThat(check(peers, 5 + 2 * DownloadStallDetector.DEFAULT_STALL_SECONDS).isPresent()).isTrue();
+
+  }
+
+  @Test
+  public void testCheck_PolicyApplied() throws Exception {
+
+    // Arrange
+    Peer other = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    List<Peer> peers = Lists.newArrayList(downloadPeer, other);
+    testObject.setPolicy(1.0, 10);
+
+    // Act & Assert
+    assertThat(check(peers, 5).isPresent()).isFalse();
+    assertThat(check(peers, 15).isPresent()).isTrue();
+
+  }
+
+  @Test
+  public void testSelect_NoSuitableReplacement() throws Exception {
+
+    // Arrange (only the download peer itself)
+    List<Peer> peers = Lists.newArrayList(downloadPeer);
+
+    // Act & Assert
+    assertThat(stalledCheck(peers).isPresent()).isFalse();
+
+    // Retried after another stall period rather than at once
+    assertThat(check(peers, 6 + DownloadStallDetector.DEFAULT_STALL_SECONDS).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testSelect_SkipsPeerWithoutFullChain() throws Exception {
+
+    // Arrange (the fastest peer does not advertise NODE_NETWORK)
+    Peer pruned = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, 0);
+    Peer full = newPeer(3, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    peerLatencyTracker.record(pruned.getAddress(), 10);
+    peerLatencyTracker.record(full.getAddress(), 500);
+
+    // Act
+    Optional<Peer> replacement = stalledCheck(Lists.newArrayList(downloadPeer, pruned, full));
+
+    // Assert
+    assertThat(replacement.get()).isSameAs(full);
+    assertThat(DownloadStallDetector.isDownloadCandidate(pruned)).isFalse();
+
+  }
+
+  @Test
+  public void testSelect_SkipsPeerWithoutFilteredBlocks() throws Exception {
+
+    // Arrange (the fastest peer predates filtered blocks)
+    Peer old = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION - 1, VersionMessage.NODE_NETWORK);
+    Peer current = newPeer(3, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    peerLatencyTracker.record(old.getAddress(), 10);
+    peerLatencyTracker.record(current.getAddress(), 500);
+
+    // Act
+    Optional<Peer> replacement = stalledCheck(Lists.newArrayList(downloadPeer, old, current));
+
+    // Assert
+    assertThat(replacement.get()).isSameAs(current);
+    assertThat(DownloadStallDetector.isDownloadCandidate(old)).isFalse();
+
+  }
+
+  @Test
+  public void testSelect_SkipsPeerBehindChain() throws Exception {
+
+    // Arrange
+    Peer behind = newPeer(2, CHAIN_HEIGHT - 1, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+
+    // Act & Assert
+    assertThat(stalledCheck(Lists.newArrayList(downloadPeer, behind)).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testSelect_MeasuredRateThenLatency() throws Exception {
+
+    // Arrange
+    Peer nearest = newPeer(2, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    Peer measured = newPeer(3, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    Peer farthest = newPeer(4, CHAIN_HEIGHT, FilteredBlock.MIN_PROTOCOL_VERSION, VersionMessage.NODE_NETWORK);
+    peerLatencyTracker.record(nearest.getAddress(), 10);
+    peerLatencyTracker.record(measured.getAddress(), 200);
+    peerLatencyTracker.record(farthest.getAddress(), 500);
+
+    // Only the nearest peer is considered without measured rates
+    assertThat(stalledCheck(Lists.newArrayList(downloadPeer, farthest, measured, nearest)).get()).isSameAs(nearest);
+
+    // Act (an earlier download measured one peer)
+    testObject.reset();
+    meter.recordBlock(measured.getAddress(), 1_000, true, 999, START_MILLIS - TimeUnit.SECONDS.toMillis(120));
+    meter.recordBlock(measured.getAddress(), 1_000, true, 998, START_MILLIS - TimeUnit.SECONDS.toMillis(119));
+    meter.start(1_000, START_MILLIS);
+
+    // Assert
+    assertThat(stalledCheck(Lists.newArrayList(downloadPeer, farthest, measured, nearest)).get()).isSameAs(measured);
+
+  }
+
+  /**
+   * @param peers The connected peers
+   *
+   * @return The outcome of a check once the download has been below the floor for the stall period
+   */
+  private Optional<Peer> stalledCheck(List<Peer> peers) {
+
+    assertThat(check(peers, 5).isPresent()).isFalse();
+
+    return check(peers, 5 + DownloadStallDetector.DEFAULT_STALL_SECONDS);
+  }
+
+  private Optional<Peer> check(List<Peer> peers, int seconds) {
+    return testObject.check(downloadPeer, peers, CHAIN_HEIGHT, meter, START_MILLIS + TimeUnit.SECONDS.toMillis(seconds));
+  }
+
+  private Peer newPeer(int lastOctet, long bestHeight, int clientVersion, long localServices) throws Exception {
+
+    VersionMessage versionMessage = new VersionMessage(MainNetParams.get(), (int) bestHeight);
+    versionMessage.clientVersion = clientVersion;
+    versionMessage.localServices = localServices;
+
+    Peer peer = mock(Peer.class);
+    when(peer.getAddress()).thenReturn(new PeerAddress(InetAddress.getByName("127.0.0." + lastOctet), 8333));
+    when(peer.getBestHeight()).thenReturn(bestHeight);
+    when(peer.getPeerVersionMessage()).thenReturn(versionMessage);
+
+    return peer;
+  }
+
+}
@@ -0,0 +1,174 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.net.discovery.PeerDiscovery;
+import org.bitcoinj.net.discovery.PeerDiscoveryException;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PeerAddressBookTest {
+
+  private File addressBookFile;
+
+  private final AtomicInteger fallbackCalls = new AtomicInteger();
+
+  private final InetSocketAddress dnsPeer = new InetSocketAddress("127.0.0.200", 8333);
+
+  private PeerDiscovery fallbackDiscovery;
+
+  @Before
+  public void setUp() throws Exception {
+
+    addressBookFile = new File(SecureFiles.createTemporaryDirectory(), "peers-test.txt");
+
+    // Local stand-in for DNS discovery
+    fallbackDiscovery = new PeerDiscovery() {
+      @Override
+      public InetSocketAddress[] getPeers(long timeoutValue, TimeUnit timeoutUnit) throws PeerDiscoveryException {
+        fallbackCalls.incrementAndGet();
+        return new InetSocketAddress[]{dnsPeer};
+      }
+
+      @Override
+      public void shutdown() {
+      }
+    };
+
+  }
+
+  @Test
+  public void testRanking() throws Exception {
+
+    PeerAddressBook testObject = new PeerAddressBook(addressBookFile, Optional.<PeerDiscovery>absent());
+
+    PeerAddress fast = peerAddress(1);
+    PeerAddress slow = peerAddress(2);
+    PeerAddress flaky = peerAddress(3);
+    PeerAddress untried = peerAddress(4);
+
+    testObject.recordDiscovered(Sets.newHashSet(fast, slow, flaky, untried));
+
+    // Act
+    long now = System.currentTimeMillis();
+    testObject.recordConnected(fast, now);
+    testObject.recordLatency(fast, 50);
+    testObject.recordConnected(slow, now);
+    testObject.recordLatency(slow, 500);
+    testObject.recordConnected(flaky, now);
+    testObject.recordDisconnected(flaky, now + 1000);
+
+    // Assert
+    assertThat(testObject.getRankedAddresses(10)).containsExactly(
+      socketAddress(fast),
+      socketAddress(slow),
+      socketAddress(untried),
+      socketAddress(flaky)
+    );
+    assertThat(testObject.getKnownGoodAddresses(10)).containsExactly(socketAddress(fast), socketAddress(slow));
+
+  }
+
+  @Test
+  public void testRanking_NeverConnectedPeerSinks() throws Exception {
+
+    PeerAddressBook testObject = new PeerAddressBook(addressBookFile, Optional.<PeerDiscovery>absent());
+
+    PeerAddress good = peerAddress(1);
+    PeerAddress untried = peerAddress(2);
+    PeerAddress unreachable = peerAddress(3);
+
+    // Discovered first so it would otherwise rank level with the untried peer
+    testObject.recordDiscovered(Sets.newHashSet(unreachable, untried, good));
+
+    // Act
+    long now = System.currentTimeMillis();
+    testObject.recordConnected(good, now);
+    testObject.recordFailed(unreachable);
+
+    // Assert
+    assertThat(testObject.getRankedAddresses(10)).containsExactly(
+      socketAddress(good),
+      socketAddress(untried),
+      socketAddress(unreachable)
+    );
+
+    // Act (a disconnection without a connection does not count as a short connection)
+    testObject.recordDisconnected(untried, now);
+    testObject.recordFailed(unreachable);
+
+    // Assert (further failures keep it below the untried peer and out of the known good peers)
+    assertThat(testObject.getRankedAddresses(10).get(2)).isEqualTo(socketAddress(unreachable));
+    assertThat(testObject.getKnownGoodAddresses(10)).containsExactly(socketAddress(good));
+
+    // The failures survive a restart
+    testObject.save();
+    PeerAddressBook reloaded = new PeerAddressBook(addressBookFile, Optional.<PeerDiscovery>absent());
+    assertThat(reloaded.getRankedAddresses(10).get(2)).isEqualTo(socketAddress(unreachable));
+
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+
+    PeerAddressBook testObject = new PeerAddressBook(addressBookFile, Optional.<PeerDiscovery>absent());
+
+    PeerAddress peer = peerAddress(1);
+    testObject.recordConnected(peer, 1234L);
+    testObject.recordLatency(peer, 75);
+
+    // Act
+    testObject.save();
+    PeerAddressBook reloaded = new PeerAddressBook(addressBookFile, Optional.<PeerDiscovery>absent());
+
+    // Assert
+    assertThat(reloaded.size()).isEqualTo(1);
+    assertThat(reloaded.getKnownGoodAddresses(10)).containsExactly(socketAddress(peer));
+
+  }
+
+  @Test
+  public void testGetPeers_FallbackOnlyWhenTooFewKnown() throws Exception {
+
+    PeerAddressBook testObject = new PeerAddressBook(addressBookFile, Optional.of(fallbackDiscovery));
+
+    // Act
+    InetSocketAddress[] peers = testObject.getPeers(5, TimeUnit.SECONDS);
+
+    // Assert
+    assertThat(peers).containsOnly(dnsPeer);
+    assertThat(fallbackCalls.get()).isEqualTo(1);
+
+    // Arrange
+    for (int i = 1; i <= PeerAddressBook.MINIMUM_KNOWN_GOOD_PEERS; i++) {
+      testObject.recordConnected(peerAddress(i), System.currentTimeMillis());
+    }
+
+    // Act
+    peers = testObject.getPeers(5, TimeUnit.SECONDS);
+
+    // Assert
+    assertThat(peers.length).isEqualTo(PeerAddressBook.MINIMUM_KNOWN_GOOD_PEERS);
+    assertThat(fallbackCalls.get()).isEqualTo(1);
+
+  }
+
+  private PeerAddress peerAddress(int host) throws Exception {
+    return new PeerAddress(InetAddress.getByName("127.0.0." + host), 8333);
+  }
+
+  private InetSocketAddress socketAddress(PeerAddress peerAddress) {
+    return new InetSocketAddress(peerAddress.getAddr(), peerAddress.getPort());
+  }
+
+}
@@ -0,0 +1,81 @@
+package org.multibit.hd.core.network;
+
+import org.bitcoinj.core.PeerAddress;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PeerLatencyTrackerTest {
+
+  private PeerLatencyTracker testObject;
+
+  private PeerAddress peer1;
+  private PeerAddress peer2;
+
+  @Before
+  public void setUp() throws Exception {
+
+    testObject = new PeerLatencyTracker();
+
+    peer1 = new PeerAddress(InetAddress.getByName("127.0.0.1"), 8333);
+    peer2 = new PeerAddress(InetAddress.getByName("127.0.0.2"), 8333);
+
+  }
+
+  @Test
+  public void testPercentiles() throws Exception {
+
+    // Assert
+    assertThat(testObject.getPercentileMillis(50).isPresent()).isFalse();
+
+    // Act
+    for (int i = 1; i <= 100; i++) {
+      testObject.record(i % 2 == 0 ? peer1 : peer2, i);
+    }
+
+    // Assert
+    assertThat(testObject.getPercentileMillis(50).get()).isEqualTo(50L);
+    assertThat(testObject.getPercentileMillis(95).get()).isEqualTo(95L);
+    assertThat(testObject.getPercentileMillis(100).get()).isEqualTo(100L);
+
+  }
+
+  @Test
+  public void testPercentiles_WindowIsBounded() throws Exception {
+
+    // Act
+    for (int i = 0; i < PeerLatencyTracker.SAMPLE_WINDOW; i++) {
+      testObject.record(peer1, 1000);
+    }
+    for (int i = 0; i < PeerLatencyTracker.SAMPLE_WINDOW; i++) {
+      testObject.record(peer1, 10);
+    }
+
+    // Assert
+    assertThat(testObject.getPercentileMillis(95).get()).isEqualTo(10L);
+
+  }
+
+  @Test
+  public void testRoundTrip_SmoothedAndRemoved() throws Exception {
+
+    // Act
+    testObject.record(peer1, 100);
+    testObject.record(peer1, 200);
+
+    // Assert
+    assertThat(testObject.getRoundTripMillis(peer1).get()).isEqualTo(130L);
+    assertThat(testObject.getRoundTripMillis(peer2).isPresent()).isFalse();
+
+    // Act
+    testObject.remove(peer1);
+
+    // Assert
+    assertThat(testObject.getRoundTripMillis(peer1).isPresent()).isFalse();
+
+  }
+
+}
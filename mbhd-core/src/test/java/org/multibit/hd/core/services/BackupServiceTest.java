@@ -0,0 +1,284 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Optional;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+import org.multibit.commons.utils.Dates;
+import org.multibit.hd.brit.core.seed_phrase.Bip39SeedPhraseGenerator;
+import org.multibit.hd.brit.core.seed_phrase.SeedPhraseGenerator;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.dto.BackupSummary;
+import org.multibit.hd.core.dto.BitcoinNetworkSummary;
+import org.multibit.hd.core.dto.WalletIdTest;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.events.BitcoinNetworkChangedEvent;
+import org.multibit.hd.core.events.ShutdownEvent;
+import org.multibit.hd.core.files.SecureDeletions;
+import org.multibit.hd.core.managers.BackupManager;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.testing.DeterministicScheduledExecutorService;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BackupServiceTest {
+
+  private static final String PASSWORD = "credentials";
+
+  private static final long SHUTDOWN_BACKUP_TIMEOUT_MILLIS = 500;
+
+  private File cloudBackupDirectory;
+
+  private WalletSummary walletSummary;
+
+  private DeterministicScheduledExecutorService executorService;
+
+  private BackupService testObject;
+
+  private boolean testObjectShutdown = false;
+
+  @Before
+  public void setUp() throws Exception {
+
+    InstallationManager.unrestricted = true;
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+
+    // Start the core services
+    CoreServices.main(null);
+
+    File applicationDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+    cloudBackupDirectory = SecureFiles.createTemporaryDirectory();
+    BackupManager.INSTANCE.initialise(applicationDirectory, Optional.of(cloudBackupDirectory));
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    List<String> seedPhraseList = Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1);
+    byte[] entropy = MnemonicCode.INSTANCE.toEntropy(seedPhraseList);
+    byte[] seed = seedGenerator.convertToSeed(seedPhraseList);
+
+    walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateMBHDSoftWalletSummaryFromEntropy(
+        applicationDirectory,
+        entropy,
+        seed,
+        Dates.nowInSeconds(),
+        PASSWORD,
+        "Example",
+        "Example",
+        false);
+
+    // Fix the clock from here on
+    executorService = new DeterministicScheduledExecutorService(Dates.nowUtc().getMillis());
+
+    testObject = new BackupService(executorService, SHUTDOWN_BACKUP_TIMEOUT_MILLIS);
+    testObject.start();
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    if (!testObjectShutdown) {
+      testObject.shutdownNow(ShutdownEvent.ShutdownType.HARD);
+    }
+    DateTimeUtils.setCurrentMillisSystem();
+
+    // Order is important here
+    CoreServices.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+
+    InstallationManager.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+    BackupManager.INSTANCE.shutdownNow();
+    WalletManager.INSTANCE.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+
+  }
+
+  @Test
+  public void testIdle_NoBackupsWritten() throws Exception {
+
+    // Act
+    executorService.advanceBy(TimeUnit.HOURS.toMillis(2));
+
+    // Assert
+    assertBackups(0, 0, 0);
+    assertThat(executorService.getScheduledCount()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testChange_FirstBackupsAfterInitialDelay() throws Exception {
+
+    // Arrange
+    rememberAll();
+
+    // Act & Assert
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(59));
+    assertBackups(0, 0, 0);
+
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(2));
+    assertBackups(1, 1, 1);
+
+    // Nothing further remembered so nothing further scheduled
+    assertThat(executorService.getScheduledCount()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testChange_MinimumIntervalPerTier() throws Exception {
+
+    // Arrange (first backups at 60s)
+    rememberAll();
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(61));
+    assertBackups(1, 1, 1);
+
+    // Act (a burst of changes is one generation per tier)
+    rememberAll();
+    rememberAll();
+
+    // Assert
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(119));
+    assertBackups(2, 1, 1);
+
+    executorService.advanceBy(TimeUnit.MINUTES.toMillis(8));
+    assertBackups(2, 2, 1);
+
+    executorService.advanceBy(TimeUnit.MINUTES.toMillis(20));
+    assertBackups(2, 2, 2);
+
+    executorService.advanceBy(TimeUnit.HOURS.toMillis(1));
+    assertBackups(2, 2, 2);
+
+  }
+
+  @Test
+  public void testChainDownloading_DeferredUpToMaximumInterval() throws Exception {
+
+    // Arrange
+    testObject.onBitcoinNetworkChangedEvent(new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadStarted()));
+    rememberAll();
+
+    // Act & Assert (peer count changes do not end the download)
+    executorService.advanceBy(TimeUnit.MINUTES.toMillis(5));
+    testObject.onBitcoinNetworkChangedEvent(
+      new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newNetworkPeerCount(4, Optional.<Long>absent(), Optional.<Long>absent()))
+    );
+    executorService.advanceBy(TimeUnit.MINUTES.toMillis(4));
+    assertBackups(0, 0, 0);
+
+    // The rolling tier may only be deferred for 10 minutes after the change
+    executorService.advanceBy(TimeUnit.MINUTES.toMillis(1));
+    assertBackups(1, 0, 0);
+
+    // The download stops so the zip backups are no longer deferred
+    testObject.onBitcoinNetworkChangedEvent(new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newNetworkNotInitialised()));
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(30));
+    assertBackups(1, 1, 1);
+
+  }
+
+  @Test
+  public void testRollingBackups_OldestPruned() throws Exception {
+
+    // Arrange
+    testObject.rememberWalletSummaryAndPasswordForRollingBackup(walletSummary, PASSWORD);
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(61));
+    File oldest = BackupManager.INSTANCE.getRollingBackups(walletSummary.getWalletId()).get(0);
+
+    // Act
+    for (int i = 0; i < BackupManager.MAXIMUM_NUMBER_OF_ROLLING_BACKUPS + 1; i++) {
+      testObject.rememberWalletSummaryAndPasswordForRollingBackup(walletSummary, PASSWORD);
+      executorService.advanceBy(TimeUnit.MINUTES.toMillis(2));
+    }
+    SecureDeletions.INSTANCE.drain();
+
+    // Assert
+    List<File> rollingBackups = BackupManager.INSTANCE.getRollingBackups(walletSummary.getWalletId());
+    assertThat(rollingBackups.size()).isEqualTo(BackupManager.MAXIMUM_NUMBER_OF_ROLLING_BACKUPS);
+    assertThat(rollingBackups).excludes(oldest);
+    assertThat(oldest.exists()).isFalse();
+
+  }
+
+  @Test
+  public void testLocalZipBackups_Thinned() throws Exception {
+
+    // Arrange
+    testObject.rememberWalletIdAndPasswordForLocalZipBackup(walletSummary.getWalletId(), PASSWORD);
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(61));
+
+    // Act
+    for (int i = 0; i < BackupManager.MAXIMUM_NUMBER_OF_ZIP_BACKUPS; i++) {
+      testObject.rememberWalletIdAndPasswordForLocalZipBackup(walletSummary.getWalletId(), PASSWORD);
+      executorService.advanceBy(TimeUnit.MINUTES.toMillis(10));
+    }
+    SecureDeletions.INSTANCE.drain();
+
+    // Assert (thinning starts on reaching the maximum and keeps the first few)
+    List<BackupSummary> localBackups = BackupManager.INSTANCE.getLocalZipBackups(walletSummary.getWalletId());
+    assertThat(localBackups.size()).isEqualTo(BackupManager.MAXIMUM_NUMBER_OF_ZIP_BACKUPS - 1);
+
+  }
+
+  @Test
+  public void testSoftShutdown_FlushesRememberedBackups() throws Exception {
+
+    // Arrange (changes within the minimum interval of the first backups)
+    rememberAll();
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(61));
+    rememberAll();
+
+    // Act
+    testObject.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+    testObjectShutdown = true;
+
+    // Assert
+    assertBackups(2, 2, 2);
+
+  }
+
+  @Test
+  public void testSoftShutdown_WaitIsBounded() throws Exception {
+
+    // Arrange (the backup thread is stuck)
+    rememberAll();
+    executorService.advanceBy(TimeUnit.SECONDS.toMillis(61));
+    rememberAll();
+    executorService.setPaused(true);
+
+    // Act
+    long startNanos = System.nanoTime();
+    testObject.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+    testObjectShutdown = true;
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    // Assert
+    assertThat(elapsedMillis).isGreaterThanOrEqualTo(SHUTDOWN_BACKUP_TIMEOUT_MILLIS);
+    assertThat(elapsedMillis).isLessThan(SHUTDOWN_BACKUP_TIMEOUT_MILLIS + 5_000);
+    assertBackups(1, 1, 1);
+
+  }
+
+  private void rememberAll() {
+
+    testObject.rememberWalletSummaryAndPasswordForRollingBackup(walletSummary, PASSWORD);
+    testObject.rememberWalletIdAndPasswordForLocalZipBackup(walletSummary.getWalletId(), PASSWORD);
+    testObject.rememberWalletIdAndPasswordForCloudZipBackup(walletSummary.getWalletId(), PASSWORD);
+
+  }
+
+  private void assertBackups(int rolling, int localZip, int cloudZip) {
+
+    assertThat(BackupManager.INSTANCE.getRollingBackups(walletSummary.getWalletId()).size()).isEqualTo(rolling);
+    assertThat(BackupManager.INSTANCE.getLocalZipBackups(walletSummary.getWalletId()).size()).isEqualTo(localZip);
+    assertThat(BackupManager.INSTANCE.getCloudBackups(walletSummary.getWalletId(), cloudBackupDirectory).size()).isEqualTo(cloudZip);
+
+  }
+
+}
@@ -0,0 +1,323 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.KeyChain;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.utils.Dates;
+import org.multibit.hd.brit.core.seed_phrase.Bip39SeedPhraseGenerator;
+import org.multibit.hd.brit.core.seed_phrase.SeedPhraseGenerator;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.dto.FiatPayment;
+import org.multibit.hd.core.dto.Payout;
+import org.multibit.hd.core.dto.PayoutResult;
+import org.multibit.hd.core.dto.SendRequestSummary;
+import org.multibit.hd.core.dto.WalletIdTest;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.events.ShutdownEvent;
+import org.multibit.hd.core.managers.BackupManager;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.utils.BitcoinNetwork;
+import org.multibit.hd.core.wallet.KeyPathIndex;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.bitcoinj.testing.FakeTxBuilder.createFakeTx;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BitcoinNetworkServiceTest {
+
+  private static final String PASSWORD = "credentials";
+
+  private static final Coin FEE_PER_KB = Coin.valueOf(10_000);
+
+  private NetworkParameters networkParameters;
+
+  private WalletSummary walletSummary;
+
+  private BitcoinNetworkService testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    InstallationManager.unrestricted = true;
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+    networkParameters = BitcoinNetwork.current().get();
+
+    // Start the core services
+    CoreServices.main(null);
+
+    File applicationDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+    BackupManager.INSTANCE.initialise(applicationDirectory, Optional.<File>absent());
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    List<String> seedPhraseList = Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1);
+    byte[] entropy = MnemonicCode.INSTANCE.toEntropy(seedPhraseList);
+    byte[] seed = seedGenerator.convertToSeed(seedPhraseList);
+
+    walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateMBHDSoftWalletSummaryFromEntropy(
+        applicationDirectory,
+        entropy,
+        seed,
+        Dates.nowInSeconds(),
+        PASSWORD,
+        "Example",
+        "Example",
+        false);
+    WalletManager.INSTANCE.setCurrentWalletSummary(walletSummary);
+
+    testObject = new BitcoinNetworkService(networkParameters);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    // Order is important here
+    testObject.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+    CoreServices.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+
+    InstallationManager.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+    BackupManager.INSTANCE.shutdownNow();
+    WalletManager.INSTANCE.shutdownNow(ShutdownEvent.ShutdownType.SOFT);
+
+  }
+
+  @Test
+  public void testPrepareTransaction_BatchHasOutputPerPayout() throws Exception {
+
+    // Arrange (the same recipient appears twice)
+    receiveConfirmed(Coin.COIN);
+    Address first = new ECKey().toAddress(networkParameters);
+    Address second = new ECKey().toAddress(networkParameters);
+    Address change = walletSummary.getWallet().freshAddress(KeyChain.KeyPurpose.CHANGE);
+    SendRequestSummary sendRequestSummary = new SendRequestSummary(
+      Lists.newArrayList(
+        new Payout(first, Coin.valueOf(100_000)),
+        new Payout(second, Coin.valueOf(200_000)),
+        new Payout(first, Coin.valueOf(100_000))
+      ),
+      Optional.<FiatPayment>absent(),
+      change,
+      FEE_PER_KB,
+      PASSWORD
+    );
+
+    // Act
+    boolean prepared = testObject.prepareTransaction(sendRequestSummary);
+
+    // Assert (one transaction with an output per payout and a single change output)
+    assertThat(prepared).isTrue();
+    Transaction tx = sendRequestSummary.getSendRequest().get().tx;
+    assertThat(tx.getOutputs().size()).isEqualTo(4);
+    assertThat(totalPaidTo(tx, first)).isEqualTo(Coin.valueOf(200_000));
+    assertThat(totalPaidTo(tx, second)).isEqualTo(Coin.valueOf(200_000));
+
+    Coin fee = sendRequestSummary.getSendRequest().get().fee;
+    assertThat(fee.isPositive()).isTrue();
+    assertThat(totalPaidTo(tx, change)).isEqualTo(Coin.COIN.subtract(Coin.valueOf(400_000)).subtract(fee));
+
+  }
+
+  @Test
+  public void testNewPayoutResults_MatchedAfterShuffle() throws Exception {
+
+    // Arrange (the same recipient is paid twice with the same amount and once with another amount)
+    Address first = new ECKey().toAddress(networkParameters);
+    Address second = new ECKey().toAddress(networkParameters);
+    Address change = new ECKey().toAddress(networkParameters);
+    SendRequestSummary sendRequestSummary = newBatch(
+      change,
+      new Payout(first, Coin.valueOf(100_000)),
+      new Payout(second, Coin.valueOf(200_000)),
+      new Payout(first, Coin.valueOf(300_000)),
+      new Payout(first, Coin.valueOf(100_000))
+    );
+
+    // Outputs in a different order to the payouts with change of a payout amount
+    Transaction tx = new Transaction(networkParameters);
+    tx.addOutput(Coin.valueOf(100_000), change);
+    tx.addOutput(Coin.valueOf(300_000), first);
+    tx.addOutput(Coin.valueOf(100_000), first);
+    tx.addOutput(Coin.valueOf(200_000), second);
+    tx.addOutput(Coin.valueOf(100_000), first);
+
+    // Act
+    List<PayoutResult> payoutResults = testObject.newPayoutResults(sendRequestSummary, Optional.of(tx));
+
+    // Assert (every payout has its own output matching address and amount)
+    assertThat(payoutResults).hasSize(4);
+    Set<Integer> outputIndices = Sets.newHashSet();
+    for (PayoutResult payoutResult : payoutResults) {
+      assertThat(payoutResult.isSent()).isTrue();
+      TransactionOutput output = tx.getOutput(payoutResult.getOutputIndex().get());
+      assertThat(output.getValue()).isEqualTo(payoutResult.getPayout().getAmount());
+      assertThat(testObject.isPaidTo(output, payoutResult.getPayout().getAddress())).isTrue();
+      outputIndices.add(payoutResult.getOutputIndex().get());
+    }
+    assertThat(outputIndices).hasSize(4);
+    assertThat(outputIndices).excludes(0);
+
+  }
+
+  @Test
+  public void testNewPayoutResults_NotSent() throws Exception {
+
+    // Arrange
+    SendRequestSummary sendRequestSummary = newBatch(
+      new ECKey().toAddress(networkParameters),
+      new Payout(new ECKey().toAddress(networkParameters), Coin.valueOf(100_000)),
+      new Payout(new ECKey().toAddress(networkParameters), Coin.valueOf(200_000))
+    );
+
+    // Act
+    List<PayoutResult> payoutResults = testObject.newPayoutResults(sendRequestSummary, Optional.<Transaction>absent());
+
+    // Assert
+    assertThat(payoutResults).hasSize(2);
+    assertThat(payoutResults.get(0).isSent()).isFalse();
+    assertThat(payoutResults.get(1).isSent()).isFalse();
+
+  }
+
+  @Test
+  public void testNewPayoutResults_SingleRecipientEmpty() throws Exception {
+
+    // Arrange
+    Address destination = new ECKey().toAddress(networkParameters);
+    SendRequestSummary sendRequestSummary = new SendRequestSummary(
+      destination,
+      Coin.valueOf(100_000),
+      Optional.<FiatPayment>absent(),
+      new ECKey().toAddress(networkParameters),
+      FEE_PER_KB,
+      PASSWORD,
+      false
+    );
+    Transaction tx = new Transaction(networkParameters);
+    tx.addOutput(Coin.valueOf(100_000), destination);
+
+    // Act & Assert
+    assertThat(testObject.newPayoutResults(sendRequestSummary, Optional.of(tx))).isEmpty();
+
+  }
+
+  @Test
+  public void testIsPaidTo() throws Exception {
+
+    // Arrange
+    Address address = new ECKey().toAddress(networkParameters);
+    Transaction tx = new Transaction(networkParameters);
+    tx.addOutput(Coin.valueOf(100_000), address);
+    tx.addOutput(Coin.ZERO, ScriptBuilder.createOpReturnScript(new byte[]{1, 2, 3}));
+
+    // Act & Assert (only the address is compared)
+    assertThat(testObject.isPaidTo(tx.getOutput(0), address)).isTrue();
+    assertThat(testObject.isPaidTo(tx.getOutput(0), new ECKey().toAddress(networkParameters))).isFalse();
+    assertThat(testObject.isPaidTo(tx.getOutput(1), address)).isFalse();
+
+  }
+
+  @Test
+  public void testBuildChangeAddressPathMap_SeveralPayouts() throws Exception {
+
+    // Arrange (one payout is to an address in the wallet)
+    Wallet wallet = walletSummary.getWallet();
+    KeyPathIndex keyPathIndex = testObject.getKeyPathIndex(wallet);
+    DeterministicKey ownRecipientKey = wallet.freshKey(KeyChain.KeyPurpose.RECEIVE_FUNDS);
+    DeterministicKey changeKey = wallet.freshKey(KeyChain.KeyPurpose.CHANGE);
+
+    Address foreign = new ECKey().toAddress(networkParameters);
+    Address ownRecipient = ownRecipientKey.toAddress(networkParameters);
+    Address changeAddress = changeKey.toAddress(networkParameters);
+
+    Transaction tx = new Transaction(networkParameters);
+    tx.addOutput(Coin.valueOf(100_000), foreign);
+    tx.addOutput(Coin.valueOf(200_000), ownRecipient);
+    tx.addOutput(Coin.valueOf(300_000), foreign);
+    tx.addOutput(Coin.valueOf(50_000), changeAddress);
+
+    // Act
+    Map<Address, ImmutableList<ChildNumber>> changeAddressPathMap = testObject.buildChangeAddressPathMap(
+      tx,
+      keyPathIndex,
+      Lists.newArrayList(foreign, ownRecipient, foreign)
+    );
+
+    // Assert (only the change output is declared to the device)
+    assertThat(changeAddressPathMap).hasSize(1);
+    assertThat(changeAddressPathMap.get(changeAddress)).isEqualTo(changeKey.getPath());
+
+  }
+
+  /**
+   * @param change  The change address
+   * @param payouts The payouts
+   *
+   * @return A batch send request summary
+   */
+  private SendRequestSummary newBatch(Address change, Payout... payouts) {
+
+    return new SendRequestSummary(
+      Lists.newArrayList(payouts),
+      Optional.<FiatPayment>absent(),
+      change,
+      FEE_PER_KB,
+      PASSWORD
+    );
+  }
+
+  /**
+   * @param tx      The transaction
+   * @param address The address
+   *
+   * @return The total of the outputs paying the address
+   */
+  private Coin totalPaidTo(Transaction tx, Address address) {
+
+    Coin total = Coin.ZERO;
+    for (TransactionOutput output : tx.getOutputs()) {
+      if (testObject.isPaidTo(output, address)) {
+        total = total.add(output.getValue());
+      }
+    }
+
+    return total;
+  }
+
+  /**
+   * @param amount The amount to receive into the current wallet in a confirmed transaction
+   */
+  private void receiveConfirmed(Coin amount) throws Exception {
+
+    Wallet wallet = walletSummary.getWallet();
+    Transaction tx = createFakeTx(networkParameters, amount, wallet.freshReceiveAddress());
+    wallet.receivePending(tx, null);
+
+    // Treat as confirmed so coin selection will spend it
+    wallet.getTransaction(tx.getHash()).getConfidence().setAppearedAtChainHeight(1);
+
+  }
+
+}
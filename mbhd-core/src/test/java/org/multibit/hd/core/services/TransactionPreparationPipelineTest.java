@@ -0,0 +1,357 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.dto.FiatPayment;
+import org.multibit.hd.core.dto.SendRequestSummary;
+import org.multibit.hd.core.testing.DeterministicScheduledExecutorService;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class TransactionPreparationPipelineTest {
+
+  private final NetworkParameters networkParameters = MainNetParams.get();
+
+  private final Address destination = new ECKey().toAddress(networkParameters);
+
+  private final Address changeAddress = new ECKey().toAddress(networkParameters);
+
+  private BitcoinNetworkService bitcoinNetworkService;
+
+  private DeterministicScheduledExecutorService executorService;
+
+  private TransactionPreparationPipeline testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    bitcoinNetworkService = mock(BitcoinNetworkService.class);
+    when(bitcoinNetworkService.prepareTransaction(any(SendRequestSummary.class))).thenReturn(true);
+
+    executorService = new DeterministicScheduledExecutorService(System.currentTimeMillis());
+
+    testObject = new TransactionPreparationPipeline(bitcoinNetworkService, executorService, executorService);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    testObject.shutdown();
+    DateTimeUtils.setCurrentMillisSystem();
+
+  }
+
+  @Test
+  public void testSubmit_OnlyLatestPrepared() throws Exception {
+
+    // Arrange
+    SendRequestSummary first = newSendRequestSummary();
+    SendRequestSummary second = newSendRequestSummary();
+
+    // Act (the second arrives within the debounce delay)
+    ListenableFuture<Boolean> firstFuture = testObject.submit(first, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(100);
+    ListenableFuture<Boolean> secondFuture = testObject.submit(second, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+    // Assert
+    assertThat(firstFuture.isCancelled()).isTrue();
+    assertThat(secondFuture.get()).isTrue();
+    verify(bitcoinNetworkService, never()).prepareTransaction(first);
+    verify(bitcoinNetworkService, times(1)).prepareTransaction(second);
+
+  }
+
+  @Test
+  public void testAdopt_CompletedPreview() throws Exception {
+
+    // Arrange
+    SendRequestSummary summary = newSendRequestSummary();
+    testObject.submit(summary, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+    // Act
+    ListenableFuture<Boolean> adoption = testObject.adopt(summary, 0);
+
+    // Assert (decided at once without waiting)
+    assertThat(adoption.isDone()).isTrue();
+    assertThat(adoption.get()).isTrue();
+    assertThat(summary.isPreview()).isFalse();
+
+    // A second adoption of the same summary is refused
+    assertThat(testObject.adopt(summary, 0).get()).isFalse();
+
+  }
+
+  @Test
+  public void testAdopt_InFlightPreviewNotifiesListener() throws Exception {
+
+    // Arrange
+    SendRequestSummary summary = newSendRequestSummary();
+    testObject.submit(summary, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    final AtomicReference<Boolean> adopted = new AtomicReference<>();
+
+    // Act
+    ListenableFuture<Boolean> adoption = testObject.adopt(summary, 5_000);
+    Futures.addCallback(
+      adoption, new FutureCallback<Boolean>() {
+        @Override
+        public void onSuccess(Boolean result) {
+          adopted.set(result);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          adopted.set(null);
+        }
+      });
+
+    // Assert (the caller is not blocked)
+    assertThat(adoption.isDone()).isFalse();
+    assertThat(adopted.get()).isNull();
+
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    assertThat(adopted.get()).isTrue();
+    assertThat(summary.isPreview()).isFalse();
+
+    // The timeout has been released
+    assertThat(executorService.getScheduledCount()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testAdopt_TimeoutCancelsStalePreview() throws Exception {
+
+    // Arrange
+    SendRequestSummary summary = newSendRequestSummary();
+    ListenableFuture<Boolean> preparation = testObject.submit(summary, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+    // Act
+    ListenableFuture<Boolean> adoption = testObject.adopt(summary, 100);
+    executorService.advanceBy(100);
+
+    // Assert
+    assertThat(adoption.isDone()).isTrue();
+    assertThat(adoption.get()).isFalse();
+    assertThat(preparation.isCancelled()).isTrue();
+
+    // The stale preview never runs
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    verify(bitcoinNetworkService, never()).prepareTransaction(any(SendRequestSummary.class));
+    assertThat(summary.isPreview()).isTrue();
+
+  }
+
+  @Test
+  public void testAdopt_SupersededBySubmission() throws Exception {
+
+    // Arrange
+    SendRequestSummary first = newSendRequestSummary();
+    SendRequestSummary second = newSendRequestSummary();
+    testObject.submit(first, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    ListenableFuture<Boolean> adoption = testObject.adopt(first, 200);
+
+    // Act (the adoption is refused at once and its timeout leaves the later submission alone)
+    ListenableFuture<Boolean> secondFuture = testObject.submit(second, 1_000);
+    assertThat(adoption.isDone()).isTrue();
+    executorService.advanceBy(1_000);
+
+    // Assert
+    assertThat(adoption.get()).isFalse();
+    assertThat(secondFuture.isCancelled()).isFalse();
+    assertThat(secondFuture.get()).isTrue();
+    assertThat(testObject.adopt(second, 0).get()).isTrue();
+
+  }
+
+  @Test
+  public void testAdopt_FailedPreviewRefused() throws Exception {
+
+    // Arrange
+    when(bitcoinNetworkService.prepareTransaction(any(SendRequestSummary.class))).thenReturn(false);
+    SendRequestSummary summary = newSendRequestSummary();
+    testObject.submit(summary, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+    // Act
+    ListenableFuture<Boolean> adoption = testObject.adopt(summary, 0);
+
+    // Assert
+    assertThat(adoption.get()).isFalse();
+    assertThat(summary.isPreview()).isTrue();
+
+  }
+
+  @Test
+  public void testAdopt_UnknownSummaryRefused() throws Exception {
+
+    // Arrange
+    SendRequestSummary submitted = newSendRequestSummary();
+    testObject.submit(submitted, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+    // Act
+    ListenableFuture<Boolean> adoption = testObject.adopt(newSendRequestSummary(), 0);
+
+    // Assert
+    assertThat(adoption.isDone()).isTrue();
+    assertThat(adoption.get()).isFalse();
+
+  }
+
+  @Test
+  public void testAdoptOrPrepare_CompletedPreviewUsed() throws Exception {
+
+    // Arrange
+    SendRequestSummary preview = newSendRequestSummary(destination, Coin.valueOf(100_000));
+    testObject.submit(preview, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    SendRequestSummary entered = newSendRequestSummary(destination, Coin.valueOf(100_000));
+    entered.setPassword("credentials");
+
+    // Act
+    Optional<SendRequestSummary> prepared = testObject.adoptOrPrepare(preview, entered);
+
+    // Assert (the entered credentials are carried over)
+    assertThat(prepared.get()).isSameAs(preview);
+    assertThat(preview.isPreview()).isFalse();
+    assertThat(preview.getPassword()).isEqualTo("credentials");
+    verify(bitcoinNetworkService, never()).prepareTransaction(entered);
+
+  }
+
+  @Test
+  public void testAdoptOrPrepare_ChangedDetailsPrepared() throws Exception {
+
+    // Arrange
+    SendRequestSummary preview = newSendRequestSummary(destination, Coin.valueOf(100_000));
+    testObject.submit(preview, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    SendRequestSummary entered = newSendRequestSummary(destination, Coin.valueOf(200_000));
+
+    // Act
+    Optional<SendRequestSummary> prepared = testObject.adoptOrPrepare(preview, entered);
+
+    // Assert (the stale preview can no longer be adopted)
+    assertThat(prepared.get()).isSameAs(entered);
+    verify(bitcoinNetworkService, times(1)).prepareTransaction(entered);
+    assertThat(testObject.adopt(preview, 0).get()).isFalse();
+
+  }
+
+  @Test
+  public void testAdoptOrPrepare_InFlightPreviewNotAwaited() throws Exception {
+
+    // Arrange
+    SendRequestSummary preview = newSendRequestSummary(destination, Coin.valueOf(100_000));
+    ListenableFuture<Boolean> preparation = testObject.submit(preview, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    SendRequestSummary entered = newSendRequestSummary(destination, Coin.valueOf(100_000));
+
+    // Act
+    Optional<SendRequestSummary> prepared = testObject.adoptOrPrepare(preview, entered);
+
+    // Assert (prepared at once and the preview never runs)
+    assertThat(prepared.get()).isSameAs(entered);
+    assertThat(preparation.isCancelled()).isTrue();
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    verify(bitcoinNetworkService, never()).prepareTransaction(preview);
+    assertThat(preview.isPreview()).isTrue();
+
+  }
+
+  @Test
+  public void testAdoptOrPrepare_NoPreview() throws Exception {
+
+    // Arrange
+    SendRequestSummary entered = newSendRequestSummary(destination, Coin.valueOf(100_000));
+
+    // Act
+    Optional<SendRequestSummary> prepared = testObject.adoptOrPrepare(null, entered);
+
+    // Assert
+    assertThat(prepared.get()).isSameAs(entered);
+    verify(bitcoinNetworkService, times(1)).prepareTransaction(entered);
+
+  }
+
+  @Test
+  public void testAdoptOrPrepare_FailedPreparation() throws Exception {
+
+    // Arrange
+    when(bitcoinNetworkService.prepareTransaction(any(SendRequestSummary.class))).thenReturn(false);
+    SendRequestSummary preview = newSendRequestSummary(destination, Coin.valueOf(100_000));
+    testObject.submit(preview, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+    executorService.advanceBy(TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+    // Act (the failed preview is not adopted and the entered summary also fails)
+    Optional<SendRequestSummary> prepared = testObject.adoptOrPrepare(preview, newSendRequestSummary(destination, Coin.valueOf(100_000)));
+
+    // Assert
+    assertThat(prepared.isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testFiatPayment_IsSameRate() throws Exception {
+
+    // Arrange
+    FiatPayment preview = newFiatPayment("400.0");
+    preview.setAmount(Optional.of(new BigDecimal("4.00")));
+
+    // Act & Assert (the prepared amount is ignored but the rate is not)
+    assertThat(preview.isSameRate(newFiatPayment("400.0"))).isTrue();
+    assertThat(preview.isSameRate(newFiatPayment("401.0"))).isFalse();
+
+  }
+
+  private SendRequestSummary newSendRequestSummary() {
+    return newSendRequestSummary(new ECKey().toAddress(networkParameters), Coin.valueOf(100_000));
+  }
+
+  /**
+   * @param destinationAddress The destination address
+   * @param amount             The amount to send
+   *
+   * @return A summary sharing the change address with other summaries in the test
+   */
+  private SendRequestSummary newSendRequestSummary(Address destinationAddress, Coin amount) {
+
+    return new SendRequestSummary(
+      destinationAddress,
+      amount,
+      Optional.of(newFiatPayment("400.0")),
+      changeAddress,
+      Coin.valueOf(10_000),
+      null,
+      false);
+  }
+
+  private FiatPayment newFiatPayment(String rate) {
+
+    FiatPayment fiatPayment = new FiatPayment();
+    fiatPayment.setRate(Optional.of(rate));
+    fiatPayment.setCurrency(Optional.of(Currency.getInstance("USD")));
+    fiatPayment.setExchangeName(Optional.of("Bitstamp"));
+
+    return fiatPayment;
+  }
+
+}
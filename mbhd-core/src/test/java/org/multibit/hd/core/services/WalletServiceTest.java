@@ -3,6 +3,8 @@ package org.multibit.hd.core.services;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import org.bitcoin.protocols.payments.Protos;
 import org.bitcoinj.core.*;
 import org.bitcoinj.crypto.MnemonicCode;
@@ -159,6 +161,139 @@ public class WalletServiceTest {
     assertThat(rebornMBHDPaymentRequestDataList.size()).isEqualTo(1);
   }
 
+  @Test
+  public void testGetPaymentsByDate() throws Exception {
+
+    int initialCount = walletService.getPaymentCount();
+
+    // Add unfunded payment requests in the future so they sort first
+    DateTime now = new DateTime();
+    List<MBHDPaymentRequestData> paymentRequests = Lists.newArrayList();
+    for (int i = 1; i <= 3; i++) {
+      MBHDPaymentRequestData mbhdPaymentRequestData = new MBHDPaymentRequestData();
+      mbhdPaymentRequestData.setAddress(new ECKey().toAddress(networkParameters));
+      mbhdPaymentRequestData.setAmountCoin(Optional.of(Coin.valueOf(1000 * i)));
+      mbhdPaymentRequestData.setDate(now.plusDays(i));
+      mbhdPaymentRequestData.setLabel("label" + i);
+      mbhdPaymentRequestData.setNote("note" + i);
+      mbhdPaymentRequestData.setAmountFiat(new FiatPayment());
+
+      walletService.addMBHDPaymentRequestData(mbhdPaymentRequestData);
+      paymentRequests.add(mbhdPaymentRequestData);
+    }
+
+    // Act
+    int count = walletService.getPaymentCount();
+    List<PaymentData> firstWindow = walletService.getPaymentsByDate(0, 2);
+    List<PaymentData> secondWindow = walletService.getPaymentsByDate(2, 1);
+
+    // Assert
+    assertThat(count).isEqualTo(initialCount + 3);
+    assertThat(walletService.getPaymentDataSetSize()).isEqualTo(count);
+
+    // Date descending
+    assertThat(firstWindow).containsExactly(paymentRequests.get(2), paymentRequests.get(1));
+    assertThat(secondWindow).containsExactly(paymentRequests.get(0));
+
+    // Beyond the end
+    assertThat(walletService.getPaymentsByDate(count, 10)).isEmpty();
+
+    // Act
+    walletService.deleteMBHDPaymentRequest(paymentRequests.get(2));
+
+    // Assert
+    assertThat(walletService.getPaymentCount()).isEqualTo(initialCount + 2);
+    assertThat(walletService.getPaymentsByDate(0, 1)).containsExactly(paymentRequests.get(1));
+
+  }
+
+  @Test
+  public void testTransactionDataCursor_AdaptsOneBatchAtATime() throws Exception {
+
+    // Arrange (received oldest first)
+    DateTime now = Dates.nowUtc();
+    List<Transaction> received = Lists.newArrayList();
+    for (int i = 5; i >= 1; i--) {
+      received.add(receiveTransaction(Coin.valueOf(1000 * i), now.minusDays(i)));
+    }
+    walletService.invalidatePaymentIndex();
+
+    // Act
+    WalletService.TransactionDataCursor cursor = walletService.newTransactionDataCursor(2);
+
+    // Assert (nothing is adapted until the cursor advances)
+    assertThat(cursor.getCount()).isEqualTo(5);
+    assertThat(cursor.getPosition()).isEqualTo(0);
+
+    List<String> transactionIds = Lists.newArrayList();
+    transactionIds.add(cursor.next().getTransactionId());
+    assertThat(cursor.getPosition()).isEqualTo(2);
+    transactionIds.add(cursor.next().getTransactionId());
+    assertThat(cursor.getPosition()).isEqualTo(2);
+    transactionIds.add(cursor.next().getTransactionId());
+    assertThat(cursor.getPosition()).isEqualTo(4);
+    while (cursor.hasNext()) {
+      transactionIds.add(cursor.next().getTransactionId());
+    }
+    assertThat(cursor.getPosition()).isEqualTo(5);
+
+    // Date descending
+    assertThat(transactionIds).containsExactly(
+      received.get(4).getHashAsString(),
+      received.get(3).getHashAsString(),
+      received.get(2).getHashAsString(),
+      received.get(1).getHashAsString(),
+      received.get(0).getHashAsString()
+    );
+
+  }
+
+  @Test
+  public void testTransactionDataCursor_CountMatchesSnapshot() throws Exception {
+
+    // Arrange
+    DateTime now = Dates.nowUtc();
+    receiveTransaction(Coin.valueOf(1000), now.minusDays(2));
+    receiveTransaction(Coin.valueOf(2000), now.minusDays(1));
+    walletService.invalidatePaymentIndex();
+
+    WalletService.TransactionDataCursor cursor = walletService.newTransactionDataCursor(1);
+
+    // Act (the wallet changes after the cursor is created)
+    receiveTransaction(Coin.valueOf(3000), now);
+    walletService.invalidatePaymentIndex();
+
+    // Assert (the count and the rows come from the same snapshot)
+    assertThat(cursor.getCount()).isEqualTo(2);
+    assertThat(Iterators.size(cursor)).isEqualTo(2);
+
+    WalletService.TransactionDataCursor laterCursor = walletService.newTransactionDataCursor(1);
+    assertThat(laterCursor.getCount()).isEqualTo(3);
+    assertThat(Iterators.size(laterCursor)).isEqualTo(3);
+
+  }
+
+  /**
+   * @param amount     The amount to receive
+   * @param updateTime The update time of the transaction (positions it in the payment index)
+   *
+   * @return The pending transaction in the current wallet
+   */
+  private Transaction receiveTransaction(Coin amount, DateTime updateTime) throws Exception {
+
+    Wallet wallet = walletSummary.getWallet();
+    Address address = Addresses.parse(walletService.generateNextReceivingAddress(Optional.<CharSequence>of(PASSWORD))).get();
+
+    Transaction tx = createFakeTx(networkParameters, amount, address);
+    assertThat(wallet.isPendingTransactionRelevant(tx)).isTrue();
+    wallet.receivePending(tx, null);
+
+    Transaction received = wallet.getTransaction(tx.getHash());
+    received.setUpdateTime(updateTime.toDate());
+
+    return received;
+  }
+
   private void checkMBHDPaymentRequestData(MBHDPaymentRequestData MBHDPaymentRequestData, MBHDPaymentRequestData other) {
     assertThat(other.getAddress()).isEqualTo(MBHDPaymentRequestData.getAddress());
     assertThat(other.getLabel()).isEqualTo(MBHDPaymentRequestData.getLabel());
@@ -0,0 +1,205 @@
+package org.multibit.hd.core.testing;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.AbstractListeningExecutorService;
+import com.google.common.util.concurrent.ListenableScheduledFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import org.joda.time.DateTimeUtils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Scheduled executor to provide the following to tests:</p>
+ * <ul>
+ * <li>Immediate tasks run on the calling thread</li>
+ * <li>Delayed tasks run only when the Joda clock is advanced past their due time</li>
+ * <li>A paused mode where immediate tasks never run (simulates a stuck worker)</li>
+ * </ul>
+ *
+ * <p>Call <code>DateTimeUtils.setCurrentMillisSystem()</code> after the test to restore the clock.</p>
+ */
+public class DeterministicScheduledExecutorService extends AbstractListeningExecutorService implements ListeningScheduledExecutorService {
+
+  private final PriorityQueue<ScheduledTask<?>> scheduledTasks = new PriorityQueue<>(
+    11, new Comparator<ScheduledTask<?>>() {
+    @Override
+    public int compare(ScheduledTask<?> first, ScheduledTask<?> second) {
+      int byDue = Long.compare(first.dueMillis, second.dueMillis);
+      return byDue != 0 ? byDue : Long.compare(first.sequence, second.sequence);
+    }
+  });
+
+  private long sequence = 0;
+
+  private boolean paused = false;
+
+  private boolean shutdown = false;
+
+  /**
+   * @param startMillis The time to fix the Joda clock at
+   */
+  public DeterministicScheduledExecutorService(long startMillis) {
+    DateTimeUtils.setCurrentMillisFixed(startMillis);
+  }
+
+  /**
+   * <p>Move the clock forward running every scheduled task that falls due on the way, in order</p>
+   *
+   * @param millis The time to advance by
+   */
+  public void advanceBy(long millis) {
+
+    long targetMillis = DateTimeUtils.currentTimeMillis() + millis;
+
+    while (true) {
+      ScheduledTask<?> next;
+      synchronized (this) {
+        next = scheduledTasks.peek();
+        if (next == null || next.dueMillis > targetMillis) {
+          break;
+        }
+        scheduledTasks.poll();
+      }
+      if (next.isCancelled()) {
+        continue;
+      }
+      DateTimeUtils.setCurrentMillisFixed(Math.max(next.dueMillis, DateTimeUtils.currentTimeMillis()));
+      next.run();
+    }
+
+    DateTimeUtils.setCurrentMillisFixed(targetMillis);
+
+  }
+
+  /**
+   * @return The number of scheduled tasks that have not been run or cancelled
+   */
+  public synchronized int getScheduledCount() {
+
+    int count = 0;
+    for (ScheduledTask<?> task : scheduledTasks) {
+      if (!task.isCancelled()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param paused True if immediate tasks should never run
+   */
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+
+    if (shutdown) {
+      throw new RejectedExecutionException("Shut down");
+    }
+    if (!paused) {
+      command.run();
+    }
+
+  }
+
+  @Override
+  public ListenableScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return schedule(Executors.callable(command), delay, unit);
+  }
+
+  @Override
+  public synchronized <V> ListenableScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+
+    if (shutdown) {
+      throw new RejectedExecutionException("Shut down");
+    }
+
+    ScheduledTask<V> task = new ScheduledTask<>(callable, DateTimeUtils.currentTimeMillis() + unit.toMillis(delay), sequence++);
+    scheduledTasks.add(task);
+    return task;
+  }
+
+  @Override
+  public ListenableScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    throw new UnsupportedOperationException("Not required");
+  }
+
+  @Override
+  public ListenableScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    throw new UnsupportedOperationException("Not required");
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+  }
+
+  @Override
+  public synchronized List<Runnable> shutdownNow() {
+    shutdown = true;
+    scheduledTasks.clear();
+    return Lists.newArrayList();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return true;
+  }
+
+  /**
+   * <p>A task due at a given time on the Joda clock</p>
+   */
+  private static class ScheduledTask<V> extends AbstractFuture<V> implements ListenableScheduledFuture<V> {
+
+    private final Callable<V> callable;
+
+    private final long dueMillis;
+
+    private final long sequence;
+
+    private ScheduledTask(Callable<V> callable, long dueMillis, long sequence) {
+      this.callable = callable;
+      this.dueMillis = dueMillis;
+      this.sequence = sequence;
+    }
+
+    private void run() {
+      try {
+        set(callable.call());
+      } catch (Throwable t) {
+        setException(t);
+      }
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueMillis - DateTimeUtils.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+  }
+
+}
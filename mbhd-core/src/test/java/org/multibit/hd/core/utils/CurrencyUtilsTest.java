@@ -85,6 +85,31 @@ public class CurrencyUtilsTest {
     assertThat(CurrencyUtils.isoCandidateFor("BTC")).isEqualTo("XBT");
     assertThat(CurrencyUtils.isoCandidateFor("RUR")).isEqualTo("RUB");
     assertThat(CurrencyUtils.isoCandidateFor("USD")).isEqualTo("USD");
+    assertThat(CurrencyUtils.isoCandidateFor("btc")).isEqualTo("XBT");
+    assertThat(CurrencyUtils.isoCandidateFor("ZZZ")).isEqualTo("ZZZ");
+
+    assertThat(CurrencyUtils.isoCandidatesFor("XBT")).containsOnly("BTC");
+    assertThat(CurrencyUtils.isoCandidatesFor("RUB")).containsOnly("RUR");
+    assertThat(CurrencyUtils.isoCandidatesFor("ZZZ")).isEmpty();
+
+  }
+
+  @Test
+  public void testIsoCurrencyFor() throws Exception {
+
+    assertThat(CurrencyUtils.isoCurrencyFor("GBP").get()).isEqualTo(Currency.getInstance("GBP"));
+    assertThat(CurrencyUtils.isoCurrencyFor("BTC").isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testSymbolFor_Fallback() throws Exception {
+
+    // Case insensitive lookup against the table
+    assertThat(CurrencyUtils.symbolFor("gbp")).isEqualTo("£");
+
+    // Unknown codes are returned as is
+    assertThat(CurrencyUtils.symbolFor("ZZZ")).isEqualTo("ZZZ");
 
   }
 
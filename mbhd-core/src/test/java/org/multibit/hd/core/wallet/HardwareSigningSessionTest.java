@@ -0,0 +1,93 @@
+package org.multibit.hd.core.wallet;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class HardwareSigningSessionTest {
+
+  private NetworkParameters networkParameters;
+
+  private Address address;
+
+  @Before
+  public void setUp() throws Exception {
+
+    networkParameters = MainNetParams.get();
+    new Context(networkParameters);
+
+    address = new ECKey().toAddress(networkParameters);
+
+  }
+
+  @Test
+  public void testValidate_PreviousTransactionsCountedOnce() throws Exception {
+
+    // Arrange
+    Transaction previousTx = new Transaction(networkParameters);
+    previousTx.addOutput(Coin.valueOf(100_000), address);
+    previousTx.addOutput(Coin.valueOf(200_000), address);
+
+    Transaction unsignedTx = new Transaction(networkParameters);
+    unsignedTx.addInput(previousTx.getOutput(0));
+    unsignedTx.addInput(previousTx.getOutput(1));
+    unsignedTx.addOutput(Coin.valueOf(250_000), address);
+
+    // Act
+    HardwareSigningSession testObject = HardwareSigningSession.validate(unsignedTx);
+
+    // Assert
+    assertThat(testObject.getPreviousTransactionCount()).isEqualTo(1);
+
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testValidate_UnconnectedInputFailsEarly() throws Exception {
+
+    // Arrange
+    Transaction unsignedTx = new Transaction(networkParameters);
+    unsignedTx.addInput(new TransactionInput(networkParameters, unsignedTx, new byte[]{}, new TransactionOutPoint(networkParameters, 0, Sha256Hash.ZERO_HASH)));
+    unsignedTx.addOutput(Coin.valueOf(250_000), address);
+
+    // Act
+    HardwareSigningSession.validate(unsignedTx);
+
+  }
+
+  @Test
+  public void testRecord_TimingsByMessageType() throws Exception {
+
+    // Arrange
+    Transaction unsignedTx = new Transaction(networkParameters);
+    unsignedTx.addOutput(Coin.valueOf(250_000), address);
+    HardwareSigningSession testObject = HardwareSigningSession.validate(unsignedTx);
+
+    // Act
+    testObject.record("ButtonRequest", 1_000);
+    testObject.record("TxRequest", 1_200);
+    testObject.record("TxRequest", 1_250);
+    testObject.finish();
+    testObject.record("TxRequest", 5_000);
+
+    // Assert
+    Map<String, HardwareSigningSession.Timing> timings = testObject.getTimings();
+    assertThat(timings.get("ButtonRequest").getCount()).isEqualTo(1);
+    assertThat(timings.get("TxRequest").getCount()).isEqualTo(2);
+    assertThat(timings.get("TxRequest").getTotalMillis()).isEqualTo(250);
+
+  }
+
+}
@@ -0,0 +1,189 @@
+package org.multibit.hd.core.wallet;
+
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IndexedCoinSelectorTest {
+
+  private static final Logger log = LoggerFactory.getLogger(IndexedCoinSelectorTest.class);
+
+  private static final Coin FEE_PER_KB = Coin.valueOf(10_000);
+
+  private NetworkParameters networkParameters;
+
+  private Address address;
+
+  private UtxoIndex utxoIndex;
+
+  private long outPointIndex = 0;
+
+  @Before
+  public void setUp() throws Exception {
+
+    networkParameters = MainNetParams.get();
+    new Context(networkParameters);
+
+    address = new ECKey().toAddress(networkParameters);
+    utxoIndex = new UtxoIndex(new Wallet(networkParameters));
+
+  }
+
+  @Test
+  public void testSelect_ExactMatchAvoidsChange() throws Exception {
+
+    // Arrange
+    List<TransactionOutput> candidates = newIndexedOutputs(500_000, 300_000, 200_000, 70_000, 30_000);
+    IndexedCoinSelector testObject = new IndexedCoinSelector(utxoIndex, FEE_PER_KB);
+
+    // Act
+    CoinSelection selection = testObject.select(Coin.valueOf(530_000), candidates);
+
+    // Assert
+    assertThat(selection.valueGathered.value).isEqualTo(530_000);
+    assertThat(selection.gathered).hasSize(2);
+
+  }
+
+  @Test
+  public void testSelect_SmallestSufficientSingleOutput() throws Exception {
+
+    // Arrange
+    List<TransactionOutput> candidates = newIndexedOutputs(5_000_000, 900_000, 400_000, 100_000);
+    IndexedCoinSelector testObject = new IndexedCoinSelector(utxoIndex, FEE_PER_KB);
+
+    // Act
+    CoinSelection selection = testObject.select(Coin.valueOf(850_000), candidates);
+
+    // Assert
+    assertThat(selection.valueGathered.value).isEqualTo(900_000);
+    assertThat(selection.gathered).hasSize(1);
+
+  }
+
+  @Test
+  public void testSelect_InsufficientFundsGathersEverything() throws Exception {
+
+    // Arrange
+    List<TransactionOutput> candidates = newIndexedOutputs(100_000, 200_000);
+    IndexedCoinSelector testObject = new IndexedCoinSelector(utxoIndex, FEE_PER_KB);
+
+    // Act
+    CoinSelection selection = testObject.select(Coin.valueOf(1_000_000), candidates);
+
+    // Assert
+    assertThat(selection.valueGathered.value).isEqualTo(300_000);
+    assertThat(selection.gathered).hasSize(2);
+
+  }
+
+  @Test
+  public void testSelect_UnindexedCandidatesAreUsed() throws Exception {
+
+    // Arrange
+    newIndexedOutputs(100_000);
+    List<TransactionOutput> candidates = Lists.newArrayList(newOutput(700_000));
+    IndexedCoinSelector testObject = new IndexedCoinSelector(utxoIndex, FEE_PER_KB);
+
+    // Act
+    CoinSelection selection = testObject.select(Coin.valueOf(600_000), candidates);
+
+    // Assert
+    assertThat(selection.valueGathered.value).isEqualTo(700_000);
+
+  }
+
+  @Test
+  public void testSelect_SyntheticWalletAgainstDefault() throws Exception {
+
+    // Arrange
+    Random random = new Random(1234L);
+    List<TransactionOutput> candidates = Lists.newArrayList();
+    for (int i = 0; i < 10_000; i++) {
+      candidates.add(newOutput(10_000 + random.nextInt(10_000_000)));
+    }
+    for (TransactionOutput candidate : candidates) {
+      utxoIndex.add(candidate);
+    }
+    IndexedCoinSelector testObject = new IndexedCoinSelector(utxoIndex, FEE_PER_KB);
+    DefaultCoinSelector defaultCoinSelector = new DefaultCoinSelector();
+    Coin target = Coin.valueOf(123_456_789);
+
+    // Act
+    long indexedStart = System.nanoTime();
+    CoinSelection indexedSelection = testObject.select(target, candidates);
+    long indexedNanos = System.nanoTime() - indexedStart;
+
+    long defaultStart = System.nanoTime();
+    CoinSelection defaultSelection = defaultCoinSelector.select(target, candidates);
+    long defaultNanos = System.nanoTime() - defaultStart;
+
+    // Assert
+    assertThat(indexedSelection.valueGathered.value).isGreaterThanOrEqualTo(target.value);
+    assertThat(estimatedSize(indexedSelection, target)).isLessThanOrEqualTo(estimatedSize(defaultSelection, target));
+
+    log.info(
+      "10k outputs: indexed {} inputs in {} us, default {} inputs in {} us",
+      indexedSelection.gathered.size(),
+      indexedNanos / 1000,
+      defaultSelection.gathered.size(),
+      defaultNanos / 1000
+    );
+
+  }
+
+  /**
+   * @return An estimate of the transaction size in bytes for P2PKH inputs and outputs
+   */
+  private long estimatedSize(CoinSelection selection, Coin target) {
+
+    int outputs = selection.valueGathered.value - target.value >= Transaction.MIN_NONDUST_OUTPUT.value ? 2 : 1;
+
+    return 10 + selection.gathered.size() * IndexedCoinSelector.CHANGE_SPEND_BYTES + outputs * IndexedCoinSelector.CHANGE_OUTPUT_BYTES;
+  }
+
+  private List<TransactionOutput> newIndexedOutputs(long... values) {
+
+    List<TransactionOutput> outputs = Lists.newArrayList();
+    for (long value : values) {
+      TransactionOutput output = newOutput(value);
+      utxoIndex.add(output);
+      outputs.add(output);
+    }
+
+    return outputs;
+  }
+
+  private TransactionOutput newOutput(long value) {
+
+    Transaction tx = new Transaction(networkParameters);
+    // Distinct inputs give each transaction a distinct hash
+    tx.addInput(new TransactionInput(networkParameters, tx, new byte[]{}, new TransactionOutPoint(networkParameters, outPointIndex++, Sha256Hash.ZERO_HASH)));
+    TransactionOutput output = tx.addOutput(Coin.valueOf(value), address);
+    tx.getConfidence().setAppearedAtChainHeight(100);
+
+    return output;
+  }
+
+}
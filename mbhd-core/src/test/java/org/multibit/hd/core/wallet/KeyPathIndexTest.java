@@ -0,0 +1,79 @@
+package org.multibit.hd.core.wallet;
+
+import com.google.common.base.Optional;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.wallet.KeyChain;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class KeyPathIndexTest {
+
+  private NetworkParameters networkParameters;
+
+  private Wallet wallet;
+
+  private KeyPathIndex testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    networkParameters = MainNetParams.get();
+    new Context(networkParameters);
+
+    wallet = new Wallet(networkParameters);
+    testObject = new KeyPathIndex(wallet);
+    testObject.attach();
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    testObject.detach();
+
+  }
+
+  @Test
+  public void testLookup_IssuedKeys() throws Exception {
+
+    // Arrange
+    DeterministicKey receiveKey = wallet.freshReceiveKey();
+    DeterministicKey changeKey = wallet.freshKey(KeyChain.KeyPurpose.CHANGE);
+
+    // Act
+    Optional<KeyPathIndex.Entry> receiveEntry = testObject.lookup(receiveKey.getPubKeyHash());
+    Optional<KeyPathIndex.Entry> changeEntry = testObject.lookupPubKey(changeKey.getPubKey());
+
+    // Assert
+    assertThat(testObject.size()).isGreaterThan(0);
+    assertThat(receiveEntry.isPresent()).isTrue();
+    assertThat(receiveEntry.get().getPath()).isEqualTo(receiveKey.getPath());
+    assertThat(receiveEntry.get().getAddress()).isEqualTo(receiveKey.toAddress(networkParameters));
+    assertThat(changeEntry.isPresent()).isTrue();
+    assertThat(changeEntry.get().getPath()).isEqualTo(changeKey.getPath());
+
+  }
+
+  @Test
+  public void testLookup_ForeignKeyAbsent() throws Exception {
+
+    // Arrange
+    ECKey foreignKey = new ECKey();
+
+    // Act
+    Optional<KeyPathIndex.Entry> entry = testObject.lookup(foreignKey.getPubKeyHash());
+
+    // Assert
+    assertThat(entry.isPresent()).isFalse();
+
+  }
+
+}
@@ -4,7 +4,6 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.Uninterruptibles;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import org.multibit.commons.concurrent.SafeExecutors;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.CoreEvents;
@@ -14,6 +13,7 @@ import org.multibit.hd.core.managers.HttpsManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.services.CoreServices;
+import org.multibit.hd.core.utils.CurrencyUtils;
 import org.multibit.hd.core.utils.OSUtils;
 import org.multibit.hd.hardware.core.HardwareWalletService;
 import org.multibit.hd.hardware.core.events.HardwareWalletEvents;
@@ -24,8 +24,11 @@ import org.multibit.hd.ui.events.controller.ControllerEvents;
 import org.multibit.hd.ui.events.view.ViewEvents;
 import org.multibit.hd.ui.platform.GenericApplicationFactory;
 import org.multibit.hd.ui.platform.GenericApplicationSpecification;
+import org.multibit.hd.ui.languages.Languages;
 import org.multibit.hd.ui.services.ExternalDataListeningService;
+import org.multibit.hd.ui.startup.StartupOrchestrator;
 import org.multibit.hd.ui.views.MainView;
+import org.multibit.hd.ui.views.fonts.AwesomeDecorator;
 import org.multibit.hd.ui.views.themes.ThemeKey;
 import org.multibit.hd.ui.views.themes.Themes;
 import org.slf4j.Logger;
@@ -38,6 +41,8 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -53,6 +58,9 @@ public class MultiBitHD {
   private final Logger log = LoggerFactory.getLogger(MultiBitHD.class);
   private MainController mainController;
 
+  // Runs independent startup phases concurrently and reports their timings
+  private final StartupOrchestrator startupOrchestrator = new StartupOrchestrator(6);
+
   ////////////////////////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -115,10 +123,22 @@ public class MultiBitHD {
   public boolean start(String[] args) throws Exception {
 
     // Start the logging factory (see later for instance) to get console logging up fast
-    LoggingFactory.bootstrap();
+    startupOrchestrator.run("logging", new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        LoggingFactory.bootstrap();
+        return null;
+      }
+    });
 
     // Get the configuration fast (Bitcoin URI processing relies on it)
-    CoreServices.bootstrap();
+    startupOrchestrator.run("configuration", new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        CoreServices.bootstrap();
+        return null;
+      }
+    }, "logging");
 
     // Analyse the command line
     if (args != null && args.length > 0) {
@@ -131,21 +151,48 @@ public class MultiBitHD {
       log.info("No command line arguments");
       args = new String[]{};
     }
+    final String[] finalArgs = args;
 
     // Check for another instance as soon as possible
-    Optional<ExternalDataListeningService> externalDataListeningService = initialiseListeningService(args);
+    Optional<ExternalDataListeningService> externalDataListeningService = startupOrchestrator.run("listening-service", new Callable<Optional<ExternalDataListeningService>>() {
+      @Override
+      public Optional<ExternalDataListeningService> call() throws Exception {
+        return initialiseListeningService(finalArgs);
+      }
+    }, "configuration");
     if (!externalDataListeningService.isPresent()) {
+      startupOrchestrator.shutdown();
       return false;
     }
 
-    // Prepare the CA certs (run on a separate thread)
+    // The following phases are independent of each other so run them concurrently
+
+    // Prepare the CA certs (not awaited since upstream responses may be slow)
     initialiseCaCerts();
 
     // Start core services (logging, environment alerts, configuration, Bitcoin URI handling etc)
-    initialiseCore(args);
+    startupOrchestrator.submit("core", new Runnable() {
+      @Override
+      public void run() {
+        initialiseCore(finalArgs);
+      }
+    });
+
+    // Warm up resources that the UI would otherwise load on the EDT
+    initialiseWarmUpPhases();
+
+    // Nothing further is submitted in the background
+    startupOrchestrator.shutdown();
 
     // Create controllers so that the generic app can access listeners
-    if (!initialiseUIControllers()) {
+    boolean controllersReady = startupOrchestrator.run("ui-controllers", new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return initialiseUIControllers();
+      }
+    }, "core");
+
+    if (!controllersReady) {
 
       // Required to shut down
       return false;
@@ -195,25 +242,64 @@ public class MultiBitHD {
 
     try {
 
-      // Execute the CA certificates download on a separate thread to avoid slowing
+      // Execute the CA certificates download in the background to avoid slowing
       // the startup time
-      SafeExecutors.newSingleThreadExecutor("install-cacerts").submit(
-        new Runnable() {
-          @Override
-          public void run() {
-            HttpsManager.INSTANCE.installCACertificates(
-              InstallationManager.getOrCreateApplicationDataDirectory(),
-              InstallationManager.CA_CERTS_NAME,
-              null, // Use default host list
-              false // Do not force loading if they are already present
-            );
-          }
-        });
+      startupOrchestrator.submit("ca-certs", new Runnable() {
+        @Override
+        public void run() {
+          HttpsManager.INSTANCE.installCACertificates(
+            InstallationManager.getOrCreateApplicationDataDirectory(),
+            InstallationManager.CA_CERTS_NAME,
+            null, // Use default host list
+            false // Do not force loading if they are already present
+          );
+        }
+      });
     } catch (SecurityException se) {
       log.error("Security exception: {} {}", se.getClass().getName(), se.getMessage());
     }
   }
 
+  /**
+   * <p>Load resources that have no dependencies on each other or on core services so
+   * that the EDT finds them ready when building the first window</p>
+   */
+  private void initialiseWarmUpPhases() {
+
+    // Pre-load sound library
+    startupOrchestrator.submit("sounds", new Runnable() {
+      @Override
+      public void run() {
+        Sounds.initialise();
+      }
+    });
+
+    // Font Awesome is loaded in the static initialiser
+    startupOrchestrator.submit("fonts", new Runnable() {
+      @Override
+      public void run() {
+        log.trace("Font Awesome loaded: {}", AwesomeDecorator.AWESOME_FONT.getFontName());
+      }
+    });
+
+    // Scans all JVM locales on first use
+    startupOrchestrator.submit("currencies", new Runnable() {
+      @Override
+      public void run() {
+        log.trace("Local currency symbol: {}", CurrencyUtils.currentSymbol());
+      }
+    });
+
+    // The JVM caches the bundle after the first load
+    startupOrchestrator.submit("resource-bundles", new Runnable() {
+      @Override
+      public void run() {
+        ResourceBundle.getBundle(Languages.BASE_NAME, Languages.currentLocale());
+      }
+    });
+
+  }
+
   /**
    * <p>Initialise the UI controllers once all the core services are in place</p>
    * <p>This creates the singleton controllers that respond to generic events</p>
@@ -280,9 +366,10 @@ public class MultiBitHD {
     // Prepare platform-specific integration (protocol handlers, quit events etc)
     initialiseGenericApp();
 
-    // Pre-load sound library
-    Sounds.initialise();
+    // Sound library is pre-loaded during start so ensure it is ready
+    startupOrchestrator.await("sounds", 5, TimeUnit.SECONDS);
 
+    long lafStartTime = System.currentTimeMillis();
     try {
       // Set look and feel (expect ~1000ms to perform this)
       log.debug("Loading Nimbus LaF...");
@@ -308,7 +395,7 @@ public class MultiBitHD {
       }
 
     }
-    log.debug("LaF loaded OK");
+    log.debug("LaF loaded OK in {}ms", System.currentTimeMillis() - lafStartTime);
 
     // This must be performed immediately after the LaF has been set
     if (OSUtils.isMac()) {
@@ -392,6 +479,9 @@ public class MultiBitHD {
 
     log.debug("MainView is ready");
 
+    // Allow time-to-first-window to be measured and driven down
+    startupOrchestrator.logTimingReport("first window");
+
     // See the MainController wizard hide event for the next stage
 
     return mainView;
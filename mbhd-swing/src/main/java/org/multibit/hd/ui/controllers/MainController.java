@@ -15,6 +15,7 @@ import org.multibit.hd.core.atom.AtomEntry;
 import org.multibit.hd.core.atom.AtomFeed;
 import org.multibit.hd.core.atom.AtomFeeds;
 import org.multibit.hd.core.config.BitcoinConfiguration;
+import org.multibit.hd.core.config.ConfigurationSection;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.error_reporting.ExceptionHandler;
@@ -108,6 +109,11 @@ public class MainController extends AbstractController implements
 
   private static final int NUMBER_OF_SECONDS_TO_WAIT_BEFORE_TRANSACTION_CHECKING = 60;
 
+  /**
+   * Configuration sections that can change without rebuilding the views
+   */
+  private static final Set<ConfigurationSection> VIEW_INDEPENDENT_SECTIONS = EnumSet.of(ConfigurationSection.SOUND, ConfigurationSection.LOGGING);
+
   // Keep track of other controllers for use after a preferences change
   private final HeaderController headerController;
 
@@ -289,25 +295,30 @@ public class MainController extends AbstractController implements
   }
 
   /**
-   * <p>Update all views to use the current configuration</p>
+   * <p>Update all views to use the current configuration if a section affecting them has changed</p>
    *
    * @param event The change configuration event
    */
   @Subscribe
   public synchronized void onConfigurationChangedEvent(ConfigurationChangedEvent event) {
 
-    log.debug("Received 'configuration changed' event");
+    log.debug("Received 'configuration changed' event: {}", event.getChangedSections());
 
     Preconditions.checkNotNull(event, "'event' must be present");
 
+    if (VIEW_INDEPENDENT_SECTIONS.containsAll(event.getChangedSections())) {
+      // Sounds and logging are read when used so no views need rebuilding
+      return;
+    }
+
     if (mainView.isShowExitingWelcomeWizard()) {
 
       // Restarting the main view from a language change
       handleBasicMainViewRefresh();
     } else {
 
-      // Restarting the main view from a configuration change
-      handleFullMainViewRefresh();
+      // Restarting the main view from a configuration change (exchange only switched if it could have changed)
+      handleFullMainViewRefresh(event.isChanged(ConfigurationSection.BITCOIN));
 
     }
 
@@ -757,14 +768,18 @@ public class MainController extends AbstractController implements
    * <p>Complete tear down and rebuild of the detail screens comprising the main view</p>
    * <p>Non-Bitcoin services are restarted</p>
    * <p>The main view references remain intact</p>
+   *
+   * @param exchangeChanged True if the exchange ticker service should be switched
    */
-  private void handleFullMainViewRefresh() {
+  private void handleFullMainViewRefresh(boolean exchangeChanged) {
 
     log.debug("Using full view refresh (configuration change)");
 
-    // Switch the exchange ticker service before the UI to ensure the
-    // exchange rate provider is rendered correctly
-    handleExchange();
+    if (exchangeChanged) {
+      // Switch the exchange ticker service before the UI to ensure the
+      // exchange rate provider is rendered correctly
+      handleExchange();
+    }
 
     // Ensure the Swing thread can perform a complete refresh
     SwingUtilities.invokeLater(
@@ -1273,6 +1288,7 @@ public class MainController extends AbstractController implements
 
     // Ensure the resource bundle is reset
     ResourceBundle.clearCache();
+    Languages.resetTextCache();
 
     // Update the frame to allow for LTR or RTL transition
     Panels.getApplicationFrame().setLocale(locale);
@@ -0,0 +1,100 @@
+package org.multibit.hd.ui.gravatar;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * <p>Value object to provide the following to Gravatar disk cache:</p>
+ * <ul>
+ * <li>Raw image bytes as downloaded from the Gravatar web service</li>
+ * <li>HTTP validators (ETag and Last-Modified) for conditional revalidation</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public class GravatarCacheEntry {
+
+  private static final Logger log = LoggerFactory.getLogger(GravatarCacheEntry.class);
+
+  private final byte[] imageBytes;
+  private final Optional<String> eTag;
+  private final Optional<String> lastModified;
+  private final long validatedMillis;
+
+  /**
+   * @param imageBytes      The raw image bytes
+   * @param eTag            The ETag header provided by the server
+   * @param lastModified    The Last-Modified header provided by the server
+   * @param validatedMillis The time (epoch millis) at which the server last confirmed these bytes
+   */
+  public GravatarCacheEntry(byte[] imageBytes, Optional<String> eTag, Optional<String> lastModified, long validatedMillis) {
+
+    Preconditions.checkNotNull(imageBytes, "'imageBytes' must be present");
+    Preconditions.checkNotNull(eTag, "'eTag' must be present");
+    Preconditions.checkNotNull(lastModified, "'lastModified' must be present");
+
+    this.imageBytes = imageBytes;
+    this.eTag = eTag;
+    this.lastModified = lastModified;
+    this.validatedMillis = validatedMillis;
+  }
+
+  /**
+   * @return The raw image bytes
+   */
+  public byte[] getImageBytes() {
+    return imageBytes;
+  }
+
+  /**
+   * @return The ETag header value if the server provided one
+   */
+  public Optional<String> getETag() {
+    return eTag;
+  }
+
+  /**
+   * @return The Last-Modified header value if the server provided one
+   */
+  public Optional<String> getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return The time (epoch millis) at which the server last confirmed these bytes
+   */
+  public long getValidatedMillis() {
+    return validatedMillis;
+  }
+
+  /**
+   * @param nowMillis The time of a successful "304 Not Modified" response
+   *
+   * @return A copy of this entry with an updated validation time
+   */
+  public GravatarCacheEntry revalidatedAt(long nowMillis) {
+    return new GravatarCacheEntry(imageBytes, eTag, lastModified, nowMillis);
+  }
+
+  /**
+   * @return The decoded image, absent if the bytes are not a recognised image format
+   */
+  public Optional<BufferedImage> toImage() {
+
+    try {
+      return Optional.fromNullable(ImageIO.read(new ByteArrayInputStream(imageBytes)));
+    } catch (IOException e) {
+      log.warn("Cached Gravatar could not be decoded: {}", e.getMessage());
+      return Optional.absent();
+    }
+
+  }
+
+}
@@ -0,0 +1,228 @@
+package org.multibit.hd.ui.gravatar;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.multibit.commons.crypto.AESUtils;
+import org.multibit.commons.files.SecureFiles;
+import org.multibit.hd.core.managers.WalletManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * <p>Disk cache to provide the following to Gravatars:</p>
+ * <ul>
+ * <li>Persistent storage of downloaded images across restarts</li>
+ * <li>Storage of HTTP validators to allow conditional revalidation</li>
+ * <li>Optional AES obfuscation of each entry</li>
+ * </ul>
+ *
+ * <p>An email address hash is sensitive since it links a contact to a public profile. To avoid
+ * revealing it the file name is a salted SHA-256 of the email address and, when enabled, the entry
+ * is AES encrypted with a key derived from the email address and a fixed salt.</p>
+ *
+ * <p>This is obfuscation rather than protection: the salts are not secret so anyone who knows or
+ * guesses an email address can locate and read its entry. It keeps the hash and image out of casual
+ * view while still allowing the contacts screen to paint on startup without wallet credentials.</p>
+ *
+ * @since 0.5.0
+ */
+public class GravatarDiskCache {
+
+  private static final Logger log = LoggerFactory.getLogger(GravatarDiskCache.class);
+
+  /**
+   * The name of the cache directory within the application directory
+   */
+  public static final String GRAVATAR_DIRECTORY_NAME = "gravatars";
+
+  private static final String FILE_SUFFIX = ".gvc";
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+  private static final String FILE_NAME_SALT = "mbhd-gravatar-file|";
+  // Not a secret (see class notes) so the derived key only obfuscates the entry
+  private static final String KEY_SALT = "mbhd-gravatar-key|";
+
+  private static final int MAGIC = 0x4d424743; // "MBGC"
+  private static final byte VERSION = 1;
+
+  private static final byte MODE_PLAIN = 0;
+  private static final byte MODE_AES = 1;
+
+  private static final int IV_LENGTH = 16;
+
+  private final File cacheDirectory;
+  private final boolean encrypted;
+
+  /**
+   * @param parentDirectory The directory that will hold the cache directory (usually the application directory)
+   * @param encrypted       True if new entries should be AES obfuscated
+   */
+  public GravatarDiskCache(File parentDirectory, boolean encrypted) {
+
+    Preconditions.checkNotNull(parentDirectory, "'parentDirectory' must be present");
+
+    this.cacheDirectory = SecureFiles.verifyOrCreateDirectory(parentDirectory, GRAVATAR_DIRECTORY_NAME);
+    this.encrypted = encrypted;
+
+  }
+
+  /**
+   * @param cleanEmailAddress The cleaned email address
+   *
+   * @return The cache entry if present and readable
+   */
+  public Optional<GravatarCacheEntry> read(String cleanEmailAddress) {
+
+    final File entryFile = entryFile(cleanEmailAddress);
+    if (!entryFile.exists()) {
+      return Optional.absent();
+    }
+
+    try {
+      final byte[] fileBytes = Files.toByteArray(entryFile);
+      if (fileBytes.length == 0) {
+        return Optional.absent();
+      }
+
+      final byte[] payload;
+      switch (fileBytes[0]) {
+        case MODE_PLAIN:
+          payload = Arrays.copyOfRange(fileBytes, 1, fileBytes.length);
+          break;
+        case MODE_AES:
+          byte[] ivBytes = Arrays.copyOfRange(fileBytes, 1, 1 + IV_LENGTH);
+          byte[] encryptedBytes = Arrays.copyOfRange(fileBytes, 1 + IV_LENGTH, fileBytes.length);
+          payload = AESUtils.decrypt(encryptedBytes, entryKey(cleanEmailAddress), ivBytes);
+          break;
+        default:
+          log.warn("Unknown Gravatar cache entry mode. Ignoring.");
+          return Optional.absent();
+      }
+
+      return Optional.of(fromPayload(payload));
+
+    } catch (IOException | RuntimeException e) {
+      // A corrupt entry is treated as a cache miss and will be overwritten on the next download
+      log.warn("Gravatar cache entry could not be read: {}", e.getMessage());
+      return Optional.absent();
+    }
+
+  }
+
+  /**
+   * <p>Write the entry atomically, replacing any existing entry</p>
+   *
+   * @param cleanEmailAddress The cleaned email address
+   * @param entry             The entry to write
+   */
+  public void write(String cleanEmailAddress, GravatarCacheEntry entry) {
+
+    Preconditions.checkNotNull(entry, "'entry' must be present");
+
+    final File entryFile = entryFile(cleanEmailAddress);
+    final File temporaryFile = new File(entryFile.getAbsolutePath() + TEMPORARY_FILE_SUFFIX);
+
+    try {
+      final byte[] payload = toPayload(entry);
+
+      final ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(payload.length + 64);
+      if (encrypted) {
+        byte[] ivBytes = WalletManager.generateRandomIv();
+        fileBytes.write(MODE_AES);
+        fileBytes.write(ivBytes);
+        fileBytes.write(AESUtils.encrypt(payload, entryKey(cleanEmailAddress), ivBytes));
+      } else {
+        fileBytes.write(MODE_PLAIN);
+        fileBytes.write(payload);
+      }
+
+      SecureFiles.writeFile(new ByteArrayInputStream(fileBytes.toByteArray()), temporaryFile, entryFile);
+
+    } catch (IOException | RuntimeException e) {
+      // Failing to cache is not fatal since the image can be downloaded again
+      log.warn("Gravatar cache entry could not be written: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * @param cleanEmailAddress The cleaned email address
+   *
+   * @return The file that would hold the entry for this email address
+   */
+  File entryFile(String cleanEmailAddress) {
+
+    Preconditions.checkNotNull(cleanEmailAddress, "'cleanEmailAddress' must be present");
+
+    final String fileName = Hashing
+      .sha256()
+      .hashString(FILE_NAME_SALT + cleanEmailAddress, Charsets.UTF_8)
+      .toString();
+
+    return new File(cacheDirectory, fileName + FILE_SUFFIX);
+  }
+
+  /**
+   * @param cleanEmailAddress The cleaned email address
+   *
+   * @return The AES key for the entry (derivable by anyone knowing the email address)
+   */
+  private KeyParameter entryKey(String cleanEmailAddress) {
+
+    return new KeyParameter(
+      Hashing
+        .sha256()
+        .hashString(KEY_SALT + cleanEmailAddress, Charsets.UTF_8)
+        .asBytes()
+    );
+
+  }
+
+  private static byte[] toPayload(GravatarCacheEntry entry) throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream(entry.getImageBytes().length + 128);
+    try (DataOutputStream out = new DataOutputStream(baos)) {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeUTF(entry.getETag().or(""));
+      out.writeUTF(entry.getLastModified().or(""));
+      out.writeLong(entry.getValidatedMillis());
+      out.writeInt(entry.getImageBytes().length);
+      out.write(entry.getImageBytes());
+    }
+
+    return baos.toByteArray();
+  }
+
+  private static GravatarCacheEntry fromPayload(byte[] payload) throws IOException {
+
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+        throw new IOException("Unrecognised Gravatar cache entry format");
+      }
+
+      final String eTag = in.readUTF();
+      final String lastModified = in.readUTF();
+      final long validatedMillis = in.readLong();
+
+      final byte[] imageBytes = new byte[in.readInt()];
+      in.readFully(imageBytes);
+
+      return new GravatarCacheEntry(
+        imageBytes,
+        eTag.isEmpty() ? Optional.<String>absent() : Optional.of(eTag),
+        lastModified.isEmpty() ? Optional.<String>absent() : Optional.of(lastModified),
+        validatedMillis
+      );
+    }
+
+  }
+
+}
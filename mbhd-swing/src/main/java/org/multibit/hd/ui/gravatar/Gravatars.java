@@ -7,12 +7,14 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import org.joda.time.DateTime;
 import org.multibit.commons.concurrent.SafeExecutors;
 import org.multibit.commons.utils.Dates;
 import org.multibit.hd.core.dto.RAGStatus;
+import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.ui.MultiBitUI;
 import org.multibit.hd.ui.events.controller.ControllerEvents;
 import org.multibit.hd.ui.languages.Languages;
@@ -21,21 +23,28 @@ import org.multibit.hd.ui.models.Models;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Utility to provide the following to application:</p>
  * <ul>
  * <li>Retrieving images from the Gravatar web service</li>
+ * <li>Persistent caching of images on disk with background conditional revalidation</li>
  * </ul>
  *
+ * <p>Images are served from memory, then from the disk cache and finally from the network.
+ * A disk hit is returned immediately and, if stale, revalidated in the background using
+ * the ETag and Last-Modified validators so that the contacts screen paints on startup without
+ * waiting for the network.</p>
+ *
  * @since 0.0.1
  *
  */
@@ -52,6 +61,19 @@ public class Gravatars {
   private final static String GRAVATAR_URL = "http://www.gravatar.com/avatar/";
   private final static String PARAMETERS = "?s=" + SIZE + "&r=" + RATING + "&d=" + DEFAULT_IMAGE;
 
+  // Network timeouts
+  private final static int CONNECT_TIMEOUT_MILLIS = 5000;
+  private final static int READ_TIMEOUT_MILLIS = 10000;
+
+  // Disk entries younger than this are not revalidated
+  private final static long REVALIDATE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+  // Allow tests to point at a local stand-in server
+  private static volatile String gravatarUrl = GRAVATAR_URL;
+
+  // Lazily created since the application directory may not be known during class loading
+  private static GravatarDiskCache diskCache = null;
+
   // Maintain a multi-threaded shared reference to a failure mode
   private static AtomicReference<Optional<DateTime>> lastFailedDownload = new AtomicReference<>(Optional.<DateTime>absent());
 
@@ -67,7 +89,7 @@ public class Gravatars {
       public Optional<BufferedImage> load(String cleanEmailAddress) throws Exception {
 
         // Get the image synchronously (the overall cache call is wrapped in an executor)
-        return loadBufferedImage(cleanEmailAddress);
+        return loadFromDiskOrNetwork(cleanEmailAddress);
 
       }
     });
@@ -102,32 +124,126 @@ public class Gravatars {
   }
 
   /**
-   * @param emailAddress The cleaned email address to use as an MD5 lookup
+   * <p>Use a local stand-in server and a specific disk cache (testing only)</p>
+   *
+   * @param baseUrl   The base URL replacing the Gravatar web service (e.g. "http://localhost:8080/avatar/")
+   * @param diskCache The disk cache to use
+   */
+  static synchronized void configure(String baseUrl, GravatarDiskCache diskCache) {
+
+    Preconditions.checkNotNull(baseUrl, "'baseUrl' must be present");
+    Preconditions.checkNotNull(diskCache, "'diskCache' must be present");
+
+    Gravatars.gravatarUrl = baseUrl;
+    Gravatars.diskCache = diskCache;
+    cache.invalidateAll();
+
+  }
+
+  /**
+   * @return The disk cache located in the application directory
+   */
+  private static synchronized GravatarDiskCache getDiskCache() {
+
+    if (diskCache == null) {
+      // Always obfuscate entries since email hashes are sensitive
+      diskCache = new GravatarDiskCache(InstallationManager.getOrCreateApplicationDataDirectory(), true);
+    }
+
+    return diskCache;
+  }
+
+  /**
+   * @param cleanEmailAddress The cleaned email address
    *
    * @return The buffered image if present
    */
-  private static Optional<BufferedImage> loadBufferedImage(String emailAddress) {
+  private static Optional<BufferedImage> loadFromDiskOrNetwork(final String cleanEmailAddress) {
 
-    log.debug("Loading image from external resource");
+    final GravatarDiskCache gravatarDiskCache = getDiskCache();
 
-    // Require a hex MD5 hash of email address (lowercase) no whitespace
-    final String emailHash = Hashing
-      .md5()
-      .hashString(emailAddress, Charsets.UTF_8)
-      .toString();
+    final Optional<GravatarCacheEntry> cachedEntry = gravatarDiskCache.read(cleanEmailAddress);
+    if (cachedEntry.isPresent()) {
+      Optional<BufferedImage> image = cachedEntry.get().toImage();
+      if (image.isPresent()) {
+
+        if (cachedEntry.get().getValidatedMillis() + REVALIDATE_AFTER_MILLIS < Dates.nowUtc().getMillis()) {
+          // Paint from disk now and check with the server in the background
+          gravatarExecutorService.submit(new Runnable() {
+            @Override
+            public void run() {
+              revalidate(gravatarDiskCache, cleanEmailAddress, cachedEntry.get());
+            }
+          });
+        }
+
+        return image;
+      }
+    }
+
+    return loadBufferedImage(gravatarDiskCache, cleanEmailAddress);
+
+  }
+
+  /**
+   * <p>Perform a conditional request and update both caches if the image has changed</p>
+   *
+   * @param gravatarDiskCache The disk cache
+   * @param cleanEmailAddress The cleaned email address
+   * @param cachedEntry       The current disk entry
+   */
+  private static void revalidate(GravatarDiskCache gravatarDiskCache, String cleanEmailAddress, GravatarCacheEntry cachedEntry) {
+
+    try {
+      Optional<GravatarCacheEntry> modifiedEntry = conditionalDownload(gravatarUrlFor(cleanEmailAddress), Optional.of(cachedEntry));
+      if (modifiedEntry.isPresent()) {
+        log.debug("Gravatar has changed. Updating cache.");
+        gravatarDiskCache.write(cleanEmailAddress, modifiedEntry.get());
+        Optional<BufferedImage> image = modifiedEntry.get().toImage();
+        if (image.isPresent()) {
+          cache.put(cleanEmailAddress, image);
+        }
+      } else {
+        log.trace("Gravatar not modified");
+        gravatarDiskCache.write(cleanEmailAddress, cachedEntry.revalidatedAt(Dates.nowUtc().getMillis()));
+      }
+    } catch (IOException e) {
+      // Keep serving the cached image
+      log.debug("Gravatar revalidation failed: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * @param gravatarDiskCache The disk cache to update on success
+   * @param emailAddress      The cleaned email address to use as an MD5 lookup
+   *
+   * @return The buffered image if present
+   */
+  private static Optional<BufferedImage> loadBufferedImage(GravatarDiskCache gravatarDiskCache, String emailAddress) {
+
+    log.debug("Loading image from external resource");
 
     // Create the URL
     final URL url;
     try {
-      url = new URL(GRAVATAR_URL + emailHash + ".jpg" + PARAMETERS);
+      url = gravatarUrlFor(emailAddress);
     } catch (MalformedURLException e) {
       // This should never happen
       log.error("Gravatar URL malformed", e);
       return Optional.absent();
     }
 
-    try (InputStream stream = url.openStream()) {
-      return Optional.of(ImageIO.read(stream));
+    try {
+      Optional<GravatarCacheEntry> entry = conditionalDownload(url, Optional.<GravatarCacheEntry>absent());
+      if (!entry.isPresent()) {
+        // An unconditional request cannot be "not modified"
+        return Optional.absent();
+      }
+
+      gravatarDiskCache.write(emailAddress, entry.get());
+
+      return entry.get().toImage();
     } catch (IOException e) {
       // This may happen if no network is available
       log.warn("Gravatar download failed" + e.getMessage());
@@ -147,4 +263,72 @@ public class Gravatars {
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * @param emailAddress The cleaned email address
+   *
+   * @return The Gravatar URL for the email address
+   *
+   * @throws MalformedURLException If the configured base URL is not valid
+   */
+  private static URL gravatarUrlFor(String emailAddress) throws MalformedURLException {
+
+    // Require a hex MD5 hash of email address (lowercase) no whitespace
+    final String emailHash = Hashing
+      .md5()
+      .hashString(emailAddress, Charsets.UTF_8)
+      .toString();
+
+    return new URL(gravatarUrl + emailHash + ".jpg" + PARAMETERS);
+  }
+
+  /**
+   * @param url         The image URL
+   * @param cachedEntry The cached entry providing the validators for a conditional request
+   *
+   * @return The new entry, or absent if the server reports the cached entry is not modified
+   *
+   * @throws IOException If the download fails
+   */
+  static Optional<GravatarCacheEntry> conditionalDownload(URL url, Optional<GravatarCacheEntry> cachedEntry) throws IOException {
+
+    final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+    if (cachedEntry.isPresent()) {
+      if (cachedEntry.get().getETag().isPresent()) {
+        connection.setRequestProperty("If-None-Match", cachedEntry.get().getETag().get());
+      }
+      if (cachedEntry.get().getLastModified().isPresent()) {
+        connection.setRequestProperty("If-Modified-Since", cachedEntry.get().getLastModified().get());
+      }
+    }
+
+    try {
+      final int responseCode = connection.getResponseCode();
+
+      if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry.isPresent()) {
+        return Optional.absent();
+      }
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Unexpected response code " + responseCode);
+      }
+
+      final byte[] imageBytes;
+      try (InputStream stream = connection.getInputStream()) {
+        imageBytes = ByteStreams.toByteArray(stream);
+      }
+
+      return Optional.of(new GravatarCacheEntry(
+        imageBytes,
+        Optional.fromNullable(connection.getHeaderField("ETag")),
+        Optional.fromNullable(connection.getHeaderField("Last-Modified")),
+        Dates.nowUtc().getMillis()
+      ));
+    } finally {
+      connection.disconnect();
+    }
+
+  }
+
+}
@@ -2,6 +2,7 @@ package org.multibit.hd.ui.languages;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.CoreMessageKey;
 
@@ -11,6 +12,8 @@ import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Utility to provide the following to Views:</p>
@@ -18,6 +21,10 @@ import java.util.ResourceBundle;
  * <li>Access to internationalised text strings</li>
  * </ul>
  *
+ * <p>Resolved text and compiled message formats are cached per locale and the whole cache
+ * is swapped atomically when the locale changes so that building screens does not repeatedly
+ * look up the resource bundle and parse the same patterns.</p>
+ *
  * @since 0.0.1
  */
 public class Languages {
@@ -30,6 +37,16 @@ public class Languages {
   public static final URI MBHD_TRANSLATION_WEBSITE_URI = URI.create("https://crowdin.com/project/multibit-hd");
   public static final String TRANSACTION_FEE_RATE_UNIT = "sat/byte"; // This is not localised as it is 'universal'
 
+  /**
+   * Prefix for cache entries looked up by raw key (cannot clash with a properties key)
+   */
+  private static final String RAW_KEY_PREFIX = "#";
+
+  /**
+   * The text cache for the current locale (replaced as a whole on locale change)
+   */
+  private static final AtomicReference<LocaleTextCache> textCache = new AtomicReference<>();
+
   /**
    * Utilities have private constructors
    */
@@ -117,20 +134,7 @@ public class Languages {
       return "";
     }
 
-    ResourceBundle rb = currentResourceBundle();
-
-    String message;
-
-    if (!rb.containsKey(key.getKey())) {
-      // If no key is present then use it direct
-      message = key.getKey();
-    } else {
-      // Must have the key to be here
-      message = rb.getString(key.getKey());
-    }
-    message = escapeSingleQuote(message);
-
-    return MessageFormat.format(message, values);
+    return format(key.getKey(), key.getKey(), key.getKey(), values);
   }
 
   /**
@@ -141,20 +145,7 @@ public class Languages {
    */
   public static String safeText(CoreMessageKey key, Object... values) {
 
-    ResourceBundle rb = currentResourceBundle();
-
-    String message;
-
-    if (!rb.containsKey(key.getKey())) {
-      // If no key is present then use it direct
-      message = key.getKey();
-    } else {
-      // Must have the key to be here
-      message = rb.getString(key.getKey());
-    }
-    message = escapeSingleQuote(message);
-
-    return MessageFormat.format(message, values);
+    return format(key.getKey(), key.getKey(), key.getKey(), values);
   }
 
   /**
@@ -165,20 +156,69 @@ public class Languages {
    */
   public static String safeText(String key, Object... values) {
 
-    ResourceBundle rb = currentResourceBundle();
+    return format(RAW_KEY_PREFIX + key, key, "Key '" + key + "' is not localised!", values);
+  }
 
-    String message;
+  /**
+   * <p>Discard all cached text so that it is reloaded from the resource bundle (e.g. after
+   * <code>ResourceBundle.clearCache()</code>)</p>
+   */
+  public static void resetTextCache() {
 
-    if (!rb.containsKey(key)) {
-      // If no key is present then use it direct
-      message = "Key '" + key + "' is not localised!";
-    } else {
-      // Must have the key to be here
-      message = rb.getString(key);
+    textCache.set(null);
+
+  }
+
+  /**
+   * @param cacheKey    The key within the locale text cache
+   * @param bundleKey   The key within the resource bundle
+   * @param missingText The message to use if the bundle does not contain the key
+   * @param values      The values for substitution
+   *
+   * @return The localised text with any substitutions made
+   */
+  private static String format(String cacheKey, String bundleKey, String missingText, Object[] values) {
+
+    final LocaleTextCache cache = currentTextCache();
+
+    if (values == null || values.length == 0) {
+      // No substitutions so the final text can be reused directly
+      String text = cache.texts.get(cacheKey);
+      if (text == null) {
+        MessageFormat messageFormat = cache.messageFormat(cacheKey, bundleKey, missingText);
+        synchronized (messageFormat) {
+          text = messageFormat.format(values);
+        }
+        cache.texts.putIfAbsent(cacheKey, text);
+      }
+      return text;
+    }
+
+    // MessageFormat is not thread safe
+    MessageFormat messageFormat = cache.messageFormat(cacheKey, bundleKey, missingText);
+    synchronized (messageFormat) {
+      return messageFormat.format(values);
+    }
+  }
+
+  /**
+   * @return The text cache for the current locale, replacing any cache for a previous locale
+   */
+  private static LocaleTextCache currentTextCache() {
+
+    final Locale locale = currentLocale();
+
+    LocaleTextCache cache = textCache.get();
+    while (cache == null || !cache.locale.equals(locale)) {
+      LocaleTextCache newCache = new LocaleTextCache(locale, ResourceBundle.getBundle(BASE_NAME, locale));
+      if (textCache.compareAndSet(cache, newCache)) {
+        return newCache;
+      }
+      // Another thread won so use its cache if it is for the right locale
+      cache = textCache.get();
     }
-    message = escapeSingleQuote(message);
 
-    return MessageFormat.format(message, values);
+    return cache;
   }
 
   /**
@@ -218,7 +258,7 @@ public class Languages {
    */
   static ResourceBundle currentResourceBundle() {
 
-    return ResourceBundle.getBundle(BASE_NAME, currentLocale());
+    return currentTextCache().resourceBundle;
   }
 
   /**
@@ -300,4 +340,47 @@ public class Languages {
     return message;
 
   }
+
+  /**
+   * <p>Cache of resolved text and compiled message formats for a single locale</p>
+   */
+  private static final class LocaleTextCache {
+
+    private final Locale locale;
+    private final ResourceBundle resourceBundle;
+
+    private final ConcurrentMap<String, MessageFormat> messageFormats = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, String> texts = Maps.newConcurrentMap();
+
+    private LocaleTextCache(Locale locale, ResourceBundle resourceBundle) {
+      this.locale = locale;
+      this.resourceBundle = resourceBundle;
+    }
+
+    /**
+     * @return The compiled message format (access must be synchronized on the returned instance)
+     */
+    private MessageFormat messageFormat(String cacheKey, String bundleKey, String missingText) {
+
+      MessageFormat messageFormat = messageFormats.get(cacheKey);
+      if (messageFormat == null) {
+
+        String message;
+        if (!resourceBundle.containsKey(bundleKey)) {
+          // If no key is present then use the missing text
+          message = missingText;
+        } else {
+          // Must have the key to be here
+          message = resourceBundle.getString(bundleKey);
+        }
+        message = escapeSingleQuote(message);
+
+        MessageFormat newMessageFormat = new MessageFormat(message);
+        MessageFormat existing = messageFormats.putIfAbsent(cacheKey, newMessageFormat);
+        messageFormat = existing == null ? newMessageFormat : existing;
+      }
+
+      return messageFormat;
+    }
+  }
 }
@@ -832,6 +832,7 @@ public enum MessageKey {
   EXPORT_TRANSACTIONS_STEM("export_transactions_stem"),
   EXPORT_PAYMENT_REQUESTS_STEM("export_payment_requests_stem"),
   EXPORT_WAS_SUCCESSFUL("export_was_successful"),
+  EXPORT_PROGRESS("export_progress"),
   TRANSACTIONS_WERE_EXPORTED_TO_THE_FILE("transactions_were_exported_to_the_file"),
   YOUR_PAYMENT_REQUESTS_WERE_EXPORTED_TO_THE_FILE("your_payment_requests_were_exported_to_the_file"),
   THEIR_PAYMENT_REQUESTS_WERE_EXPORTED_TO_THE_FILE("their_payment_requests_were_exported_to_the_file"),
@@ -0,0 +1,318 @@
+package org.multibit.hd.ui.startup;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.multibit.commons.concurrent.SafeExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>Orchestrator to provide the following to application startup:</p>
+ * <ul>
+ * <li>Concurrent execution of independent startup phases</li>
+ * <li>Explicit dependencies between phases</li>
+ * <li>A per-phase timing report to allow time-to-first-window to be measured</li>
+ * </ul>
+ *
+ * <p>Phases are either submitted to run in the background (after their dependencies have
+ * completed) or run inline on the calling thread (typically main or the EDT) so that the
+ * timing report covers the whole startup sequence.</p>
+ *
+ * <p>A phase that fails causes its dependents to fail without running.</p>
+ *
+ * @since 0.5.0
+ */
+public class StartupOrchestrator {
+
+  private static final Logger log = LoggerFactory.getLogger(StartupOrchestrator.class);
+
+  private final long originNanos = System.nanoTime();
+
+  private final ListeningExecutorService executorService;
+
+  private final Map<String, SettableFuture<Void>> phases = Maps.newLinkedHashMap();
+
+  private final List<PhaseTiming> timings = Lists.newArrayList();
+
+  /**
+   * @param threadCount The number of threads available to background phases (one per phase avoids dependency waits stalling the pool)
+   */
+  public StartupOrchestrator(int threadCount) {
+
+    Preconditions.checkState(threadCount > 0, "'threadCount' must be greater than zero");
+
+    executorService = SafeExecutors.newFixedThreadPool(threadCount, "startup");
+
+  }
+
+  /**
+   * <p>Submit a phase to run in the background once its dependencies have completed</p>
+   *
+   * @param phaseName    The unique phase name for the timing report
+   * @param task         The work to perform
+   * @param dependencies The names of phases that must complete successfully first
+   *
+   * @return A future that completes when the phase completes
+   */
+  public synchronized ListenableFuture<Void> submit(final String phaseName, final Runnable task, String... dependencies) {
+
+    final SettableFuture<Void> phaseFuture = registerPhase(phaseName);
+    final List<SettableFuture<Void>> dependencyFutures = dependencyFutures(dependencies);
+
+    // Dependencies are awaited on the pool thread which keeps the submission
+    // order simple and allows the pool to be shut down once everything is submitted
+    executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+
+        try {
+          for (SettableFuture<Void> dependencyFuture : dependencyFutures) {
+            Uninterruptibles.getUninterruptibly(dependencyFuture);
+          }
+        } catch (ExecutionException e) {
+          log.warn("Startup phase '{}' skipped due to failed dependency", phaseName);
+          phaseFuture.setException(e.getCause());
+          return;
+        }
+
+        runTimed(phaseName, phaseFuture, task);
+
+      }
+    });
+
+    return phaseFuture;
+  }
+
+  /**
+   * <p>Run a phase on the calling thread once its dependencies have completed</p>
+   *
+   * @param phaseName    The unique phase name for the timing report
+   * @param task         The work to perform
+   * @param dependencies The names of phases that must complete successfully first
+   *
+   * @return The result of the task
+   *
+   * @throws Exception If the task or any of its dependencies fail
+   */
+  public <T> T run(String phaseName, Callable<T> task, String... dependencies) throws Exception {
+
+    final SettableFuture<Void> phaseFuture;
+    final List<SettableFuture<Void>> dependencyFutures;
+    synchronized (this) {
+      phaseFuture = registerPhase(phaseName);
+      dependencyFutures = dependencyFutures(dependencies);
+    }
+
+    for (SettableFuture<Void> dependencyFuture : dependencyFutures) {
+      try {
+        Uninterruptibles.getUninterruptibly(dependencyFuture);
+      } catch (ExecutionException e) {
+        phaseFuture.setException(e.getCause());
+        throw e;
+      }
+    }
+
+    final long startNanos = System.nanoTime();
+    try {
+      T result = task.call();
+      recordTiming(phaseName, startNanos, false);
+      phaseFuture.set(null);
+      return result;
+    } catch (Exception e) {
+      recordTiming(phaseName, startNanos, true);
+      phaseFuture.setException(e);
+      throw e;
+    }
+
+  }
+
+  /**
+   * <p>Block until the named phase completes</p>
+   *
+   * @param phaseName The phase name
+   * @param timeout   The maximum time to wait
+   * @param unit      The time unit
+   *
+   * @return True if the phase completed successfully within the timeout
+   */
+  public boolean await(String phaseName, long timeout, TimeUnit unit) {
+
+    final SettableFuture<Void> phaseFuture;
+    synchronized (this) {
+      phaseFuture = phases.get(phaseName);
+    }
+    Preconditions.checkNotNull(phaseFuture, "Unknown startup phase '" + phaseName + "'");
+
+    try {
+      Uninterruptibles.getUninterruptibly(phaseFuture, timeout, unit);
+      return true;
+    } catch (ExecutionException e) {
+      log.error("Startup phase '{}' failed", phaseName, e.getCause());
+      return false;
+    } catch (TimeoutException e) {
+      log.warn("Startup phase '{}' did not complete within {} {}", phaseName, timeout, unit);
+      return false;
+    }
+
+  }
+
+  /**
+   * <p>Prevent further submissions while allowing phases already submitted to complete</p>
+   */
+  public void shutdown() {
+
+    executorService.shutdown();
+
+  }
+
+  /**
+   * <p>Write the timing report to the log (phases still running are listed as such)</p>
+   *
+   * @param milestone The milestone being reported (e.g. "first window")
+   */
+  public synchronized void logTimingReport(String milestone) {
+
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - originNanos);
+
+    final List<PhaseTiming> sortedTimings = Lists.newArrayList(timings);
+    Collections.sort(sortedTimings, new Comparator<PhaseTiming>() {
+      @Override
+      public int compare(PhaseTiming o1, PhaseTiming o2) {
+        return Long.compare(o1.startMillis, o2.startMillis);
+      }
+    });
+
+    final StringBuilder report = new StringBuilder();
+    report
+      .append("Startup timing report: ")
+      .append(milestone)
+      .append(" reached after ")
+      .append(elapsedMillis)
+      .append("ms");
+
+    for (PhaseTiming timing : sortedTimings) {
+      report
+        .append("\n  ")
+        .append(Strings.padEnd(timing.phaseName, 20, ' '))
+        .append(" start=+").append(Strings.padEnd(timing.startMillis + "ms", 8, ' '))
+        .append(" took=").append(Strings.padEnd(timing.durationMillis + "ms", 8, ' '))
+        .append(" thread=").append(timing.threadName)
+        .append(timing.failed ? " FAILED" : "");
+    }
+
+    for (Map.Entry<String, SettableFuture<Void>> phase : phases.entrySet()) {
+      if (!phase.getValue().isDone()) {
+        report
+          .append("\n  ")
+          .append(Strings.padEnd(phase.getKey(), 20, ' '))
+          .append(" still running");
+      }
+    }
+
+    log.info(report.toString());
+
+  }
+
+  /**
+   * @return The duration in milliseconds of each completed phase keyed by name
+   */
+  public synchronized Map<String, Long> getPhaseDurations() {
+
+    Map<String, Long> durations = Maps.newLinkedHashMap();
+    for (PhaseTiming timing : timings) {
+      durations.put(timing.phaseName, timing.durationMillis);
+    }
+
+    return durations;
+  }
+
+  private void runTimed(String phaseName, SettableFuture<Void> phaseFuture, Runnable task) {
+
+    final long startNanos = System.nanoTime();
+    try {
+      task.run();
+      recordTiming(phaseName, startNanos, false);
+      phaseFuture.set(null);
+    } catch (RuntimeException e) {
+      log.error("Startup phase '{}' failed", phaseName, e);
+      recordTiming(phaseName, startNanos, true);
+      phaseFuture.setException(e);
+    }
+
+  }
+
+  private synchronized void recordTiming(String phaseName, long startNanos, boolean failed) {
+
+    final long endNanos = System.nanoTime();
+
+    timings.add(new PhaseTiming(
+      phaseName,
+      Thread.currentThread().getName(),
+      TimeUnit.NANOSECONDS.toMillis(startNanos - originNanos),
+      TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos),
+      failed
+    ));
+
+    log.debug("Startup phase '{}' {} in {}ms", phaseName, failed ? "failed" : "completed", TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+
+  }
+
+  private SettableFuture<Void> registerPhase(String phaseName) {
+
+    Preconditions.checkNotNull(phaseName, "'phaseName' must be present");
+    Preconditions.checkState(!phases.containsKey(phaseName), "Startup phase '" + phaseName + "' is already registered");
+
+    SettableFuture<Void> phaseFuture = SettableFuture.create();
+    phases.put(phaseName, phaseFuture);
+
+    return phaseFuture;
+  }
+
+  private List<SettableFuture<Void>> dependencyFutures(String... dependencies) {
+
+    List<SettableFuture<Void>> dependencyFutures = Lists.newArrayList();
+    for (String dependency : dependencies) {
+      SettableFuture<Void> dependencyFuture = phases.get(dependency);
+      Preconditions.checkNotNull(dependencyFuture, "Startup phase dependency '" + dependency + "' must be registered first");
+      dependencyFutures.add(dependencyFuture);
+    }
+
+    return dependencyFutures;
+  }
+
+  /**
+   * <p>Value object for a completed phase</p>
+   */
+  private static class PhaseTiming {
+
+    private final String phaseName;
+    private final String threadName;
+    private final long startMillis;
+    private final long durationMillis;
+    private final boolean failed;
+
+    private PhaseTiming(String phaseName, String threadName, long startMillis, long durationMillis, boolean failed) {
+      this.phaseName = phaseName;
+      this.threadName = threadName;
+      this.startMillis = startMillis;
+      this.durationMillis = durationMillis;
+      this.failed = failed;
+    }
+  }
+
+}
@@ -1,7 +1,6 @@
 package org.multibit.hd.ui.views.components;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.Lists;
 import org.bitcoinj.core.Coin;
 import org.joda.time.DateTime;
 import org.multibit.hd.core.dto.*;
@@ -18,7 +17,6 @@ import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 
 import static org.multibit.hd.ui.MultiBitUI.*;
 
@@ -98,9 +96,9 @@ public class Tables {
    *
    * @return A new "payments" striped table
    */
-  public static StripedTable newPaymentsTable(Set<PaymentData> paymentData, JButton enterButton) {
+  public static StripedTable newPaymentsTable(PaymentTableModel.PaymentSource paymentSource, JButton enterButton) {
 
-    PaymentTableModel model = new PaymentTableModel(paymentData);
+    PaymentTableModel model = new PaymentTableModel(paymentSource);
 
     StripedTable table = new StripedTable(model);
 
@@ -148,10 +146,8 @@ public class Tables {
     TableRowSorter<TableModel> rowSorter = new TableRowSorter<>(table.getModel());
     table.setRowSorter(rowSorter);
 
-    // Sort by date descending
-    List<TableRowSorter.SortKey> sortKeys = Lists.newArrayList();
-    sortKeys.add(new TableRowSorter.SortKey(PaymentTableModel.DATE_COLUMN_INDEX, SortOrder.DESCENDING));
-    rowSorter.setSortKeys(sortKeys);
+    // Payments arrive sorted by date descending so no initial sort key is set
+    // (sorting reads every row so would defeat the lazy loading of the model)
 
     // Comparator for date
     Comparator<DateTime> comparatorDate = newDateTimeComparator();
@@ -4,6 +4,7 @@ import org.multibit.hd.core.config.BitcoinConfiguration;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.config.LanguageConfiguration;
 import org.multibit.hd.core.dto.FiatPayment;
+import org.multibit.hd.core.utils.CurrencyUtils;
 import org.multibit.hd.ui.MultiBitUI;
 import org.multibit.hd.ui.languages.Formats;
 import org.multibit.hd.ui.views.components.Labels;
@@ -53,10 +54,11 @@ public class AmountFiatTableCellRenderer extends DefaultTableCellRenderer {
           String balance = Formats.formatLocalAmount(amount, languageConfiguration.getLocale(), bitcoinConfiguration, true);
           if (!bitcoinConfiguration.getLocalCurrencyCode().equals(fiatPayment.getCurrency().get().getCurrencyCode())) {
             // Fiat payment is in a different currency to the main UI
+            String symbol = CurrencyUtils.symbolFor(fiatPayment.getCurrency().get().getCurrencyCode());
             if (bitcoinConfiguration.isCurrencySymbolLeading()) {
-              balance = fiatPayment.getCurrency().get().getSymbol() + "\u00a0" + balance;
+              balance = symbol + "\u00a0" + balance;
             } else {
-              balance = balance + "\u00a0" + fiatPayment.getCurrency().get().getSymbol();
+              balance = balance + "\u00a0" + symbol;
             }
           }
 
@@ -36,10 +36,11 @@ public class RAGStatusTableCellRenderer extends DefaultTableCellRenderer {
     // Get the RAG (which is in the model as a RAGStatus
     if (value instanceof PaymentStatus) {
 
-      java.util.List<PaymentData> paymentDataList = paymentTableModel.getPaymentDataList();
       int modelRow = table.convertRowIndexToModel(row);
-      PaymentData rowPaymentData = paymentDataList.get(modelRow);
-      LabelDecorator.applyPaymentStatusIconAndColor(rowPaymentData.getStatus(), label, rowPaymentData.isCoinBase(), MultiBitUI.SMALL_ICON_SIZE);
+      PaymentData rowPaymentData = paymentTableModel.getPaymentData(modelRow);
+      if (rowPaymentData != null) {
+        LabelDecorator.applyPaymentStatusIconAndColor(rowPaymentData.getStatus(), label, rowPaymentData.isCoinBase(), MultiBitUI.SMALL_ICON_SIZE);
+      }
     }
 
     if (isSelected) {
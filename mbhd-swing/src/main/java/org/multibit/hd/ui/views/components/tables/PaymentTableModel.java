@@ -1,24 +1,30 @@
 package org.multibit.hd.ui.views.components.tables;
 
-import com.google.common.collect.Lists;
+import com.google.common.base.Preconditions;
 import org.joda.time.DateTime;
+import org.multibit.commons.concurrent.SafeExecutors;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.FiatPayment;
 import org.multibit.hd.core.dto.PaymentData;
 import org.multibit.hd.core.dto.RAGStatus;
+import org.multibit.hd.core.services.WalletService;
 import org.multibit.hd.ui.languages.Languages;
 import org.multibit.hd.ui.languages.MessageKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.table.AbstractTableModel;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <p>TableModel to provide the following to contact JTable:</p>
  * <ul>
- * <li>Adapts a list of payments into a table model</li>
+ * <li>Adapts a source of payments into a table model</li>
+ * <li>Lazily loads payments a page at a time so only the visible rows are adapted</li>
+ * <li>Prefetches neighbouring pages in the background to keep scrolling smooth</li>
  * </ul>
  *
  * @since 0.0.1
@@ -33,8 +39,23 @@ public class PaymentTableModel extends AbstractTableModel {
   public static final int AMOUNT_BTC_COLUMN_INDEX = 4;
   public static final int AMOUNT_FIAT_COLUMN_INDEX = 5;
 
+  /**
+   * The number of payments in a page
+   */
+  static final int PAGE_SIZE = 100;
+
+  /**
+   * The number of pages held in memory (least recently used pages are discarded first)
+   */
+  static final int MAX_CACHED_PAGES = 10;
+
   private static final Logger log = LoggerFactory.getLogger(PaymentTableModel.class);
 
+  /**
+   * Handles page prefetch operations
+   */
+  private static final ExecutorService prefetchExecutorService = SafeExecutors.newSingleThreadExecutor("payment-prefetch");
+
   private String[] columnNames = {
           Languages.safeText(MessageKey.DATE),
           Languages.safeText(MessageKey.STATUS),
@@ -44,21 +65,76 @@ public class PaymentTableModel extends AbstractTableModel {
           Languages.safeText(MessageKey.LOCAL_AMOUNT) + " " + Configurations.currentConfiguration.getBitcoin().getLocalCurrencySymbol()
   };
 
-  private Object[][] data;
+  /**
+   * The loaded pages keyed by page number in access order
+   */
+  private final Map<Integer, List<PaymentData>> pages = new LinkedHashMap<Integer, List<PaymentData>>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, List<PaymentData>> eldest) {
+      return size() > MAX_CACHED_PAGES;
+    }
+  };
+
+  private PaymentSource paymentSource;
+
+  private int rowCount;
 
-  private List<PaymentData> paymentDataList;
+  /**
+   * Incremented when the source changes so that late prefetches are discarded
+   */
+  private int generation;
 
-  public PaymentTableModel(Set<PaymentData> paymentDataList) {
-    setPaymentData(paymentDataList, false);
+  public PaymentTableModel(PaymentSource paymentSource) {
+    setPaymentSource(paymentSource, false);
   }
 
   /**
-   * Set the payment data into the table
+   * @param walletService The wallet service providing payments sorted by date, descending
    *
-   * @param paymentData The paymentData to show in the table as a Set
+   * @return A payment source that only adapts the payments that are requested
    */
-  public void setPaymentData(Set<PaymentData> paymentData, boolean fireTableDataChanged) {
-    this.setPaymentData(Lists.newArrayList(paymentData), fireTableDataChanged);
+  public static PaymentSource newWalletSource(final WalletService walletService) {
+
+    Preconditions.checkNotNull(walletService, "'walletService' must be present");
+
+    // Fix the size so the row count is consistent until the next update
+    final int size = walletService.getPaymentCount();
+
+    return new PaymentSource() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public List<PaymentData> window(int offset, int limit) {
+        return walletService.getPaymentsByDate(offset, limit);
+      }
+    };
+  }
+
+  /**
+   * @param paymentDataList The payments already adapted (e.g. search results)
+   *
+   * @return A payment source backed by the list
+   */
+  public static PaymentSource newListSource(final List<PaymentData> paymentDataList) {
+
+    Preconditions.checkNotNull(paymentDataList, "'paymentDataList' must be present");
+
+    return new PaymentSource() {
+      @Override
+      public int size() {
+        return paymentDataList.size();
+      }
+
+      @Override
+      public List<PaymentData> window(int offset, int limit) {
+        int fromIndex = Math.min(offset, paymentDataList.size());
+        int toIndex = Math.min(paymentDataList.size(), fromIndex + limit);
+        return paymentDataList.subList(fromIndex, toIndex);
+      }
+    };
   }
 
   /**
@@ -67,26 +143,25 @@ public class PaymentTableModel extends AbstractTableModel {
    * @param paymentData The paymentData to show in the table as a List
    */
   public void setPaymentData(List<PaymentData> paymentData, boolean fireTableDataChanged) {
-    this.paymentDataList = paymentData;
-
-    data = new Object[paymentData.size()][];
-
-    int row = 0;
-    for (PaymentData payment : paymentData) {
+    setPaymentSource(newListSource(paymentData), fireTableDataChanged);
+  }
 
-      Object[] rowData = new Object[]{
-              payment.getDate(),
-              payment.getStatus(),
-              payment.getType(),
-              payment.getDescription(),
-              payment.getAmountCoin(),
-              payment.getAmountFiat()
-      };
+  /**
+   * Set the payment source for the table, discarding any loaded pages
+   *
+   * @param paymentSource The source of the payments to show in the table
+   */
+  public void setPaymentSource(PaymentSource paymentSource, boolean fireTableDataChanged) {
 
-      data[row] = rowData;
+    Preconditions.checkNotNull(paymentSource, "'paymentSource' must be present");
 
-      row++;
+    synchronized (pages) {
+      this.paymentSource = paymentSource;
+      this.rowCount = paymentSource.size();
+      this.generation++;
+      pages.clear();
     }
+
     if (fireTableDataChanged) {
       fireTableDataChanged();
     }
@@ -97,7 +172,7 @@ public class PaymentTableModel extends AbstractTableModel {
   }
 
   public int getRowCount() {
-    return data.length;
+    return rowCount;
   }
 
   public String getColumnName(int col) {
@@ -105,14 +180,22 @@ public class PaymentTableModel extends AbstractTableModel {
   }
 
   public Object getValueAt(int row, int col) {
-    if (data.length == 0) {
+
+    PaymentData payment = getPaymentData(row);
+    if (payment == null) {
       return "";
     }
-    try {
-      return data[row][col];
-    } catch (NullPointerException npe) {
-      log.error("NullPointerException reading row = " + row + ", column = " + col);
-      return "";
+
+    switch (col) {
+      case DATE_COLUMN_INDEX : return payment.getDate();
+      case STATUS_COLUMN_INDEX : return payment.getStatus();
+      case TYPE_COLUMN_INDEX : return payment.getType();
+      case DESCRIPTION_COLUMN_INDEX : return payment.getDescription();
+      case AMOUNT_BTC_COLUMN_INDEX : return payment.getAmountCoin();
+      case AMOUNT_FIAT_COLUMN_INDEX : return payment.getAmountFiat();
+      default:
+        log.error("Unknown column = " + col);
+        return "";
     }
   }
 
@@ -141,8 +224,117 @@ public class PaymentTableModel extends AbstractTableModel {
     // No table updates allowed
   }
 
-  public List<PaymentData> getPaymentDataList() {
-    return paymentDataList;
+  /**
+   * @param modelRow The row in the model (not the view)
+   *
+   * @return The payment data for the row, loading its page if required, or null if out of bounds
+   */
+  public PaymentData getPaymentData(int modelRow) {
+
+    if (modelRow < 0 || modelRow >= rowCount) {
+      return null;
+    }
+
+    final int pageNumber = modelRow / PAGE_SIZE;
+    final int pageRow = modelRow % PAGE_SIZE;
+
+    List<PaymentData> page = getOrLoadPage(pageNumber);
+
+    // The source may have shrunk since the row count was fixed
+    return pageRow < page.size() ? page.get(pageRow) : null;
+  }
+
+  /**
+   * @param pageNumber The page number
+   *
+   * @return The page, loading it on the calling thread if it is not cached
+   */
+  private List<PaymentData> getOrLoadPage(int pageNumber) {
+
+    final PaymentSource source;
+    final int currentGeneration;
+    synchronized (pages) {
+      List<PaymentData> page = pages.get(pageNumber);
+      if (page != null) {
+        return page;
+      }
+      source = paymentSource;
+      currentGeneration = generation;
+    }
+
+    // Load outside the lock to avoid blocking prefetches
+    List<PaymentData> page = source.window(pageNumber * PAGE_SIZE, PAGE_SIZE);
+    storePage(pageNumber, page, currentGeneration);
+
+    // Anticipate scrolling in either direction
+    prefetch(pageNumber + 1);
+    prefetch(pageNumber - 1);
+
+    return page;
+  }
+
+  /**
+   * @param pageNumber The page number to load in the background if it is not cached
+   */
+  private void prefetch(final int pageNumber) {
+
+    final PaymentSource source;
+    final int currentGeneration;
+    synchronized (pages) {
+      if (pageNumber < 0 || pageNumber * PAGE_SIZE >= rowCount || pages.containsKey(pageNumber)) {
+        return;
+      }
+      source = paymentSource;
+      currentGeneration = generation;
+    }
+
+    prefetchExecutorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (pages) {
+          if (currentGeneration != generation || pages.containsKey(pageNumber)) {
+            // Superseded while queued
+            return;
+          }
+        }
+        storePage(pageNumber, source.window(pageNumber * PAGE_SIZE, PAGE_SIZE), currentGeneration);
+      }
+    });
+
+  }
+
+  private void storePage(int pageNumber, List<PaymentData> page, int pageGeneration) {
+
+    synchronized (pages) {
+      if (pageGeneration == generation) {
+        pages.put(pageNumber, page);
+      }
+    }
+
+  }
+
+  /**
+   * <p>Interface to provide the following to the payment table model:</p>
+   * <ul>
+   * <li>The total number of payments</li>
+   * <li>Random access to a window of payments in display order</li>
+   * </ul>
+   */
+  public interface PaymentSource {
+
+    /**
+     * @return The number of payments
+     */
+    int size();
+
+    /**
+     * @param offset The index of the first payment
+     * @param limit  The maximum number of payments
+     *
+     * @return The payments in the window
+     */
+    List<PaymentData> window(int offset, int limit);
+
   }
 
 }
@@ -35,8 +35,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
-import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -105,9 +103,9 @@ public class PaymentsScreenView extends AbstractScreenView<PaymentsScreenModel>
     JButton exportButton = Buttons.newExportButton(getExportAction());
 
     WalletService walletService = CoreServices.getCurrentWalletService().get();
-    Set<PaymentData> paymentSet = walletService.getPaymentDataSet();
 
-    paymentsTable = Tables.newPaymentsTable(paymentSet, detailsButton);
+    // Only the visible payments are adapted
+    paymentsTable = Tables.newPaymentsTable(PaymentTableModel.newWalletSource(walletService), detailsButton);
 
     // Create the scroll pane and add the table to it.
     JScrollPane scrollPane = new JScrollPane(paymentsTable);
@@ -201,13 +199,24 @@ public class PaymentsScreenView extends AbstractScreenView<PaymentsScreenModel>
 
       WalletService walletService = CoreServices.getCurrentWalletService().get();
 
-      // Refresh the wallet payment list if asked (may have created/deleted a new PaymentRequest)
-      if (refreshData) {
-        // Avoid logging here - gets called a lot during Repair and floods the logs
-        walletService.getPaymentDataSet();
+      final String query = enterSearchMaV.getModel().getValue();
+      final PaymentTableModel.PaymentSource paymentSource;
+      if (query == null || query.isEmpty()) {
+        // Refresh the wallet payment index if asked (may have created/deleted a new PaymentRequest)
+        if (refreshData) {
+          walletService.invalidatePaymentIndex();
+        }
+        // Only the visible payments will be adapted
+        paymentSource = PaymentTableModel.newWalletSource(walletService);
+      } else {
+        // Refresh the wallet payment list if asked (may have created/deleted a new PaymentRequest)
+        if (refreshData) {
+          // Avoid logging here - gets called a lot during Repair and floods the logs
+          walletService.getPaymentDataSet();
+        }
+        // Searching requires all payments to be adapted
+        paymentSource = PaymentTableModel.newListSource(walletService.filterPaymentsByContent(query));
       }
-      // Check the search MaV model for a query and apply it
-      final List<PaymentData> filteredPaymentDataList = walletService.filterPaymentsByContent(enterSearchMaV.getModel().getValue());
 
       // Update the payments table model on the EDT to ensure row selection is correctly maintained for FEST tests
       SwingUtilities.invokeLater(
@@ -218,9 +227,7 @@ public class PaymentsScreenView extends AbstractScreenView<PaymentsScreenModel>
             int selectedTableRow = paymentsTable.getSelectedRow();
 
             // Update the table with the new data
-            ((PaymentTableModel) paymentsTable.getModel()).setPaymentData(filteredPaymentDataList, true);
-
-            ((PaymentTableModel) paymentsTable.getModel()).fireTableDataChanged();
+            ((PaymentTableModel) paymentsTable.getModel()).setPaymentSource(paymentSource, true);
 
             // Reselect the selected row if possible
             if (selectedTableRow != -1 && selectedTableRow < paymentsTable.getModel().getRowCount()) {
@@ -333,13 +340,14 @@ public class PaymentsScreenView extends AbstractScreenView<PaymentsScreenModel>
 
   private PaymentData getPaymentDataForSelectedTableRow() {
     int selectedTableRow = paymentsTable.getSelectedRow();
-    if (selectedTableRow == -1 || selectedTableRow >= paymentsTable.getRowCount() || selectedTableRow >= ((PaymentTableModel) paymentsTable.getModel()).getPaymentDataList().size()) {
+    if (selectedTableRow == -1 || selectedTableRow >= paymentsTable.getRowCount()) {
       // No row selected or out of bounds due to last payment request delete
       return null;
     }
     int selectedModelRow = paymentsTable.convertRowIndexToModel(selectedTableRow);
 
-    return ((PaymentTableModel) paymentsTable.getModel()).getPaymentDataList().get(selectedModelRow);
+    // Null if out of bounds
+    return ((PaymentTableModel) paymentsTable.getModel()).getPaymentData(selectedModelRow);
   }
 
   private void updateDeleteRequestButton() {
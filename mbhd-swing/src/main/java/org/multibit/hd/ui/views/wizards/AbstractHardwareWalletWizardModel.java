@@ -5,6 +5,7 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import org.bitcoinj.core.Address;
 import org.multibit.commons.concurrent.SafeExecutors;
 import org.multibit.commons.utils.Dates;
 import org.multibit.hd.core.dto.WalletMode;
@@ -52,6 +53,11 @@ public abstract class AbstractHardwareWalletWizardModel<S> extends AbstractWizar
    */
   private boolean reportMessageStatus = false;
 
+  /**
+   * The change address for a send (issued once to avoid using up change keys on each preparation)
+   */
+  private Address changeAddress;
+
   protected AbstractHardwareWalletWizardModel(S state) {
     super(state);
 
@@ -74,6 +80,20 @@ public abstract class AbstractHardwareWalletWizardModel<S> extends AbstractWizar
     this.walletMode = walletMode;
   }
 
+  /**
+   * <p>Wizards that send use the same change address for every preparation so a preview can be adopted</p>
+   *
+   * @return The change address for a send made by this wizard (created on first use)
+   */
+  protected Address getOrCreateChangeAddress() {
+
+    if (changeAddress == null) {
+      changeAddress = CoreServices.getOrCreateBitcoinNetworkService().getNextChangeAddress();
+    }
+
+    return changeAddress;
+  }
+
   /**
    * Handles state transition to a "device failed" panel
    *
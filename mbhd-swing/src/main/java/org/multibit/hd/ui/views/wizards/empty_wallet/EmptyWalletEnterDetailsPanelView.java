@@ -138,6 +138,9 @@ public class EmptyWalletEnterDetailsPanelView extends AbstractWizardPanelView<Em
     // Only show if the address shown is in the wallet
     isAddressMineStatusLabel.setVisible(getPanelModel().get().isAddressMine());
 
+    // Start working out the fees while the user enters the credentials (requires a recipient)
+    getWizardModel().previewTransaction();
+
     // Determine any events
     ViewEvents.fireWizardButtonEnabledEvent(
       getPanelName(),
@@ -22,6 +22,7 @@ import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.services.ApplicationEventService;
 import org.multibit.hd.core.services.BitcoinNetworkService;
 import org.multibit.hd.core.services.CoreServices;
+import org.multibit.hd.core.services.TransactionPreparationPipeline;
 import org.multibit.hd.core.utils.BitcoinSymbol;
 import org.multibit.hd.hardware.core.HardwareWalletService;
 import org.multibit.hd.hardware.core.events.HardwareWalletEvent;
@@ -81,6 +82,12 @@ public class EmptyWalletWizardModel extends AbstractHardwareWalletWizardModel<Em
    * The prepared tx
    */
   private SendRequestSummary sendRequestSummary;
+
+  /**
+   * The summary submitted for background preparation while the user enters the details
+   */
+  private SendRequestSummary previewSendRequestSummary;
+
   private EmptyWalletConfirmHardwarePanelView emptyWalletConfirmHardwarePanelView;
   private EmptyWalletEnterPinPanelView enterPinPanelView;
 
@@ -264,7 +271,61 @@ public class EmptyWalletWizardModel extends AbstractHardwareWalletWizardModel<Em
       return false;
     }
 
-    Address changeAddress = bitcoinNetworkService.getNextChangeAddress();
+    SendRequestSummary enteredSendRequestSummary = newEmptyWalletSendRequestSummary(getOrCreateChangeAddress());
+
+    // Use the background preparation if it was for the same details and the wallet is unchanged
+    Optional<SendRequestSummary> preparedSendRequestSummary = bitcoinNetworkService
+      .getTransactionPreparationPipeline()
+      .adoptOrPrepare(previewSendRequestSummary, enteredSendRequestSummary);
+    previewSendRequestSummary = null;
+    sendRequestSummary = preparedSendRequestSummary.or(enteredSendRequestSummary);
+    final boolean preparedOk = preparedSendRequestSummary.isPresent();
+    log.debug("sendRequestSummary after prepareTransaction: {}", sendRequestSummary);
+
+    // The amount to pay is now corrected for fees
+    log.debug("Correcting amount to pay to cater for fees from {} to {}", coinAmount, sendRequestSummary.getAmount());
+    coinAmount = Optional.of(sendRequestSummary.getAmount());
+    return preparedOk;
+  }
+
+  /**
+   * <p>Prepare the transaction in the background so that moving to the confirm screen does not block</p>
+   *
+   * <p>Called as the user changes the recipient. Changes in quick succession only prepare the latest recipient.</p>
+   */
+  public void previewTransaction() {
+
+    BitcoinNetworkService networkService = CoreServices.getOrCreateBitcoinNetworkService();
+    if (!networkService.isStartedOk()
+      || enterDetailsPanelModel == null
+      || !enterDetailsPanelModel.getEnterRecipientModel().getRecipient().isPresent()
+      || !coinAmount.isPresent()
+      || Coin.ZERO.equals(coinAmount.get())) {
+      return;
+    }
+
+    if (WalletManager.INSTANCE.isAddressMine(enterDetailsPanelModel.getEnterRecipientModel().getRecipient().get().getBitcoinAddress())) {
+      // Will not be sent so do not prepare
+      return;
+    }
+
+    SendRequestSummary enteredSendRequestSummary = newEmptyWalletSendRequestSummary(getOrCreateChangeAddress());
+    if (previewSendRequestSummary != null && previewSendRequestSummary.isSameSendDetails(enteredSendRequestSummary)) {
+      // Already preparing these details
+      return;
+    }
+
+    previewSendRequestSummary = enteredSendRequestSummary;
+    networkService.getTransactionPreparationPipeline().submit(previewSendRequestSummary, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+  }
+
+  /**
+   * @param changeAddress The change address
+   *
+   * @return A new "empty wallet" send request summary built from the details entered by the user
+   */
+  private SendRequestSummary newEmptyWalletSendRequestSummary(Address changeAddress) {
 
     Address bitcoinAddress = enterDetailsPanelModel
       .getEnterRecipientModel()
@@ -294,7 +355,7 @@ public class EmptyWalletWizardModel extends AbstractHardwareWalletWizardModel<Em
     }
 
     // Configure for an empty wallet send request
-    sendRequestSummary = new SendRequestSummary(
+    SendRequestSummary emptyWalletSendRequestSummary = new SendRequestSummary(
       bitcoinAddress,
       coinAmount.or(Coin.ZERO),
       fiatPayment,
@@ -304,16 +365,9 @@ public class EmptyWalletWizardModel extends AbstractHardwareWalletWizardModel<Em
       true);
 
     // Set a tx description of 'Empty Wallet' localised
-    sendRequestSummary.setNotes(Optional.of(Languages.safeText(MessageKey.EMPTY_WALLET_TITLE)));
-
-    log.debug("Just about to prepare empty wallet transaction for sendRequestSummary: {}", sendRequestSummary);
-    boolean preparedOk = bitcoinNetworkService.prepareTransaction(sendRequestSummary);
-    log.debug("sendRequestSummary after prepareTransaction: {}", sendRequestSummary);
+    emptyWalletSendRequestSummary.setNotes(Optional.of(Languages.safeText(MessageKey.EMPTY_WALLET_TITLE)));
 
-    // The amount to pay is now corrected for fees
-    log.debug("Correcting amount to pay to cater for fees from {} to {}", coinAmount, sendRequestSummary.getAmount());
-    coinAmount = Optional.of(sendRequestSummary.getAmount());
-    return preparedOk;
+    return emptyWalletSendRequestSummary;
   }
 
   /**
@@ -220,7 +220,15 @@ public class ExportPaymentsReportPanelView extends AbstractWizardPanelView<Expor
     SwingUtilities.invokeLater(new Runnable() {
       @Override
       public void run() {
-        if (exportPerformedEvent.isExportWasSuccessful()) {
+        if (exportPerformedEvent.isInProgress()) {
+          exportCompletedLabel.setText(
+                  Languages.safeText(
+                          MessageKey.EXPORT_PROGRESS,
+                          exportPerformedEvent.getExportedCount(),
+                          exportPerformedEvent.getTotalCount()
+                  )
+          );
+        } else if (exportPerformedEvent.isExportWasSuccessful()) {
           AwesomeDecorator.applyIcon(AwesomeIcon.CHECK, exportCompletedLabel, true, MultiBitUI.NORMAL_ICON_SIZE);
           exportCompletedLabel.setText(Languages.safeText(MessageKey.EXPORT_WAS_SUCCESSFUL));
           if (!Strings.isNullOrEmpty(exportPerformedEvent.getTransactionsExportFilename())) {
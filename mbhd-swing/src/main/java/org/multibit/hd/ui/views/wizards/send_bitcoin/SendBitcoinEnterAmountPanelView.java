@@ -136,11 +136,18 @@ public class SendBitcoinEnterAmountPanelView extends AbstractWizardPanelView<Sen
   public void updateFromComponentModels(Optional componentModel) {
     // No need to update the panel model it already has the references
 
+    boolean nextEnabled = isNextEnabled();
+
+    // Start working out the fees while the user reviews the details
+    if (nextEnabled) {
+      getWizardModel().previewTransaction();
+    }
+
     // Determine any events
     ViewEvents.fireWizardButtonEnabledEvent(
       getPanelName(),
       WizardButton.NEXT,
-      isNextEnabled()
+      nextEnabled
     );
   }
 
@@ -118,6 +118,12 @@ public class SendBitcoinWizardModel extends AbstractHardwareWalletWizardModel<Se
    */
   private BitcoinSentEvent lastBitcoinSentEvent;
 
+  /**
+   * The summary submitted for background preparation while the user enters the send details
+   */
+  private SendRequestSummary previewSendRequestSummary;
+
+
 
   /**
    * @param state     The state object
@@ -379,7 +385,7 @@ public class SendBitcoinWizardModel extends AbstractHardwareWalletWizardModel<Se
     BitcoinNetworkService bitcoinNetworkService = CoreServices.getOrCreateBitcoinNetworkService();
     Preconditions.checkState(bitcoinNetworkService.isStartedOk(), "'bitcoinNetworkService' should be started");
 
-    Address changeAddress = bitcoinNetworkService.getNextChangeAddress();
+    Address changeAddress = getOrCreateChangeAddress();
 
     // Determine if this came from a BIP70 payment request
     if (paymentRequestData.isPresent()) {
@@ -416,55 +422,113 @@ public class SendBitcoinWizardModel extends AbstractHardwareWalletWizardModel<Se
       Preconditions.checkNotNull(enterAmountPanelModel);
       Preconditions.checkNotNull(confirmPanelModel);
 
-      // Check a recipient has been set
-      if (!enterAmountPanelModel
-        .getEnterRecipientModel()
-        .getRecipient().isPresent()) {
+      Optional<SendRequestSummary> enteredSendRequestSummary = newEnteredSendRequestSummary(changeAddress);
+      if (!enteredSendRequestSummary.isPresent()) {
         return false;
       }
 
-      // Build the send request summary from the user data
-      Coin coin = enterAmountPanelModel.getEnterAmountModel().getCoinAmount().or(Coin.ZERO);
-      Address bitcoinAddress = enterAmountPanelModel
-        .getEnterRecipientModel()
-        .getRecipient()
-        .get()
-        .getBitcoinAddress();
-
-      // Create the fiat payment - note that the fiat amount is not populated, only the exchange rate data.
-      // This is because the client and transaction fee is only worked out at point of sending, and the fiat equivalent is computed from that
-      Optional<FiatPayment> fiatPayment;
-      Optional<ExchangeRateChangedEvent> exchangeRateChangedEvent = CoreServices.getApplicationEventService().getLatestExchangeRateChangedEvent();
-      if (exchangeRateChangedEvent.isPresent()) {
-        fiatPayment = Optional.of(new FiatPayment());
-        if (exchangeRateChangedEvent.get().getRate() != null) {
-          fiatPayment.get().setRate(Optional.of(exchangeRateChangedEvent.get().getRate().toString()));
-        } else {
-          fiatPayment.get().setRate(Optional.<String>absent());
-        }
-        // A send is denoted with a negative fiat amount
-        fiatPayment.get().setAmount(Optional.<BigDecimal>absent());
-        fiatPayment.get().setCurrency(Optional.of(exchangeRateChangedEvent.get().getCurrency()));
-        fiatPayment.get().setExchangeName(Optional.of(ExchangeKey.current().getExchangeName()));
-      } else {
-        fiatPayment = Optional.absent();
-      }
+      // Use the background preparation if it was for the same details and the wallet is unchanged
+      Optional<SendRequestSummary> preparedSendRequestSummary = bitcoinNetworkService
+        .getTransactionPreparationPipeline()
+        .adoptOrPrepare(previewSendRequestSummary, enteredSendRequestSummary.get());
+      previewSendRequestSummary = null;
+      sendRequestSummary = preparedSendRequestSummary.or(enteredSendRequestSummary.get());
 
-      // Prepare the transaction i.e work out the fee sizes (not empty wallet)
-      sendRequestSummary = new SendRequestSummary(
-        bitcoinAddress,
-        coin,
-        fiatPayment,
-        changeAddress,
-        FeeService.normaliseRawFeePerKB(Configurations.currentConfiguration.getWallet().getFeePerKB()),
-        null,
-        false);
+      return preparedSendRequestSummary.isPresent();
     }
 
     log.debug("Just about to prepare transaction for sendRequestSummary: {}", sendRequestSummary);
     return bitcoinNetworkService.prepareTransaction(sendRequestSummary);
   }
 
+  /**
+   * <p>Prepare the transaction in the background so that moving to the confirm screen does not block</p>
+   *
+   * <p>Called as the user changes the send details. Changes in quick succession only prepare the latest details.</p>
+   */
+  public void previewTransaction() {
+
+    if (paymentRequestData.isPresent()) {
+      // BIP70 payment requests are not edited
+      return;
+    }
+
+    BitcoinNetworkService bitcoinNetworkService = CoreServices.getOrCreateBitcoinNetworkService();
+    if (!bitcoinNetworkService.isStartedOk()) {
+      return;
+    }
+
+    Optional<SendRequestSummary> enteredSendRequestSummary = newEnteredSendRequestSummary(getOrCreateChangeAddress());
+    if (!enteredSendRequestSummary.isPresent() || enteredSendRequestSummary.get().getAmount().equals(Coin.ZERO)) {
+      bitcoinNetworkService.getTransactionPreparationPipeline().cancel();
+      previewSendRequestSummary = null;
+      return;
+    }
+
+    if (previewSendRequestSummary != null && previewSendRequestSummary.isSameSendDetails(enteredSendRequestSummary.get())) {
+      // Already preparing these details
+      return;
+    }
+
+    previewSendRequestSummary = enteredSendRequestSummary.get();
+    bitcoinNetworkService.getTransactionPreparationPipeline().submit(previewSendRequestSummary, TransactionPreparationPipeline.DEFAULT_DEBOUNCE_MILLIS);
+
+  }
+
+  /**
+   * @param changeAddress The change address
+   *
+   * @return A new send request summary built from the details entered by the user, absent if no recipient is set
+   */
+  private Optional<SendRequestSummary> newEnteredSendRequestSummary(Address changeAddress) {
+
+    Preconditions.checkNotNull(enterAmountPanelModel);
+
+    // Check a recipient has been set
+    if (!enterAmountPanelModel
+      .getEnterRecipientModel()
+      .getRecipient().isPresent()) {
+      return Optional.absent();
+    }
+
+    // Build the send request summary from the user data
+    Coin coin = enterAmountPanelModel.getEnterAmountModel().getCoinAmount().or(Coin.ZERO);
+    Address bitcoinAddress = enterAmountPanelModel
+      .getEnterRecipientModel()
+      .getRecipient()
+      .get()
+      .getBitcoinAddress();
+
+    // Create the fiat payment - note that the fiat amount is not populated, only the exchange rate data.
+    // This is because the client and transaction fee is only worked out at point of sending, and the fiat equivalent is computed from that
+    Optional<FiatPayment> fiatPayment;
+    Optional<ExchangeRateChangedEvent> exchangeRateChangedEvent = CoreServices.getApplicationEventService().getLatestExchangeRateChangedEvent();
+    if (exchangeRateChangedEvent.isPresent()) {
+      fiatPayment = Optional.of(new FiatPayment());
+      if (exchangeRateChangedEvent.get().getRate() != null) {
+        fiatPayment.get().setRate(Optional.of(exchangeRateChangedEvent.get().getRate().toString()));
+      } else {
+        fiatPayment.get().setRate(Optional.<String>absent());
+      }
+      // A send is denoted with a negative fiat amount
+      fiatPayment.get().setAmount(Optional.<BigDecimal>absent());
+      fiatPayment.get().setCurrency(Optional.of(exchangeRateChangedEvent.get().getCurrency()));
+      fiatPayment.get().setExchangeName(Optional.of(ExchangeKey.current().getExchangeName()));
+    } else {
+      fiatPayment = Optional.absent();
+    }
+
+    // Prepare the transaction i.e work out the fee sizes (not empty wallet)
+    return Optional.of(new SendRequestSummary(
+      bitcoinAddress,
+      coin,
+      fiatPayment,
+      changeAddress,
+      FeeService.normaliseRawFeePerKB(Configurations.currentConfiguration.getWallet().getFeePerKB()),
+      null,
+      false));
+  }
+
   private void sendBitcoin() {
 
     // Actually send the bitcoin by signing using the credentials, committing to the wallet and broadcasting to the Bitcoin network
@@ -0,0 +1,166 @@
+package org.multibit.hd.ui.gravatar;
+
+import com.google.common.base.Optional;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.commons.files.SecureFiles;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GravatarsTest {
+
+  private static final String ETAG = "\"abc123\"";
+  private static final String EMAIL_ADDRESS = "nobody@example.org";
+
+  private HttpServer server;
+  private URL imageUrl;
+  private byte[] imageBytes;
+
+  private final AtomicInteger fullResponses = new AtomicInteger();
+  private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+  @Before
+  public void setUp() throws Exception {
+
+    BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", baos);
+    imageBytes = baos.toByteArray();
+
+    // Local stand-in for the Gravatar web service
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/avatar/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          notModifiedResponses.incrementAndGet();
+          exchange.sendResponseHeaders(304, -1);
+          exchange.close();
+          return;
+        }
+
+        fullResponses.incrementAndGet();
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.getResponseHeaders().add("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+        exchange.sendResponseHeaders(200, imageBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+          os.write(imageBytes);
+        }
+      }
+    });
+    server.start();
+
+    imageUrl = new URL("http://localhost:" + server.getAddress().getPort() + "/avatar/test.jpg");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    server.stop(0);
+
+  }
+
+  @Test
+  public void testConditionalDownload() throws Exception {
+
+    // Act
+    Optional<GravatarCacheEntry> entry = Gravatars.conditionalDownload(imageUrl, Optional.<GravatarCacheEntry>absent());
+
+    // Assert
+    assertThat(entry.isPresent()).isTrue();
+    assertThat(entry.get().getETag().get()).isEqualTo(ETAG);
+    assertThat(entry.get().getLastModified().isPresent()).isTrue();
+    assertThat(entry.get().getImageBytes()).isEqualTo(imageBytes);
+    assertThat(entry.get().toImage().isPresent()).isTrue();
+
+    // Act
+    Optional<GravatarCacheEntry> revalidated = Gravatars.conditionalDownload(imageUrl, entry);
+
+    // Assert
+    assertThat(revalidated.isPresent()).isFalse();
+    assertThat(fullResponses.get()).isEqualTo(1);
+    assertThat(notModifiedResponses.get()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testRetrieveGravatar_PopulatesDiskCache() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    GravatarDiskCache diskCache = new GravatarDiskCache(temporaryDirectory, true);
+
+    Gravatars.configure("http://localhost:" + server.getAddress().getPort() + "/avatar/", diskCache);
+
+    // Act
+    Optional<BufferedImage> image = Gravatars.retrieveGravatar(EMAIL_ADDRESS).get();
+
+    // Assert
+    assertThat(image.isPresent()).isTrue();
+    assertThat(diskCache.read(EMAIL_ADDRESS).isPresent()).isTrue();
+    assertThat(fullResponses.get()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testDiskCache_Encrypted() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    GravatarDiskCache testObject = new GravatarDiskCache(temporaryDirectory, true);
+
+    Optional<GravatarCacheEntry> entry = Gravatars.conditionalDownload(imageUrl, Optional.<GravatarCacheEntry>absent());
+
+    // Act
+    testObject.write(EMAIL_ADDRESS, entry.get());
+    Optional<GravatarCacheEntry> reloaded = new GravatarDiskCache(temporaryDirectory, true).read(EMAIL_ADDRESS);
+
+    // Assert
+    assertThat(reloaded.isPresent()).isTrue();
+    assertThat(reloaded.get().getImageBytes()).isEqualTo(imageBytes);
+    assertThat(reloaded.get().getETag().get()).isEqualTo(ETAG);
+    assertThat(reloaded.get().getValidatedMillis()).isEqualTo(entry.get().getValidatedMillis());
+
+    // Neither the email address nor the image should be visible on disk
+    File entryFile = testObject.entryFile(EMAIL_ADDRESS);
+    assertThat(entryFile.getName()).doesNotContain("example");
+    assertThat(entryFile.length()).isGreaterThan((long) imageBytes.length);
+
+    // A different email address cannot read the entry
+    assertThat(testObject.read("somebody@example.org").isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testDiskCache_Plain() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    GravatarDiskCache testObject = new GravatarDiskCache(temporaryDirectory, false);
+
+    Optional<GravatarCacheEntry> entry = Gravatars.conditionalDownload(imageUrl, Optional.<GravatarCacheEntry>absent());
+
+    // Act
+    testObject.write(EMAIL_ADDRESS, entry.get().revalidatedAt(1234L));
+    Optional<GravatarCacheEntry> reloaded = testObject.read(EMAIL_ADDRESS);
+
+    // Assert
+    assertThat(reloaded.isPresent()).isTrue();
+    assertThat(reloaded.get().getImageBytes()).isEqualTo(imageBytes);
+    assertThat(reloaded.get().getValidatedMillis()).isEqualTo(1234L);
+
+  }
+
+}
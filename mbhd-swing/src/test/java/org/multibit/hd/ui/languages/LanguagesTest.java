@@ -1,6 +1,9 @@
 package org.multibit.hd.ui.languages;
 
 import org.junit.Test;
+import org.multibit.hd.core.config.Configurations;
+
+import java.util.Locale;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -37,4 +40,28 @@ public class LanguagesTest {
     assertThat(Languages.getOrdinalFor(24)).isEqualTo("24th");
 
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSafeText_CachedAcrossLocaleChange() throws Exception {
+
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+    Configurations.currentConfiguration.getLanguage().setLocale(Locale.UK);
+
+    // Repeated calls are served from the cache with identical results
+    assertThat(Languages.safeText(MessageKey.YES)).isEqualTo("Yes");
+    assertThat(Languages.safeText(MessageKey.YES)).isEqualTo("Yes");
+    assertThat(Languages.safeText(MessageKey.EXCHANGE_FIAT_RATE, "a", "b")).isEqualTo("ab");
+    assertThat(Languages.safeText(MessageKey.EXCHANGE_FIAT_RATE, "c", "d")).isEqualTo("cd");
+
+    // Unknown keys
+    assertThat(Languages.safeText("not_a_key")).isEqualTo("Key 'not_a_key' is not localised!");
+
+    // Switching locale swaps the cache
+    Configurations.currentConfiguration.getLanguage().setLocale(Locale.GERMANY);
+    assertThat(Languages.safeText(MessageKey.YES)).isEqualTo("Ja");
+
+    Configurations.currentConfiguration.getLanguage().setLocale(Locale.UK);
+    assertThat(Languages.safeText(MessageKey.YES)).isEqualTo("Yes");
+
+  }
+}
@@ -0,0 +1,96 @@
+package org.multibit.hd.ui.startup;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StartupOrchestratorTest {
+
+  @Test
+  public void testDependenciesAreRespected() throws Exception {
+
+    final List<String> completed = new CopyOnWriteArrayList<>();
+
+    StartupOrchestrator testObject = new StartupOrchestrator(3);
+
+    testObject.submit("slow", new Runnable() {
+      @Override
+      public void run() {
+        Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+        completed.add("slow");
+      }
+    });
+    testObject.submit("fast", new Runnable() {
+      @Override
+      public void run() {
+        completed.add("fast");
+      }
+    });
+    testObject.submit("dependent", new Runnable() {
+      @Override
+      public void run() {
+        completed.add("dependent");
+      }
+    }, "slow");
+    testObject.shutdown();
+
+    // Act
+    String result = testObject.run("inline", new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        completed.add("inline");
+        return "ok";
+      }
+    }, "dependent", "fast");
+
+    // Assert
+    assertThat(result).isEqualTo("ok");
+    assertThat(completed.indexOf("slow")).isLessThan(completed.indexOf("dependent"));
+    assertThat(completed.indexOf("dependent")).isLessThan(completed.indexOf("inline"));
+
+    // Independent phases run concurrently so the fast one is not held up
+    assertThat(completed.indexOf("fast")).isLessThan(completed.indexOf("slow"));
+
+    assertThat(testObject.getPhaseDurations().keySet()).containsOnly("slow", "fast", "dependent", "inline");
+
+    testObject.logTimingReport("test");
+
+  }
+
+  @Test
+  public void testFailurePropagatesToDependents() throws Exception {
+
+    final List<String> completed = new CopyOnWriteArrayList<>();
+
+    StartupOrchestrator testObject = new StartupOrchestrator(2);
+
+    testObject.submit("broken", new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("Expected");
+      }
+    });
+    testObject.submit("dependent", new Runnable() {
+      @Override
+      public void run() {
+        completed.add("dependent");
+      }
+    }, "broken");
+    testObject.shutdown();
+
+    // Act
+    boolean dependentOk = testObject.await("dependent", 5, TimeUnit.SECONDS);
+
+    // Assert
+    assertThat(dependentOk).isFalse();
+    assertThat(completed).isEmpty();
+
+  }
+
+}